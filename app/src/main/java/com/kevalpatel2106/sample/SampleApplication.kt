@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.sample
+
+import android.app.Application
+import com.kevalpatel2106.fingerprintdialog.AuthenticatedSessionManager
+
+/**
+ * Application of the sample. Creates the [AuthenticatedSessionManager] before any activity starts,
+ * so it counts every started activity.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+class SampleApplication : Application() {
+
+    override fun onCreate() {
+        super.onCreate()
+        AuthenticatedSessionManager.get(this)
+    }
+}
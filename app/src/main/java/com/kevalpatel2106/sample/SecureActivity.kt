@@ -18,6 +18,7 @@ import android.os.Bundle
 import android.support.v7.app.AppCompatActivity
 import android.view.animation.AnimationUtils
 import android.widget.Toast
+import com.kevalpatel2106.fingerprintdialog.AuthenticatedSessionManager
 import com.kevalpatel2106.fingerprintdialog.AuthenticationCallback
 import com.kevalpatel2106.fingerprintdialog.FingerprintDialogBuilder
 import com.kevalpatel2106.fingerprintdialog.FingerprintUtils
@@ -33,21 +34,36 @@ class SecureActivity : AppCompatActivity() {
 
     private var isAuthenticateUsingPin = false
 
+    private lateinit var sessionManager: AuthenticatedSessionManager
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_secure)
+        sessionManager = AuthenticatedSessionManager.get(this)
 
         setFingerprintAuthentication()
         authenticate_btn.setOnClickListener {
             if (isAuthenticateUsingPin) {
                 startActivity(Intent(this@SecureActivity, PinAuthenticationActivity::class.java))
                 setFingerprintAuthentication()
+            } else if (sessionManager.isAuthenticated) {
+                // User authenticated recently. No need to prompt again.
+                openSecureScreen()
             } else {
                 showAuthenticationDialog()
             }
         }
     }
 
+    override fun onUserInteraction() {
+        super.onUserInteraction()
+        sessionManager.touch()
+    }
+
+    private fun openSecureScreen() {
+        startActivity(Intent(this@SecureActivity, AuthenticationSuccessActivity::class.java))
+    }
+
     private fun showAuthenticationDialog() {
         FingerprintDialogBuilder(this)
                 .setTitle(R.string.fingerprint_dialog_title)
@@ -81,7 +97,8 @@ class SecureActivity : AppCompatActivity() {
                     override fun onAuthenticationSucceeded() {
                         // Authentication success
                         // You user is now authenticated.
-                        startActivity(Intent(this@SecureActivity, AuthenticationSuccessActivity::class.java))
+                        sessionManager.onAuthenticated()
+                        openSecureScreen()
                     }
 
                     override fun onAuthenticationFailed() {
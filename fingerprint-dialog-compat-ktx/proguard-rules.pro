@@ -0,0 +1,2 @@
+# Add project specific ProGuard rules here.
+# Coroutines ship their own consumer rules, so the extensions don't need any.
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.ktx
+
+import com.kevalpatel2106.fingerprintdialog.AuthenticationEvent
+
+/**
+ * Final result of the fingerprint authentication returned by [authenticate].
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+sealed class AuthenticationResult {
+
+    /**
+     * User authenticated successfully.
+     */
+    object Succeeded : AuthenticationResult()
+
+    /**
+     * User or the system canceled the authentication.
+     *
+     * @property byUser true if the user canceled the dialog.
+     */
+    data class Canceled(val byUser: Boolean) : AuthenticationResult()
+
+    /**
+     * Device doesn't support the fingerprint authentication.
+     */
+    object NotSupported : AuthenticationResult()
+
+    /**
+     * User doesn't have any fingerprint enrolled.
+     */
+    object NoFingerprintEnrolled : AuthenticationResult()
+
+    /**
+     * Authentication stopped because of an unrecoverable error.
+     *
+     * @property errorCode Error code reported by the platform.
+     * @property message Human readable error message or null.
+     * @property category [com.kevalpatel2106.fingerprintdialog.EventCategory] of the error.
+     */
+    data class Error(val errorCode: Int,
+                     val message: CharSequence?,
+                     val category: Int) : AuthenticationResult()
+
+    internal companion object {
+
+        /**
+         * Convert the terminal [AuthenticationEvent] into the result.
+         */
+        fun of(event: AuthenticationEvent): AuthenticationResult = when (event.type) {
+            AuthenticationEvent.TYPE_SUCCEEDED -> Succeeded
+            AuthenticationEvent.TYPE_CANCELED ->
+                Canceled(event.category == AuthenticationEvent.CATEGORY_USER)
+            AuthenticationEvent.TYPE_NOT_SUPPORTED -> NotSupported
+            AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED -> NoFingerprintEnrolled
+            AuthenticationEvent.TYPE_ERROR -> Error(event.platformCode, event.message, event.category)
+            else -> throw IllegalArgumentException("Not a terminal event: $event")
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.ktx
+
+import com.kevalpatel2106.fingerprintdialog.AuthenticationEvent
+import com.kevalpatel2106.fingerprintdialog.AuthenticationEventListener
+import kotlinx.coroutines.channels.Channel
+import java.util.ArrayDeque
+
+/**
+ * Bounded buffer between the main thread callbacks and a slow collector of the events.
+ *
+ * The platform can report the help events (e.g. "Finger moved too fast.") many times a second. A
+ * burst of consecutive help events is conflated into the latest one, because only the latest hint
+ * is worth showing. Every other event is kept in order, so the collector never misses a failed
+ * attempt or the terminal event. If the collector is still behind after [capacity] events, the
+ * oldest non-terminal event is dropped. If every buffered event is terminal (e.g. the results of a
+ * continuous prompt), the oldest one is dropped, so the buffer never grows past its capacity.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+internal class EventBuffer(private val capacity: Int = DEFAULT_CAPACITY) : AuthenticationEventListener {
+
+    /**
+     * Receives an element whenever there are new events to [drain]. Conflated, so the producer
+     * never suspends.
+     */
+    val signal = Channel<Unit>(Channel.CONFLATED)
+
+    private val pending = ArrayDeque<AuthenticationEvent>()
+
+    init {
+        require(capacity > 0) { "Capacity must be positive." }
+    }
+
+    override fun onEvent(event: AuthenticationEvent) {
+        synchronized(pending) {
+            if (event.type == AuthenticationEvent.TYPE_HELP
+                    && pending.peekLast()?.type == AuthenticationEvent.TYPE_HELP) {
+                pending.pollLast()
+            } else if (pending.size >= capacity) {
+                dropOldest()
+            }
+            pending.addLast(event)
+        }
+        signal.offer(Unit)
+    }
+
+    /**
+     * @return All the buffered events in the order they occurred. The buffer is empty after this.
+     */
+    fun drain(): List<AuthenticationEvent> = synchronized(pending) {
+        val events = ArrayList(pending)
+        pending.clear()
+        events
+    }
+
+    private fun dropOldest() {
+        val iterator = pending.iterator()
+        while (iterator.hasNext()) {
+            if (!iterator.next().isTerminal) {
+                iterator.remove()
+                return
+            }
+        }
+        //Only the terminal events are left. The latest one is the one that ends the flow.
+        pending.pollFirst()
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 16
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.ktx
+
+import android.support.v4.app.FragmentManager
+import com.kevalpatel2106.fingerprintdialog.AuthenticationEvent
+import com.kevalpatel2106.fingerprintdialog.AuthenticationEventListener
+import com.kevalpatel2106.fingerprintdialog.AuthenticationHandle
+import com.kevalpatel2106.fingerprintdialog.BaseFingerprintBuilder
+import com.kevalpatel2106.fingerprintdialog.FingerprintAuthView
+import com.kevalpatel2106.fingerprintdialog.FingerprintDialogBuilder
+import com.kevalpatel2106.fingerprintdialog.FingerprintPromptBuilder
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlinx.coroutines.withContext
+import kotlin.coroutines.resume
+
+/**
+ * Show the fingerprint dialog and suspend until the authentication finishes. Cancelling the
+ * coroutine dismisses the dialog (or the [android.hardware.biometrics.BiometricPrompt] on Android
+ * P) and stops the fingerprint scanner.
+ *
+ * The dialog is shown on the main thread, so this can be called from any dispatcher.
+ *
+ * @param fragmentManager [FragmentManager] to show the dialog.
+ * @return [AuthenticationResult] of the authentication.
+ * @throws IllegalArgumentException If the builder is continuous. A continuous prompt has no single
+ * result, use [authenticationEvents] instead.
+ */
+suspend fun FingerprintDialogBuilder.authenticate(fragmentManager: FragmentManager): AuthenticationResult =
+        awaitResult(this) { show(fragmentManager, it) }
+
+/**
+ * Show the prompt in the [FingerprintAuthView] and suspend until the authentication finishes.
+ * Cancelling the coroutine tears the view down and stops the fingerprint scanner.
+ *
+ * @param authView [FingerprintAuthView] to display the prompt.
+ * @return [AuthenticationResult] of the authentication.
+ * @throws IllegalArgumentException If the builder is continuous. Use [authenticationEvents] instead.
+ * @see FingerprintDialogBuilder.authenticate
+ */
+suspend fun FingerprintDialogBuilder.authenticate(authView: FingerprintAuthView): AuthenticationResult =
+        awaitResult(this) { show(authView, it) }
+
+/**
+ * Show the [android.hardware.biometrics.BiometricPrompt] and suspend until the authentication
+ * finishes. Cancelling the coroutine dismisses the prompt.
+ *
+ * @return [AuthenticationResult] of the authentication.
+ * @throws IllegalArgumentException If the builder is continuous. Use [authenticationEvents] instead.
+ * @see FingerprintDialogBuilder.authenticate
+ */
+suspend fun FingerprintPromptBuilder.authenticate(): AuthenticationResult =
+        awaitResult(this) { show(it) }
+
+/**
+ * Cold [Flow] of the [AuthenticationEvent]s. Every collector shows its own dialog and the flow
+ * completes after the terminal event. For the continuous prompt, it completes once the prompt is
+ * cancelled or stops with an unrecoverable error. Cancelling the collector dismisses the dialog and stops the
+ * fingerprint scanner.
+ *
+ * The events are buffered while the collector is busy. Consecutive help events are conflated into
+ * the latest one, while the failed attempts and the terminal event are always delivered.
+ *
+ * @param fragmentManager [FragmentManager] to show the dialog.
+ */
+fun FingerprintDialogBuilder.authenticationEvents(fragmentManager: FragmentManager): Flow<AuthenticationEvent> =
+        eventsOf { show(fragmentManager, it) }
+
+/**
+ * Cold [Flow] of the [AuthenticationEvent]s of the prompt in the [FingerprintAuthView].
+ *
+ * @param authView [FingerprintAuthView] to display the prompt.
+ * @see FingerprintDialogBuilder.authenticationEvents
+ */
+fun FingerprintDialogBuilder.authenticationEvents(authView: FingerprintAuthView): Flow<AuthenticationEvent> =
+        eventsOf { show(authView, it) }
+
+/**
+ * Cold [Flow] of the [AuthenticationEvent]s of the [android.hardware.biometrics.BiometricPrompt].
+ *
+ * @see FingerprintDialogBuilder.authenticationEvents
+ */
+fun FingerprintPromptBuilder.authenticationEvents(): Flow<AuthenticationEvent> =
+        eventsOf { show(it) }
+
+/**
+ * Show the prompt on the main thread with [show] and suspend until its terminal event.
+ */
+private suspend fun awaitResult(builder: BaseFingerprintBuilder<*>,
+                                show: (AuthenticationEventListener) -> AuthenticationHandle): AuthenticationResult {
+    //The continuous prompt would stay armed after the result with no handle to stop it.
+    require(!builder.isContinuous) { "Continuous prompt has no single result. Use authenticationEvents()." }
+
+    return withContext(Dispatchers.Main.immediate) {
+        suspendCancellableCoroutine<AuthenticationResult> { continuation ->
+            val handle = show(AuthenticationEventListener { event ->
+                //No teardown here. The prompt that delivered the result is already finished.
+                if (event.isTerminal && continuation.isActive) {
+                    continuation.resume(AuthenticationResult.of(event))
+                }
+            })
+            continuation.invokeOnCancellation { handle.cancel() }
+        }
+    }
+}
+
+/**
+ * Cold [Flow] of the events of the prompt shown on the main thread with [show].
+ */
+private fun eventsOf(show: (AuthenticationEventListener) -> AuthenticationHandle): Flow<AuthenticationEvent> =
+        flow {
+            val buffer = EventBuffer()
+            val handle = withContext(Dispatchers.Main.immediate) { show(buffer) }
+            try {
+                while (true) {
+                    buffer.signal.receive()
+                    for (event in buffer.drain()) {
+                        emit(event)
+                        if (event.isTerminal && !handle.isActive) return@flow
+                    }
+                }
+            } finally {
+                //No-op if the authentication is already finished.
+                handle.cancel()
+            }
+        }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog
+
+import android.hardware.fingerprint.FingerprintManager
+import com.kevalpatel2106.fingerprintdialog.ktx.AuthenticationResult
+import com.kevalpatel2106.fingerprintdialog.ktx.EventBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Lives in the package of the library to create the [AuthenticationEvent]s.
+ */
+class EventBufferTest {
+
+    @Test
+    fun conflatesConsecutiveHelpEvents() {
+        val buffer = EventBuffer()
+        buffer.onEvent(AuthenticationEvent.fromHelp(FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, "partial"))
+        buffer.onEvent(AuthenticationEvent.fromHelp(FingerprintManager.FINGERPRINT_ACQUIRED_TOO_FAST, "fast"))
+        buffer.onEvent(AuthenticationEvent.failed())
+        buffer.onEvent(AuthenticationEvent.fromHelp(FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, "partial"))
+        buffer.onEvent(AuthenticationEvent.succeeded())
+
+        val events = buffer.drain()
+        assertEquals(listOf(AuthenticationEvent.TYPE_HELP, AuthenticationEvent.TYPE_FAILED,
+                AuthenticationEvent.TYPE_HELP, AuthenticationEvent.TYPE_SUCCEEDED), events.map { it.type })
+        assertEquals("fast", events[0].message)
+        assertTrue(buffer.drain().isEmpty())
+    }
+
+    @Test
+    fun keepsTerminalEventWhenFull() {
+        val buffer = EventBuffer(capacity = 2)
+        buffer.onEvent(AuthenticationEvent.failed())
+        buffer.onEvent(AuthenticationEvent.failed())
+        buffer.onEvent(AuthenticationEvent.canceledByUser())
+        buffer.onEvent(AuthenticationEvent.failed())
+
+        val events = buffer.drain()
+        assertEquals(listOf(AuthenticationEvent.TYPE_CANCELED, AuthenticationEvent.TYPE_FAILED),
+                events.map { it.type })
+        assertEquals(AuthenticationResult.Canceled(byUser = true), AuthenticationResult.of(events[0]))
+    }
+
+    @Test
+    fun staysBoundedWithOnlyTerminalEvents() {
+        val buffer = EventBuffer(capacity = 2)
+        buffer.onEvent(AuthenticationEvent.succeeded())
+        buffer.onEvent(AuthenticationEvent.succeeded())
+        buffer.onEvent(AuthenticationEvent.succeeded())
+        buffer.onEvent(AuthenticationEvent.canceledByUser())
+
+        val events = buffer.drain()
+        assertEquals(listOf(AuthenticationEvent.TYPE_SUCCEEDED, AuthenticationEvent.TYPE_CANCELED),
+                events.map { it.type })
+    }
+}
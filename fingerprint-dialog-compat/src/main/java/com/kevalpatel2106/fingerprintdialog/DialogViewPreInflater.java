@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018. Lorem ipsum dolor sit amet, consectetur adipiscing elit.
+ * Morbi non lorem porttitor neque feugiat blandit. Ut vitae ipsum eget quam lacinia accumsan.
+ * Etiam sed turpis ac ipsum condimentum fringilla. Maecenas magna.
+ * Proin dapibus sapien vel ante. Aliquam erat volutpat. Pellentesque sagittis ligula eget metus.
+ * Vestibulum commodo. Ut rhoncus gravida arcu.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.Context;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Inflates the view of the {@link FingerprintDialogCompatV23} on the background thread ahead of
+ * time, so {@link FingerprintDialogCompatV23#onCreateView} doesn't parse the layout on the critical
+ * path of the first frame. Holds at most one view. The view keeps its {@link Context}, so the
+ * owner (the builder of the screen) must not outlive the screen.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class DialogViewPreInflater {
+
+    /**
+     * Inflated view that is not handed over yet.
+     */
+    @Nullable
+    private View mView;
+
+    /**
+     * True while the view is being inflated.
+     */
+    private boolean isPending = false;
+
+    /**
+     * Start inflating the view if there is no view for the context yet.
+     *
+     * @param context {@link Context} of the screen that will show the dialog. The dialog inflates
+     *                with the same context.
+     */
+    @MainThread
+    void start(@NonNull final Context context) {
+        if (isPending || (mView != null && mView.getContext() == context)) return;
+
+        isPending = true;
+        new AsyncLayoutInflater(context).inflate(R.layout.fingerprint_compat_dialog, null,
+                new AsyncLayoutInflater.OnInflateFinishedListener() {
+                    @Override
+                    public void onInflateFinished(@NonNull final View view,
+                                                  final int resid,
+                                                  @Nullable final ViewGroup parent) {
+                        isPending = false;
+                        mView = view;
+                    }
+                });
+    }
+
+    /**
+     * Hand over the inflated view. Each view is handed over only once. The dialog checks that the
+     * view was inflated with its context.
+     *
+     * @return Inflated view or null if it is not ready yet.
+     */
+    @MainThread
+    @Nullable
+    View take() {
+        final View view = mView;
+        mView = null;
+        return view != null && view.getParent() == null ? view : null;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018. Lorem ipsum dolor sit amet, consectetur adipiscing elit.
+ * Morbi non lorem porttitor neque feugiat blandit. Ut vitae ipsum eget quam lacinia accumsan.
+ * Etiam sed turpis ac ipsum condimentum fringilla. Maecenas magna.
+ * Proin dapibus sapien vel ante. Aliquam erat volutpat. Pellentesque sagittis ligula eget metus.
+ * Vestibulum commodo. Ut rhoncus gravida arcu.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.AppCompatButton;
+import android.support.v7.widget.AppCompatImageView;
+import android.support.v7.widget.AppCompatTextView;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import javax.crypto.Cipher;
+
+/**
+ * Fingerprint prompt below Android P that the application places in its own layout. (e.g. Unlock
+ * bottom sheet that is already on the screen.) It runs the same scan as the
+ * {@link FingerprintDialogCompatV23}, but without the fragment transaction and the dialog window, so
+ * the sensor is armed right after {@link FingerprintDialogBuilder#show(FingerprintAuthView, AuthenticationCallback)}.
+ * <p>
+ * The view scans while it is shown. It releases the sensor when it or any of its parents is hidden
+ * or the window goes to background, and arms it again when it is shown. The view hides itself
+ * after the terminal callback.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public class FingerprintAuthView extends FrameLayout {
+
+    private AppCompatTextView mTitleTv;
+    private AppCompatTextView mSubtitleTv;
+    private AppCompatTextView mDescriptionTv;
+    private AppCompatButton mNegativeButton;
+    private AppCompatTextView mStatusText;
+
+    /**
+     * {@link FingerprintScanController} that runs the scan while the view is shown.
+     */
+    private final FingerprintScanController mController = new FingerprintScanController(new FingerprintScanController.Host() {
+        @Override
+        public void showStatus(@NonNull final CharSequence status) {
+            mStatusText.setText(status);
+        }
+
+        @Override
+        public boolean isShowing() {
+            return isShown();
+        }
+
+        @Override
+        public void close() {
+            setVisibility(GONE);
+        }
+    });
+
+    public FingerprintAuthView(@NonNull final Context context) {
+        this(context, null);
+    }
+
+    public FingerprintAuthView(@NonNull final Context context, @Nullable final AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public FingerprintAuthView(@NonNull final Context context,
+                               @Nullable final AttributeSet attrs,
+                               final int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context);
+    }
+
+    private void init(@NonNull final Context context) {
+        LayoutInflater.from(context).inflate(R.layout.fingerprint_compat_dialog, this, true);
+
+        mTitleTv = findViewById(R.id.title_tv);
+        mSubtitleTv = findViewById(R.id.subtitle_tv);
+        mDescriptionTv = findViewById(R.id.description_tv);
+        mStatusText = findViewById(R.id.fingerprint_status_tv);
+        mNegativeButton = findViewById(R.id.negative_btn);
+        mNegativeButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(final View view) {
+                mController.cancel();
+            }
+        });
+
+        //Set the application drawable.
+        if (!isInEditMode()) {
+            try {
+                final AppCompatImageView appIconIv = findViewById(R.id.app_icon_iv);
+                appIconIv.setImageDrawable(context.getPackageManager().getApplicationIcon(context.getPackageName()));
+            } catch (PackageManager.NameNotFoundException e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Bind the new prompt to the view and arm the sensor right away if the view can be shown.
+     * Running prompt of the view is cancelled first.
+     *
+     * @param title               Title of the prompt.
+     * @param subtitle            Subtitle of the prompt.
+     * @param description         Description of the prompt.
+     * @param negativeButtonTitle Title of the negative/cancel button.
+     * @param session             {@link AuthenticationSession} to deliver the events.
+     * @param cipher              {@link Cipher} to authenticate with or null to use the key of the
+     *                            library.
+     * @param watchdog            {@link AuthenticationWatchdog} with the deadlines.
+     */
+    void show(@NonNull final String title,
+              @NonNull final String subtitle,
+              @NonNull final String description,
+              @NonNull final String negativeButtonTitle,
+              @NonNull final AuthenticationSession session,
+              @Nullable final Cipher cipher,
+              @NonNull final AuthenticationWatchdog watchdog) {
+        mController.cancel();
+
+        mTitleTv.setText(title);
+        mTitleTv.setSelected(true);
+        mSubtitleTv.setText(subtitle);
+        mDescriptionTv.setText(description);
+        mNegativeButton.setText(negativeButtonTitle);
+        mStatusText.setText("");
+
+        mController.setSession(session);
+        mController.setCipher(cipher);
+        mController.setWatchdog(watchdog);
+
+        setVisibility(VISIBLE);
+        updateScan();
+    }
+
+    /**
+     * Replace the texts of the prompt while the sensor keeps scanning.
+     *
+     * @param title       New title or null to keep the current one.
+     * @param subtitle    New subtitle or null to keep the current one.
+     * @param description New description or null to keep the current one.
+     */
+    void updateContent(@Nullable final String title,
+                       @Nullable final String subtitle,
+                       @Nullable final String description) {
+        if (title != null) mTitleTv.setText(title);
+        if (subtitle != null) mSubtitleTv.setText(subtitle);
+        if (description != null) mDescriptionTv.setText(description);
+    }
+
+    /**
+     * Release the sensor and hide the view after the session was cancelled using the
+     * {@link AuthenticationHandle}.
+     */
+    void teardown() {
+        mController.close();
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull final View changedView, final int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateScan();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(final int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateScan();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mController.release();
+    }
+
+    /**
+     * Arm the sensor if the view is shown to the user, release it otherwise.
+     */
+    private void updateScan() {
+        //Called from the super constructor before the controller is created.
+        //noinspection ConstantConditions
+        if (mController == null) return;
+
+        if (isShown() && getWindowVisibility() == VISIBLE) {
+            if (mController.hasSession()) mController.start(getContext());
+        } else {
+            mController.stop();
+        }
+    }
+}
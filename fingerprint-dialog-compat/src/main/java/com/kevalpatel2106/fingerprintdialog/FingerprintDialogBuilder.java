@@ -13,15 +13,11 @@
 
 package com.kevalpatel2106.fingerprintdialog;
 
-import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.DialogInterface;
-import android.hardware.biometrics.BiometricPrompt;
 import android.os.Build;
-import android.os.CancellationSignal;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.annotation.StringRes;
 import android.support.v4.app.FragmentManager;
 
 /**
@@ -31,33 +27,13 @@ import android.support.v4.app.FragmentManager;
  * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
  */
 @SuppressWarnings("WeakerAccess")
-public class FingerprintDialogBuilder {
+public class FingerprintDialogBuilder extends BaseFingerprintBuilder<FingerprintDialogBuilder> {
 
     /**
-     * {@link Context} of the caller.
+     * Holds the view of the dialog inflated by {@link #preInflate(Context)}.
      */
     @NonNull
-    private final Context mContext;
-
-    /**
-     * Title of fingerprint dialog.
-     */
-    private String mTitle;
-
-    /**
-     * Subtitle of fingerprint dialog.
-     */
-    private String mSubTitle;
-
-    /**
-     * Description of fingerprint dialog.
-     */
-    private String mDescription;
-
-    /**
-     * Title to display on the negative button of fingerprint dialog.
-     */
-    private String mButtonTitle;
+    private final DialogViewPreInflater mPreInflater = new DialogViewPreInflater();
 
     /**
      * Public constructor.
@@ -65,181 +41,129 @@ public class FingerprintDialogBuilder {
      * @param context {@link Context} of the caller.
      */
     public FingerprintDialogBuilder(@NonNull final Context context) {
-        mContext = context;
+        super(context);
     }
 
     /**
-     * Set the title of the dialog. This is the required field.
+     * Inflate the view of the dialog on the background thread ahead of time (e.g. when the
+     * protected screen is created), so the dialog can skip the inflation when it is shown. If the
+     * view is not ready by then, the dialog inflates it as usual. Each pre-inflated view is used by
+     * one dialog only, call this again before the next {@code show()}. Does nothing on Android P and
+     * above.
+     * <p>
+     * The builder keeps the view until the dialog is shown, so don't keep the builder longer than
+     * the screen.
      *
-     * @param title Title string.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setTitle(int)
+     * @param context {@link Context} of the activity that will show the dialog.
+     * @return This builder.
      */
-    public FingerprintDialogBuilder setTitle(@NonNull final String title) {
-        mTitle = title;
-        return this;
-    }
-
-    /**
-     * Set the title of the dialog. This is the required field.
-     *
-     * @param title String resource of the title.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setTitle(String)
-     */
-    public FingerprintDialogBuilder setTitle(@StringRes final int title) {
-        mTitle = mContext.getString(title);
-        return this;
-    }
-
-    /**
-     * Set the subtitle of the dialog. This is the required field.
-     *
-     * @param subtitle Subtitle string.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setSubtitle(int)
-     */
-    public FingerprintDialogBuilder setSubtitle(@NonNull final String subtitle) {
-        mSubTitle = subtitle;
-        return this;
-    }
-
-    /**
-     * Set the subtitle of the dialog. This is the required field.
-     *
-     * @param subtitle String resource of the subtitle.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setSubtitle(String)
-     */
-    public FingerprintDialogBuilder setSubtitle(@StringRes final int subtitle) {
-        mSubTitle = mContext.getString(subtitle);
+    @MainThread
+    @NonNull
+    public FingerprintDialogBuilder preInflate(@NonNull final Context context) {
+        //noinspection ConstantConditions
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && Build.VERSION.SDK_INT < Build.VERSION_CODES.P
+                && !Build.VERSION.CODENAME.equals("P")) {
+            mPreInflater.start(context);
+        }
         return this;
     }
 
     /**
-     * Set the description of the dialog. This is the required field.
+     * Build the {@link FingerprintDialogCompatV23}. This dialog will be displayed for android version.
      *
-     * @param description String resource of the description.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setDescription(int)
+     * @return {@link AuthenticationHandle} to cancel the prompt or check if it is still active.
      */
-    public FingerprintDialogBuilder setDescription(@NonNull final String description) {
-        mDescription = description;
-        return this;
+    @NonNull
+    public AuthenticationHandle show(@NonNull final FragmentManager fragmentManager,
+                                     @NonNull final AuthenticationCallback authenticationCallback) {
+        return show(fragmentManager, new EventDispatcher(authenticationCallback));
     }
 
     /**
-     * Set the description of the dialog. This is the required field.
+     * Build the {@link FingerprintDialogCompatV23} and deliver the normalized
+     * {@link AuthenticationEvent}s instead of the {@link AuthenticationCallback}.
      *
-     * @param description String resource of the description.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setDescription(String)
+     * @return {@link AuthenticationHandle} to cancel the prompt or check if it is still active.
+     * @see #show(FragmentManager, AuthenticationCallback)
      */
-    public FingerprintDialogBuilder setDescription(@StringRes final int description) {
-        mDescription = mContext.getString(description);
-        return this;
+    @NonNull
+    public AuthenticationHandle show(@NonNull final FragmentManager fragmentManager,
+                                     @NonNull final AuthenticationEventListener eventListener) {
+        return authenticate(eventListener, new CompatPrompt() {
+            @NonNull
+            @Override
+            public AuthenticationHandle show(@NonNull final AuthenticationSession session) {
+                final FingerprintDialogCompatV23 fingerprintDialogCompat = FingerprintDialogCompatV23
+                        .createDialog(mTitle, mSubTitle, mDescription, mButtonTitle);
+                fingerprintDialogCompat.setSession(session);
+                fingerprintDialogCompat.setWatchdog(mWatchdog);
+                if (mCipher != null) fingerprintDialogCompat.setCipher(mCipher);
+                fingerprintDialogCompat.setPreInflatedView(mPreInflater.take());
+                fingerprintDialogCompat.setFrameMetricsEnabled(mFrameMetricsEnabled);
+                fingerprintDialogCompat.show(fragmentManager, FingerprintDialogCompatV23.class.getName());
+
+                return new AuthenticationHandle(session, new Runnable() {
+                    @Override
+                    public void run() {
+                        fingerprintDialogCompat.teardown();
+                    }
+                }, new AuthenticationHandle.ContentUpdater() {
+                    @Override
+                    public void update(@Nullable final String title,
+                                       @Nullable final String subtitle,
+                                       @Nullable final String description) {
+                        fingerprintDialogCompat.updateContent(title, subtitle, description);
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Set the title of the negative button in the dialog. The default title of the button is "Cancel".
+     * Show the prompt in the {@link FingerprintAuthView} placed in the layout of the application,
+     * instead of the dialog. There is no fragment transaction or dialog window, so the sensor is
+     * armed right away. On Android P and above the system prompt is displayed instead and the view
+     * is not touched.
      *
-     * @param text String of button title.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setNegativeButton(int)
+     * @param authView {@link FingerprintAuthView} to display the prompt.
+     * @return {@link AuthenticationHandle} to cancel the prompt or check if it is still active.
      */
-    public FingerprintDialogBuilder setNegativeButton(@Nullable final String text) {
-        mButtonTitle = text;
-        return this;
+    @NonNull
+    public AuthenticationHandle show(@NonNull final FingerprintAuthView authView,
+                                     @NonNull final AuthenticationCallback authenticationCallback) {
+        return show(authView, new EventDispatcher(authenticationCallback));
     }
 
     /**
-     * Set the title of the negative button in the dialog. The default title of the button is "Cancel".
+     * Show the prompt in the {@link FingerprintAuthView} and deliver the normalized
+     * {@link AuthenticationEvent}s instead of the {@link AuthenticationCallback}.
      *
-     * @param text String resource of button title.
-     * @return {@link FingerprintDialogBuilder}
-     * @see #setNegativeButton(String)
+     * @return {@link AuthenticationHandle} to cancel the prompt or check if it is still active.
+     * @see #show(FingerprintAuthView, AuthenticationCallback)
      */
-    public FingerprintDialogBuilder setNegativeButton(@StringRes final int text) {
-        mButtonTitle = mContext.getString(text);
-        return this;
-    }
-
-    /**
-     * Build the {@link FingerprintDialogCompatV23}. This dialog will be displayed for android version.
-     */
-    public void show(@NonNull final FragmentManager fragmentManager,
-                     @NonNull final AuthenticationCallback authenticationCallback) {
-
-        //Validate the title
-        if (mTitle == null) {
-            throw new IllegalArgumentException("Title of the dialog cannot be null. Call setTitle() " +
-                    "to set the title of the dialog.");
-        }
-
-        //Validate the subtitle
-        if (mSubTitle == null) {
-            throw new IllegalArgumentException("Subtitle of the dialog cannot be null. Call " +
-                    "setSubtitle() to set the subtitle of the dialog.");
-        }
-
-        //Validate the description
-        if (mDescription == null) {
-            throw new IllegalArgumentException("Description of the dialog cannot be null. Call " +
-                    "setDescription() to set the description of the dialog.");
-        }
-
-        if (mButtonTitle == null) {
-            //Set the default button title
-            mButtonTitle = mContext.getString(android.R.string.cancel);
-        }
-
-        //Check if the android version supports fingerprint authentication?
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-            authenticationCallback.fingerprintAuthenticationNotSupported();
-            return;
-        }
-
-        //Check if the device has the fingerprint sensor?
-        if (!FingerprintUtils.isSupportedHardware(mContext)) {
-            authenticationCallback.fingerprintAuthenticationNotSupported();
-            return;
-        }
-
-        //Check if there are any fingerprints enrolled?
-        if (!FingerprintUtils.isFingerprintEnroled(mContext)) {
-            authenticationCallback.hasNoFingerprintEnrolled();
-            return;
-        }
-
-        //noinspection ConstantConditions
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
-                || Build.VERSION.CODENAME.equals("P")/* TODO Remove once API 28 releases */) {
-            showFingerprintDialog(authenticationCallback);
-        } else {
-            final FingerprintDialogCompatV23 fingerprintDialogCompat = FingerprintDialogCompatV23
-                    .createDialog(mTitle, mSubTitle, mDescription, mButtonTitle);
-            fingerprintDialogCompat.setAuthenticationCallback(authenticationCallback);
-            fingerprintDialogCompat.show(fragmentManager, FingerprintDialogCompatV23.class.getName());
-        }
-    }
-
-    @TargetApi(Build.VERSION_CODES.P)
-    private void showFingerprintDialog(@NonNull final AuthenticationCallback authenticationCallback) {
-        new BiometricPrompt.Builder(mContext)
-                .setTitle(mTitle)
-                .setSubtitle(mSubTitle)
-                .setDescription(mDescription)
-                .setNegativeButton(mButtonTitle,
-                        mContext.getMainExecutor(),
-                        new DialogInterface.OnClickListener() {
-                            @Override
-                            public void onClick(final DialogInterface dialogInterface, final int i) {
-                                authenticationCallback.authenticationCanceledByUser();
-                            }
-                        })
-                .build()
-                .authenticate(new CancellationSignal(),
-                        mContext.getMainExecutor(),
-                        new AuthenticationCallbackV28(authenticationCallback));
+    @NonNull
+    public AuthenticationHandle show(@NonNull final FingerprintAuthView authView,
+                                     @NonNull final AuthenticationEventListener eventListener) {
+        return authenticate(eventListener, new CompatPrompt() {
+            @NonNull
+            @Override
+            public AuthenticationHandle show(@NonNull final AuthenticationSession session) {
+                authView.show(mTitle, mSubTitle, mDescription, mButtonTitle, session, mCipher, mWatchdog);
+
+                return new AuthenticationHandle(session, new Runnable() {
+                    @Override
+                    public void run() {
+                        authView.teardown();
+                    }
+                }, new AuthenticationHandle.ContentUpdater() {
+                    @Override
+                    public void update(@Nullable final String title,
+                                       @Nullable final String subtitle,
+                                       @Nullable final String description) {
+                        authView.updateContent(title, subtitle, description);
+                    }
+                });
+            }
+        });
     }
 }
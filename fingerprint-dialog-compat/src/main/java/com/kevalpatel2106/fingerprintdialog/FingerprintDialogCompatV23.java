@@ -10,21 +10,15 @@ package com.kevalpatel2106.fingerprintdialog;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
-import android.hardware.fingerprint.FingerprintManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.CancellationSignal;
-import android.os.Handler;
-import android.os.Looper;
-import android.security.keystore.KeyGenParameterSpec;
-import android.security.keystore.KeyProperties;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.annotation.RequiresApi;
 import android.support.v4.app.DialogFragment;
 import android.support.v7.widget.AppCompatButton;
 import android.support.v7.widget.AppCompatImageView;
@@ -36,21 +30,7 @@ import android.view.ViewGroup;
 import android.view.Window;
 import android.view.WindowManager;
 
-import java.io.IOException;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
-import java.util.UUID;
-
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKey;
 
 /**
  * Created by Keval on 07/04/18.
@@ -62,7 +42,6 @@ import javax.crypto.SecretKey;
 @SuppressWarnings("deprecation")
 @TargetApi(Build.VERSION_CODES.M)
 public class FingerprintDialogCompatV23 extends DialogFragment {
-    private static final String KEY_NAME = UUID.randomUUID().toString();
 
     // Keys of the arguments.
     private static final String ARG_TITLE = "arg_title";
@@ -71,35 +50,56 @@ public class FingerprintDialogCompatV23 extends DialogFragment {
     private static final String ARG_DESCRIPTION = "arg_description";
 
     /**
-     * {@link Context} of the activity with witch this dialog is attached.
+     * {@link Context} of the activity with witch this dialog is attached. Cleared in
+     * {@link #onDetach()}.
      */
+    @Nullable
     private Context mContext;
 
     /**
-     * {@link KeyStore} for holding the fingerprint authentication key.
+     * {@link android.widget.TextView} to display the fingerprint scanner status and errors. Cleared
+     * in {@link #onDestroyView()}.
      */
-    private KeyStore mKeyStore;
-    private Cipher mCipher;
+    @Nullable
+    private AppCompatTextView mStatusText;
+
     /**
-     * Fingerprint scanning is currently running.
+     * View inflated ahead of time by the {@link DialogViewPreInflater} or null. Cleared once it is
+     * used.
      */
-    private boolean isScanning = false;
+    @Nullable
+    private View mPreInflatedView;
+
     /**
-     * {@link android.widget.TextView} to display the fingerprint scanner status and errors.
+     * True to collect the frame timings of the dialog window.
      */
-    private AppCompatTextView mStatusText;
+    private boolean isFrameMetricsEnabled = false;
+
     /**
-     * {@link AuthenticationCallback} to notify the parent caller about the authentication status.
+     * {@link FrameMetricsTracker} of the dialog window while it is started, or null.
      */
-    @SuppressWarnings("NullableProblems")
-    @NonNull
-    private AuthenticationCallback mCallback;
+    @Nullable
+    private FrameMetricsTracker mFrameMetricsTracker;
+
     /**
-     * {@link CancellationSignal} for finger print authentication.
+     * {@link FingerprintScanController} that runs the scan while the dialog is resumed.
      */
-    private CancellationSignal mCancellationSignal;
+    private final FingerprintScanController mController = new FingerprintScanController(new FingerprintScanController.Host() {
+        @Override
+        public void showStatus(@NonNull final CharSequence status) {
+            if (mStatusText != null) mStatusText.setText(status);
+        }
+
+        @Override
+        public boolean isShowing() {
+            return mStatusText != null && getDialog() != null && getDialog().isShowing();
+        }
 
-    private Runnable mStatusTextRunnable;
+        @Override
+        public void close() {
+            if (isAdded()) dismiss();
+        }
+    });
 
     /**
      * Create new instance of the {@link FingerprintDialogCompatV23}.
@@ -136,7 +136,52 @@ public class FingerprintDialogCompatV23 extends DialogFragment {
      * @param callback {@link AuthenticationCallback}
      */
     public void setAuthenticationCallback(@NonNull final AuthenticationCallback callback) {
-        mCallback = callback;
+        mController.setSession(new AuthenticationSession(callback));
+    }
+
+    /**
+     * Set the {@link AuthenticationSession} shared with the {@link FingerprintDialogBuilder}.
+     *
+     * @param session {@link AuthenticationSession}
+     */
+    void setSession(@NonNull final AuthenticationSession session) {
+        mController.setSession(session);
+    }
+
+    /**
+     * Set the initialized {@link Cipher} to authenticate with, instead of the key of this process.
+     *
+     * @param cipher Initialized {@link Cipher}.
+     */
+    void setCipher(@NonNull final Cipher cipher) {
+        mController.setCipher(cipher);
+    }
+
+    /**
+     * Set the {@link AuthenticationWatchdog} with the deadlines configured on the builder.
+     *
+     * @param watchdog {@link AuthenticationWatchdog}
+     */
+    void setWatchdog(@NonNull final AuthenticationWatchdog watchdog) {
+        mController.setWatchdog(watchdog);
+    }
+
+    /**
+     * @param enabled True to report the frame timings of the dialog window to the
+     *                {@link AuthenticationMetrics}.
+     */
+    void setFrameMetricsEnabled(final boolean enabled) {
+        isFrameMetricsEnabled = enabled;
+    }
+
+    /**
+     * Use the view inflated ahead of time instead of inflating it in {@link #onCreateView}.
+     *
+     * @param view View of {@code R.layout.fingerprint_compat_dialog} inflated with the context of
+     *             the activity that shows this dialog.
+     */
+    void setPreInflatedView(@Nullable final View view) {
+        mPreInflatedView = view;
     }
 
     @Override
@@ -156,8 +201,18 @@ public class FingerprintDialogCompatV23 extends DialogFragment {
     public View onCreateView(@NonNull final LayoutInflater inflater,
                              @Nullable final ViewGroup container,
                              @Nullable final Bundle savedInstanceState) {
-        return LayoutInflater.from(getContext())
-                .inflate(R.layout.fingerprint_compat_dialog, container, false);
+        final View preInflatedView = mPreInflatedView;
+        mPreInflatedView = null;
+        if (preInflatedView != null && preInflatedView.getContext() == getContext()) return preInflatedView;
+
+        final Tracer tracer = mController.getTracer();
+        tracer.beginSection(Tracer.SECTION_INFLATE);
+        try {
+            return LayoutInflater.from(getContext())
+                    .inflate(R.layout.fingerprint_compat_dialog, container, false);
+        } finally {
+            tracer.endSection();
+        }
     }
 
     @Override
@@ -177,45 +232,85 @@ public class FingerprintDialogCompatV23 extends DialogFragment {
         wlp.windowAnimations = R.style.DialogAnimation;
         wlp.flags &= ~WindowManager.LayoutParams.FLAG_DIM_BEHIND;
         window.setAttributes(wlp);
+
+        if (isFrameMetricsEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && mFrameMetricsTracker == null) {
+            mFrameMetricsTracker = new FrameMetricsTracker(window,
+                    getResources().getInteger(android.R.integer.config_mediumAnimTime));
+            mFrameMetricsTracker.start();
+        }
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+
+        if (mFrameMetricsTracker != null) {
+            mController.reportFrameStats(mFrameMetricsTracker.stop());
+            mFrameMetricsTracker = null;
+        }
     }
 
     @Override
     public void onResume() {
         super.onResume();
 
-        //Check if the device has fingerprint supported hardware.
-        if (FingerprintUtils.isSupportedHardware(mContext)) {
-
-            //Device has supported hardware. Start fingerprint authentication.
-            startAuth();
-        } else {
-            mCallback.fingerprintAuthenticationNotSupported();
-            closeDialog();
+        //Restored by the fragment manager without any caller to notify.
+        if (!mController.hasSession()) {
+            dismissAllowingStateLoss();
+            return;
         }
+
+        //noinspection ConstantConditions Attached while resumed.
+        mController.start(mContext);
     }
 
     @Override
     public void onPause() {
         super.onPause();
-        stopAuthIfRunning();
+        mController.stop();
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        stopAuthIfRunning();
+        mController.stop();
+        mStatusText = null;
     }
 
     @Override
     public void onDetach() {
         super.onDetach();
-        stopAuthIfRunning();
+        mController.release();
+        mContext = null;
+    }
+
+    @Override
+    public void onCancel(final DialogInterface dialog) {
+        super.onCancel(dialog);
+
+        //Dialog dismissed using back button or by touching outside.
+        mController.cancel();
     }
 
     @Override
     public void onViewCreated(@NonNull final View view, @Nullable final Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
+        final Tracer tracer = mController.getTracer();
+        tracer.beginSection(Tracer.SECTION_BIND);
+        try {
+            bindView(view);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Display the texts of the arguments and the application icon in the view of the dialog.
+     *
+     * @param view Root view of the dialog.
+     */
+    private void bindView(@NonNull final View view) {
         if (getArguments() == null) throw new IllegalStateException("No arguments found.");
 
         //Set the title
@@ -252,7 +347,7 @@ public class FingerprintDialogCompatV23 extends DialogFragment {
                 @Override
                 public void onClick(final View view) {
                     //Close the dialog
-                    closeDialog();
+                    mController.cancel();
                 }
             });
         } else {
@@ -272,203 +367,39 @@ public class FingerprintDialogCompatV23 extends DialogFragment {
     }
 
     /**
-     * Generate authentication key.
+     * Replace the texts of the dialog while the sensor keeps scanning. The arguments are updated
+     * too, so the view created later displays the new texts.
      *
-     * @return true if the key generated successfully.
+     * @param title       New title or null to keep the current one.
+     * @param subtitle    New subtitle or null to keep the current one.
+     * @param description New description or null to keep the current one.
      */
-    @TargetApi(Build.VERSION_CODES.M)
-    private boolean generateKey() {
-        mKeyStore = null;
-        KeyGenerator keyGenerator;
-
-        //Get the instance of the key store.
-        try {
-            mKeyStore = KeyStore.getInstance("AndroidKeyStore");
-            keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, "AndroidKeyStore");
-        } catch (NoSuchAlgorithmException | NoSuchProviderException | KeyStoreException e) {
-            return false;
-        }
-
-        //generate key.
-        try {
-            mKeyStore.load(null);
-            keyGenerator.init(new
-                    KeyGenParameterSpec.Builder(KEY_NAME,
-                    KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
-                    .setBlockModes(KeyProperties.BLOCK_MODE_CBC)
-                    .setUserAuthenticationRequired(true)
-                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_PKCS7)
-                    .build());
-            keyGenerator.generateKey();
-
-            return true;
-        } catch (NoSuchAlgorithmException
-                | InvalidAlgorithmParameterException
-                | CertificateException
-                | IOException e) {
-            return false;
-        }
-    }
-
-    @TargetApi(Build.VERSION_CODES.M)
-    @Nullable
-    private FingerprintManager.CryptoObject getCryptoObject() {
-        return cipherInit() ? new FingerprintManager.CryptoObject(mCipher) : null;
+    void updateContent(@Nullable final String title,
+                       @Nullable final String subtitle,
+                       @Nullable final String description) {
+        final Bundle arguments = getArguments();
+        if (arguments == null) return;
+
+        if (title != null) arguments.putString(ARG_TITLE, title);
+        if (subtitle != null) arguments.putString(ARG_SUBTITLE, subtitle);
+        if (description != null) arguments.putString(ARG_DESCRIPTION, description);
+
+        final View view = getView();
+        if (view == null) return;
+
+        if (title != null) ((AppCompatTextView) view.findViewById(R.id.title_tv)).setText(title);
+        if (subtitle != null) ((AppCompatTextView) view.findViewById(R.id.subtitle_tv)).setText(subtitle);
+        if (description != null) ((AppCompatTextView) view.findViewById(R.id.description_tv)).setText(description);
     }
 
     /**
-     * Initialize the cipher.
-     *
-     * @return true if the initialization is successful.
+     * Release the sensor and dismiss the dialog after the session was cancelled using the
+     * {@link AuthenticationHandle}. If the dialog is not added yet, {@link #onResume()} will find the
+     * finished session and close the dialog.
      */
-    @TargetApi(Build.VERSION_CODES.M)
-    private boolean cipherInit() {
-        boolean isKeyGenerated = generateKey();
-
-        if (!isKeyGenerated) return false;
-
-        try {
-            mCipher = Cipher.getInstance(
-                    KeyProperties.KEY_ALGORITHM_AES + "/"
-                            + KeyProperties.BLOCK_MODE_CBC + "/"
-                            + KeyProperties.ENCRYPTION_PADDING_PKCS7);
-        } catch (NoSuchAlgorithmException |
-                NoSuchPaddingException e) {
-            return false;
-        }
-
-        try {
-            mKeyStore.load(null);
-            SecretKey key = (SecretKey) mKeyStore.getKey(KEY_NAME, null);
-            mCipher.init(Cipher.ENCRYPT_MODE, key);
-            return true;
-        } catch (KeyStoreException | CertificateException
-                | UnrecoverableKeyException | IOException
-                | NoSuchAlgorithmException | InvalidKeyException e) {
-            return false;
-        }
-    }
-
-
-    /**
-     * Start the finger print authentication by enabling the finger print sensor.
-     * Note: Use this function in the onResume() of the activity/fragment. Never forget to call
-     * {@link #stopAuthIfRunning()} in onPause() of the activity/fragment.
-     */
-    @TargetApi(Build.VERSION_CODES.M)
-    private void startAuth() {
-        if (isScanning) stopAuthIfRunning();
-        final FingerprintManager fingerprintManager = (FingerprintManager) mContext.getSystemService(Context.FINGERPRINT_SERVICE);
-
-        //Cannot access the fingerprint manager.
-        if (fingerprintManager == null) {
-            mCallback.fingerprintAuthenticationNotSupported();
-            return;
-        }
-
-        //No fingerprint enrolled.
-        if (!fingerprintManager.hasEnrolledFingerprints()) {
-            mCallback.hasNoFingerprintEnrolled();
-            return;
-        }
-
-        final FingerprintManager.CryptoObject cryptoObject = getCryptoObject();
-        if (cryptoObject != null) {
-            final FingerprintManager.AuthenticationCallback authCallback = new FingerprintManager.AuthenticationCallback() {
-                @Override
-                public void onAuthenticationError(int errMsgId, CharSequence errString) {
-                    displayStatusText(errString.toString(), true);
-
-                    switch (errMsgId) {
-                        case FingerprintManager.FINGERPRINT_ERROR_CANCELED:
-                        case FingerprintManager.FINGERPRINT_ERROR_USER_CANCELED:
-                            mCallback.authenticationCanceledByUser();
-                            break;
-                        case FingerprintManager.FINGERPRINT_ERROR_HW_NOT_PRESENT:
-                        case FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE:
-                            mCallback.fingerprintAuthenticationNotSupported();
-                            break;
-                        default:
-                            mCallback.onAuthenticationError(errMsgId, errString);
-                    }
-                }
-
-                @Override
-                public void onAuthenticationHelp(int helpMsgId, CharSequence helpString) {
-                    displayStatusText(helpString.toString(), false);
-                    mCallback.onAuthenticationHelp(helpMsgId, helpString);
-                }
-
-                @Override
-                public void onAuthenticationFailed() {
-                    displayStatusText(getString(R.string.fingerprint_not_recognised), false);
-                    mCallback.onAuthenticationFailed();
-                }
-
-                @Override
-                public void onAuthenticationSucceeded(FingerprintManager.AuthenticationResult result) {
-                    mCallback.onAuthenticationSucceeded();
-                    closeDialog();
-                }
-            };
-
-            mCancellationSignal = new CancellationSignal();
-            //noinspection MissingPermission
-            fingerprintManager.authenticate(cryptoObject,
-                    mCancellationSignal,
-                    0,
-                    authCallback,
-                    new Handler(Looper.getMainLooper()));
-        } else {
-            //Cannot access the secure keystore.
-            mCallback.fingerprintAuthenticationNotSupported();
-            closeDialog();
-        }
-    }
-
-    /**
-     * Stop the finger print authentication.
-     */
-    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
-    private void stopAuthIfRunning() {
-        if (mStatusTextRunnable != null) {
-            new Handler().removeCallbacks(mStatusTextRunnable);
-            mStatusTextRunnable = null;
-        }
-
-        if (mCancellationSignal != null) {
-            isScanning = false;
-            mCancellationSignal.cancel();
-            mCancellationSignal = null;
-        }
-    }
-
-    private void closeDialog() {
-        stopAuthIfRunning();
-        dismiss();
-    }
-
-    /**
-     * Display the text in the {@link #mStatusText} for 1 second.
-     *
-     * @param status    Status text to display.
-     * @param isDismiss True if the dialog should dismiss after status text displayed.
-     */
-    private void displayStatusText(@NonNull final String status,
-                                   final boolean isDismiss) {
-
-        mStatusText.setText(status);
-        mStatusTextRunnable = new Runnable() {
-            @Override
-            public void run() {
-
-                if (getDialog() != null && getDialog().isShowing()) {
-                    mStatusText.setText("");
-                    if (isDismiss) closeDialog();
-                }
-            }
-        };
-        new Handler().postDelayed(mStatusTextRunnable, 1000 /* 1 seconds */);
+    void teardown() {
+        mController.stop();
+        if (isAdded()) dismissAllowingStateLoss();
     }
 
     /**
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018. Lorem ipsum dolor sit amet, consectetur adipiscing elit.
+ * Morbi non lorem porttitor neque feugiat blandit. Ut vitae ipsum eget quam lacinia accumsan.
+ * Etiam sed turpis ac ipsum condimentum fringilla. Maecenas magna.
+ * Proin dapibus sapien vel ante. Aliquam erat volutpat. Pellentesque sagittis ligula eget metus.
+ * Vestibulum commodo. Ut rhoncus gravida arcu.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the {@link FrameMetrics} of the prompt window into the {@link FrameStats}. The metrics
+ * are delivered on a shared background thread, so the collection doesn't add work to the frames it
+ * measures.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@TargetApi(Build.VERSION_CODES.N)
+final class FrameMetricsTracker implements Window.OnFrameMetricsAvailableListener {
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    private static Handler sHandler;
+
+    @NonNull
+    private final Window mWindow;
+
+    @NonNull
+    private final FrameStats.Collector mCollector;
+
+    private boolean isTracking = false;
+
+    /**
+     * @param window              {@link Window} of the prompt.
+     * @param enterDurationMillis Duration of the enter animation of the window in milliseconds.
+     */
+    FrameMetricsTracker(@NonNull final Window window, final long enterDurationMillis) {
+        mWindow = window;
+
+        final Display display = window.getWindowManager().getDefaultDisplay();
+        final float refreshRate = display != null && display.getRefreshRate() > 0
+                ? display.getRefreshRate()
+                : DEFAULT_REFRESH_RATE;
+        mCollector = new FrameStats.Collector((long) (TimeUnit.SECONDS.toNanos(1) / refreshRate),
+                TimeUnit.MILLISECONDS.toNanos(enterDurationMillis));
+    }
+
+    @NonNull
+    private static synchronized Handler handler() {
+        if (sHandler == null) {
+            final HandlerThread thread = new HandlerThread("FingerprintDialogCompat-frames");
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        return sHandler;
+    }
+
+    @MainThread
+    void start() {
+        if (isTracking) return;
+        isTracking = true;
+        mWindow.addOnFrameMetricsAvailableListener(this, handler());
+    }
+
+    /**
+     * Stop collecting.
+     *
+     * @return {@link FrameStats} of the frames drawn since {@link #start()}.
+     */
+    @MainThread
+    @NonNull
+    FrameStats stop() {
+        if (isTracking) {
+            isTracking = false;
+            try {
+                mWindow.removeOnFrameMetricsAvailableListener(this);
+            } catch (IllegalArgumentException e) {
+                //Window already dropped the listener.
+            }
+        }
+        return mCollector.build();
+    }
+
+    @Override
+    public void onFrameMetricsAvailable(final Window window,
+                                        final FrameMetrics frameMetrics,
+                                        final int dropCountSinceLastInvocation) {
+        mCollector.onUnreported(dropCountSinceLastInvocation);
+
+        //Start of the frame is only available from O, the delivery time is close enough before.
+        final long timestamp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                ? frameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP)
+                : System.nanoTime();
+        mCollector.onFrame(timestamp, frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION));
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Remembers the successful authentication for the whole process, so the protected screens don't
+ * prompt the user again on every visit. Record the success with {@link #onAuthenticated()} and
+ * check {@link #isAuthenticated()} before showing the prompt. The check only compares the clock
+ * with a few fields, so it can be called from {@code onResume()} of every screen.
+ * <p>
+ * The session ends when any of these happens:
+ * <ul>
+ * <li>The time to live passed since the authentication. (5 minutes by default)</li>
+ * <li>The user was idle longer than the idle timeout. (1 minute by default) Call {@link #touch()}
+ * from {@code Activity#onUserInteraction()} to report the activity, resuming any activity counts as
+ * well.</li>
+ * <li>The screen turned off.</li>
+ * <li>The application was in the background longer than the background timeout. (30 seconds by
+ * default)</li>
+ * <li>A fingerprint was added or removed. This is checked on a background thread every time the
+ * application comes to the foreground.</li>
+ * </ul>
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class AuthenticatedSessionManager {
+    private static final long DEFAULT_TIME_TO_LIVE_MILLIS = 5 * 60 * 1000;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60 * 1000;
+    private static final long DEFAULT_BACKGROUND_TIMEOUT_MILLIS = 30 * 1000;
+
+    /**
+     * Value of {@link #mBackgroundSince} while the application is in the foreground.
+     */
+    private static final long IN_FOREGROUND = -1;
+
+    /**
+     * Alias of the key that is invalidated by the platform when the enrolled fingerprints change.
+     * Outside the namespace of the {@link FingerprintKeyPool}.
+     */
+    private static final String ENROLLMENT_KEY_ALIAS = "fingerprint_dialog_compat_enrollment";
+
+    /**
+     * Source of the monotonic time, so the tests can move the time.
+     */
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    /**
+     * Detects the change of the enrolled fingerprints.
+     */
+    interface EnrollmentCheck {
+
+        /**
+         * Check if the fingerprints changed since the last call and remember the current ones.
+         *
+         * @return true if the fingerprints changed.
+         */
+        @WorkerThread
+        boolean checkAndReset();
+    }
+
+    private static AuthenticatedSessionManager sInstance;
+
+    @NonNull
+    private final Clock mClock;
+
+    @NonNull
+    private final Executor mExecutor;
+
+    @NonNull
+    private final EnrollmentCheck mEnrollmentCheck;
+
+    private long mTimeToLiveMillis = DEFAULT_TIME_TO_LIVE_MILLIS;
+    private long mIdleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private long mBackgroundTimeoutMillis = DEFAULT_BACKGROUND_TIMEOUT_MILLIS;
+
+    /**
+     * Incremented by every authentication and invalidation, so the late enrollment check never ends
+     * a newer session.
+     */
+    private int mEpoch = 0;
+    private boolean isAuthenticated = false;
+    private long mAuthenticatedAt;
+    private long mLastActivityAt;
+    private long mBackgroundSince = IN_FOREGROUND;
+
+    /**
+     * Number of the started activities.
+     */
+    private int mStartedActivities = 0;
+
+    @VisibleForTesting
+    AuthenticatedSessionManager(@NonNull final Clock clock,
+                                @NonNull final Executor executor,
+                                @NonNull final EnrollmentCheck enrollmentCheck) {
+        mClock = clock;
+        mExecutor = executor;
+        mEnrollmentCheck = enrollmentCheck;
+    }
+
+    /**
+     * Get the session manager of the process. First call starts watching the screen and the
+     * activities of the application, so call it from {@code Application#onCreate()} to track the
+     * background time from the first activity.
+     *
+     * @param context {@link Context} of the caller.
+     * @return {@link AuthenticatedSessionManager}
+     */
+    @NonNull
+    public static synchronized AuthenticatedSessionManager get(@NonNull final Context context) {
+        if (sInstance == null) {
+            final FingerprintKeyStore keyStore = new FingerprintKeyStore();
+            final AuthenticatedSessionManager manager = new AuthenticatedSessionManager(new Clock() {
+                @Override
+                public long elapsedRealtime() {
+                    return SystemClock.elapsedRealtime();
+                }
+            }, Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "FingerprintDialogCompat-session");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }), new EnrollmentCheck() {
+                @Override
+                public boolean checkAndReset() {
+                    //The platform invalidates the fingerprint bound key when the fingerprints change.
+                    if (keyStore.containsAlias(ENROLLMENT_KEY_ALIAS)
+                            && keyStore.createCipher(ENROLLMENT_KEY_ALIAS) != null) {
+                        return false;
+                    }
+
+                    final boolean isChanged = keyStore.containsAlias(ENROLLMENT_KEY_ALIAS);
+                    keyStore.generateKey(ENROLLMENT_KEY_ALIAS);
+                    return isChanged;
+                }
+            });
+            manager.register(context.getApplicationContext());
+            sInstance = manager;
+        }
+        return sInstance;
+    }
+
+    private void register(@NonNull final Context appContext) {
+        appContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context context, final Intent intent) {
+                invalidate();
+            }
+        }, new IntentFilter(Intent.ACTION_SCREEN_OFF));
+
+        if (appContext instanceof Application) {
+            ((Application) appContext).registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
+                /**
+                 * Activities counted by {@link #onForeground()}. Activities started before the
+                 * manager was created are not counted, so their stop must not be counted either.
+                 * Only accessed on the main thread.
+                 */
+                private final Set<Activity> mStarted = Collections.newSetFromMap(new WeakHashMap<Activity, Boolean>());
+
+                @Override
+                public void onActivityStarted(final Activity activity) {
+                    if (mStarted.add(activity)) onForeground();
+                }
+
+                @Override
+                public void onActivityResumed(final Activity activity) {
+                    touch();
+                }
+
+                @Override
+                public void onActivityStopped(final Activity activity) {
+                    if (mStarted.remove(activity)) onBackground();
+                }
+
+                @Override
+                public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {
+                    //Do nothing.
+                }
+
+                @Override
+                public void onActivityPaused(final Activity activity) {
+                    //Do nothing.
+                }
+
+                @Override
+                public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {
+                    //Do nothing.
+                }
+
+                @Override
+                public void onActivityDestroyed(final Activity activity) {
+                    //Do nothing.
+                }
+            });
+        }
+    }
+
+    /**
+     * @param timeToLiveMillis Maximum age of the session in milliseconds. Default is 5 minutes.
+     * @return This manager.
+     */
+    @NonNull
+    public synchronized AuthenticatedSessionManager setTimeToLive(final long timeToLiveMillis) {
+        if (timeToLiveMillis <= 0) throw new IllegalArgumentException("Time to live must be positive.");
+        mTimeToLiveMillis = timeToLiveMillis;
+        return this;
+    }
+
+    /**
+     * @param idleTimeoutMillis Time without the user activity that ends the session in
+     *                          milliseconds. Default is 1 minute.
+     * @return This manager.
+     */
+    @NonNull
+    public synchronized AuthenticatedSessionManager setIdleTimeout(final long idleTimeoutMillis) {
+        if (idleTimeoutMillis <= 0) throw new IllegalArgumentException("Idle timeout must be positive.");
+        mIdleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param backgroundTimeoutMillis Time in the background that ends the session in milliseconds.
+     *                                Default is 30 seconds. Use 0 to end the session as soon as
+     *                                the application goes to the background.
+     * @return This manager.
+     */
+    @NonNull
+    public synchronized AuthenticatedSessionManager setBackgroundTimeout(final long backgroundTimeoutMillis) {
+        if (backgroundTimeoutMillis < 0) throw new IllegalArgumentException("Background timeout cannot be negative.");
+        mBackgroundTimeoutMillis = backgroundTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Start the session after the user authenticated. (e.g. From
+     * {@link AuthenticationCallback#onAuthenticationSucceeded()}.)
+     */
+    public void onAuthenticated() {
+        synchronized (this) {
+            final long now = mClock.elapsedRealtime();
+            mEpoch++;
+            isAuthenticated = true;
+            mAuthenticatedAt = now;
+            mLastActivityAt = now;
+        }
+
+        //Remember the fingerprints the user authenticated with.
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mEnrollmentCheck.checkAndReset();
+            }
+        });
+    }
+
+    /**
+     * @return true if the user authenticated and the session didn't expire yet. The prompt is only
+     * needed if this is false.
+     */
+    public synchronized boolean isAuthenticated() {
+        if (!isAuthenticated) return false;
+
+        final long now = mClock.elapsedRealtime();
+        if (now - mAuthenticatedAt >= mTimeToLiveMillis
+                || now - mLastActivityAt >= mIdleTimeoutMillis
+                || (mBackgroundSince != IN_FOREGROUND && now - mBackgroundSince >= mBackgroundTimeoutMillis)) {
+            invalidate();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Report the user activity, so the session doesn't end with the idle timeout. Does nothing if
+     * the session already expired.
+     */
+    public synchronized void touch() {
+        if (isAuthenticated()) mLastActivityAt = mClock.elapsedRealtime();
+    }
+
+    /**
+     * End the session. (e.g. The user logged out.)
+     */
+    public synchronized void invalidate() {
+        mEpoch++;
+        isAuthenticated = false;
+    }
+
+    @VisibleForTesting
+    synchronized void onForeground() {
+        if (mStartedActivities++ > 0) return;
+
+        //Expire the session that spent too long in the background before it can be touched.
+        isAuthenticated();
+        mBackgroundSince = IN_FOREGROUND;
+        if (!isAuthenticated) return;
+
+        final int epoch = mEpoch;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mEnrollmentCheck.checkAndReset()) invalidate(epoch);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    synchronized void onBackground() {
+        if (mStartedActivities == 0 || --mStartedActivities > 0) return;
+        mBackgroundSince = mClock.elapsedRealtime();
+    }
+
+    private synchronized void invalidate(final int epoch) {
+        if (mEpoch == epoch) invalidate();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.TargetApi;
+import android.hardware.biometrics.BiometricPrompt;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Created by Keval on 08/04/18.
+ * This class converts {@link BiometricPrompt.AuthenticationCallback} into {@link AuthenticationCallback}
+ * for the android version P and above. All the events are routed through the
+ * {@link AuthenticationSession}, so late callbacks after the terminal event are dropped.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@TargetApi(Build.VERSION_CODES.P)
+class AuthenticationCallbackV28 extends BiometricPrompt.AuthenticationCallback {
+
+    /**
+     * {@link AuthenticationSession} that delivers the events to the caller.
+     */
+    @NonNull
+    private final AuthenticationSession mSession;
+
+    /**
+     * Attempt token of the {@link BiometricPrompt#authenticate} call this callback belongs to.
+     */
+    private final int mAttempt;
+
+    /**
+     * {@link Runnable} to authenticate again after the continuous session is re-armed or null.
+     */
+    @Nullable
+    private final Runnable mRearm;
+
+    /**
+     * Receives the terminal events of this attempt that the session dropped, e.g. because the
+     * attempt was suspended, or null.
+     */
+    @Nullable
+    private final AuthenticationEventListener mDroppedResultListener;
+
+    /**
+     * Public constructor.
+     *
+     * @param session {@link AuthenticationSession} to fire appropriate events for the fingerprint
+     *                authentication.
+     * @param attempt Attempt token returned by {@link AuthenticationSession#begin()}.
+     */
+    AuthenticationCallbackV28(@NonNull final AuthenticationSession session, final int attempt) {
+        this(session, attempt, null);
+    }
+
+    /**
+     * @param session {@link AuthenticationSession} to fire appropriate events for the fingerprint
+     *                authentication.
+     * @param attempt Attempt token returned by {@link AuthenticationSession#begin()}.
+     * @param rearm   {@link Runnable} to authenticate again once the continuous session is re-armed.
+     */
+    AuthenticationCallbackV28(@NonNull final AuthenticationSession session,
+                              final int attempt,
+                              @Nullable final Runnable rearm) {
+        this(session, attempt, rearm, null);
+    }
+
+    /**
+     * @param session               {@link AuthenticationSession} to fire appropriate events for the
+     *                              fingerprint authentication.
+     * @param attempt               Attempt token returned by {@link AuthenticationSession#begin()}.
+     * @param rearm                 {@link Runnable} to authenticate again once the continuous
+     *                              session is re-armed.
+     * @param droppedResultListener {@link AuthenticationEventListener} to receive the terminal
+     *                              events of this attempt that the session dropped. The system prompt
+     *                              is gone by then, so the suspended attempt can be shown again or
+     *                              finished with the result.
+     */
+    AuthenticationCallbackV28(@NonNull final AuthenticationSession session,
+                              final int attempt,
+                              @Nullable final Runnable rearm,
+                              @Nullable final AuthenticationEventListener droppedResultListener) {
+        mSession = session;
+        mAttempt = attempt;
+        mRearm = rearm;
+        mDroppedResultListener = droppedResultListener;
+    }
+
+    /**
+     * Start the next session if the delivered terminal event allows it.
+     */
+    private void rearmIfContinuous() {
+        if (mRearm != null && mSession.rearm()) mRearm.run();
+    }
+
+    /**
+     * Deliver the terminal event of this attempt.
+     */
+    private void dispatchResult(@NonNull final AuthenticationEvent event) {
+        if (mSession.dispatch(mAttempt, event)) {
+            rearmIfContinuous();
+        } else if (mDroppedResultListener != null) {
+            //The caller decides if this attempt was the suspended one.
+            mDroppedResultListener.onEvent(event);
+        }
+    }
+
+    /**
+     * @see BiometricPrompt.AuthenticationCallback#onAuthenticationError(int, CharSequence)
+     */
+    @Override
+    public void onAuthenticationError(final int errorCode, final CharSequence errString) {
+        super.onAuthenticationError(errorCode, errString);
+        dispatchResult(AuthenticationEvent.fromError(errorCode, errString));
+    }
+
+
+    /**
+     * @see BiometricPrompt.AuthenticationCallback#onAuthenticationFailed()
+     */
+    @Override
+    public void onAuthenticationFailed() {
+        super.onAuthenticationFailed();
+        mSession.dispatchFailed(mAttempt);
+    }
+
+    /**
+     * @see BiometricPrompt.AuthenticationCallback#onAuthenticationHelp(int, CharSequence)
+     */
+    @Override
+    public void onAuthenticationHelp(final int helpCode, final CharSequence helpString) {
+        super.onAuthenticationHelp(helpCode, helpString);
+        mSession.dispatchHelp(mAttempt, helpCode, helpString);
+    }
+
+    /**
+     * @see BiometricPrompt.AuthenticationCallback#onAuthenticationSucceeded(BiometricPrompt.AuthenticationResult)
+     */
+    @Override
+    public void onAuthenticationSucceeded(final BiometricPrompt.AuthenticationResult result) {
+        super.onAuthenticationSucceeded(result);
+        dispatchResult(AuthenticationEvent.succeeded());
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Normalized event of the fingerprint authentication. Both the {@link FingerprintScanController}
+ * and the {@link android.hardware.biometrics.BiometricPrompt} path convert the platform callbacks
+ * into these events using the lookup tables of the {@link EventMapper}, so the same platform code
+ * always produces the same event on every android version.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class AuthenticationEvent {
+
+    /**
+     * @see AuthenticationCallback#fingerprintAuthenticationNotSupported()
+     */
+    public static final int TYPE_NOT_SUPPORTED = 0;
+
+    /**
+     * @see AuthenticationCallback#hasNoFingerprintEnrolled()
+     */
+    public static final int TYPE_NO_FINGERPRINT_ENROLLED = 1;
+
+    /**
+     * @see AuthenticationCallback#onAuthenticationError(int, CharSequence)
+     */
+    public static final int TYPE_ERROR = 2;
+
+    /**
+     * @see AuthenticationCallback#authenticationCanceledByUser()
+     */
+    public static final int TYPE_CANCELED = 3;
+
+    /**
+     * @see AuthenticationCallback#onAuthenticationSucceeded()
+     */
+    public static final int TYPE_SUCCEEDED = 4;
+
+    /**
+     * @see AuthenticationCallback#onAuthenticationHelp(int, CharSequence)
+     */
+    public static final int TYPE_HELP = 5;
+
+    /**
+     * @see AuthenticationCallback#onAuthenticationFailed()
+     */
+    public static final int TYPE_FAILED = 6;
+
+    /**
+     * Number of the event types.
+     */
+    static final int TYPE_COUNT = 7;
+
+    /**
+     * Event mask that matches all the event types.
+     *
+     * @see #maskOf(int)
+     */
+    public static final int MASK_ALL = (1 << TYPE_COUNT) - 1;
+
+    /**
+     * Event mask that matches only the terminal events. Listeners registered with this mask never
+     * see the help and failed events.
+     *
+     * @see #maskOf(int)
+     */
+    public static final int MASK_TERMINAL = MASK_ALL & ~(1 << TYPE_HELP) & ~(1 << TYPE_FAILED);
+
+    /**
+     * Event has no special reason. (e.g. success)
+     */
+    public static final int CATEGORY_NONE = 0;
+
+    /**
+     * Fingerprint hardware is not present, not available or needs the user's attention.
+     */
+    public static final int CATEGORY_HARDWARE = 1;
+
+    /**
+     * User has no fingerprint enrolled.
+     */
+    public static final int CATEGORY_ENROLLMENT = 2;
+
+    /**
+     * Sensor is locked out due to too many failed attempts.
+     */
+    public static final int CATEGORY_LOCKOUT = 3;
+
+    /**
+     * User canceled the authentication or the finger didn't match.
+     */
+    public static final int CATEGORY_USER = 4;
+
+    /**
+     * Temporary problem. Trying again may succeed.
+     */
+    public static final int CATEGORY_TRANSIENT = 5;
+
+    /**
+     * The system or the vendor implementation stopped the authentication.
+     */
+    public static final int CATEGORY_SYSTEM = 6;
+
+    /**
+     * Platform code of the events that are not reported by the platform.
+     */
+    public static final int NO_PLATFORM_CODE = -1;
+
+    private static final AuthenticationEvent NOT_SUPPORTED = new AuthenticationEvent(TYPE_NOT_SUPPORTED,
+            CATEGORY_HARDWARE, NO_PLATFORM_CODE, null);
+    private static final AuthenticationEvent NO_FINGERPRINT_ENROLLED = new AuthenticationEvent(
+            TYPE_NO_FINGERPRINT_ENROLLED, CATEGORY_ENROLLMENT, NO_PLATFORM_CODE, null);
+    private static final AuthenticationEvent CANCELED_BY_USER = new AuthenticationEvent(TYPE_CANCELED,
+            CATEGORY_USER, NO_PLATFORM_CODE, null);
+    private static final AuthenticationEvent SUCCEEDED = new AuthenticationEvent(TYPE_SUCCEEDED,
+            CATEGORY_NONE, NO_PLATFORM_CODE, null);
+    private static final AuthenticationEvent FAILED = new AuthenticationEvent(TYPE_FAILED,
+            CATEGORY_USER, NO_PLATFORM_CODE, null);
+
+    @EventType
+    private final int mType;
+
+    @EventCategory
+    private final int mCategory;
+
+    private final int mPlatformCode;
+
+    @Nullable
+    private final CharSequence mMessage;
+
+    private AuthenticationEvent(@EventType final int type,
+                                @EventCategory final int category,
+                                final int platformCode,
+                                @Nullable final CharSequence message) {
+        mType = type;
+        mCategory = category;
+        mPlatformCode = platformCode;
+        mMessage = message;
+    }
+
+    /**
+     * Create the event for the unrecoverable error reported by
+     * {@link android.hardware.fingerprint.FingerprintManager.AuthenticationCallback} or
+     * {@link android.hardware.biometrics.BiometricPrompt.AuthenticationCallback}.
+     *
+     * @param errorCode Error code reported by the platform.
+     * @param errString Human-readable error string.
+     * @return {@link AuthenticationEvent}
+     */
+    @NonNull
+    static AuthenticationEvent fromError(final int errorCode, @Nullable final CharSequence errString) {
+        return new AuthenticationEvent(EventMapper.errorType(errorCode),
+                EventMapper.errorCategory(errorCode),
+                errorCode,
+                errString);
+    }
+
+    /**
+     * Create the event for the recoverable error reported by the platform.
+     *
+     * @param helpCode   Help code reported by the platform.
+     * @param helpString Human-readable help string.
+     * @return {@link AuthenticationEvent}
+     */
+    @NonNull
+    static AuthenticationEvent fromHelp(final int helpCode, @Nullable final CharSequence helpString) {
+        return new AuthenticationEvent(TYPE_HELP, EventMapper.helpCategory(helpCode), helpCode, helpString);
+    }
+
+    @NonNull
+    static AuthenticationEvent notSupported() {
+        return NOT_SUPPORTED;
+    }
+
+    @NonNull
+    static AuthenticationEvent noFingerprintEnrolled() {
+        return NO_FINGERPRINT_ENROLLED;
+    }
+
+    @NonNull
+    static AuthenticationEvent canceledByUser() {
+        return CANCELED_BY_USER;
+    }
+
+    @NonNull
+    static AuthenticationEvent succeeded() {
+        return SUCCEEDED;
+    }
+
+    @NonNull
+    static AuthenticationEvent failed() {
+        return FAILED;
+    }
+
+    /**
+     * @return {@link EventType} of the event.
+     */
+    @EventType
+    public int getType() {
+        return mType;
+    }
+
+    /**
+     * @return {@link EventCategory} of the event.
+     */
+    @EventCategory
+    public int getCategory() {
+        return mCategory;
+    }
+
+    /**
+     * @return Error or help code reported by the platform or {@link #NO_PLATFORM_CODE}.
+     */
+    public int getPlatformCode() {
+        return mPlatformCode;
+    }
+
+    /**
+     * @return Human-readable message reported by the platform, if there is any.
+     */
+    @Nullable
+    public CharSequence getMessage() {
+        return mMessage;
+    }
+
+    /**
+     * Mask of the event type to register the listener with. Combine the masks of several types
+     * with {@code |}.
+     *
+     * @param type {@link EventType}
+     * @return Bit of the event type.
+     */
+    public static int maskOf(@EventType final int type) {
+        return 1 << type;
+    }
+
+    /**
+     * @return true if the authentication stops after this event.
+     */
+    public boolean isTerminal() {
+        return EventMapper.isTerminal(mType);
+    }
+
+    @Override
+    public String toString() {
+        return "AuthenticationEvent{type=" + mType
+                + ", category=" + mCategory
+                + ", platformCode=" + mPlatformCode
+                + ", message=" + mMessage + '}';
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Listener to receive the normalized {@link AuthenticationEvent}s of the fingerprint
+ * authentication. This is the low level alternative of the {@link AuthenticationCallback}.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ * @see FingerprintPromptBuilder#show(AuthenticationEventListener)
+ * @see FingerprintScanEngine#start(AuthenticationEventListener)
+ */
+public interface AuthenticationEventListener {
+
+    /**
+     * Called on the main thread for every event of the authentication. No more events will be
+     * delivered after the event for which {@link AuthenticationEvent#isTerminal()} is true.
+     *
+     * @param event {@link AuthenticationEvent}
+     */
+    void onEvent(@NonNull final AuthenticationEvent event);
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Handle of the fingerprint prompt returned by {@link FingerprintPromptBuilder#show(AuthenticationCallback)}
+ * and {@code FingerprintDialogBuilder#show(FragmentManager, AuthenticationCallback)}.
+ * Application can use this handle to cancel the prompt at any time (e.g. the session expired or
+ * the app has to navigate somewhere else) or update its texts while the user
+ * is scanning.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class AuthenticationHandle {
+
+    /**
+     * Replaces the texts of the displayed prompt. Runs on the main thread.
+     */
+    interface ContentUpdater {
+
+        /**
+         * @param title       New title or null to keep the current one.
+         * @param subtitle    New subtitle or null to keep the current one.
+         * @param description New description or null to keep the current one.
+         */
+        void update(@Nullable final String title,
+                    @Nullable final String subtitle,
+                    @Nullable final String description);
+    }
+
+    /**
+     * {@link Executor} that runs on the main thread. Runs inline if the caller is already on the
+     * main thread.
+     */
+    private static final Executor MAIN_THREAD = new Executor() {
+        @Override
+        public void execute(@NonNull final Runnable runnable) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                runnable.run();
+            } else {
+                new Handler(Looper.getMainLooper()).post(runnable);
+            }
+        }
+    };
+
+    /**
+     * {@link AuthenticationSession} of the prompt.
+     */
+    @NonNull
+    private final AuthenticationSession mSession;
+
+    /**
+     * {@link Executor} to run the cancellation and the content updates on the main thread.
+     */
+    @NonNull
+    private final Executor mMainThreadExecutor;
+
+    /**
+     * {@link Runnable} to release the sensor and dismiss the UI. Runs on the main thread. Cleared
+     * once it runs or the session finishes, so the handle doesn't retain the UI of a finished
+     * prompt.
+     */
+    @Nullable
+    private volatile Runnable mTeardown;
+
+    /**
+     * {@link ContentUpdater} of the prompt or null if the prompt has no texts to update. Cleared
+     * when the session finishes.
+     */
+    @Nullable
+    private volatile ContentUpdater mContentUpdater;
+
+    /**
+     * Create new handle.
+     *
+     * @param session  {@link AuthenticationSession} of the prompt.
+     * @param teardown {@link Runnable} to release the sensor and dismiss the UI, if there is any.
+     */
+    AuthenticationHandle(@NonNull final AuthenticationSession session,
+                         @Nullable final Runnable teardown) {
+        this(session, teardown, null);
+    }
+
+    /**
+     * Create new handle.
+     *
+     * @param session        {@link AuthenticationSession} of the prompt.
+     * @param teardown       {@link Runnable} to release the sensor and dismiss the UI, if there is
+     *                       any.
+     * @param contentUpdater {@link ContentUpdater} to replace the texts of the prompt, if there is
+     *                       any.
+     */
+    AuthenticationHandle(@NonNull final AuthenticationSession session,
+                         @Nullable final Runnable teardown,
+                         @Nullable final ContentUpdater contentUpdater) {
+        this(session, teardown, contentUpdater, MAIN_THREAD);
+    }
+
+    /**
+     * Create new handle.
+     *
+     * @param session            {@link AuthenticationSession} of the prompt.
+     * @param teardown           {@link Runnable} to release the sensor and dismiss the UI, if there
+     *                           is any.
+     * @param contentUpdater     {@link ContentUpdater} to replace the texts of the prompt, if there
+     *                           is any.
+     * @param mainThreadExecutor {@link Executor} of the main thread.
+     */
+    @VisibleForTesting
+    AuthenticationHandle(@NonNull final AuthenticationSession session,
+                         @Nullable final Runnable teardown,
+                         @Nullable final ContentUpdater contentUpdater,
+                         @NonNull final Executor mainThreadExecutor) {
+        mSession = session;
+        mTeardown = teardown;
+        mContentUpdater = contentUpdater;
+        mMainThreadExecutor = mainThreadExecutor;
+
+        //Success or the terminal error ends the prompt without the cancel() too.
+        session.setFinishListener(new Runnable() {
+            @Override
+            public void run() {
+                release();
+            }
+        });
+        if (session.isFinished()) release();
+    }
+
+    /**
+     * @return true if the prompt didn't deliver any terminal callback yet. A continuous prompt is
+     * active until it is cancelled or stops with an unrecoverable error.
+     */
+    public boolean isActive() {
+        return !mSession.isFinished();
+    }
+
+    /**
+     * Cancel the prompt. This stops the fingerprint sensor, dismisses the prompt and notifies
+     * {@link AuthenticationCallback#authenticationCanceledByUser()}. The callback is delivered only
+     * once and only if the prompt is still active. This method can be called from any thread, the
+     * callback will be always delivered on the main thread.
+     */
+    public void cancel() {
+        if (!isActive()) return;
+
+        final long startTime = System.nanoTime();
+        final Runnable cancelRunnable = new Runnable() {
+            @Override
+            public void run() {
+                final Runnable teardown = mTeardown;
+                release();
+                if (!mSession.cancel()) return;
+
+                if (teardown != null) {
+                    final Tracer tracer = mSession.getTracer();
+                    tracer.beginSection(Tracer.SECTION_DISMISS);
+                    try {
+                        teardown.run();
+                    } finally {
+                        tracer.endSection();
+                    }
+                }
+                mSession.reportTiming(AuthenticationMetrics.PHASE_TEARDOWN, System.nanoTime() - startTime);
+            }
+        };
+
+        mMainThreadExecutor.execute(cancelRunnable);
+    }
+
+    /**
+     * Replace the texts of the active prompt while the sensor keeps scanning. (e.g. The amount of
+     * the payment was quoted again.) Below Android P the views of the prompt are updated in place.
+     * The system prompt of Android P cannot be changed once it is displayed, so it is shown again
+     * with the new texts. The running scan is suspended without any callback and continues with
+     * the same session and {@link javax.crypto.Cipher}.
+     * <p>
+     * Does nothing if the prompt is not active anymore. This method can be called from any thread,
+     * the prompt will be always updated on the main thread.
+     *
+     * @param title       New title or null to keep the current one.
+     * @param subtitle    New subtitle or null to keep the current one.
+     * @param description New description or null to keep the current one.
+     */
+    public void updateContent(@Nullable final String title,
+                              @Nullable final String subtitle,
+                              @Nullable final String description) {
+        if (!isActive() || mContentUpdater == null) return;
+
+        mMainThreadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ContentUpdater contentUpdater = mContentUpdater;
+                if (contentUpdater != null && isActive()) contentUpdater.update(title, subtitle, description);
+            }
+        });
+    }
+
+    /**
+     * Drop the references to the UI of the prompt.
+     */
+    private void release() {
+        mTeardown = null;
+        mContentUpdater = null;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Receives the timings of the fingerprint authentication. Register it using
+ * {@link BaseFingerprintBuilder#setMetrics(AuthenticationMetrics)}. All the methods are no-op by
+ * default, so override only the ones you are interested in.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class AuthenticationMetrics {
+
+    /**
+     * Time taken by {@link AuthenticationHandle#cancel()} to release the sensor and dismiss the
+     * prompt.
+     */
+    public static final int PHASE_TEARDOWN = 1;
+
+    /**
+     * Time taken to load the AndroidKeyStore.
+     */
+    public static final int PHASE_KEYSTORE_LOAD = 2;
+
+    /**
+     * Time taken to generate the fingerprint bound key.
+     */
+    public static final int PHASE_KEY_GENERATION = 3;
+
+    /**
+     * Time taken to initialize the {@link javax.crypto.Cipher} of the crypto object.
+     */
+    public static final int PHASE_CIPHER_INIT = 4;
+
+    /**
+     * Time taken by the platform to arm the fingerprint sensor.
+     */
+    public static final int PHASE_AUTHENTICATE = 5;
+
+    /**
+     * @param phase {@link MetricPhase}
+     * @return Name of the phase for the logs. (e.g. "keystore_load")
+     */
+    @NonNull
+    public static String nameOf(@MetricPhase final int phase) {
+        switch (phase) {
+            case PHASE_TEARDOWN:
+                return "teardown";
+            case PHASE_KEYSTORE_LOAD:
+                return "keystore_load";
+            case PHASE_KEY_GENERATION:
+                return "key_generation";
+            case PHASE_CIPHER_INIT:
+                return "cipher_init";
+            case PHASE_AUTHENTICATE:
+                return "authenticate";
+            default:
+                return "unknown_" + phase;
+        }
+    }
+
+    /**
+     * Called whenever a phase of the authentication completes.
+     *
+     * @param phase         {@link MetricPhase} that completed.
+     * @param durationNanos Duration of the phase in nanoseconds.
+     */
+    public void onTiming(@MetricPhase final int phase, final long durationNanos) {
+        //Do nothing by default.
+    }
+
+    /**
+     * Called when a phase missed its deadline. The prompt reports
+     * {@link AuthenticationCallback#fingerprintAuthenticationNotSupported()} right after this, so
+     * the application can fall back to the PIN without waiting for the stalled call.
+     *
+     * @param phase          {@link MetricPhase} that stalled. Use {@link #nameOf(int)} for the logs.
+     * @param deadlineMillis Deadline the phase missed in milliseconds.
+     * @see BaseFingerprintBuilder#setDeadline(int, long)
+     */
+    public void onStall(@MetricPhase final int phase, final long deadlineMillis) {
+        //Do nothing by default.
+    }
+
+    /**
+     * Called on the main thread after the prompt window was hidden, with the frame timings of the
+     * window while it was visible. Only reported for the dialog below Android P, on Android N and
+     * above, if {@link BaseFingerprintBuilder#setFrameMetricsEnabled(boolean)} is set.
+     *
+     * @param stats {@link FrameStats} of the prompt window.
+     */
+    public void onFrameStats(@NonNull final FrameStats stats) {
+        //Do nothing by default.
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State machine of a single fingerprint authentication session. Both the
+ * {@link FingerprintScanController} and the {@link android.hardware.biometrics.BiometricPrompt}
+ * path route every platform callback through this class before it reaches the
+ * {@link AuthenticationCallback} of the application. The platform codes are normalized into the
+ * {@link AuthenticationEvent} and delivered to a single {@link AuthenticationEventListener}. For the
+ * {@link AuthenticationCallback} that listener is the {@link EventDispatcher}.
+ * <p>
+ * The session moves IDLE -> PREPARING -> SCANNING -> SUCCEEDED/FAILED/CANCELLED. Every scan gets an
+ * attempt token from {@link #begin()}. Platform callbacks have to present that token, so callbacks
+ * from a scan that was suspended (e.g. in onPause) or from a session that already reached a
+ * terminal state are dropped. The state and the attempt token live in a single {@link AtomicLong},
+ * so every transition is one compare-and-set and exactly one terminal callback is delivered no
+ * matter from which thread the events arrive.
+ * <p>
+ * A continuous session can go back to IDLE after a success or a transient error using
+ * {@link #rearm()}, so one prompt delivers a result for every user. Each re-arm starts a new
+ * session number. The session is finished only after a terminal event that cannot be re-armed.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class AuthenticationSession {
+
+    /**
+     * Session is created but the sensor is not armed.
+     */
+    static final int STATE_IDLE = 0;
+
+    /**
+     * Key store, crypto object and the fingerprint manager are being prepared.
+     */
+    static final int STATE_PREPARING = 1;
+
+    /**
+     * Sensor is armed and waiting for the finger.
+     */
+    static final int STATE_SCANNING = 2;
+
+    /**
+     * Terminal state. {@link AuthenticationCallback#onAuthenticationSucceeded()} was delivered.
+     */
+    static final int STATE_SUCCEEDED = 3;
+
+    /**
+     * Terminal state. An unrecoverable error was delivered.
+     */
+    static final int STATE_FAILED = 4;
+
+    /**
+     * Terminal state. {@link AuthenticationCallback#authenticationCanceledByUser()} was delivered.
+     */
+    static final int STATE_CANCELLED = 5;
+
+    /**
+     * Attempt token returned by {@link #begin()} when the session cannot start a new scan.
+     */
+    static final int NO_ATTEMPT = -1;
+
+    private static final int STATE_BITS = 8;
+
+    /**
+     * Bit set next to the terminal {@link SessionState} if the continuous session can be re-armed
+     * from that state. Part of the same transition, so {@link #cancel()} and {@link #rearm()} never
+     * see a stale value.
+     */
+    private static final long REARMABLE_FLAG = 1L << (STATE_BITS - 1);
+    private static final long STATE_MASK = REARMABLE_FLAG - 1;
+
+    /**
+     * Attempt token in the upper bits and {@link SessionState} in the lower {@link #STATE_BITS} bits.
+     */
+    private final AtomicLong mState = new AtomicLong(pack(0, STATE_IDLE));
+
+    /**
+     * {@link AuthenticationEventListener} to deliver the events to the caller. Released after the
+     * terminal event, so the session (which the platform may keep for a while) never retains the
+     * caller. (e.g. An anonymous callback capturing the activity.)
+     */
+    @Nullable
+    private volatile AuthenticationEventListener mListener;
+
+    /**
+     * {@link Runnable} to run once the session is finished. Released after it runs.
+     */
+    @Nullable
+    private volatile Runnable mFinishListener;
+
+    /**
+     * {@link AuthenticationMetrics} to report the timings of this session.
+     */
+    @Nullable
+    private final AuthenticationMetrics mMetrics;
+
+    /**
+     * True if the session re-arms after a success or a transient error.
+     */
+    private final boolean mContinuous;
+
+    /**
+     * {@link Tracer} to mark the phases of this session.
+     */
+    @NonNull
+    private final Tracer mTracer;
+
+    /**
+     * Number of the sessions started by this instance. Incremented by every {@link #rearm()}.
+     */
+    private final AtomicInteger mSessionNumber = new AtomicInteger(1);
+
+    /**
+     * Create new session.
+     *
+     * @param callback {@link AuthenticationCallback} to receive the filtered events.
+     */
+    AuthenticationSession(@NonNull final AuthenticationCallback callback) {
+        this(callback, null);
+    }
+
+    /**
+     * Create new session.
+     *
+     * @param callback {@link AuthenticationCallback} to receive the filtered events.
+     * @param metrics  {@link AuthenticationMetrics} to report the timings or null.
+     */
+    AuthenticationSession(@NonNull final AuthenticationCallback callback,
+                          @Nullable final AuthenticationMetrics metrics) {
+        this(new EventDispatcher(callback), metrics);
+    }
+
+    /**
+     * Create new session.
+     *
+     * @param listener {@link AuthenticationEventListener} to receive the filtered events.
+     * @param metrics  {@link AuthenticationMetrics} to report the timings or null.
+     */
+    AuthenticationSession(@NonNull final AuthenticationEventListener listener,
+                          @Nullable final AuthenticationMetrics metrics) {
+        this(listener, metrics, false);
+    }
+
+    /**
+     * Create new session.
+     *
+     * @param listener   {@link AuthenticationEventListener} to receive the filtered events.
+     * @param metrics    {@link AuthenticationMetrics} to report the timings or null.
+     * @param continuous True to allow {@link #rearm()} after a success or a transient error.
+     */
+    AuthenticationSession(@NonNull final AuthenticationEventListener listener,
+                          @Nullable final AuthenticationMetrics metrics,
+                          final boolean continuous) {
+        this(listener, metrics, continuous, Tracer.NONE);
+    }
+
+    /**
+     * Create new session.
+     *
+     * @param listener   {@link AuthenticationEventListener} to receive the filtered events.
+     * @param metrics    {@link AuthenticationMetrics} to report the timings or null.
+     * @param continuous True to allow {@link #rearm()} after a success or a transient error.
+     * @param tracer     {@link Tracer} to mark the phases.
+     */
+    AuthenticationSession(@NonNull final AuthenticationEventListener listener,
+                          @Nullable final AuthenticationMetrics metrics,
+                          final boolean continuous,
+                          @NonNull final Tracer tracer) {
+        mListener = listener;
+        mMetrics = metrics;
+        mContinuous = continuous;
+        mTracer = tracer;
+    }
+
+    private static long pack(final int attempt, @SessionState final int state) {
+        return ((long) attempt << STATE_BITS) | state;
+    }
+
+    private static int attemptOf(final long packed) {
+        return (int) (packed >>> STATE_BITS);
+    }
+
+    @SessionState
+    private static int stateOf(final long packed) {
+        return (int) (packed & STATE_MASK);
+    }
+
+    private static boolean isTerminal(final int state) {
+        return state >= STATE_SUCCEEDED;
+    }
+
+    private static boolean isFinished(final long packed) {
+        return isTerminal(stateOf(packed)) && (packed & REARMABLE_FLAG) == 0;
+    }
+
+    /**
+     * Start preparing a new scan. Allowed only from {@link #STATE_IDLE}.
+     *
+     * @return Attempt token to pass with every platform callback of this scan, or {@link #NO_ATTEMPT}
+     * if the session is already running or finished.
+     */
+    int begin() {
+        while (true) {
+            final long current = mState.get();
+            if (stateOf(current) != STATE_IDLE) return NO_ATTEMPT;
+
+            final int attempt = attemptOf(current) + 1;
+            if (mState.compareAndSet(current, pack(attempt, STATE_PREPARING))) return attempt;
+        }
+    }
+
+    /**
+     * Mark the sensor of the given attempt as armed. PREPARING -> SCANNING.
+     *
+     * @param attempt Attempt token from {@link #begin()}.
+     * @return true if the attempt is still current.
+     */
+    boolean markScanning(final int attempt) {
+        return mState.compareAndSet(pack(attempt, STATE_PREPARING), pack(attempt, STATE_SCANNING));
+    }
+
+    /**
+     * Move the running scan back to {@link #STATE_IDLE} without delivering any callback. All the
+     * late callbacks of the suspended attempt will be dropped. This is used when the sensor has to
+     * be released temporary (e.g. the dialog is paused). Calling this method multiple times is safe.
+     *
+     * @return true if the scan was running.
+     */
+    boolean suspend() {
+        while (true) {
+            final long current = mState.get();
+            final int state = stateOf(current);
+            if (state != STATE_PREPARING && state != STATE_SCANNING) return false;
+
+            if (mState.compareAndSet(current, pack(attemptOf(current), STATE_IDLE))) return true;
+        }
+    }
+
+    /**
+     * @param attempt Attempt token from {@link #begin()}.
+     * @return true if the attempt is the running scan and the session is not finished yet.
+     */
+    boolean isCurrent(final int attempt) {
+        final long current = mState.get();
+        final int state = stateOf(current);
+        return attemptOf(current) == attempt && (state == STATE_PREPARING || state == STATE_SCANNING);
+    }
+
+    /**
+     * @return Current {@link SessionState}.
+     */
+    @SessionState
+    int getState() {
+        return stateOf(mState.get());
+    }
+
+    /**
+     * @return true if the session reached any of the terminal states.
+     */
+    boolean isTerminal() {
+        return isTerminal(getState());
+    }
+
+    /**
+     * @return true if the session reached the terminal state and cannot be re-armed. No events
+     * will be delivered anymore.
+     */
+    boolean isFinished() {
+        return isFinished(mState.get());
+    }
+
+    /**
+     * @return true if the session re-arms after a success or a transient error.
+     */
+    boolean isContinuous() {
+        return mContinuous;
+    }
+
+    /**
+     * @return Number of the current session. Starts at 1 and grows with every {@link #rearm()}.
+     */
+    int getSessionNumber() {
+        return mSessionNumber.get();
+    }
+
+    /**
+     * Start the next session of the continuous prompt. TERMINAL -> IDLE, allowed only after a
+     * success or a transient error. Call {@link #begin()} to arm the sensor again.
+     *
+     * @return true if the session was re-armed.
+     */
+    boolean rearm() {
+        while (true) {
+            final long current = mState.get();
+            if (!isTerminal(stateOf(current)) || (current & REARMABLE_FLAG) == 0) return false;
+
+            if (mState.compareAndSet(current, pack(attemptOf(current), STATE_IDLE))) {
+                mSessionNumber.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Set the {@link Runnable} to run after the terminal event that finishes the session. It runs
+     * on the thread that delivered the event. (e.g. The handle drops the UI of the prompt.)
+     *
+     * @param finishListener {@link Runnable} to run or null.
+     */
+    void setFinishListener(@Nullable final Runnable finishListener) {
+        mFinishListener = finishListener;
+    }
+
+    /**
+     * @return {@link Tracer} to mark the phases of this session.
+     */
+    @NonNull
+    Tracer getTracer() {
+        return mTracer;
+    }
+
+    /**
+     * Report the duration of the phase to the {@link AuthenticationMetrics}, if there is any.
+     *
+     * @param phase         {@link MetricPhase} that completed.
+     * @param durationNanos Duration of the phase in nanoseconds.
+     */
+    void reportTiming(@MetricPhase final int phase, final long durationNanos) {
+        if (mMetrics != null) mMetrics.onTiming(phase, durationNanos);
+    }
+
+    /**
+     * Report the frame timings of the prompt window to the {@link AuthenticationMetrics}, if there
+     * is any.
+     *
+     * @param stats {@link FrameStats} of the prompt window.
+     */
+    void reportFrameStats(@NonNull final FrameStats stats) {
+        if (mMetrics != null) mMetrics.onFrameStats(stats);
+    }
+
+    /**
+     * Report the phase that missed its deadline to the {@link AuthenticationMetrics}, if there is
+     * any.
+     *
+     * @param phase          {@link MetricPhase} that stalled.
+     * @param deadlineMillis Deadline the phase missed in milliseconds.
+     */
+    void reportStall(@MetricPhase final int phase, final long deadlineMillis) {
+        if (mMetrics != null) mMetrics.onStall(phase, deadlineMillis);
+    }
+
+    /**
+     * Try to move the session from the running attempt to the terminal state.
+     *
+     * @param attempt       Attempt token from {@link #begin()}.
+     * @param terminalState Terminal {@link SessionState}.
+     * @param rearmable     True if the session can be re-armed from this state.
+     * @return true if the caller won the transition and must deliver the terminal callback.
+     */
+    private boolean terminate(final int attempt,
+                              @SessionState final int terminalState,
+                              final boolean rearmable) {
+        while (true) {
+            final long current = mState.get();
+            final int state = stateOf(current);
+            if (isTerminal(state) || state == STATE_IDLE || attemptOf(current) != attempt) {
+                return false;
+            }
+
+            final long next = pack(attempt, terminalState) | (rearmable ? REARMABLE_FLAG : 0);
+            if (mState.compareAndSet(current, next)) return true;
+        }
+    }
+
+    /**
+     * Cancel the session from any state but the finished one, irrespective of the attempt. This
+     * delivers {@link AuthenticationCallback#authenticationCanceledByUser()} only once and ends the
+     * continuous session too.
+     *
+     * @return true if the session was cancelled by this call.
+     */
+    boolean cancel() {
+        while (true) {
+            final long current = mState.get();
+            if (isFinished(current)) return false;
+
+            if (mState.compareAndSet(current, pack(attemptOf(current), STATE_CANCELLED))) {
+                deliver(AuthenticationEvent.canceledByUser(), false);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Deliver the event of the given attempt. Terminal events finish the session, so only the first
+     * terminal event is delivered. Non-terminal events are delivered only while the attempt is
+     * running.
+     *
+     * @param attempt Attempt token from {@link #begin()}.
+     * @param event   {@link AuthenticationEvent} to deliver.
+     * @return true if the event was delivered.
+     */
+    boolean dispatch(final int attempt, @NonNull final AuthenticationEvent event) {
+        final boolean rearmable = isRearmable(event);
+        if (event.isTerminal()) {
+            if (!terminate(attempt, EventMapper.terminalState(event.getType()), rearmable)) return false;
+        } else if (!isCurrent(attempt)) {
+            return false;
+        }
+
+        deliver(event, rearmable);
+        return true;
+    }
+
+    /**
+     * Deliver the terminal event of the attempt that was suspended with {@link #suspend()} and is
+     * not replaced yet. Used when the platform finishes the suspended scan with a result instead of
+     * the cancellation, so the session does not wait in {@link #STATE_IDLE} forever. The caller
+     * makes sure the attempt was suspended and not re-armed.
+     *
+     * @param attempt Attempt token of the suspended scan.
+     * @param event   Terminal {@link AuthenticationEvent} to deliver.
+     * @return true if the event was delivered.
+     */
+    boolean dispatchSuspended(final int attempt, @NonNull final AuthenticationEvent event) {
+        if (!event.isTerminal()) return false;
+
+        final boolean rearmable = isRearmable(event);
+        final long next = pack(attempt, EventMapper.terminalState(event.getType())) | (rearmable ? REARMABLE_FLAG : 0);
+        if (!mState.compareAndSet(pack(attempt, STATE_IDLE), next)) return false;
+
+        deliver(event, rearmable);
+        return true;
+    }
+
+    /**
+     * @return true if the continuous session can be re-armed after the event.
+     */
+    private boolean isRearmable(@NonNull final AuthenticationEvent event) {
+        return mContinuous && (event.getType() == AuthenticationEvent.TYPE_SUCCEEDED
+                || (event.getType() == AuthenticationEvent.TYPE_ERROR
+                && event.getCategory() == AuthenticationEvent.CATEGORY_TRANSIENT));
+    }
+
+    /**
+     * Deliver the event to the listener. The listener and the finish listener are released after
+     * the terminal event that finishes the session.
+     */
+    private void deliver(@NonNull final AuthenticationEvent event, final boolean rearmable) {
+        final boolean isFinishing = event.isTerminal() && !rearmable;
+        try {
+            final AuthenticationEventListener listener = mListener;
+            if (listener != null) listener.onEvent(event);
+        } finally {
+            if (isFinishing) {
+                mListener = null;
+                final Runnable finishListener = mFinishListener;
+                mFinishListener = null;
+                if (finishListener != null) finishListener.run();
+            }
+        }
+    }
+
+    /**
+     * Deliver the unrecoverable error reported by the platform.
+     *
+     * @param errorCode Error code reported by the platform.
+     * @param errString Human-readable error string.
+     * @return true if the event was delivered.
+     * @see #dispatch(int, AuthenticationEvent)
+     */
+    boolean dispatchError(final int attempt, final int errorCode, @Nullable final CharSequence errString) {
+        return dispatch(attempt, AuthenticationEvent.fromError(errorCode, errString));
+    }
+
+    /**
+     * Deliver the recoverable error reported by the platform.
+     *
+     * @param helpCode   Help code reported by the platform.
+     * @param helpString Human-readable help string.
+     * @return true if the event was delivered.
+     * @see #dispatch(int, AuthenticationEvent)
+     */
+    boolean dispatchHelp(final int attempt, final int helpCode, @Nullable final CharSequence helpString) {
+        return dispatch(attempt, AuthenticationEvent.fromHelp(helpCode, helpString));
+    }
+
+    /**
+     * @see #dispatch(int, AuthenticationEvent)
+     */
+    boolean dispatchFailed(final int attempt) {
+        return dispatch(attempt, AuthenticationEvent.failed());
+    }
+
+    /**
+     * @see #dispatch(int, AuthenticationEvent)
+     */
+    boolean dispatchSucceeded(final int attempt) {
+        return dispatch(attempt, AuthenticationEvent.succeeded());
+    }
+
+    /**
+     * @see #dispatch(int, AuthenticationEvent)
+     */
+    boolean dispatchNotSupported(final int attempt) {
+        return dispatch(attempt, AuthenticationEvent.notSupported());
+    }
+
+    /**
+     * @see #dispatch(int, AuthenticationEvent)
+     */
+    boolean dispatchNoFingerprintEnrolled(final int attempt) {
+        return dispatch(attempt, AuthenticationEvent.noFingerprintEnrolled());
+    }
+}
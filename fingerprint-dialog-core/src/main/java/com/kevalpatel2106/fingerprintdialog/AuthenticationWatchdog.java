@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deadlines of the key store and sensor calls that are known to stall on some OEM builds. Every
+ * phase runs under a {@link Deadline}. If the phase doesn't complete in time, the
+ * {@link StallListener} is notified from the watchdog thread, so the prompt can deliver a terminal
+ * callback while the stalled call is still blocked.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class AuthenticationWatchdog {
+
+    /**
+     * Default deadline of every phase.
+     */
+    static final long DEFAULT_DEADLINE_MILLIS = 3000;
+
+    /**
+     * Size of the deadline table. Largest phase is {@link AuthenticationMetrics#PHASE_AUTHENTICATE}.
+     */
+    private static final int PHASE_COUNT = AuthenticationMetrics.PHASE_AUTHENTICATE + 1;
+
+    /**
+     * First phase with a deadline. {@link AuthenticationMetrics#PHASE_TEARDOWN} never blocks.
+     */
+    private static final int FIRST_PHASE = AuthenticationMetrics.PHASE_KEYSTORE_LOAD;
+
+    /**
+     * Single timer shared by all the prompts. The listeners only post the result, so one thread is
+     * enough.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "FingerprintDialogCompat-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Notified when a phase misses its deadline.
+     */
+    interface StallListener {
+
+        /**
+         * Called on the watchdog thread.
+         *
+         * @param phase          {@link MetricPhase} that stalled.
+         * @param deadlineMillis Deadline the phase missed.
+         */
+        void onStall(@MetricPhase final int phase, final long deadlineMillis);
+    }
+
+    private final long[] mDeadlinesMillis = new long[PHASE_COUNT];
+
+    AuthenticationWatchdog() {
+        for (int i = 0; i < PHASE_COUNT; i++) mDeadlinesMillis[i] = DEFAULT_DEADLINE_MILLIS;
+    }
+
+    /**
+     * @param phase          {@link MetricPhase}
+     * @param deadlineMillis Time the phase may take in milliseconds.
+     */
+    synchronized void setDeadline(@MetricPhase final int phase, final long deadlineMillis) {
+        if (phase < FIRST_PHASE || phase >= PHASE_COUNT) {
+            throw new IllegalArgumentException("No deadline for the phase: " + AuthenticationMetrics.nameOf(phase));
+        }
+        if (deadlineMillis <= 0) throw new IllegalArgumentException("Deadline must be positive.");
+        mDeadlinesMillis[phase] = deadlineMillis;
+    }
+
+    /**
+     * @param phase {@link MetricPhase}
+     * @return Time the phase may take in milliseconds.
+     */
+    synchronized long getDeadline(@MetricPhase final int phase) {
+        return mDeadlinesMillis[phase];
+    }
+
+    /**
+     * Start the deadline of the phase. Call {@link Deadline#complete()} once the phase is done.
+     *
+     * @param phase    {@link MetricPhase} to watch.
+     * @param listener {@link StallListener} to notify if the deadline is missed.
+     * @return Running {@link Deadline}.
+     */
+    @NonNull
+    Deadline start(@MetricPhase final int phase, @NonNull final StallListener listener) {
+        final Deadline deadline = new Deadline(phase, getDeadline(phase), listener);
+        deadline.schedule();
+        return deadline;
+    }
+
+    /**
+     * Deadline of a single phase. Either {@link #complete()} or the {@link StallListener} wins,
+     * never both.
+     */
+    static final class Deadline implements Runnable {
+        private static final int RUNNING = 0;
+        private static final int COMPLETED = 1;
+        private static final int MISSED = 2;
+
+        @MetricPhase
+        private final int mPhase;
+        private final long mDeadlineMillis;
+        @NonNull
+        private final StallListener mListener;
+        private final AtomicInteger mState = new AtomicInteger(RUNNING);
+        private final long mStartNanos = System.nanoTime();
+        private ScheduledFuture<?> mFuture;
+
+        private Deadline(@MetricPhase final int phase,
+                         final long deadlineMillis,
+                         @NonNull final StallListener listener) {
+            mPhase = phase;
+            mDeadlineMillis = deadlineMillis;
+            mListener = listener;
+        }
+
+        private synchronized void schedule() {
+            mFuture = TIMER.schedule(this, mDeadlineMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Mark the phase as done.
+         *
+         * @return true if the phase completed in time. false if the deadline was already missed and
+         * the result of the phase must be dropped.
+         */
+        boolean complete() {
+            if (!mState.compareAndSet(RUNNING, COMPLETED)) return false;
+
+            synchronized (this) {
+                if (mFuture != null) mFuture.cancel(false);
+            }
+            return true;
+        }
+
+        /**
+         * @return {@link MetricPhase} under this deadline.
+         */
+        @MetricPhase
+        int getPhase() {
+            return mPhase;
+        }
+
+        /**
+         * @return Time since the deadline started in nanoseconds.
+         */
+        long elapsedNanos() {
+            return System.nanoTime() - mStartNanos;
+        }
+
+        @Override
+        public void run() {
+            if (mState.compareAndSet(RUNNING, MISSED)) mListener.onStall(mPhase, mDeadlineMillis);
+        }
+    }
+}
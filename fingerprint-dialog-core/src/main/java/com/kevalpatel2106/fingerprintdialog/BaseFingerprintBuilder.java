@@ -0,0 +1,636 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.hardware.biometrics.BiometricPrompt;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
+
+import com.kevalpatel2106.fingerprintdialog.core.R;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.Cipher;
+
+/**
+ * Configuration of the fingerprint prompt shared by the {@link FingerprintPromptBuilder} of this
+ * module and the FingerprintDialogBuilder of the UI module. It validates the configuration, checks
+ * the capabilities of the device and shows the {@link BiometricPrompt} on Android P and above.
+ * Below P the prompt is delegated to the {@link CompatPrompt} of the subclass.
+ *
+ * @param <B> Type of the builder returned by the setters.
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings({"WeakerAccess", "unchecked"})
+public abstract class BaseFingerprintBuilder<B extends BaseFingerprintBuilder<B>> {
+
+    /**
+     * Shows the prompt on the android versions below P.
+     */
+    interface CompatPrompt {
+
+        /**
+         * Show the prompt for the session.
+         *
+         * @param session {@link AuthenticationSession} that passed the capability checks.
+         * @return {@link AuthenticationHandle} to cancel the prompt.
+         */
+        @NonNull
+        AuthenticationHandle show(@NonNull final AuthenticationSession session);
+    }
+
+    /**
+     * Application {@link Context}. The builder can outlive the activity that created it (e.g. kept
+     * in a field to show the prompt again), so it never keeps the context of the caller.
+     */
+    @NonNull
+    final Context mContext;
+
+    /**
+     * Title of fingerprint dialog.
+     */
+    String mTitle;
+
+    /**
+     * Subtitle of fingerprint dialog.
+     */
+    String mSubTitle;
+
+    /**
+     * Description of fingerprint dialog.
+     */
+    String mDescription;
+
+    /**
+     * Title to display on the negative button of fingerprint dialog.
+     */
+    String mButtonTitle;
+
+    /**
+     * {@link AuthenticationMetrics} to receive the timings of the authentication.
+     */
+    @Nullable
+    AuthenticationMetrics mMetrics;
+
+    /**
+     * True to collect the frame timings of the prompt window.
+     */
+    boolean mFrameMetricsEnabled = false;
+
+    /**
+     * {@link Cipher} to authenticate with or null to use the key of the library.
+     */
+    @Nullable
+    Cipher mCipher;
+
+    /**
+     * True to keep the prompt up and re-arm the sensor after every result.
+     */
+    boolean mContinuous = false;
+
+    /**
+     * {@link AuthenticationWatchdog} with the deadlines of the key store and sensor calls.
+     */
+    @NonNull
+    final AuthenticationWatchdog mWatchdog = new AuthenticationWatchdog();
+
+    /**
+     * Listeners that receive the events of every prompt shown by this builder, in addition to the
+     * callback passed to {@code show()}.
+     */
+    @NonNull
+    final EventListenerSet mListeners = new EventListenerSet();
+
+    /**
+     * {@link Tracer} to mark the phases of the authentication.
+     */
+    @NonNull
+    Tracer mTracer = Tracer.NONE;
+
+    /**
+     * {@link BaseSessionRecorder} to write the sessions to the trace file.
+     */
+    @Nullable
+    BaseSessionRecorder mTraceRecorder;
+
+    /**
+     * {@link BaseFingerprintSimulator} to resolve the prompts in the debuggable builds or null.
+     */
+    @Nullable
+    BaseFingerprintSimulator mSimulator;
+
+    /**
+     * Package private, so only the builders of the library can extend it.
+     *
+     * @param context {@link Context} of the caller.
+     */
+    BaseFingerprintBuilder(@NonNull final Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Set the title of the dialog. This is the required field.
+     *
+     * @param title Title string.
+     * @return This builder.
+     * @see #setTitle(int)
+     */
+    public B setTitle(@NonNull final String title) {
+        mTitle = title;
+        return (B) this;
+    }
+
+    /**
+     * Set the title of the dialog. This is the required field.
+     *
+     * @param title String resource of the title.
+     * @return This builder.
+     * @see #setTitle(String)
+     */
+    public B setTitle(@StringRes final int title) {
+        mTitle = mContext.getString(title);
+        return (B) this;
+    }
+
+    /**
+     * Set the subtitle of the dialog. This is the required field.
+     *
+     * @param subtitle Subtitle string.
+     * @return This builder.
+     * @see #setSubtitle(int)
+     */
+    public B setSubtitle(@NonNull final String subtitle) {
+        mSubTitle = subtitle;
+        return (B) this;
+    }
+
+    /**
+     * Set the subtitle of the dialog. This is the required field.
+     *
+     * @param subtitle String resource of the subtitle.
+     * @return This builder.
+     * @see #setSubtitle(String)
+     */
+    public B setSubtitle(@StringRes final int subtitle) {
+        mSubTitle = mContext.getString(subtitle);
+        return (B) this;
+    }
+
+    /**
+     * Set the description of the dialog. This is the required field.
+     *
+     * @param description String resource of the description.
+     * @return This builder.
+     * @see #setDescription(int)
+     */
+    public B setDescription(@NonNull final String description) {
+        mDescription = description;
+        return (B) this;
+    }
+
+    /**
+     * Set the description of the dialog. This is the required field.
+     *
+     * @param description String resource of the description.
+     * @return This builder.
+     * @see #setDescription(String)
+     */
+    public B setDescription(@StringRes final int description) {
+        mDescription = mContext.getString(description);
+        return (B) this;
+    }
+
+    /**
+     * Set the title of the negative button in the dialog. The default title of the button is "Cancel".
+     *
+     * @param text String of button title.
+     * @return This builder.
+     * @see #setNegativeButton(int)
+     */
+    public B setNegativeButton(@Nullable final String text) {
+        mButtonTitle = text;
+        return (B) this;
+    }
+
+    /**
+     * Set the title of the negative button in the dialog. The default title of the button is "Cancel".
+     *
+     * @param text String resource of button title.
+     * @return This builder.
+     * @see #setNegativeButton(String)
+     */
+    public B setNegativeButton(@StringRes final int text) {
+        mButtonTitle = mContext.getString(text);
+        return (B) this;
+    }
+
+    /**
+     * Set the {@link AuthenticationMetrics} to receive the timings of the authentication.
+     *
+     * @param metrics {@link AuthenticationMetrics} or null to stop reporting.
+     * @return This builder.
+     */
+    public B setMetrics(@Nullable final AuthenticationMetrics metrics) {
+        mMetrics = metrics;
+        return (B) this;
+    }
+
+    /**
+     * Collect the frame timings of the prompt window while it is visible and report them to
+     * {@link AuthenticationMetrics#onFrameStats(FrameStats)} after it is hidden. Applies to the
+     * dialog below Android P on Android N and above. Every frame of the window is reported to a
+     * background thread, so keep it off in production unless you are sampling.
+     *
+     * @param enabled True to collect the frame timings. Default is false.
+     * @return This builder.
+     */
+    public B setFrameMetricsEnabled(final boolean enabled) {
+        mFrameMetricsEnabled = enabled;
+        return (B) this;
+    }
+
+    /**
+     * Set the initialized {@link Cipher} to authenticate with the fingerprint. Use it to unlock your
+     * own fingerprint bound key (e.g. {@link FingerprintKeyPool#forKey(String)}). If the cipher is
+     * not set, the library generates the key for the authentication.
+     *
+     * @param cipher Initialized {@link Cipher} or null to use the key of the library.
+     * @return This builder.
+     */
+    public B setCipher(@Nullable final Cipher cipher) {
+        mCipher = cipher;
+        return (B) this;
+    }
+
+    /**
+     * Keep the prompt up after the user authenticates and re-arm the sensor right away, so the next
+     * user can authenticate without showing the prompt again. (e.g. Shared terminals.) Every success
+     * or transient error is delivered as the result of a separate session. The prompt stays up until
+     * the user cancels it, {@link AuthenticationHandle#cancel()} is called or an unrecoverable error
+     * (e.g. lockout) occurs.
+     * <p>
+     * Every session needs a fresh {@link Cipher}, so this cannot be combined with
+     * {@link #setCipher(Cipher)}. The next cipher of the library key is prepared while the sensor
+     * is waiting for the finger.
+     *
+     * @param continuous True to enable the continuous mode. Default is false.
+     * @return This builder.
+     */
+    public B setContinuous(final boolean continuous) {
+        mContinuous = continuous;
+        return (B) this;
+    }
+
+    /**
+     * @return True if the continuous mode is enabled.
+     * @see #setContinuous(boolean)
+     */
+    public boolean isContinuous() {
+        return mContinuous;
+    }
+
+    /**
+     * Set the time the phase of the fingerprint dialog may take. Some devices block the key store or
+     * the sensor for seconds while the key store daemon is busy. If the phase misses the deadline,
+     * {@link AuthenticationCallback#fingerprintAuthenticationNotSupported()} is delivered right away
+     * and the stall is reported to {@link AuthenticationMetrics#onStall(int, long)}. Applies to the
+     * dialog below Android P, the system prompt handles the key store on its own.
+     *
+     * @param phase         {@link AuthenticationMetrics#PHASE_KEYSTORE_LOAD},
+     *                      {@link AuthenticationMetrics#PHASE_KEY_GENERATION},
+     *                      {@link AuthenticationMetrics#PHASE_CIPHER_INIT} or
+     *                      {@link AuthenticationMetrics#PHASE_AUTHENTICATE}.
+     * @param timeoutMillis Deadline in milliseconds. Default is 3 seconds.
+     * @return This builder.
+     */
+    public B setDeadline(@MetricPhase final int phase, final long timeoutMillis) {
+        mWatchdog.setDeadline(phase, timeoutMillis);
+        return (B) this;
+    }
+
+    /**
+     * Register an additional {@link AuthenticationCallback} that receives the events of every
+     * prompt shown by this builder, after the callback passed to {@code show()}. (e.g. Analytics or
+     * security audit.) The builder keeps the callback until it is removed, so remove the callback
+     * that references an activity before the activity is destroyed.
+     *
+     * @param callback  {@link AuthenticationCallback} to add. Adding the same callback again
+     *                  replaces its mask.
+     * @param eventMask Event types to deliver. {@link AuthenticationEvent#MASK_ALL},
+     *                  {@link AuthenticationEvent#MASK_TERMINAL} or the combination of
+     *                  {@link AuthenticationEvent#maskOf(int)}.
+     * @return This builder.
+     * @see #removeAuthenticationCallback(AuthenticationCallback)
+     */
+    public B addAuthenticationCallback(@NonNull final AuthenticationCallback callback, final int eventMask) {
+        mListeners.add(callback, new EventDispatcher(callback), eventMask);
+        return (B) this;
+    }
+
+    /**
+     * @param callback {@link AuthenticationCallback} added using
+     *                 {@link #addAuthenticationCallback(AuthenticationCallback, int)}. The prompt
+     *                 that is already displayed keeps delivering its events to the callback.
+     * @return This builder.
+     */
+    public B removeAuthenticationCallback(@NonNull final AuthenticationCallback callback) {
+        mListeners.remove(callback);
+        return (B) this;
+    }
+
+    /**
+     * Register an additional {@link AuthenticationEventListener} that receives the events of every
+     * prompt shown by this builder, after the listener passed to {@code show()}. Listeners whose
+     * mask excludes the event are skipped, so the listeners of the terminal events pay nothing for
+     * the bursts of help events.
+     *
+     * @param listener  {@link AuthenticationEventListener} to add. Adding the same listener again
+     *                  replaces its mask.
+     * @param eventMask Event types to deliver. {@link AuthenticationEvent#MASK_ALL},
+     *                  {@link AuthenticationEvent#MASK_TERMINAL} or the combination of
+     *                  {@link AuthenticationEvent#maskOf(int)}.
+     * @return This builder.
+     */
+    public B addEventListener(@NonNull final AuthenticationEventListener listener, final int eventMask) {
+        mListeners.add(listener, eventMask);
+        return (B) this;
+    }
+
+    /**
+     * @param listener {@link AuthenticationEventListener} added using
+     *                 {@link #addEventListener(AuthenticationEventListener, int)}.
+     * @return This builder.
+     */
+    public B removeEventListener(@NonNull final AuthenticationEventListener listener) {
+        mListeners.remove(listener);
+        return (B) this;
+    }
+
+    /**
+     * Set the {@link Tracer} to mark the key store, sensor and UI phases of the prompt. (e.g.
+     * {@link Tracer#SYSTEM} to see them in the system trace.)
+     *
+     * @param tracer {@link Tracer} or null to stop tracing.
+     * @return This builder.
+     */
+    public B setTracer(@Nullable final Tracer tracer) {
+        mTracer = tracer == null ? Tracer.NONE : tracer;
+        return (B) this;
+    }
+
+    /**
+     * Write every session of this builder to the binary trace file. (e.g. To collect the
+     * authentication behaviour of the fleet.) Share the same {@code TraceRecorder} of the
+     * {@code fingerprint-dialog-diagnostics} artifact among the builders to write into one file.
+     *
+     * @param recorder {@link BaseSessionRecorder} or null to stop tracing.
+     * @return This builder.
+     */
+    public B setTraceRecorder(@Nullable final BaseSessionRecorder recorder) {
+        mTraceRecorder = recorder;
+        return (B) this;
+    }
+
+    /**
+     * Resolve the prompts of this builder with the simulated sensor instead of showing them. (e.g.
+     * Load tests of the login flow on the CI.) Works only if the application is debuggable, the
+     * real prompt is shown in the other builds.
+     *
+     * @param simulator {@code FingerprintSimulator} of the {@code fingerprint-dialog-diagnostics}
+     *                  artifact or null to show the real prompt.
+     * @return This builder.
+     */
+    public B setSimulator(@Nullable final BaseFingerprintSimulator simulator) {
+        mSimulator = simulator;
+        return (B) this;
+    }
+
+    /**
+     * Validate the configuration, check the capabilities of the device and show the prompt.
+     *
+     * @param eventListener {@link AuthenticationEventListener} to receive the events.
+     * @param compatPrompt  {@link CompatPrompt} to show the prompt below Android P.
+     * @return {@link AuthenticationHandle} to cancel the prompt or check if it is still active.
+     */
+    @NonNull
+    final AuthenticationHandle authenticate(@NonNull final AuthenticationEventListener eventListener,
+                                            @NonNull final CompatPrompt compatPrompt) {
+
+        //Validate the title
+        if (mTitle == null) {
+            throw new IllegalArgumentException("Title of the dialog cannot be null. Call setTitle() " +
+                    "to set the title of the dialog.");
+        }
+
+        //Validate the subtitle
+        if (mSubTitle == null) {
+            throw new IllegalArgumentException("Subtitle of the dialog cannot be null. Call " +
+                    "setSubtitle() to set the subtitle of the dialog.");
+        }
+
+        //Validate the description
+        if (mDescription == null) {
+            throw new IllegalArgumentException("Description of the dialog cannot be null. Call " +
+                    "setDescription() to set the description of the dialog.");
+        }
+
+        if (mButtonTitle == null) {
+            //Set the default button title
+            mButtonTitle = mContext.getString(android.R.string.cancel);
+        }
+
+        if (mContinuous && mCipher != null) {
+            throw new IllegalArgumentException("Continuous prompt cannot reuse the cipher set by " +
+                    "setCipher(). Every session needs a fresh cipher.");
+        }
+
+        //noinspection ConstantConditions
+        final boolean isPlatformPrompt = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                || Build.VERSION.CODENAME.equals("P")/* TODO Remove once API 28 releases */;
+
+        //Both the paths share the same session state machine.
+        //Listeners added later don't receive the events of this prompt.
+        final AuthenticationEventListener listeners;
+        if (mTraceRecorder != null) {
+            final EventListenerSet traced = mListeners.withFirst(eventListener, AuthenticationEvent.MASK_ALL);
+            traced.add(mTraceRecorder.newSession(isPlatformPrompt),
+                    AuthenticationEvent.MASK_ALL);
+            listeners = traced;
+        } else if (mListeners.size() == 0) {
+            listeners = eventListener;
+        } else {
+            listeners = mListeners.withFirst(eventListener, AuthenticationEvent.MASK_ALL);
+        }
+        final AuthenticationSession session = new AuthenticationSession(listeners, mMetrics, mContinuous, mTracer);
+
+        //Simulated sensor of the load tests. Never in the release builds.
+        if (mSimulator != null && mSimulator.isEnabled(mContext)) {
+            return mSimulator.simulate(session, mWatchdog, mCipher != null,
+                    mContext.getString(R.string.fingerprint_not_responding));
+        }
+
+        //Check if the android version supports fingerprint authentication?
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            session.dispatchNotSupported(session.begin());
+            return new AuthenticationHandle(session, null);
+        }
+
+        //Check if the device has the fingerprint sensor?
+        if (!FingerprintUtils.isSupportedHardware(mContext)) {
+            session.dispatchNotSupported(session.begin());
+            return new AuthenticationHandle(session, null);
+        }
+
+        //Check if there are any fingerprints enrolled?
+        if (!FingerprintUtils.isFingerprintEnroled(mContext)) {
+            session.dispatchNoFingerprintEnrolled(session.begin());
+            return new AuthenticationHandle(session, null);
+        }
+
+        if (isPlatformPrompt) {
+            return showFingerprintDialog(session);
+        } else {
+            return compatPrompt.show(session);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.P)
+    @NonNull
+    private AuthenticationHandle showFingerprintDialog(@NonNull final AuthenticationSession session) {
+        final AtomicReference<CancellationSignal> cancellationSignal = new AtomicReference<>();
+
+        //Attempt of the prompt on the screen and the suspended attempt that has to be dismissed
+        //before the prompt is shown again. Only accessed on the main thread.
+        final int[] shownAttempt = new int[]{AuthenticationSession.NO_ATTEMPT};
+        final int[] reshowAfterAttempt = new int[]{AuthenticationSession.NO_ATTEMPT};
+
+        //Title, subtitle and description of the prompt. Replaced by the handle on the main thread.
+        final String[] content = new String[]{mTitle, mSubTitle, mDescription};
+        final String buttonTitle = mButtonTitle;
+        final DialogInterface.OnClickListener onNegativeClick = new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(final DialogInterface dialogInterface, final int i) {
+                session.cancel();
+            }
+        };
+
+        final Cipher cipher = mCipher;
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        final Runnable authenticate = new Runnable() {
+            @Override
+            public void run() {
+                final int attempt = session.begin();
+                if (attempt == AuthenticationSession.NO_ATTEMPT) return;
+                shownAttempt[0] = attempt;
+
+                final CancellationSignal signal = new CancellationSignal();
+                cancellationSignal.set(signal);
+
+                final BiometricPrompt biometricPrompt = new BiometricPrompt.Builder(mContext)
+                        .setTitle(content[0])
+                        .setSubtitle(content[1])
+                        .setDescription(content[2])
+                        .setNegativeButton(buttonTitle, mContext.getMainExecutor(), onNegativeClick)
+                        .build();
+
+                //The system dismisses the prompt after the result. Show it again for the next
+                //session once the current one is gone.
+                final Runnable self = this;
+                final Runnable rearm = !session.isContinuous() ? null : new Runnable() {
+                    @Override
+                    public void run() {
+                        mainHandler.post(self);
+                    }
+                };
+                //Result of this prompt after it was suspended to show the new texts. The other late
+                //results are dropped.
+                final AuthenticationEventListener onSuspendedResult = new AuthenticationEventListener() {
+                    @Override
+                    public void onEvent(@NonNull final AuthenticationEvent event) {
+                        if (reshowAfterAttempt[0] != attempt) return;
+                        reshowAfterAttempt[0] = AuthenticationSession.NO_ATTEMPT;
+
+                        if (event.getType() == AuthenticationEvent.TYPE_CANCELED
+                                && event.getCategory() == AuthenticationEvent.CATEGORY_SYSTEM) {
+                            //Dismissed by the update. Show it again with the new texts.
+                            self.run();
+                        } else if (session.dispatchSuspended(attempt, event)
+                                && rearm != null
+                                && session.rearm()) {
+                            //The user finished the old prompt before it was dismissed.
+                            rearm.run();
+                        }
+                    }
+                };
+                final AuthenticationCallbackV28 callback = new AuthenticationCallbackV28(session,
+                        attempt,
+                        rearm,
+                        onSuspendedResult);
+                final Tracer tracer = session.getTracer();
+                tracer.beginSection(Tracer.SECTION_AUTHENTICATE);
+                try {
+                    if (cipher == null) {
+                        biometricPrompt.authenticate(signal, mContext.getMainExecutor(), callback);
+                    } else {
+                        biometricPrompt.authenticate(new BiometricPrompt.CryptoObject(cipher),
+                                signal,
+                                mContext.getMainExecutor(),
+                                callback);
+                    }
+                } finally {
+                    tracer.endSection();
+                }
+                session.markScanning(attempt);
+            }
+        };
+        authenticate.run();
+
+        return new AuthenticationHandle(session, new Runnable() {
+            @Override
+            public void run() {
+                final CancellationSignal signal = cancellationSignal.get();
+                if (signal != null) signal.cancel();
+            }
+        }, new AuthenticationHandle.ContentUpdater() {
+            @Override
+            public void update(@Nullable final String title,
+                               @Nullable final String subtitle,
+                               @Nullable final String description) {
+                if (title != null) content[0] = title;
+                if (subtitle != null) content[1] = subtitle;
+                if (description != null) content[2] = description;
+
+                //Continuous prompt between two sessions shows the new texts when it is re-armed.
+                //Prompt that is already being dismissed shows them when it is shown again.
+                if (!session.suspend()) return;
+
+                //The system prompt cannot be changed. Dismiss it without delivering the
+                //cancellation and show it again for the same session and cipher once the
+                //BIOMETRIC_ERROR_CANCELED of the old prompt says it is gone. Showing it earlier
+                //would race with the dismissal.
+                reshowAfterAttempt[0] = shownAttempt[0];
+                final CancellationSignal signal = cancellationSignal.get();
+                if (signal != null) signal.cancel();
+            }
+        });
+    }
+}
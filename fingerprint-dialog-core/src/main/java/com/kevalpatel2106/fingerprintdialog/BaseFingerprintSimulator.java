@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+/**
+ * Resolves the prompts of the builder without the fingerprint sensor. (e.g. Load tests on the CI.)
+ * The simulated sensor is the {@code FingerprintSimulator} of the optional
+ * {@code fingerprint-dialog-diagnostics} artifact, so the applications that don't use it don't
+ * ship it.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ * @see BaseFingerprintBuilder#setSimulator(BaseFingerprintSimulator)
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class BaseFingerprintSimulator {
+
+    /**
+     * Package private, so only the simulators of the library can extend it.
+     */
+    BaseFingerprintSimulator() {
+        //Do nothing.
+    }
+
+    /**
+     * @param context {@link Context} of the application.
+     * @return true if the prompts of the application may be simulated. The builder shows the real
+     * prompt otherwise.
+     */
+    abstract boolean isEnabled(@NonNull final Context context);
+
+    /**
+     * Resolve the prompt of the session that passed the configuration checks.
+     *
+     * @param session       {@link AuthenticationSession} of the prompt.
+     * @param watchdog      {@link AuthenticationWatchdog} with the deadlines of the builder.
+     * @param hasCipher     True if the builder has the cipher, so there is no key store work.
+     * @param notResponding Error text delivered when a phase misses its deadline.
+     * @return {@link AuthenticationHandle} to cancel the prompt.
+     */
+    @NonNull
+    abstract AuthenticationHandle simulate(@NonNull final AuthenticationSession session,
+                                           @NonNull final AuthenticationWatchdog watchdog,
+                                           final boolean hasCipher,
+                                           @NonNull final CharSequence notResponding);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Records every session of the builder. (e.g. To collect the authentication behaviour of the
+ * fleet.) The binary trace is written by the {@code TraceRecorder} of the optional
+ * {@code fingerprint-dialog-diagnostics} artifact, so the applications that don't trace don't
+ * ship the trace format.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ * @see BaseFingerprintBuilder#setTraceRecorder(BaseSessionRecorder)
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class BaseSessionRecorder {
+
+    /**
+     * Package private, so only the recorders of the library can extend it.
+     */
+    BaseSessionRecorder() {
+        //Do nothing.
+    }
+
+    /**
+     * Create the listener that records the events of one prompt.
+     *
+     * @param isPlatformPrompt True if the prompt is the BiometricPrompt, false for the dialog of
+     *                         the library.
+     * @return {@link AuthenticationEventListener} to register with {@link AuthenticationEvent#MASK_ALL}.
+     */
+    @NonNull
+    abstract AuthenticationEventListener newSession(final boolean isPlatformPrompt);
+}
@@ -25,6 +25,10 @@ import java.lang.annotation.RetentionPolicy;
  * Error codes to detect the error from the fingerprint authentication. This error codes are for the
  * errors which are not recoverable. Fingerprint authentication will terminate once the any of these
  * error code occurs.
+ * <p>
+ * {@link android.hardware.biometrics.BiometricPrompt} reports the same values, so these codes are
+ * the same on every android version. See {@link AuthenticationEvent#getCategory()} for the
+ * normalized reason of the error.
  *
  * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
  */
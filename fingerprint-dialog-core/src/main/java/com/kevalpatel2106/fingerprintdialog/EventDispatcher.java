@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Delivers the {@link AuthenticationEvent} to the {@link AuthenticationCallback} of the caller. This
+ * is the only place where the normalized events are converted into the callbacks, so both the
+ * android versions behave the same.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class EventDispatcher implements AuthenticationEventListener {
+
+    /**
+     * {@link AuthenticationCallback} implemented by the caller.
+     */
+    @NonNull
+    private final AuthenticationCallback mCallback;
+
+    EventDispatcher(@NonNull final AuthenticationCallback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Deliver the event to the callback.
+     *
+     * @param event {@link AuthenticationEvent} to deliver.
+     */
+    @SuppressWarnings("WrongConstant")
+    @Override
+    public void onEvent(@NonNull final AuthenticationEvent event) {
+        switch (event.getType()) {
+            case AuthenticationEvent.TYPE_NOT_SUPPORTED:
+                mCallback.fingerprintAuthenticationNotSupported();
+                break;
+            case AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED:
+                mCallback.hasNoFingerprintEnrolled();
+                break;
+            case AuthenticationEvent.TYPE_ERROR:
+                mCallback.onAuthenticationError(event.getPlatformCode(), event.getMessage());
+                break;
+            case AuthenticationEvent.TYPE_CANCELED:
+                mCallback.authenticationCanceledByUser();
+                break;
+            case AuthenticationEvent.TYPE_SUCCEEDED:
+                mCallback.onAuthenticationSucceeded();
+                break;
+            case AuthenticationEvent.TYPE_HELP:
+                mCallback.onAuthenticationHelp(event.getPlatformCode(), event.getMessage());
+                break;
+            case AuthenticationEvent.TYPE_FAILED:
+                mCallback.onAuthenticationFailed();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type: " + event.getType());
+        }
+    }
+}
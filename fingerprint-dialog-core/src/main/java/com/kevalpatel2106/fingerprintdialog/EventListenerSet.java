@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Delivers the {@link AuthenticationEvent} to several {@link AuthenticationEventListener}s. Every
+ * listener is registered with a mask of the event types it cares about (see
+ * {@link AuthenticationEvent#maskOf(int)}) and the events outside the mask are skipped.
+ * <p>
+ * Listeners are kept in a copy-on-write array. Registration copies the array, dispatch reads it
+ * once and iterates without allocating, so the bursts of help events cost nothing for the
+ * listeners that only care about the terminal events.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class EventListenerSet implements AuthenticationEventListener {
+    private static final Entry[] EMPTY = new Entry[0];
+
+    @NonNull
+    private volatile Entry[] mEntries = EMPTY;
+
+    EventListenerSet() {
+    }
+
+    private EventListenerSet(@NonNull final Entry[] entries) {
+        mEntries = entries;
+    }
+
+    /**
+     * Register the listener. Same listener can be registered only once, registering it again
+     * replaces its mask.
+     *
+     * @param listener  {@link AuthenticationEventListener} to add.
+     * @param eventMask Mask of the event types to deliver to the listener.
+     */
+    void add(@NonNull final AuthenticationEventListener listener, final int eventMask) {
+        add(listener, listener, eventMask);
+    }
+
+    /**
+     * Register the listener under the key. (e.g. The {@link EventDispatcher} under the
+     * {@link AuthenticationCallback} it wraps.) Only one listener can be registered for the key,
+     * registering again replaces the listener and its mask in place.
+     *
+     * @param key       Object to find the listener by in {@link #remove(Object)}.
+     * @param listener  {@link AuthenticationEventListener} to add.
+     * @param eventMask Mask of the event types to deliver to the listener.
+     */
+    synchronized void add(@NonNull final Object key,
+                          @NonNull final AuthenticationEventListener listener,
+                          final int eventMask) {
+        if ((eventMask & AuthenticationEvent.MASK_ALL) == 0) {
+            throw new IllegalArgumentException("Event mask doesn't match any event type.");
+        }
+
+        final Entry[] entries = mEntries;
+        final int index = indexOf(entries, key);
+        final Entry[] newEntries;
+        if (index >= 0) {
+            newEntries = entries.clone();
+        } else {
+            newEntries = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, newEntries, 0, entries.length);
+        }
+        newEntries[index >= 0 ? index : entries.length] = new Entry(key, listener, eventMask);
+        mEntries = newEntries;
+    }
+
+    /**
+     * @param key Listener added by {@link #add(AuthenticationEventListener, int)} or the key passed
+     *            to {@link #add(Object, AuthenticationEventListener, int)}.
+     * @return true if the listener was registered.
+     */
+    synchronized boolean remove(@NonNull final Object key) {
+        final Entry[] entries = mEntries;
+        final int index = indexOf(entries, key);
+        if (index < 0) return false;
+
+        final Entry[] newEntries = new Entry[entries.length - 1];
+        System.arraycopy(entries, 0, newEntries, 0, index);
+        System.arraycopy(entries, index + 1, newEntries, index, entries.length - index - 1);
+        mEntries = newEntries;
+        return true;
+    }
+
+    /**
+     * @return Number of the registered listeners.
+     */
+    int size() {
+        return mEntries.length;
+    }
+
+    /**
+     * @param listener  {@link AuthenticationEventListener} to deliver the events before the
+     *                  registered listeners.
+     * @param eventMask Mask of the event types to deliver to the listener.
+     * @return New set with the listener followed by the listeners of this set. Later changes of this
+     * set don't affect it.
+     */
+    @NonNull
+    EventListenerSet withFirst(@NonNull final AuthenticationEventListener listener, final int eventMask) {
+        final Entry[] entries = mEntries;
+        final Entry[] newEntries = new Entry[entries.length + 1];
+        newEntries[0] = new Entry(listener, listener, eventMask);
+        System.arraycopy(entries, 0, newEntries, 1, entries.length);
+        return new EventListenerSet(newEntries);
+    }
+
+    @Override
+    public void onEvent(@NonNull final AuthenticationEvent event) {
+        final int bit = AuthenticationEvent.maskOf(event.getType());
+
+        //Don't allocate the iterator.
+        final Entry[] entries = mEntries;
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0; i < entries.length; i++) {
+            if ((entries[i].mMask & bit) != 0) entries[i].mListener.onEvent(event);
+        }
+    }
+
+    private static int indexOf(@NonNull final Entry[] entries, @NonNull final Object key) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].mKey == key) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Registered listener with its key and mask. Immutable, so the array can be shared by the
+     * snapshots.
+     */
+    private static final class Entry {
+        @NonNull
+        private final Object mKey;
+        @NonNull
+        private final AuthenticationEventListener mListener;
+        private final int mMask;
+
+        private Entry(@NonNull final Object key,
+                      @NonNull final AuthenticationEventListener listener,
+                      final int mask) {
+            mKey = key;
+            mListener = listener;
+            mMask = mask;
+        }
+    }
+}
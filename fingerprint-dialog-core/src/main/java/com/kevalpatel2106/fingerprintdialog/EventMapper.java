@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.SuppressLint;
+import android.hardware.fingerprint.FingerprintManager;
+
+/**
+ * Lookup tables from the platform error and help codes to the {@link EventType} and
+ * {@link EventCategory}. {@link FingerprintManager} and
+ * {@link android.hardware.biometrics.BiometricPrompt} share the same values for their error and
+ * acquired codes, so one table serves both the paths. Codes outside the tables (e.g. vendor codes
+ * starting at 1000) are generic errors.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("deprecation")
+@SuppressLint("InlinedApi")
+final class EventMapper {
+
+    /**
+     * Size of the error tables. Largest error code is
+     * {@link FingerprintManager#FINGERPRINT_ERROR_HW_NOT_PRESENT}.
+     */
+    private static final int ERROR_TABLE_SIZE = FingerprintManager.FINGERPRINT_ERROR_HW_NOT_PRESENT + 1;
+
+    /**
+     * Size of the help tables. Largest help code is
+     * {@link FingerprintManager#FINGERPRINT_ACQUIRED_TOO_FAST}.
+     */
+    private static final int HELP_TABLE_SIZE = FingerprintManager.FINGERPRINT_ACQUIRED_TOO_FAST + 1;
+
+    private static final int[] ERROR_TYPES = new int[ERROR_TABLE_SIZE];
+    private static final int[] ERROR_CATEGORIES = new int[ERROR_TABLE_SIZE];
+    private static final int[] HELP_CATEGORIES = new int[HELP_TABLE_SIZE];
+    private static final boolean[] TERMINAL_TYPES = new boolean[AuthenticationEvent.TYPE_COUNT];
+    private static final int[] TERMINAL_STATES = new int[AuthenticationEvent.TYPE_COUNT];
+
+    static {
+        for (int i = 0; i < ERROR_TABLE_SIZE; i++) {
+            ERROR_TYPES[i] = AuthenticationEvent.TYPE_ERROR;
+            ERROR_CATEGORIES[i] = AuthenticationEvent.CATEGORY_SYSTEM;
+        }
+        error(FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE,
+                AuthenticationEvent.TYPE_NOT_SUPPORTED, AuthenticationEvent.CATEGORY_HARDWARE);
+        error(FingerprintManager.FINGERPRINT_ERROR_HW_NOT_PRESENT,
+                AuthenticationEvent.TYPE_NOT_SUPPORTED, AuthenticationEvent.CATEGORY_HARDWARE);
+        error(FingerprintManager.FINGERPRINT_ERROR_NO_FINGERPRINTS,
+                AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED, AuthenticationEvent.CATEGORY_ENROLLMENT);
+        error(FingerprintManager.FINGERPRINT_ERROR_USER_CANCELED,
+                AuthenticationEvent.TYPE_CANCELED, AuthenticationEvent.CATEGORY_USER);
+        error(FingerprintManager.FINGERPRINT_ERROR_CANCELED,
+                AuthenticationEvent.TYPE_CANCELED, AuthenticationEvent.CATEGORY_SYSTEM);
+        error(FingerprintManager.FINGERPRINT_ERROR_LOCKOUT,
+                AuthenticationEvent.TYPE_ERROR, AuthenticationEvent.CATEGORY_LOCKOUT);
+        error(FingerprintManager.FINGERPRINT_ERROR_LOCKOUT_PERMANENT,
+                AuthenticationEvent.TYPE_ERROR, AuthenticationEvent.CATEGORY_LOCKOUT);
+        error(FingerprintManager.FINGERPRINT_ERROR_TIMEOUT,
+                AuthenticationEvent.TYPE_ERROR, AuthenticationEvent.CATEGORY_TRANSIENT);
+        error(FingerprintManager.FINGERPRINT_ERROR_UNABLE_TO_PROCESS,
+                AuthenticationEvent.TYPE_ERROR, AuthenticationEvent.CATEGORY_TRANSIENT);
+
+        for (int i = 0; i < HELP_TABLE_SIZE; i++) {
+            HELP_CATEGORIES[i] = AuthenticationEvent.CATEGORY_TRANSIENT;
+        }
+        HELP_CATEGORIES[FingerprintManager.FINGERPRINT_ACQUIRED_GOOD] = AuthenticationEvent.CATEGORY_NONE;
+        HELP_CATEGORIES[FingerprintManager.FINGERPRINT_ACQUIRED_IMAGER_DIRTY] = AuthenticationEvent.CATEGORY_HARDWARE;
+
+        TERMINAL_TYPES[AuthenticationEvent.TYPE_NOT_SUPPORTED] = true;
+        TERMINAL_TYPES[AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED] = true;
+        TERMINAL_TYPES[AuthenticationEvent.TYPE_ERROR] = true;
+        TERMINAL_TYPES[AuthenticationEvent.TYPE_CANCELED] = true;
+        TERMINAL_TYPES[AuthenticationEvent.TYPE_SUCCEEDED] = true;
+
+        TERMINAL_STATES[AuthenticationEvent.TYPE_NOT_SUPPORTED] = AuthenticationSession.STATE_FAILED;
+        TERMINAL_STATES[AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED] = AuthenticationSession.STATE_FAILED;
+        TERMINAL_STATES[AuthenticationEvent.TYPE_ERROR] = AuthenticationSession.STATE_FAILED;
+        TERMINAL_STATES[AuthenticationEvent.TYPE_CANCELED] = AuthenticationSession.STATE_CANCELLED;
+        TERMINAL_STATES[AuthenticationEvent.TYPE_SUCCEEDED] = AuthenticationSession.STATE_SUCCEEDED;
+    }
+
+    private EventMapper() {
+        throw new RuntimeException("Cannot instantiate EventMapper.");
+    }
+
+    private static void error(final int errorCode,
+                              @EventType final int type,
+                              @EventCategory final int category) {
+        ERROR_TYPES[errorCode] = type;
+        ERROR_CATEGORIES[errorCode] = category;
+    }
+
+    /**
+     * @param errorCode Error code reported by the platform.
+     * @return {@link EventType} of the error.
+     */
+    @EventType
+    static int errorType(final int errorCode) {
+        return errorCode >= 0 && errorCode < ERROR_TABLE_SIZE
+                ? ERROR_TYPES[errorCode]
+                : AuthenticationEvent.TYPE_ERROR;
+    }
+
+    /**
+     * @param errorCode Error code reported by the platform.
+     * @return {@link EventCategory} of the error.
+     */
+    @EventCategory
+    static int errorCategory(final int errorCode) {
+        return errorCode >= 0 && errorCode < ERROR_TABLE_SIZE
+                ? ERROR_CATEGORIES[errorCode]
+                : AuthenticationEvent.CATEGORY_SYSTEM;
+    }
+
+    /**
+     * @param helpCode Help code reported by the platform.
+     * @return {@link EventCategory} of the help event.
+     */
+    @EventCategory
+    static int helpCategory(final int helpCode) {
+        return helpCode >= 0 && helpCode < HELP_TABLE_SIZE
+                ? HELP_CATEGORIES[helpCode]
+                : AuthenticationEvent.CATEGORY_TRANSIENT;
+    }
+
+    /**
+     * @param type {@link EventType}
+     * @return true if the authentication stops after the event of this type.
+     */
+    static boolean isTerminal(@EventType final int type) {
+        return TERMINAL_TYPES[type];
+    }
+
+    /**
+     * @param type Terminal {@link EventType}
+     * @return {@link SessionState} the session moves to after the event of this type.
+     */
+    @SessionState
+    static int terminalState(@EventType final int type) {
+        return TERMINAL_STATES[type];
+    }
+}
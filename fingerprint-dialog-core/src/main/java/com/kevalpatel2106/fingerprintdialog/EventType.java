@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Normalized type of the {@link AuthenticationEvent}. Every type maps to one method of the
+ * {@link AuthenticationCallback}.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@IntDef({
+        AuthenticationEvent.TYPE_NOT_SUPPORTED,
+        AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED,
+        AuthenticationEvent.TYPE_ERROR,
+        AuthenticationEvent.TYPE_CANCELED,
+        AuthenticationEvent.TYPE_SUCCEEDED,
+        AuthenticationEvent.TYPE_HELP,
+        AuthenticationEvent.TYPE_FAILED
+})
+public @interface EventType {
+}
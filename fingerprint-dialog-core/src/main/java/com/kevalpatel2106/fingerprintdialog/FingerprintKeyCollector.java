@@ -0,0 +1,253 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * Owner of the key store keys of the prompt. The prompt reuses one key across the launches and
+ * replaces it once it is older than the rotation age (1 week by default) or was used by the
+ * configured number of prompts. Replaced keys, keys that were invalidated by a new enrollment and
+ * keys of the library left without an index entry are deleted on a background thread, in small
+ * batches, so the key store daemon stays responsive for the running prompts.
+ * <p>
+ * The collection runs on its own after the first prompt of the process and after every rotation.
+ * The keys of the {@link FingerprintKeyPool} and the keys of the application are never touched.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+@TargetApi(Build.VERSION_CODES.M)
+public final class FingerprintKeyCollector {
+    private static final String PREF_NAME = "fingerprint_dialog_key_index";
+
+    /**
+     * Keys deleted before the collector pauses.
+     */
+    static final int BATCH_SIZE = 16;
+    private static final long BATCH_PAUSE_MILLIS = 50;
+
+    /**
+     * Alias of the key generated by the older versions of the library, a new one for every process.
+     */
+    private static final Pattern LEGACY_ALIAS = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    @Nullable
+    private static FingerprintKeyCollector sInstance;
+
+    @NonNull
+    private final FingerprintKeyStore mKeyStore;
+
+    @NonNull
+    private final KeyAliasIndex mIndex;
+
+    private final long mBatchPauseMillis;
+
+    @NonNull
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "FingerprintDialogCompat-keygc");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Collection that is queued or running or null.
+     */
+    @Nullable
+    private Future<Integer> mPending;
+
+    /**
+     * True if the prompt already acquired a key in this process.
+     */
+    private boolean isAcquired = false;
+
+    private volatile boolean isCollectLegacyKeys = false;
+
+    @VisibleForTesting
+    FingerprintKeyCollector(@NonNull final FingerprintKeyStore keyStore,
+                            @NonNull final KeyAliasIndex index,
+                            final long batchPauseMillis) {
+        mKeyStore = keyStore;
+        mIndex = index;
+        mBatchPauseMillis = batchPauseMillis;
+    }
+
+    /**
+     * @param context {@link Context} of the caller.
+     * @return {@link FingerprintKeyCollector} shared by the whole process.
+     */
+    @NonNull
+    public static synchronized FingerprintKeyCollector get(@NonNull final Context context) {
+        if (sInstance == null) {
+            final KeyAliasIndex index = new KeyAliasIndex(
+                    new KeyAliasIndex.PreferencesStore(context.getApplicationContext()
+                            .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)),
+                    new KeyAliasIndex.Clock() {
+                        @Override
+                        public long currentTimeMillis() {
+                            return System.currentTimeMillis();
+                        }
+                    },
+                    KeyAliasIndex.DEFAULT_GRACE_MILLIS);
+            sInstance = new FingerprintKeyCollector(new FingerprintKeyStore(), index, BATCH_PAUSE_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Set when the key of the prompt is replaced. Default is 1 week and no use limit.
+     *
+     * @param maxAgeMillis Age of the key after which the next prompt generates a new key.
+     * @param maxUses      Number of prompts after which the next prompt generates a new key or 0
+     *                     for no limit.
+     * @return This instance.
+     */
+    @NonNull
+    public FingerprintKeyCollector setRotationPolicy(final long maxAgeMillis, final int maxUses) {
+        mIndex.setRotationPolicy(maxAgeMillis, maxUses);
+        return this;
+    }
+
+    /**
+     * Older versions of the library generated a key with a random UUID alias on every launch and
+     * never deleted it. Enable this to delete them too. Leave it disabled if the application
+     * generates the keys with the UUID aliases on its own.
+     *
+     * @param collectLegacyKeys true to delete the keys with the UUID aliases. Default is false.
+     * @return This instance.
+     */
+    @NonNull
+    public FingerprintKeyCollector setCollectLegacyKeys(final boolean collectLegacyKeys) {
+        isCollectLegacyKeys = collectLegacyKeys;
+        return this;
+    }
+
+    /**
+     * Delete the unused keys of the library on the background thread. Joins the collection that is
+     * already queued.
+     *
+     * @return {@link Future} with the number of the deleted keys.
+     */
+    @NonNull
+    public synchronized Future<Integer> collect() {
+        if (mPending != null && !mPending.isDone()) return mPending;
+
+        mPending = mExecutor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return collectNow();
+            }
+        });
+        return mPending;
+    }
+
+    /**
+     * Hand out the key alias for the prompt. Starts the collection after the first prompt of the
+     * process and after the rotation.
+     *
+     * @return {@link KeyAliasIndex.Lease} of the alias. The key has to be generated if it is new.
+     */
+    @WorkerThread
+    @NonNull
+    KeyAliasIndex.Lease acquire() {
+        final KeyAliasIndex.Lease lease = mIndex.acquire();
+
+        final boolean isFirst;
+        synchronized (this) {
+            isFirst = !isAcquired;
+            isAcquired = true;
+        }
+        if (isFirst || lease.isNew()) collect();
+        return lease;
+    }
+
+    /**
+     * Stop handing out the alias, its key is deleted by the next collection.
+     *
+     * @param alias Alias of the key that cannot be used anymore.
+     */
+    void retire(@NonNull final String alias) {
+        mIndex.retire(alias);
+    }
+
+    @WorkerThread
+    private int collectNow() {
+        //List the key store before reading the index. The alias is indexed before its key is
+        //generated, so a key generated in the meantime is never taken for an orphan.
+        final List<String> keyStoreAliases = mKeyStore.aliases();
+        final Set<String> indexed = mIndex.aliases();
+
+        final List<String> candidates = new ArrayList<>(mIndex.collectable());
+        final boolean isCollectLegacy = isCollectLegacyKeys;
+        for (String alias : keyStoreAliases) {
+            if (indexed.contains(alias)) continue;
+
+            if (alias.startsWith(KeyAliasIndex.ALIAS_PREFIX)
+                    || (isCollectLegacy && LEGACY_ALIAS.matcher(alias).matches())) {
+                candidates.add(alias);
+            }
+        }
+
+        int deletedCount = 0;
+        for (int start = 0; start < candidates.size(); start += BATCH_SIZE) {
+            if (start > 0 && !pause()) break;
+
+            final List<String> deleted = new ArrayList<>();
+            for (String alias : candidates.subList(start, Math.min(start + BATCH_SIZE, candidates.size()))) {
+                if (mKeyStore.deleteKey(alias)) deleted.add(alias);
+            }
+            mIndex.forget(deleted);
+            deletedCount += deleted.size();
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Leave the key store daemon to the running prompts between two batches.
+     *
+     * @return false if the collection was interrupted.
+     */
+    private boolean pause() {
+        if (mBatchPauseMillis <= 0) return true;
+
+        try {
+            Thread.sleep(mBatchPauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
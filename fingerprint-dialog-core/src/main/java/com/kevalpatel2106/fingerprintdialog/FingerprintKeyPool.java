@@ -0,0 +1,333 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+
+/**
+ * Pool of the fingerprint bound keys, one for each account of the application. Initializing the
+ * {@link Cipher} of the key store key takes tens of milliseconds, so the pool keeps a bounded LRU
+ * cache of the initialized ciphers and prepares them on a small worker pool.
+ * <p>
+ * Pass the cipher returned by {@link #forKey(String)} to
+ * {@link BaseFingerprintBuilder#setCipher(Cipher)} to authenticate the user with the key of the
+ * account. Every cipher is handed out only once and the next one is prepared in the background.
+ * <p>
+ * Call {@link #register(Context)} to release the cached ciphers when the system is low on memory.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+@TargetApi(Build.VERSION_CODES.M)
+public final class FingerprintKeyPool implements ComponentCallbacks2 {
+
+    /**
+     * Prefix of the key store alias of every account key.
+     */
+    static final String KEY_ALIAS_PREFIX = "fingerprint_dialog_compat.";
+
+    private static final int DEFAULT_MAX_SIZE = 8;
+    private static final int WORKER_COUNT = 2;
+    private static final int KEY_LOCK_STRIPES = 16;
+
+    @NonNull
+    private final FingerprintKeyStore mKeyStore;
+
+    /**
+     * Initialized ciphers by the account id. Access ordered, so the eldest entry is the least
+     * recently used one.
+     */
+    @NonNull
+    private final LinkedHashMap<String, Cipher> mCache;
+
+    @NonNull
+    private final ExecutorService mWorkers;
+
+    /**
+     * Locks striped by the account id, so two workers never generate the key of the same account.
+     * Striped, so the accounts that come and go don't grow the locks.
+     */
+    @NonNull
+    private final Object[] mKeyLocks = newLocks(KEY_LOCK_STRIPES);
+
+    private final int mMaxSize;
+
+    /**
+     * Create the pool that caches up to 8 ciphers.
+     */
+    public FingerprintKeyPool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize Maximum number of the initialized ciphers to keep in the memory.
+     */
+    public FingerprintKeyPool(final int maxSize) {
+        this(new FingerprintKeyStore(), maxSize);
+    }
+
+    @VisibleForTesting
+    FingerprintKeyPool(@NonNull final FingerprintKeyStore keyStore, final int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("Max size must be positive.");
+
+        mKeyStore = keyStore;
+        mMaxSize = maxSize;
+        mCache = new LinkedHashMap<String, Cipher>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Cipher> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        mWorkers = Executors.newFixedThreadPool(WORKER_COUNT, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "FingerprintKeyPool-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param accountId Id of the account.
+     * @return Key store alias of the account key.
+     */
+    @NonNull
+    static String aliasOf(@NonNull final String accountId) {
+        return KEY_ALIAS_PREFIX + accountId;
+    }
+
+    /**
+     * Get the initialized {@link Cipher} of the account key. The key is generated if the account
+     * doesn't have one yet. If the cipher is not in the cache, it will be initialized on the
+     * caller thread.
+     *
+     * @param accountId Id of the account.
+     * @return Initialized {@link Cipher} or null if the key cannot be used. (e.g. It was invalidated
+     * because the user enrolled a new fingerprint.)
+     */
+    @Nullable
+    public Cipher forKey(@NonNull final String accountId) {
+        Cipher cipher;
+        synchronized (mCache) {
+            cipher = mCache.remove(accountId);
+        }
+
+        if (cipher == null) cipher = createCipher(accountId);
+        if (cipher != null) warmAsync(accountId);
+        return cipher;
+    }
+
+    /**
+     * Get the {@link Cipher} of the account key initialized for the decryption. It depends on the IV
+     * of the encrypted data, so it is never cached and it is initialized on the caller thread.
+     *
+     * @param accountId Id of the account.
+     * @param iv        IV of the encrypted data.
+     * @return Initialized {@link Cipher} or null if the key is missing or cannot be used.
+     */
+    @Nullable
+    public Cipher forDecryption(@NonNull final String accountId, @NonNull final byte[] iv) {
+        return mKeyStore.createDecryptCipher(aliasOf(accountId), iv);
+    }
+
+    /**
+     * Generate the keys and initialize the ciphers of the accounts in parallel on the worker pool.
+     * Call this once the accounts sign in.
+     *
+     * @param accountIds Ids of the accounts.
+     * @return {@link Future} for each account telling whether the cipher is ready.
+     */
+    @NonNull
+    public List<Future<Boolean>> prepare(@NonNull final Collection<String> accountIds) {
+        final List<Future<Boolean>> futures = new ArrayList<>(accountIds.size());
+        for (final String accountId : accountIds) {
+            futures.add(mWorkers.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return warm(accountId);
+                }
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Delete the key of the account. Use it when the account signs out.
+     *
+     * @param accountId Id of the account.
+     * @return true if the key is deleted.
+     */
+    public boolean deleteKey(@NonNull final String accountId) {
+        synchronized (mCache) {
+            mCache.remove(accountId);
+        }
+        synchronized (keyLockOf(accountId)) {
+            return mKeyStore.deleteKey(aliasOf(accountId));
+        }
+    }
+
+    /**
+     * @return Number of the initialized ciphers in the cache.
+     */
+    public int size() {
+        synchronized (mCache) {
+            return mCache.size();
+        }
+    }
+
+    /**
+     * Remove the least recently used ciphers until the cache has at most given number of entries.
+     *
+     * @param maxEntries Number of the entries to keep.
+     */
+    public void trimToSize(final int maxEntries) {
+        synchronized (mCache) {
+            final Iterator<String> iterator = mCache.keySet().iterator();
+            while (mCache.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all the initialized ciphers from the cache. Keys stay in the key store.
+     */
+    public void evictAll() {
+        trimToSize(0);
+    }
+
+    /**
+     * Listen for the memory pressure of the application.
+     *
+     * @param context Any {@link Context}. Only the application context is retained.
+     */
+    public void register(@NonNull final Context context) {
+        context.getApplicationContext().registerComponentCallbacks(this);
+    }
+
+    /**
+     * Stop listening for the memory pressure.
+     *
+     * @param context Any {@link Context}.
+     */
+    public void unregister(@NonNull final Context context) {
+        context.getApplicationContext().unregisterComponentCallbacks(this);
+    }
+
+    /**
+     * Evict all the ciphers and stop the workers. The pool cannot prepare ciphers after this call.
+     */
+    public void shutdown() {
+        mWorkers.shutdownNow();
+        evictAll();
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            //Application is in the background or the system is about to kill it.
+            evictAll();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(size() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(final Configuration newConfig) {
+        //Do nothing.
+    }
+
+    private void warmAsync(@NonNull final String accountId) {
+        if (mWorkers.isShutdown()) return;
+
+        mWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                warm(accountId);
+            }
+        });
+    }
+
+    /**
+     * Initialize the cipher of the account and put it in the cache.
+     *
+     * @return true if the cipher is ready.
+     */
+    private boolean warm(@NonNull final String accountId) {
+        synchronized (mCache) {
+            if (mCache.containsKey(accountId)) return true;
+        }
+
+        final Cipher cipher = createCipher(accountId);
+        if (cipher == null) return false;
+
+        synchronized (mCache) {
+            mCache.put(accountId, cipher);
+        }
+        return true;
+    }
+
+    @Nullable
+    private Cipher createCipher(@NonNull final String accountId) {
+        final String alias = aliasOf(accountId);
+
+        synchronized (keyLockOf(accountId)) {
+            if (!mKeyStore.containsAlias(alias) && !mKeyStore.generateKey(alias)) return null;
+        }
+        return mKeyStore.createCipher(alias);
+    }
+
+    @NonNull
+    private Object keyLockOf(@NonNull final String accountId) {
+        return mKeyLocks[(accountId.hashCode() & Integer.MAX_VALUE) % mKeyLocks.length];
+    }
+
+    @NonNull
+    private static Object[] newLocks(final int count) {
+        final Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) locks[i] = new Object();
+        return locks;
+    }
+}
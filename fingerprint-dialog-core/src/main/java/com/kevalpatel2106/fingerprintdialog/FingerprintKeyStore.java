@@ -0,0 +1,254 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.ProviderException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * Access to the fingerprint bound AES keys in the {@link #ANDROID_KEY_STORE}. The loaded
+ * {@link KeyStore} is cached, so {@link KeyStore#load(KeyStore.LoadStoreParameter)} runs only once
+ * per instance.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@TargetApi(Build.VERSION_CODES.M)
+class FingerprintKeyStore {
+
+    /**
+     * Name of the key store provider and the key store type.
+     */
+    static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+
+    /**
+     * Transformation of the {@link Cipher} used for the {@link android.hardware.fingerprint.FingerprintManager.CryptoObject}.
+     */
+    static final String CIPHER_TRANSFORMATION = KeyProperties.KEY_ALGORITHM_AES + "/"
+            + KeyProperties.BLOCK_MODE_CBC + "/"
+            + KeyProperties.ENCRYPTION_PADDING_PKCS7;
+
+    /**
+     * Creates the {@link AlgorithmParameterSpec} to generate the key for the alias.
+     */
+    interface KeySpecFactory {
+
+        @NonNull
+        AlgorithmParameterSpec create(@NonNull final String alias);
+    }
+
+    /**
+     * AES/CBC/PKCS7 key that can be used only after the user authenticates with the fingerprint.
+     */
+    private static final KeySpecFactory AUTH_BOUND_AES_KEY = new KeySpecFactory() {
+        @NonNull
+        @Override
+        public AlgorithmParameterSpec create(@NonNull final String alias) {
+            return new KeyGenParameterSpec.Builder(alias,
+                    KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                    .setBlockModes(KeyProperties.BLOCK_MODE_CBC)
+                    .setUserAuthenticationRequired(true)
+                    .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_PKCS7)
+                    .build();
+        }
+    };
+
+    @NonNull
+    private final String mProvider;
+
+    @NonNull
+    private final KeySpecFactory mKeySpecFactory;
+
+    /**
+     * Loaded {@link KeyStore} or null if it is not loaded yet.
+     */
+    @Nullable
+    private KeyStore mKeyStore;
+
+    FingerprintKeyStore() {
+        this(ANDROID_KEY_STORE, AUTH_BOUND_AES_KEY);
+    }
+
+    @VisibleForTesting
+    FingerprintKeyStore(@NonNull final String provider, @NonNull final KeySpecFactory keySpecFactory) {
+        mProvider = provider;
+        mKeySpecFactory = keySpecFactory;
+    }
+
+    /**
+     * @return Loaded {@link KeyStore} or null if the key store is not available.
+     */
+    @Nullable
+    private synchronized KeyStore keyStore() {
+        if (mKeyStore == null) {
+            try {
+                final KeyStore keyStore = KeyStore.getInstance(mProvider);
+                keyStore.load(null);
+                mKeyStore = keyStore;
+            } catch (GeneralSecurityException | IOException e) {
+                return null;
+            }
+        }
+        return mKeyStore;
+    }
+
+    /**
+     * Load the key store. The other operations load it lazily, this is for the callers that want to
+     * measure or time out the load on its own.
+     *
+     * @return true if the key store is available.
+     */
+    @WorkerThread
+    boolean load() {
+        return keyStore() != null;
+    }
+
+    /**
+     * Generate new key for the alias. Existing key of the alias will be replaced.
+     *
+     * @param alias Alias of the key.
+     * @return true if the key generated successfully.
+     */
+    @WorkerThread
+    boolean generateKey(@NonNull final String alias) {
+        if (keyStore() == null) return false;
+
+        try {
+            final KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, mProvider);
+            keyGenerator.init(mKeySpecFactory.create(alias));
+            keyGenerator.generateKey();
+            return true;
+        } catch (GeneralSecurityException | ProviderException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param alias Alias of the key.
+     * @return true if the key store has the key for the alias.
+     */
+    boolean containsAlias(@NonNull final String alias) {
+        final KeyStore keyStore = keyStore();
+        if (keyStore == null) return false;
+
+        try {
+            return keyStore.containsAlias(alias);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Every alias in the key store, including the aliases of the application. Empty if the
+     * key store is not available.
+     */
+    @WorkerThread
+    @NonNull
+    List<String> aliases() {
+        final KeyStore keyStore = keyStore();
+        if (keyStore == null) return Collections.emptyList();
+
+        try {
+            return new ArrayList<>(Collections.list(keyStore.aliases()));
+        } catch (GeneralSecurityException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Create the {@link Cipher} initialized for the encryption with the key of the alias.
+     *
+     * @param alias Alias of the key.
+     * @return Initialized {@link Cipher} or null if the key is missing or cannot be used anymore.
+     */
+    @WorkerThread
+    @Nullable
+    Cipher createCipher(@NonNull final String alias) {
+        final KeyStore keyStore = keyStore();
+        if (keyStore == null) return null;
+
+        try {
+            final SecretKey key = (SecretKey) keyStore.getKey(alias, null);
+            if (key == null) return null;
+
+            final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key);
+            return cipher;
+        } catch (GeneralSecurityException | ProviderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create the {@link Cipher} initialized for the decryption of the data encrypted with the key of
+     * the alias.
+     *
+     * @param alias Alias of the key.
+     * @param iv    IV of the encrypted data. (i.e. {@link Cipher#getIV()} of the encryption cipher)
+     * @return Initialized {@link Cipher} or null if the key is missing or cannot be used anymore.
+     */
+    @Nullable
+    Cipher createDecryptCipher(@NonNull final String alias, @NonNull final byte[] iv) {
+        final KeyStore keyStore = keyStore();
+        if (keyStore == null) return null;
+
+        try {
+            final SecretKey key = (SecretKey) keyStore.getKey(alias, null);
+            if (key == null) return null;
+
+            final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+            return cipher;
+        } catch (GeneralSecurityException | ProviderException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Delete the key of the alias.
+     *
+     * @param alias Alias of the key.
+     * @return true if the key is not in the key store anymore.
+     */
+    boolean deleteKey(@NonNull final String alias) {
+        final KeyStore keyStore = keyStore();
+        if (keyStore == null) return false;
+
+        try {
+            keyStore.deleteEntry(alias);
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+/**
+ * Builder for the fingerprint prompt that doesn't need the AppCompat dialog. It shows the system
+ * {@link android.hardware.biometrics.BiometricPrompt} on Android P and above. On older android
+ * versions {@link AuthenticationCallback#fingerprintAuthenticationNotSupported()} is called, so
+ * use the FingerprintDialogBuilder of the fingerprint-dialog-compat module to support them.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class FingerprintPromptBuilder extends BaseFingerprintBuilder<FingerprintPromptBuilder> {
+
+    /**
+     * Reports the prompt as not supported below Android P.
+     */
+    private static final CompatPrompt NOT_SUPPORTED = new CompatPrompt() {
+        @NonNull
+        @Override
+        public AuthenticationHandle show(@NonNull final AuthenticationSession session) {
+            session.dispatchNotSupported(session.begin());
+            return new AuthenticationHandle(session, null);
+        }
+    };
+
+    /**
+     * Public constructor.
+     *
+     * @param context {@link Context} of the caller.
+     */
+    public FingerprintPromptBuilder(@NonNull final Context context) {
+        super(context);
+    }
+
+    /**
+     * Show the {@link android.hardware.biometrics.BiometricPrompt}.
+     *
+     * @param authenticationCallback {@link AuthenticationCallback} to receive the result.
+     * @return {@link AuthenticationHandle} to cancel the prompt or check if it is still active.
+     */
+    @NonNull
+    public AuthenticationHandle show(@NonNull final AuthenticationCallback authenticationCallback) {
+        return show(new EventDispatcher(authenticationCallback));
+    }
+
+    /**
+     * Show the {@link android.hardware.biometrics.BiometricPrompt} and deliver the normalized
+     * {@link AuthenticationEvent}s instead of the {@link AuthenticationCallback}.
+     *
+     * @param eventListener {@link AuthenticationEventListener} to receive the events.
+     * @return {@link AuthenticationHandle} to cancel the prompt or check if it is still active.
+     */
+    @NonNull
+    public AuthenticationHandle show(@NonNull final AuthenticationEventListener eventListener) {
+        return authenticate(eventListener, NOT_SUPPORTED);
+    }
+}
@@ -0,0 +1,642 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.kevalpatel2106.fingerprintdialog.core.R;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.crypto.Cipher;
+
+/**
+ * Scan logic of the prompt below Android P, shared by the FingerprintDialogCompatV23 and the
+ * FingerprintAuthView of the UI module and the {@link FingerprintScanEngine}. Prepares the
+ * {@link Cipher}, arms the sensor and routes the platform callbacks through the
+ * {@link AuthenticationSession}. The {@link Host} only displays the status and closes the UI.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("deprecation")
+@TargetApi(Build.VERSION_CODES.M)
+final class FingerprintScanController {
+    /**
+     * {@link FingerprintKeyStore} shared by all the prompts, so the key store is loaded only once.
+     */
+    private static final FingerprintKeyStore KEY_STORE = new FingerprintKeyStore();
+
+    /**
+     * Prepares the {@link Cipher} of the next session of the continuous prompt, while the sensor
+     * waits for the finger.
+     */
+    private static final ExecutorService CRYPTO_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "FingerprintDialogCompat-crypto");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Runs the key store and sensor calls off the main thread, so a stalled call never blocks the
+     * UI and the {@link AuthenticationWatchdog} can close the prompt. Cached, so a stalled call
+     * doesn't block the next prompt.
+     */
+    private static final ExecutorService AUTH_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "FingerprintDialogCompat-auth");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * UI that hosts the scan.
+     */
+    interface Host {
+
+        /**
+         * Display the status of the scan. Empty status clears it.
+         *
+         * @param status Status text to display.
+         */
+        void showStatus(@NonNull final CharSequence status);
+
+        /**
+         * @return true if the UI is still visible to the user. Hosts without the status text return
+         * false, so the terminal error closes them right away.
+         */
+        boolean isShowing();
+
+        /**
+         * Close the UI after the terminal event. The sensor is already released.
+         */
+        void close();
+    }
+
+    @NonNull
+    private final Host mHost;
+
+    /**
+     * {@link Handler} to post the {@link #mStatusTextRunnable} and the platform callbacks. Same
+     * instance posts and removes the runnable, so the pending runnable never keeps the host alive
+     * after it is stopped.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Application {@link Context}, so the running scan never keeps the activity.
+     */
+    @Nullable
+    private Context mContext;
+
+    /**
+     * {@link AuthenticationSession} to notify the parent caller about the authentication status.
+     * All the platform callbacks go through this session, so only the events of the running scan
+     * reach the caller and exactly one terminal event is delivered.
+     */
+    @Nullable
+    private AuthenticationSession mSession;
+
+    /**
+     * {@link Cipher} provided by the caller to authenticate with the fingerprint or null to use the
+     * key of the library.
+     */
+    @Nullable
+    private Cipher mCipher;
+
+    /**
+     * {@link Cipher} of the next session of the continuous prompt or null.
+     */
+    @Nullable
+    private volatile Future<Cipher> mNextCipher;
+
+    /**
+     * Alias of the key of the library used by the running scan or null.
+     */
+    @Nullable
+    private volatile String mKeyAlias;
+
+    /**
+     * {@link CancellationSignal} for finger print authentication. Set on the {@link #AUTH_EXECUTOR}.
+     */
+    @Nullable
+    private volatile CancellationSignal mCancellationSignal;
+
+    /**
+     * {@link AuthenticationWatchdog} with the deadlines of the key store and sensor calls.
+     */
+    @NonNull
+    private AuthenticationWatchdog mWatchdog = new AuthenticationWatchdog();
+
+    @Nullable
+    private Runnable mStatusTextRunnable;
+
+    FingerprintScanController(@NonNull final Host host) {
+        mHost = host;
+    }
+
+    /**
+     * @param session {@link AuthenticationSession} to deliver the events.
+     */
+    void setSession(@Nullable final AuthenticationSession session) {
+        mSession = session;
+    }
+
+    /**
+     * @return true if there is a session to scan for.
+     */
+    boolean hasSession() {
+        return mSession != null;
+    }
+
+    /**
+     * @return {@link Tracer} of the session or {@link Tracer#NONE} if there is no session.
+     */
+    @NonNull
+    Tracer getTracer() {
+        final AuthenticationSession session = mSession;
+        return session == null ? Tracer.NONE : session.getTracer();
+    }
+
+    /**
+     * @param stats {@link FrameStats} of the host window to report to the session.
+     */
+    void reportFrameStats(@NonNull final FrameStats stats) {
+        final AuthenticationSession session = mSession;
+        if (session != null) session.reportFrameStats(stats);
+    }
+
+    /**
+     * @param cipher Initialized {@link Cipher} to authenticate with or null to use the key of the
+     *               library.
+     */
+    void setCipher(@Nullable final Cipher cipher) {
+        mCipher = cipher;
+    }
+
+    /**
+     * @param watchdog {@link AuthenticationWatchdog} with the deadlines configured on the builder.
+     */
+    void setWatchdog(@NonNull final AuthenticationWatchdog watchdog) {
+        mWatchdog = watchdog;
+    }
+
+    /**
+     * Arm the sensor if the session is not running yet. Call it when the host becomes visible.
+     * Calling it while the scan is running does nothing.
+     *
+     * @param context {@link Context} of the host.
+     */
+    @MainThread
+    void start(@NonNull final Context context) {
+        final AuthenticationSession session = mSession;
+        if (session == null) return;
+        mContext = context.getApplicationContext();
+
+        int attempt = session.begin();
+
+        //Continuous prompt paused between two sessions.
+        if (attempt == AuthenticationSession.NO_ATTEMPT && session.rearm()) attempt = session.begin();
+
+        if (attempt == AuthenticationSession.NO_ATTEMPT) {
+            //Session already finished. (e.g. Cancelled before the prompt was displayed.)
+            if (session.isTerminal()) close();
+            return;
+        }
+
+        //Check if the device has fingerprint supported hardware.
+        if (FingerprintUtils.isSupportedHardware(mContext)) {
+
+            //Device has supported hardware. Start fingerprint authentication.
+            startAuth(mContext, session, attempt);
+        } else {
+            session.dispatchNotSupported(attempt);
+            close();
+        }
+    }
+
+    /**
+     * Stop the finger print authentication. The running attempt of the {@link #mSession} is
+     * suspended, so the cancellation error reported by the platform for this call is dropped.
+     * It is safe to call this method multiple times.
+     */
+    @MainThread
+    void stop() {
+        if (mStatusTextRunnable != null) {
+            mHandler.removeCallbacks(mStatusTextRunnable);
+            mStatusTextRunnable = null;
+        }
+
+        if (mSession != null) mSession.suspend();
+
+        final CancellationSignal cancellationSignal = mCancellationSignal;
+        mCancellationSignal = null;
+        if (cancellationSignal != null) cancellationSignal.cancel();
+    }
+
+    /**
+     * Stop the scan and drop the {@link Cipher} prepared for the next session. Call it when the host
+     * is destroyed.
+     */
+    @MainThread
+    void release() {
+        stop();
+
+        final Future<Cipher> nextCipher = mNextCipher;
+        mNextCipher = null;
+        if (nextCipher != null) nextCipher.cancel(true);
+    }
+
+    /**
+     * User cancelled the prompt from the UI. Delivers
+     * {@link AuthenticationCallback#authenticationCanceledByUser()} and closes the host.
+     */
+    @MainThread
+    void cancel() {
+        if (mSession != null) mSession.cancel();
+        close();
+    }
+
+    /**
+     * Release the sensor and close the host.
+     */
+    @MainThread
+    void close() {
+        final Tracer tracer = getTracer();
+        tracer.beginSection(Tracer.SECTION_DISMISS);
+        try {
+            stop();
+            mHost.close();
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Start the finger print authentication by enabling the finger print sensor. The key store and
+     * the sensor are called on the {@link #AUTH_EXECUTOR}, every call under the deadline of its
+     * phase.
+     *
+     * @param context Application {@link Context}.
+     * @param session {@link AuthenticationSession} to deliver the events.
+     * @param attempt Attempt token returned by {@link AuthenticationSession#begin()}.
+     */
+    @MainThread
+    private void startAuth(@NonNull final Context context,
+                           @NonNull final AuthenticationSession session,
+                           final int attempt) {
+        final FingerprintManager fingerprintManager = (FingerprintManager) context.getSystemService(Context.FINGERPRINT_SERVICE);
+
+        //Cannot access the fingerprint manager.
+        if (fingerprintManager == null) {
+            session.dispatchNotSupported(attempt);
+            close();
+            return;
+        }
+
+        //No fingerprint enrolled.
+        if (!fingerprintManager.hasEnrolledFingerprints()) {
+            session.dispatchNoFingerprintEnrolled(attempt);
+            close();
+            return;
+        }
+
+        final Cipher providedCipher = mCipher;
+        final String notRecognised = context.getString(R.string.fingerprint_not_recognised);
+        final FingerprintManager.AuthenticationCallback authCallback = new FingerprintManager.AuthenticationCallback() {
+            @Override
+            public void onAuthenticationError(int errMsgId, CharSequence errString) {
+                if (session.dispatchError(attempt, errMsgId, errString)) {
+                    final boolean isRearmed = rearm(session);
+                    if (mHost.isShowing()) {
+                        displayStatusText(errString.toString(), !isRearmed);
+                    } else if (!isRearmed) {
+                        close();
+                    }
+                }
+            }
+
+            @Override
+            public void onAuthenticationHelp(int helpMsgId, CharSequence helpString) {
+                if (session.dispatchHelp(attempt, helpMsgId, helpString)) {
+                    displayStatusText(helpString.toString(), false);
+                }
+            }
+
+            @Override
+            public void onAuthenticationFailed() {
+                if (session.dispatchFailed(attempt)) {
+                    displayStatusText(notRecognised, false);
+                }
+            }
+
+            @Override
+            public void onAuthenticationSucceeded(FingerprintManager.AuthenticationResult result) {
+                if (session.dispatchSucceeded(attempt) && !rearm(session)) close();
+            }
+        };
+
+        //Deliver the terminal callback as soon as any phase misses its deadline. The stalled call
+        //keeps blocking the auth thread, its late result is dropped by the session.
+        final String notResponding = context.getString(R.string.fingerprint_not_responding);
+        final AuthenticationWatchdog.StallListener onStall = new AuthenticationWatchdog.StallListener() {
+            @Override
+            public void onStall(final int phase, final long deadlineMillis) {
+                session.reportStall(phase, deadlineMillis);
+                if (phase != AuthenticationMetrics.PHASE_AUTHENTICATE) {
+                    //Watchdog thread. The breaker is already loaded by the auth thread.
+                    KeyStoreCircuitBreaker.get(context).recordFailure();
+                }
+
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE, notResponding)) {
+                            close();
+                        }
+                    }
+                });
+            }
+        };
+
+        final AuthenticationWatchdog watchdog = mWatchdog;
+        final Tracer tracer = session.getTracer();
+        AUTH_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                //Both load their shared preferences from the disk on the first call. Keep them off
+                //the main thread.
+                final KeyStoreCircuitBreaker breaker = KeyStoreCircuitBreaker.get(context);
+                final FingerprintKeyCollector collector = FingerprintKeyCollector.get(context);
+
+                //Key store of this device build keeps failing. Fall back without the slow key generation.
+                if (providedCipher == null && !breaker.allowRequest()) {
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (session.dispatchNotSupported(attempt)) close();
+                        }
+                    });
+                    return;
+                }
+
+                final Cipher cipher = providedCipher != null
+                        ? providedCipher
+                        : cipherInit(session, watchdog, breaker, collector, onStall);
+                if (cipher == null) {
+                    //Cannot access the secure keystore. Dropped by the session if already stalled.
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (session.dispatchNotSupported(attempt)) close();
+                        }
+                    });
+                    return;
+                }
+
+                //Host paused while the cipher was prepared.
+                if (!session.isCurrent(attempt)) return;
+
+                final CancellationSignal cancellationSignal = new CancellationSignal();
+                mCancellationSignal = cancellationSignal;
+
+                final AuthenticationWatchdog.Deadline deadline = watchdog.start(AuthenticationMetrics.PHASE_AUTHENTICATE, onStall);
+                tracer.beginSection(Tracer.SECTION_AUTHENTICATE);
+                try {
+                    //noinspection MissingPermission
+                    fingerprintManager.authenticate(new FingerprintManager.CryptoObject(cipher),
+                            cancellationSignal,
+                            0,
+                            authCallback,
+                            mHandler);
+                } finally {
+                    tracer.endSection();
+                }
+
+                //Release the sensor if the call stalled or the host was paused in the meantime.
+                if (!completePhase(session, deadline) || !session.markScanning(attempt)) {
+                    cancellationSignal.cancel();
+                    return;
+                }
+
+                if (providedCipher == null && session.isContinuous()) prepareNextCipher();
+            }
+        });
+    }
+
+    /**
+     * Initialize the cipher of the key of the library. The key is reused across the launches until
+     * the {@link FingerprintKeyCollector} rotates it, so it is generated only for a new alias. Every
+     * key store call runs under the deadline of its phase.
+     *
+     * @param session   {@link AuthenticationSession} to report the timings.
+     * @param watchdog  {@link AuthenticationWatchdog} with the deadlines.
+     * @param breaker   {@link KeyStoreCircuitBreaker} to record the result of the key store.
+     * @param collector {@link FingerprintKeyCollector} that hands out the alias of the key.
+     * @param onStall   {@link AuthenticationWatchdog.StallListener} of the running attempt.
+     * @return Initialized {@link Cipher} or null if the key store is not available or stalled.
+     */
+    @WorkerThread
+    @Nullable
+    private Cipher cipherInit(@NonNull final AuthenticationSession session,
+                              @NonNull final AuthenticationWatchdog watchdog,
+                              @NonNull final KeyStoreCircuitBreaker breaker,
+                              @NonNull final FingerprintKeyCollector collector,
+                              @NonNull final AuthenticationWatchdog.StallListener onStall) {
+        final Tracer tracer = session.getTracer();
+
+        //Use the cipher prepared during the previous session of the continuous prompt.
+        AuthenticationWatchdog.Deadline deadline;
+        if (mNextCipher != null) {
+            deadline = watchdog.start(AuthenticationMetrics.PHASE_CIPHER_INIT, onStall);
+            final Cipher nextCipher;
+            tracer.beginSection(Tracer.SECTION_CIPHER_INIT);
+            try {
+                nextCipher = takeNextCipher();
+            } finally {
+                tracer.endSection();
+            }
+            if (!completePhase(session, deadline)) return null;
+            if (nextCipher != null) return nextCipher;
+        }
+
+        deadline = watchdog.start(AuthenticationMetrics.PHASE_KEYSTORE_LOAD, onStall);
+        final boolean isLoaded;
+        tracer.beginSection(Tracer.SECTION_KEYSTORE_LOAD);
+        try {
+            isLoaded = KEY_STORE.load();
+        } finally {
+            tracer.endSection();
+        }
+        //Stalls are recorded to the breaker by the stall listener.
+        if (!completePhase(session, deadline)) return null;
+        if (!isLoaded) {
+            breaker.recordFailure();
+            return null;
+        }
+
+        KeyAliasIndex.Lease lease = collector.acquire();
+        Cipher cipher;
+        while (true) {
+            if (lease.isNew()) {
+                deadline = watchdog.start(AuthenticationMetrics.PHASE_KEY_GENERATION, onStall);
+                final boolean isGenerated;
+                tracer.beginSection(Tracer.SECTION_KEY_GENERATION);
+                try {
+                    isGenerated = KEY_STORE.generateKey(lease.getAlias());
+                } finally {
+                    tracer.endSection();
+                }
+                if (!completePhase(session, deadline)) return null;
+                if (!isGenerated) {
+                    collector.retire(lease.getAlias());
+                    breaker.recordFailure();
+                    return null;
+                }
+            }
+
+            deadline = watchdog.start(AuthenticationMetrics.PHASE_CIPHER_INIT, onStall);
+            tracer.beginSection(Tracer.SECTION_CIPHER_INIT);
+            try {
+                cipher = KEY_STORE.createCipher(lease.getAlias());
+            } finally {
+                tracer.endSection();
+            }
+            if (!completePhase(session, deadline)) return null;
+            if (cipher != null || lease.isNew()) break;
+
+            //Key of the previous launches was invalidated by a new enrollment. Replace it once.
+            collector.retire(lease.getAlias());
+            lease = collector.acquire();
+        }
+
+        if (cipher == null) {
+            collector.retire(lease.getAlias());
+            breaker.recordFailure();
+            return null;
+        }
+
+        mKeyAlias = lease.getAlias();
+        breaker.recordSuccess();
+        return cipher;
+    }
+
+    /**
+     * Complete the deadline and report the duration of the phase.
+     *
+     * @return true if the phase completed in time. false if the stall is already reported and the
+     * result of the phase must be dropped.
+     */
+    private static boolean completePhase(@NonNull final AuthenticationSession session,
+                                         @NonNull final AuthenticationWatchdog.Deadline deadline) {
+        if (!deadline.complete()) return false;
+
+        session.reportTiming(deadline.getPhase(), deadline.elapsedNanos());
+        return true;
+    }
+
+    @Nullable
+    private Cipher takeNextCipher() {
+        final Future<Cipher> nextCipher = mNextCipher;
+        mNextCipher = null;
+        if (nextCipher == null) return null;
+
+        try {
+            return nextCipher.get();
+        } catch (InterruptedException | ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Initialize the {@link Cipher} of the next session on the {@link #CRYPTO_EXECUTOR}, so the
+     * continuous prompt can re-arm the sensor without waiting for the key store.
+     */
+    private void prepareNextCipher() {
+        final String alias = mKeyAlias;
+        if (mNextCipher != null || alias == null) return;
+
+        mNextCipher = CRYPTO_EXECUTOR.submit(new Callable<Cipher>() {
+            @Override
+            public Cipher call() {
+                return KEY_STORE.createCipher(alias);
+            }
+        });
+    }
+
+    /**
+     * Start the next session of the continuous prompt after the terminal event was delivered.
+     *
+     * @return true if the sensor was re-armed. false if the prompt has to be closed.
+     */
+    @MainThread
+    private boolean rearm(@NonNull final AuthenticationSession session) {
+        if (!session.rearm()) return false;
+
+        final int attempt = session.begin();
+        if (attempt != AuthenticationSession.NO_ATTEMPT && mContext != null) {
+            startAuth(mContext, session, attempt);
+        }
+        return true;
+    }
+
+    /**
+     * Display the status text in the {@link Host} for 1 second.
+     *
+     * @param status    Status text to display.
+     * @param isDismiss True if the host should close after status text displayed.
+     */
+    @MainThread
+    private void displayStatusText(@NonNull final String status,
+                                   final boolean isDismiss) {
+
+        if (!mHost.isShowing()) return;
+
+        if (mStatusTextRunnable != null) mHandler.removeCallbacks(mStatusTextRunnable);
+
+        mHost.showStatus(status);
+        mStatusTextRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mStatusTextRunnable = null;
+
+                if (mHost.isShowing()) {
+                    mHost.showStatus("");
+                    if (isDismiss) close();
+                }
+            }
+        };
+        mHandler.postDelayed(mStatusTextRunnable, 1000 /* 1 seconds */);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import javax.crypto.Cipher;
+
+/**
+ * Fingerprint scan without any UI of the library, for the screens that draw their own prompt.
+ * (e.g. Custom fingerprint animation.) It runs the same scan as the dialog: capability checks,
+ * key store and {@link Cipher}, the sensor call under the deadlines, cancellation and the error
+ * mapping. Update your views from the {@link AuthenticationEvent}s, they are delivered on the main
+ * thread.
+ * <p>
+ * The engine uses the fingerprint sensor directly on every android version from M, so it never
+ * shows the system prompt. Call {@link #pause()} and {@link #resume()} when your UI is hidden and
+ * shown again (e.g. {@code onPause()} and {@code onResume()}) and {@link #release()} when it is
+ * destroyed.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class FingerprintScanEngine {
+
+    /**
+     * Application {@link Context}, so the engine never keeps the activity.
+     */
+    @NonNull
+    private final Context mContext;
+
+    /**
+     * {@link FingerprintScanController} that runs the scan. The status texts are delivered with the
+     * events, so there is nothing to display or close.
+     */
+    @NonNull
+    private final FingerprintScanController mController = new FingerprintScanController(new FingerprintScanController.Host() {
+        @Override
+        public void showStatus(@NonNull final CharSequence status) {
+            //Do nothing.
+        }
+
+        @Override
+        public boolean isShowing() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            //Do nothing.
+        }
+    });
+
+    /**
+     * {@link AuthenticationWatchdog} with the deadlines of the key store and sensor calls.
+     */
+    @NonNull
+    private final AuthenticationWatchdog mWatchdog = new AuthenticationWatchdog();
+
+    @Nullable
+    private AuthenticationMetrics mMetrics;
+
+    @Nullable
+    private Cipher mCipher;
+
+    private boolean mContinuous = false;
+
+    @NonNull
+    private Tracer mTracer = Tracer.NONE;
+
+    /**
+     * True if the UI of the caller is hidden and the sensor must not be armed.
+     */
+    private boolean isPaused = false;
+
+    /**
+     * Public constructor.
+     *
+     * @param context {@link Context} of the caller.
+     */
+    public FingerprintScanEngine(@NonNull final Context context) {
+        mContext = context.getApplicationContext();
+        mController.setWatchdog(mWatchdog);
+    }
+
+    /**
+     * @param metrics {@link AuthenticationMetrics} to receive the timings or null to stop reporting.
+     * @return This engine.
+     * @see BaseFingerprintBuilder#setMetrics(AuthenticationMetrics)
+     */
+    @NonNull
+    public FingerprintScanEngine setMetrics(@Nullable final AuthenticationMetrics metrics) {
+        mMetrics = metrics;
+        return this;
+    }
+
+    /**
+     * @param cipher Initialized {@link Cipher} to authenticate with or null to use the key of the
+     *               library.
+     * @return This engine.
+     * @see BaseFingerprintBuilder#setCipher(Cipher)
+     */
+    @NonNull
+    public FingerprintScanEngine setCipher(@Nullable final Cipher cipher) {
+        mCipher = cipher;
+        return this;
+    }
+
+    /**
+     * @param continuous True to re-arm the sensor after every result. Default is false.
+     * @return This engine.
+     * @see BaseFingerprintBuilder#setContinuous(boolean)
+     */
+    @NonNull
+    public FingerprintScanEngine setContinuous(final boolean continuous) {
+        mContinuous = continuous;
+        return this;
+    }
+
+    /**
+     * @param phase         Phase of the scan. (e.g. {@link AuthenticationMetrics#PHASE_KEY_GENERATION})
+     * @param timeoutMillis Deadline in milliseconds. Default is 3 seconds.
+     * @return This engine.
+     * @see BaseFingerprintBuilder#setDeadline(int, long)
+     */
+    @NonNull
+    public FingerprintScanEngine setDeadline(@MetricPhase final int phase, final long timeoutMillis) {
+        mWatchdog.setDeadline(phase, timeoutMillis);
+        return this;
+    }
+
+    /**
+     * @param tracer {@link Tracer} or null to stop tracing.
+     * @return This engine.
+     * @see BaseFingerprintBuilder#setTracer(Tracer)
+     */
+    @NonNull
+    public FingerprintScanEngine setTracer(@Nullable final Tracer tracer) {
+        mTracer = tracer == null ? Tracer.NONE : tracer;
+        return this;
+    }
+
+    /**
+     * Start the scan.
+     *
+     * @param authenticationCallback {@link AuthenticationCallback} to receive the result.
+     * @return {@link AuthenticationHandle} to cancel the scan or check if it is still active.
+     * @see #start(AuthenticationEventListener)
+     */
+    @MainThread
+    @NonNull
+    public AuthenticationHandle start(@NonNull final AuthenticationCallback authenticationCallback) {
+        return start(new EventDispatcher(authenticationCallback));
+    }
+
+    /**
+     * Start the scan and deliver the normalized {@link AuthenticationEvent}s. The running scan of
+     * the engine is cancelled first. If the engine is paused, the sensor is armed on
+     * {@link #resume()}.
+     *
+     * @param eventListener {@link AuthenticationEventListener} to receive the events.
+     * @return {@link AuthenticationHandle} to cancel the scan or check if it is still active.
+     */
+    @MainThread
+    @NonNull
+    public AuthenticationHandle start(@NonNull final AuthenticationEventListener eventListener) {
+        if (mContinuous && mCipher != null) {
+            throw new IllegalArgumentException("Continuous scan cannot reuse the cipher set by " +
+                    "setCipher(). Every session needs a fresh cipher.");
+        }
+
+        final AuthenticationSession session = new AuthenticationSession(eventListener, mMetrics, mContinuous, mTracer);
+
+        //Check if the android version supports fingerprint authentication?
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            session.dispatchNotSupported(session.begin());
+            return new AuthenticationHandle(session, null);
+        }
+
+        //Check if the device has the fingerprint sensor?
+        if (!FingerprintUtils.isSupportedHardware(mContext)) {
+            session.dispatchNotSupported(session.begin());
+            return new AuthenticationHandle(session, null);
+        }
+
+        //Check if there are any fingerprints enrolled?
+        if (!FingerprintUtils.isFingerprintEnroled(mContext)) {
+            session.dispatchNoFingerprintEnrolled(session.begin());
+            return new AuthenticationHandle(session, null);
+        }
+
+        mController.cancel();
+        mController.setSession(session);
+        mController.setCipher(mCipher);
+        if (!isPaused) mController.start(mContext);
+
+        return new AuthenticationHandle(session, new Runnable() {
+            @Override
+            public void run() {
+                mController.close();
+            }
+        });
+    }
+
+    /**
+     * Release the sensor while the UI of the caller is hidden. The running scan is kept and the
+     * cancellation error of the platform is not delivered.
+     */
+    @MainThread
+    public void pause() {
+        isPaused = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) mController.stop();
+    }
+
+    /**
+     * Arm the sensor again for the running scan after {@link #pause()}.
+     */
+    @MainThread
+    public void resume() {
+        isPaused = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mController.hasSession()) {
+            mController.start(mContext);
+        }
+    }
+
+    /**
+     * Stop the scan and drop the prepared {@link Cipher}. The running scan doesn't deliver any more
+     * events. Call it when the UI of the caller is destroyed.
+     */
+    @MainThread
+    public void release() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) mController.release();
+    }
+}
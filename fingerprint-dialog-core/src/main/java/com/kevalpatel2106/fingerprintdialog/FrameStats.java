@@ -0,0 +1,183 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Frame timings of the prompt window while it was visible, reported to
+ * {@link AuthenticationMetrics#onFrameStats(FrameStats)}. A frame is janky if it took longer than
+ * one refresh period of the display. The enter frames are the frames drawn while the window slides
+ * in, starting from the first frame. (Which also inflates and lays out the prompt.)
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ * @see BaseFingerprintBuilder#setFrameMetricsEnabled(boolean)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class FrameStats {
+    private final int mFrameCount;
+    private final int mJankyFrameCount;
+    private final long mWorstFrameNanos;
+    private final long mTotalFrameNanos;
+    private final int mEnterFrameCount;
+    private final int mEnterJankyFrameCount;
+    private final long mEnterWorstFrameNanos;
+    private final int mUnreportedFrameCount;
+
+    FrameStats(final int frameCount,
+               final int jankyFrameCount,
+               final long worstFrameNanos,
+               final long totalFrameNanos,
+               final int enterFrameCount,
+               final int enterJankyFrameCount,
+               final long enterWorstFrameNanos,
+               final int unreportedFrameCount) {
+        mFrameCount = frameCount;
+        mJankyFrameCount = jankyFrameCount;
+        mWorstFrameNanos = worstFrameNanos;
+        mTotalFrameNanos = totalFrameNanos;
+        mEnterFrameCount = enterFrameCount;
+        mEnterJankyFrameCount = enterJankyFrameCount;
+        mEnterWorstFrameNanos = enterWorstFrameNanos;
+        mUnreportedFrameCount = unreportedFrameCount;
+    }
+
+    /**
+     * @return Number of the frames drawn while the prompt was visible.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return Number of the frames that took longer than one refresh period.
+     */
+    public int getJankyFrameCount() {
+        return mJankyFrameCount;
+    }
+
+    /**
+     * @return Duration of the slowest frame in nanoseconds.
+     */
+    public long getWorstFrameNanos() {
+        return mWorstFrameNanos;
+    }
+
+    /**
+     * @return Sum of the durations of all the frames in nanoseconds.
+     */
+    public long getTotalFrameNanos() {
+        return mTotalFrameNanos;
+    }
+
+    /**
+     * @return Number of the frames drawn during the enter animation.
+     */
+    public int getEnterFrameCount() {
+        return mEnterFrameCount;
+    }
+
+    /**
+     * @return Number of the janky frames during the enter animation.
+     */
+    public int getEnterJankyFrameCount() {
+        return mEnterJankyFrameCount;
+    }
+
+    /**
+     * @return Duration of the slowest frame of the enter animation in nanoseconds.
+     */
+    public long getEnterWorstFrameNanos() {
+        return mEnterWorstFrameNanos;
+    }
+
+    /**
+     * @return Number of the frames the platform dropped the timings of, because they were not
+     * collected fast enough. They are not included in the other counts.
+     */
+    public int getUnreportedFrameCount() {
+        return mUnreportedFrameCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "FrameStats{frames=%d, janky=%d, worst=%.1fms, enterFrames=%d, "
+                        + "enterJanky=%d, enterWorst=%.1fms, unreported=%d}",
+                mFrameCount, mJankyFrameCount, mWorstFrameNanos / 1e6, mEnterFrameCount,
+                mEnterJankyFrameCount, mEnterWorstFrameNanos / 1e6, mUnreportedFrameCount);
+    }
+
+    /**
+     * Accumulates the frame timings of one prompt window. Frames are reported from the thread of
+     * the frame metrics listener, the stats are built on the main thread.
+     */
+    static final class Collector {
+        private final long mFrameBudgetNanos;
+        private final long mEnterDurationNanos;
+
+        private long mFirstFrameAt = -1;
+        private int mFrameCount = 0;
+        private int mJankyFrameCount = 0;
+        private long mWorstFrameNanos = 0;
+        private long mTotalFrameNanos = 0;
+        private int mEnterFrameCount = 0;
+        private int mEnterJankyFrameCount = 0;
+        private long mEnterWorstFrameNanos = 0;
+        private int mUnreportedFrameCount = 0;
+
+        /**
+         * @param frameBudgetNanos   Refresh period of the display in nanoseconds.
+         * @param enterDurationNanos Duration of the enter animation in nanoseconds.
+         */
+        Collector(final long frameBudgetNanos, final long enterDurationNanos) {
+            mFrameBudgetNanos = frameBudgetNanos;
+            mEnterDurationNanos = enterDurationNanos;
+        }
+
+        /**
+         * @param timestampNanos Time the frame started in nanoseconds. Only the differences are used.
+         * @param durationNanos  Duration of the frame in nanoseconds.
+         */
+        synchronized void onFrame(final long timestampNanos, final long durationNanos) {
+            if (mFirstFrameAt < 0) mFirstFrameAt = timestampNanos;
+
+            final boolean isJanky = durationNanos > mFrameBudgetNanos;
+            mFrameCount++;
+            mTotalFrameNanos += durationNanos;
+            if (isJanky) mJankyFrameCount++;
+            if (durationNanos > mWorstFrameNanos) mWorstFrameNanos = durationNanos;
+
+            if (timestampNanos - mFirstFrameAt <= mEnterDurationNanos) {
+                mEnterFrameCount++;
+                if (isJanky) mEnterJankyFrameCount++;
+                if (durationNanos > mEnterWorstFrameNanos) mEnterWorstFrameNanos = durationNanos;
+            }
+        }
+
+        /**
+         * @param count Number of the frames the platform didn't report.
+         */
+        synchronized void onUnreported(final int count) {
+            mUnreportedFrameCount += count;
+        }
+
+        @NonNull
+        synchronized FrameStats build() {
+            return new FrameStats(mFrameCount, mJankyFrameCount, mWorstFrameNanos, mTotalFrameNanos,
+                    mEnterFrameCount, mEnterJankyFrameCount, mEnterWorstFrameNanos, mUnreportedFrameCount);
+        }
+    }
+}
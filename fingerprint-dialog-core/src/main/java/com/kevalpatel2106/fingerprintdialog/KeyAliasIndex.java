@@ -0,0 +1,309 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persisted index of the key store aliases of the prompt keys owned by the library. Every alias
+ * carries the {@link #ALIAS_PREFIX}, so the keys of the library can be told apart from the keys of
+ * the application. At most one alias is active at a time. It is reused by every prompt until the
+ * rotation policy retires it, retired aliases are left for the {@link FingerprintKeyCollector}.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class KeyAliasIndex {
+
+    /**
+     * Prefix of the key store alias of every prompt key.
+     */
+    static final String ALIAS_PREFIX = "fingerprint_dialog_compat_session.";
+
+    static final long DEFAULT_MAX_AGE_MILLIS = 7 * 24 * 60 * 60 * 1000L;   // 1 week
+
+    /**
+     * Time a retired key is kept, so the prompt that is still using its cipher can finish.
+     */
+    static final long DEFAULT_GRACE_MILLIS = 5 * 60 * 1000L;    // 5 minutes
+
+    /**
+     * Source of the wall clock time. The age of the key has to survive the process restarts, so it
+     * cannot use the uptime.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * Persisted state of the aliases.
+     */
+    interface Store {
+
+        /**
+         * @return State of every saved alias by the alias.
+         */
+        @NonNull
+        Map<String, String> read();
+
+        /**
+         * @param alias Alias of the key.
+         * @param state State to save.
+         */
+        void write(@NonNull final String alias, @NonNull final String state);
+
+        /**
+         * @param aliases Aliases to drop.
+         */
+        void remove(@NonNull final Collection<String> aliases);
+    }
+
+    /**
+     * Alias handed out to a prompt.
+     */
+    static final class Lease {
+        @NonNull
+        private final String mAlias;
+        private final boolean isNew;
+
+        private Lease(@NonNull final String alias, final boolean isNew) {
+            mAlias = alias;
+            this.isNew = isNew;
+        }
+
+        @NonNull
+        String getAlias() {
+            return mAlias;
+        }
+
+        /**
+         * @return true if the key of the alias is not generated yet.
+         */
+        boolean isNew() {
+            return isNew;
+        }
+    }
+
+    /**
+     * State of one alias.
+     */
+    private static final class Entry {
+        private final long mCreatedAtMillis;
+        private int mUses;
+
+        /**
+         * Time the alias was retired or 0 if it is active.
+         */
+        private long mRetiredAtMillis;
+
+        private Entry(final long createdAtMillis, final int uses, final long retiredAtMillis) {
+            mCreatedAtMillis = createdAtMillis;
+            mUses = uses;
+            mRetiredAtMillis = retiredAtMillis;
+        }
+    }
+
+    @NonNull
+    private final Store mStore;
+    @NonNull
+    private final Clock mClock;
+    private final long mGraceMillis;
+
+    @NonNull
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    private long mMaxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+
+    /**
+     * Number of prompts that may use the same key or 0 for no limit.
+     */
+    private int mMaxUses = 0;
+
+    @VisibleForTesting
+    KeyAliasIndex(@NonNull final Store store, @NonNull final Clock clock, final long graceMillis) {
+        mStore = store;
+        mClock = clock;
+        mGraceMillis = graceMillis;
+        restore(store.read());
+    }
+
+    /**
+     * @param maxAgeMillis Age after which the key is replaced.
+     * @param maxUses      Number of prompts after which the key is replaced or 0 for no limit.
+     */
+    synchronized void setRotationPolicy(final long maxAgeMillis, final int maxUses) {
+        if (maxAgeMillis <= 0) throw new IllegalArgumentException("Max age must be positive.");
+        if (maxUses < 0) throw new IllegalArgumentException("Max uses cannot be negative.");
+
+        mMaxAgeMillis = maxAgeMillis;
+        mMaxUses = maxUses;
+    }
+
+    /**
+     * Hand out the alias for the next prompt. The active alias is reused until it is due for the
+     * rotation, then it is retired and a new alias is added.
+     *
+     * @return {@link Lease} of the alias to use.
+     */
+    @NonNull
+    synchronized Lease acquire() {
+        final long now = mClock.currentTimeMillis();
+
+        for (Map.Entry<String, Entry> mapEntry : mEntries.entrySet()) {
+            final Entry entry = mapEntry.getValue();
+            if (entry.mRetiredAtMillis != 0) continue;
+
+            final boolean isExpired = now - entry.mCreatedAtMillis >= mMaxAgeMillis
+                    || now < entry.mCreatedAtMillis;    //Wall clock moved back.
+            final boolean isUsedUp = mMaxUses > 0 && entry.mUses >= mMaxUses;
+            if (isExpired || isUsedUp) {
+                entry.mRetiredAtMillis = now;
+                save(mapEntry.getKey(), entry);
+                break;
+            }
+
+            entry.mUses++;
+            save(mapEntry.getKey(), entry);
+            return new Lease(mapEntry.getKey(), false);
+        }
+
+        final String alias = ALIAS_PREFIX + UUID.randomUUID().toString();
+        final Entry entry = new Entry(now, 1, 0);
+        mEntries.put(alias, entry);
+        save(alias, entry);
+        return new Lease(alias, true);
+    }
+
+    /**
+     * Stop handing out the alias. (e.g. The key was invalidated by a new enrollment.) The next
+     * {@link #acquire()} adds a new alias.
+     *
+     * @param alias Alias of the key.
+     */
+    synchronized void retire(@NonNull final String alias) {
+        final Entry entry = mEntries.get(alias);
+        if (entry == null || entry.mRetiredAtMillis != 0) return;
+
+        entry.mRetiredAtMillis = mClock.currentTimeMillis();
+        save(alias, entry);
+    }
+
+    /**
+     * @return Every alias in the index, including the active one.
+     */
+    @NonNull
+    synchronized Set<String> aliases() {
+        return new HashSet<>(mEntries.keySet());
+    }
+
+    /**
+     * @return Retired aliases whose grace period is over. Their keys can be deleted.
+     */
+    @NonNull
+    synchronized List<String> collectable() {
+        final long now = mClock.currentTimeMillis();
+        final List<String> aliases = new ArrayList<>();
+        for (Map.Entry<String, Entry> mapEntry : mEntries.entrySet()) {
+            final long retiredAt = mapEntry.getValue().mRetiredAtMillis;
+            if (retiredAt != 0 && now - retiredAt >= mGraceMillis) aliases.add(mapEntry.getKey());
+        }
+        return aliases;
+    }
+
+    /**
+     * Drop the aliases whose keys were deleted.
+     *
+     * @param aliases Deleted aliases.
+     */
+    synchronized void forget(@NonNull final Collection<String> aliases) {
+        if (aliases.isEmpty()) return;
+
+        mEntries.keySet().removeAll(aliases);
+        mStore.remove(aliases);
+    }
+
+    private void save(@NonNull final String alias, @NonNull final Entry entry) {
+        mStore.write(alias, entry.mCreatedAtMillis + ":" + entry.mUses + ":" + entry.mRetiredAtMillis);
+    }
+
+    private void restore(@NonNull final Map<String, String> states) {
+        boolean hasActive = false;
+        for (Map.Entry<String, String> state : states.entrySet()) {
+            if (!state.getKey().startsWith(ALIAS_PREFIX)) continue;
+
+            final String[] parts = state.getValue().split(":");
+            if (parts.length != 3) continue;
+
+            final Entry entry;
+            try {
+                entry = new Entry(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            //Keep only one active alias if the state was written by two processes.
+            if (entry.mRetiredAtMillis == 0) {
+                if (hasActive) entry.mRetiredAtMillis = mClock.currentTimeMillis();
+                hasActive = true;
+            }
+            mEntries.put(state.getKey(), entry);
+        }
+    }
+
+    /**
+     * {@link Store} backed by the {@link SharedPreferences}, one preference for every alias.
+     */
+    static final class PreferencesStore implements Store {
+        @NonNull
+        private final SharedPreferences mPreferences;
+
+        PreferencesStore(@NonNull final SharedPreferences preferences) {
+            mPreferences = preferences;
+        }
+
+        @NonNull
+        @Override
+        public Map<String, String> read() {
+            final Map<String, String> states = new HashMap<>();
+            for (Map.Entry<String, ?> preference : mPreferences.getAll().entrySet()) {
+                if (preference.getValue() instanceof String) {
+                    states.put(preference.getKey(), (String) preference.getValue());
+                }
+            }
+            return states;
+        }
+
+        @Override
+        public void write(@NonNull final String alias, @NonNull final String state) {
+            mPreferences.edit().putString(alias, state).apply();
+        }
+
+        @Override
+        public void remove(@NonNull final Collection<String> aliases) {
+            final SharedPreferences.Editor editor = mPreferences.edit();
+            for (String alias : aliases) editor.remove(alias);
+            editor.apply();
+        }
+    }
+}
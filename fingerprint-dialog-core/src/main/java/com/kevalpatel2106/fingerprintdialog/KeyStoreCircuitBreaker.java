@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+/**
+ * Circuit breaker around the key store of the library. Some devices fail the key generation every
+ * time after a slow call to the key store daemon. After {@link #mFailureThreshold} consecutive
+ * failures the breaker opens and the prompt reports
+ * {@link AuthenticationCallback#fingerprintAuthenticationNotSupported()} right away, without
+ * touching the key store. Once the backoff elapses a single attempt probes the key store again.
+ * Every failed probe doubles the backoff up to {@link #mMaxBackoffMillis}.
+ * <p>
+ * The state is persisted per device build, so a broken build doesn't pay the cost on every
+ * launch and an OTA update resets the breaker.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class KeyStoreCircuitBreaker {
+    static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    static final long DEFAULT_BACKOFF_MILLIS = 60 * 60 * 1000L;         // 1 hour
+    static final long DEFAULT_MAX_BACKOFF_MILLIS = 7 * 24 * 60 * 60 * 1000L;  // 1 week
+
+    private static final String PREF_NAME = "fingerprint_dialog_circuit_breaker";
+
+    @Nullable
+    private static KeyStoreCircuitBreaker sInstance;
+
+    /**
+     * Source of the wall clock time. The backoff has to survive the process restarts, so it cannot
+     * use the uptime.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    /**
+     * Persisted state of the breaker.
+     */
+    interface Store {
+
+        /**
+         * @param deviceKey Key of the device build.
+         * @return Saved state of the device build or null.
+         */
+        @Nullable
+        String read(@NonNull final String deviceKey);
+
+        /**
+         * Save the state of the device build. The states of the other builds can be dropped.
+         *
+         * @param deviceKey Key of the device build.
+         * @param state     State to save.
+         */
+        void write(@NonNull final String deviceKey, @NonNull final String state);
+    }
+
+    @NonNull
+    private final String mDeviceKey;
+    @NonNull
+    private final Store mStore;
+    @NonNull
+    private final Clock mClock;
+    private final int mFailureThreshold;
+    private final long mBackoffMillis;
+    private final long mMaxBackoffMillis;
+
+    /**
+     * Consecutive failures of the key store.
+     */
+    private int mFailures;
+
+    /**
+     * Number of times the breaker opened since the last success. Grows the backoff.
+     */
+    private int mOpenCount;
+
+    /**
+     * Time until the breaker is open or 0 if it is closed.
+     */
+    private long mOpenUntilMillis;
+
+    @VisibleForTesting
+    KeyStoreCircuitBreaker(@NonNull final String deviceKey,
+                           @NonNull final Store store,
+                           @NonNull final Clock clock,
+                           final int failureThreshold,
+                           final long backoffMillis,
+                           final long maxBackoffMillis) {
+        if (failureThreshold < 1) throw new IllegalArgumentException("Threshold must be positive.");
+        if (backoffMillis <= 0 || maxBackoffMillis < backoffMillis) {
+            throw new IllegalArgumentException("Invalid backoff.");
+        }
+
+        mDeviceKey = deviceKey;
+        mStore = store;
+        mClock = clock;
+        mFailureThreshold = failureThreshold;
+        mBackoffMillis = backoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        restore(store.read(deviceKey));
+    }
+
+    /**
+     * @param context {@link Context} of the caller.
+     * @return {@link KeyStoreCircuitBreaker} of this device build, shared by the whole process.
+     */
+    @NonNull
+    static synchronized KeyStoreCircuitBreaker get(@NonNull final Context context) {
+        if (sInstance == null) {
+            final SharedPreferences preferences = context.getApplicationContext()
+                    .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+
+            sInstance = new KeyStoreCircuitBreaker(Build.FINGERPRINT + "/" + Build.VERSION.SDK_INT,
+                    new PreferencesStore(preferences),
+                    new Clock() {
+                        @Override
+                        public long currentTimeMillis() {
+                            return System.currentTimeMillis();
+                        }
+                    },
+                    DEFAULT_FAILURE_THRESHOLD,
+                    DEFAULT_BACKOFF_MILLIS,
+                    DEFAULT_MAX_BACKOFF_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return true if the key store may be used. false if the breaker is open and the prompt should
+     * report the fallback right away.
+     */
+    synchronized boolean allowRequest() {
+        return mOpenUntilMillis == 0 || mClock.currentTimeMillis() >= mOpenUntilMillis;
+    }
+
+    /**
+     * @return true if the breaker is open and the backoff is not elapsed yet.
+     */
+    synchronized boolean isOpen() {
+        return !allowRequest();
+    }
+
+    /**
+     * Key store call succeeded. Close the breaker.
+     */
+    synchronized void recordSuccess() {
+        if (mFailures == 0 && mOpenCount == 0 && mOpenUntilMillis == 0) return;
+
+        mFailures = 0;
+        mOpenCount = 0;
+        mOpenUntilMillis = 0;
+        save();
+    }
+
+    /**
+     * Key store call failed or stalled. Opens the breaker after {@link #mFailureThreshold}
+     * consecutive failures. Failed probe opens it again right away with the doubled backoff.
+     */
+    synchronized void recordFailure() {
+        mFailures++;
+
+        if (mFailures >= mFailureThreshold) {
+            mOpenCount++;
+            mOpenUntilMillis = mClock.currentTimeMillis() + backoffMillis(mOpenCount);
+        }
+        save();
+    }
+
+    private long backoffMillis(final int openCount) {
+        long backoff = mBackoffMillis;
+        for (int i = 1; i < openCount && backoff < mMaxBackoffMillis; i++) backoff *= 2;
+        return Math.min(backoff, mMaxBackoffMillis);
+    }
+
+    private void save() {
+        mStore.write(mDeviceKey, mFailures + ":" + mOpenCount + ":" + mOpenUntilMillis);
+    }
+
+    private void restore(@Nullable final String state) {
+        if (state == null) return;
+
+        final String[] parts = state.split(":");
+        if (parts.length != 3) return;
+
+        try {
+            mFailures = Integer.parseInt(parts[0]);
+            mOpenCount = Integer.parseInt(parts[1]);
+            mOpenUntilMillis = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            mFailures = 0;
+            mOpenCount = 0;
+            mOpenUntilMillis = 0;
+        }
+    }
+
+    /**
+     * {@link Store} backed by the {@link SharedPreferences}. Keeps only the state of the current
+     * build, so the preferences don't grow with every OTA update.
+     */
+    private static final class PreferencesStore implements Store {
+        @NonNull
+        private final SharedPreferences mPreferences;
+
+        private PreferencesStore(@NonNull final SharedPreferences preferences) {
+            mPreferences = preferences;
+        }
+
+        @Nullable
+        @Override
+        public String read(@NonNull final String deviceKey) {
+            return mPreferences.getString(deviceKey, null);
+        }
+
+        @Override
+        public void write(@NonNull final String deviceKey, @NonNull final String state) {
+            mPreferences.edit()
+                    .clear()
+                    .putString(deviceKey, state)
+                    .apply();
+        }
+    }
+}
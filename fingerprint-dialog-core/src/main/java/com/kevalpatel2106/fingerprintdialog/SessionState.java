@@ -0,0 +1,39 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * States of the {@link AuthenticationSession}. A session always moves forward from
+ * {@link AuthenticationSession#STATE_IDLE} to one of the terminal states
+ * ({@link AuthenticationSession#STATE_SUCCEEDED}, {@link AuthenticationSession#STATE_FAILED} or
+ * {@link AuthenticationSession#STATE_CANCELLED}).
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@IntDef({
+        AuthenticationSession.STATE_IDLE,
+        AuthenticationSession.STATE_PREPARING,
+        AuthenticationSession.STATE_SCANNING,
+        AuthenticationSession.STATE_SUCCEEDED,
+        AuthenticationSession.STATE_FAILED,
+        AuthenticationSession.STATE_CANCELLED
+})
+@interface SessionState {
+}
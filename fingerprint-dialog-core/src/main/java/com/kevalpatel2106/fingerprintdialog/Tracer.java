@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.os.Trace;
+import android.support.annotation.NonNull;
+
+/**
+ * Receives the named sections around every phase of the library, so the key store, the sensor
+ * and the UI of the prompt show up in the system trace instead of a black box. Register it using
+ * {@link BaseFingerprintBuilder#setTracer(Tracer)}. Use {@link #SYSTEM} to route the sections to
+ * {@link Trace} or implement it to route them to your own tracing system.
+ * <p>
+ * {@link #endSection()} is always called on the thread that called {@link #beginSection(String)},
+ * and the sections of the same thread are nested.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public interface Tracer {
+
+    /**
+     * Loading the AndroidKeyStore.
+     */
+    String SECTION_KEYSTORE_LOAD = "FingerprintDialog:keyStoreLoad";
+
+    /**
+     * Generating the fingerprint bound key.
+     */
+    String SECTION_KEY_GENERATION = "FingerprintDialog:keyGeneration";
+
+    /**
+     * Initializing the {@link javax.crypto.Cipher} of the crypto object.
+     */
+    String SECTION_CIPHER_INIT = "FingerprintDialog:cipherInit";
+
+    /**
+     * Arming the sensor with {@code FingerprintManager#authenticate()} or
+     * {@code BiometricPrompt#authenticate()}.
+     */
+    String SECTION_AUTHENTICATE = "FingerprintDialog:authenticate";
+
+    /**
+     * Inflating the view of the dialog.
+     */
+    String SECTION_INFLATE = "FingerprintDialog:inflate";
+
+    /**
+     * Binding the texts and the icon to the view of the dialog.
+     */
+    String SECTION_BIND = "FingerprintDialog:bind";
+
+    /**
+     * Releasing the sensor and dismissing the prompt.
+     */
+    String SECTION_DISMISS = "FingerprintDialog:dismiss";
+
+    /**
+     * {@link Tracer} that does nothing. This is the default.
+     */
+    Tracer NONE = new Tracer() {
+        @Override
+        public void beginSection(@NonNull final String sectionName) {
+            //Do nothing.
+        }
+
+        @Override
+        public void endSection() {
+            //Do nothing.
+        }
+    };
+
+    /**
+     * {@link Tracer} that writes the sections to the system trace using {@link Trace}.
+     */
+    Tracer SYSTEM = new Tracer() {
+        @Override
+        public void beginSection(@NonNull final String sectionName) {
+            Trace.beginSection(sectionName);
+        }
+
+        @Override
+        public void endSection() {
+            Trace.endSection();
+        }
+    };
+
+    /**
+     * Called on the thread that starts the section.
+     *
+     * @param sectionName Name of the section. One of the {@code SECTION_*} constants.
+     */
+    void beginSection(@NonNull final String sectionName);
+
+    /**
+     * Ends the last section started on the calling thread.
+     */
+    void endSection();
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link AuthenticatedSessionManager}.
+ */
+public class AuthenticatedSessionManagerTest {
+    private long mNow;
+    private boolean isEnrollmentChanged;
+    private final List<Runnable> mPending = new ArrayList<>();
+    private AuthenticatedSessionManager mManager;
+
+    @Before
+    public void setUp() {
+        mNow = 1000;
+        isEnrollmentChanged = false;
+        mPending.clear();
+        mManager = new AuthenticatedSessionManager(new AuthenticatedSessionManager.Clock() {
+            @Override
+            public long elapsedRealtime() {
+                return mNow;
+            }
+        }, new Executor() {
+            @Override
+            public void execute(@NonNull final Runnable command) {
+                mPending.add(command);
+            }
+        }, new AuthenticatedSessionManager.EnrollmentCheck() {
+            @Override
+            public boolean checkAndReset() {
+                final boolean isChanged = isEnrollmentChanged;
+                isEnrollmentChanged = false;
+                return isChanged;
+            }
+        }).setTimeToLive(10_000).setIdleTimeout(3_000).setBackgroundTimeout(2_000);
+        mManager.onForeground();
+    }
+
+    private void runPending() {
+        final List<Runnable> pending = new ArrayList<>(mPending);
+        mPending.clear();
+        for (final Runnable runnable : pending) runnable.run();
+    }
+
+    @Test
+    public void checkSessionExpiresAfterTimeToLive() {
+        assertFalse(mManager.isAuthenticated());
+        mManager.onAuthenticated();
+
+        for (int i = 0; i < 4; i++) {
+            mNow += 2_000;
+            mManager.touch();
+            assertTrue(mManager.isAuthenticated());
+        }
+
+        mNow += 2_000;
+        assertFalse(mManager.isAuthenticated());
+
+        //Touch doesn't bring the expired session back.
+        mManager.touch();
+        assertFalse(mManager.isAuthenticated());
+    }
+
+    @Test
+    public void checkSessionExpiresWhenIdle() {
+        mManager.onAuthenticated();
+        mNow += 2_999;
+        assertTrue(mManager.isAuthenticated());
+
+        mNow += 1;
+        assertFalse(mManager.isAuthenticated());
+    }
+
+    @Test
+    public void checkSessionExpiresInBackground() {
+        mManager.onAuthenticated();
+
+        //Short trip to the background.
+        mManager.onBackground();
+        mNow += 1_000;
+        mManager.onForeground();
+        mManager.touch();
+        mNow += 2_000;
+        assertTrue(mManager.isAuthenticated());
+
+        //Long trip to the background.
+        mManager.onBackground();
+        mNow += 2_000;
+        mManager.onForeground();
+        assertFalse(mManager.isAuthenticated());
+    }
+
+    @Test
+    public void checkSwitchingActivitiesIsNotBackground() {
+        mManager.onAuthenticated();
+
+        //Next activity starts before the previous one stops.
+        mManager.onForeground();
+        mManager.onBackground();
+        mNow += 2_500;
+        assertTrue(mManager.isAuthenticated());
+    }
+
+    @Test
+    public void checkEnrollmentChangeEndsSession() {
+        mManager.onAuthenticated();
+        runPending();
+
+        mManager.onBackground();
+        isEnrollmentChanged = true;
+        mManager.onForeground();
+        assertTrue(mManager.isAuthenticated());
+
+        runPending();
+        assertFalse(mManager.isAuthenticated());
+    }
+
+    @Test
+    public void checkLateEnrollmentCheckKeepsNewSession() {
+        mManager.onAuthenticated();
+        mManager.onBackground();
+        isEnrollmentChanged = true;
+        mManager.onForeground();
+
+        //User authenticated again with the new fingerprint before the check finished.
+        mManager.onAuthenticated();
+        runPending();
+        assertTrue(mManager.isAuthenticated());
+    }
+
+    @Test
+    public void checkInvalidate() {
+        mManager.onAuthenticated();
+        mManager.invalidate();
+        assertFalse(mManager.isAuthenticated());
+    }
+}
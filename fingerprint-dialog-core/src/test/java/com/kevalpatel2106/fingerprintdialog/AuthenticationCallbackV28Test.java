@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.hardware.biometrics.BiometricPrompt;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link AuthenticationCallbackV28} handing over the results of the suspended prompt.
+ */
+public class AuthenticationCallbackV28Test {
+    private static final int BIOMETRIC_ERROR_LOCKOUT = 7;
+
+    /**
+     * Listener that finishes the suspended attempt with every result but the cancellation, the way
+     * the builder does.
+     */
+    private static final class SuspendedResultListener implements AuthenticationEventListener {
+        private final AuthenticationSession mSession;
+        private final int mAttempt;
+        final List<AuthenticationEvent> events = new ArrayList<>();
+
+        SuspendedResultListener(@NonNull final AuthenticationSession session, final int attempt) {
+            mSession = session;
+            mAttempt = attempt;
+        }
+
+        @Override
+        public void onEvent(@NonNull final AuthenticationEvent event) {
+            events.add(event);
+            if (event.getType() != AuthenticationEvent.TYPE_CANCELED
+                    || event.getCategory() != AuthenticationEvent.CATEGORY_SYSTEM) {
+                mSession.dispatchSuspended(mAttempt, event);
+            }
+        }
+    }
+
+    @Test
+    public void checkCancelOfSuspendedAttemptIsReported() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        final SuspendedResultListener listener = new SuspendedResultListener(session, attempt);
+        final AuthenticationCallbackV28 platformCallback = new AuthenticationCallbackV28(session,
+                attempt,
+                null,
+                listener);
+
+        assertTrue(session.suspend());
+        platformCallback.onAuthenticationError(BiometricPrompt.BIOMETRIC_ERROR_CANCELED, "canceled");
+
+        assertEquals(1, listener.events.size());
+        assertEquals(0, callback.terminalCount());
+        assertEquals(AuthenticationSession.STATE_IDLE, session.getState());
+    }
+
+    @Test
+    public void checkCancelOfCurrentAttemptIsDelivered() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        final SuspendedResultListener listener = new SuspendedResultListener(session, attempt);
+        final AuthenticationCallbackV28 platformCallback = new AuthenticationCallbackV28(session,
+                attempt,
+                null,
+                listener);
+
+        platformCallback.onAuthenticationError(BiometricPrompt.BIOMETRIC_ERROR_CANCELED, "canceled");
+
+        assertEquals(0, listener.events.size());
+        assertEquals(1, callback.terminalCount());
+    }
+
+    @Test
+    public void checkOtherErrorOfSuspendedAttemptFinishesSession() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        final SuspendedResultListener listener = new SuspendedResultListener(session, attempt);
+        final AuthenticationCallbackV28 platformCallback = new AuthenticationCallbackV28(session,
+                attempt,
+                null,
+                listener);
+
+        assertTrue(session.suspend());
+        platformCallback.onAuthenticationError(BIOMETRIC_ERROR_LOCKOUT, "lockout");
+        platformCallback.onAuthenticationError(BiometricPrompt.BIOMETRIC_ERROR_CANCELED, "canceled");
+
+        assertEquals(1, callback.terminalCount());
+        assertEquals(1, callback.errors.get());
+        assertTrue(session.isFinished());
+    }
+
+    @Test
+    public void checkSuccessOfSuspendedAttemptFinishesSession() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        final SuspendedResultListener listener = new SuspendedResultListener(session, attempt);
+        final AuthenticationCallbackV28 platformCallback = new AuthenticationCallbackV28(session,
+                attempt,
+                null,
+                listener);
+
+        assertTrue(session.suspend());
+        platformCallback.onAuthenticationSucceeded(null);
+
+        assertEquals(1, callback.terminalCount());
+        assertEquals(1, callback.succeeded.get());
+    }
+
+    @Test
+    public void checkSuspendedResultIsDroppedAfterNextAttempt() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        assertTrue(session.suspend());
+
+        //The prompt is shown again before the old result arrived.
+        final int next = session.begin();
+        session.markScanning(next);
+
+        assertFalse(session.dispatchSuspended(attempt, AuthenticationEvent.succeeded()));
+        assertEquals(0, callback.terminalCount());
+        assertEquals(AuthenticationSession.STATE_SCANNING, session.getState());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the cancellation through the {@link AuthenticationHandle}.
+ */
+public class AuthenticationHandleTest {
+    private static final int THREADS = 8;
+    private static final long TEARDOWN_MILLIS = 5;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            command.run();
+        }
+    };
+
+    private final RecordingCallback mCallback = new RecordingCallback();
+    private final AtomicInteger mTeardowns = new AtomicInteger();
+    private final List<Integer> mPhases = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<Long> mDurations = Collections.synchronizedList(new ArrayList<Long>());
+
+    @Test
+    public void checkCancelIsDeliveredOnce() throws Exception {
+        final AuthenticationSession session = scanningSession();
+        final AuthenticationHandle handle = handle(session);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < THREADS; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    handle.cancel();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        handle.cancel();
+
+        assertEquals(1, mCallback.canceled.get());
+        assertEquals(1, mCallback.terminalCount());
+        assertEquals(1, mTeardowns.get());
+    }
+
+    @Test
+    public void checkIsActiveAfterCancel() {
+        final AuthenticationHandle handle = handle(scanningSession());
+        assertTrue(handle.isActive());
+
+        handle.cancel();
+        assertFalse(handle.isActive());
+    }
+
+    @Test
+    public void checkIsActiveAfterTerminalError() {
+        final AuthenticationSession session = new AuthenticationSession(mCallback, metrics());
+        final AuthenticationHandle handle = handle(session);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+
+        assertTrue(session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, "lockout"));
+        assertFalse(handle.isActive());
+
+        //The prompt is already gone.
+        handle.cancel();
+        assertEquals(0, mCallback.canceled.get());
+        assertEquals(0, mTeardowns.get());
+        assertTrue(mPhases.isEmpty());
+    }
+
+    @Test
+    public void checkTeardownTimingIsReported() {
+        final AuthenticationHandle handle = handle(scanningSession());
+
+        handle.cancel();
+        handle.cancel();
+
+        assertEquals(Collections.singletonList(AuthenticationMetrics.PHASE_TEARDOWN), mPhases);
+        assertTrue(mDurations.get(0) >= TimeUnit.MILLISECONDS.toNanos(TEARDOWN_MILLIS));
+    }
+
+    @NonNull
+    private AuthenticationSession scanningSession() {
+        final AuthenticationSession session = new AuthenticationSession(mCallback, metrics());
+        session.markScanning(session.begin());
+        return session;
+    }
+
+    @NonNull
+    private AuthenticationHandle handle(@NonNull final AuthenticationSession session) {
+        return new AuthenticationHandle(session, new Runnable() {
+            @Override
+            public void run() {
+                mTeardowns.incrementAndGet();
+                try {
+                    Thread.sleep(TEARDOWN_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null, DIRECT);
+    }
+
+    @NonNull
+    private AuthenticationMetrics metrics() {
+        return new AuthenticationMetrics() {
+            @Override
+            public void onTiming(final int phase, final long durationNanos) {
+                mPhases.add(phase);
+                mDurations.add(durationNanos);
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Shows that the sessions and the handles kept after the prompt finished don't retain the caller.
+ * The platform keeps the authentication callback (and so the session) until it is garbage
+ * collected and the application usually keeps the handle in a field.
+ */
+public class AuthenticationLeakTest {
+    private static final int CYCLES = 21;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Stand-in for the activity captured by the anonymous callback.
+     */
+    private static final class FakeActivity {
+        @SuppressWarnings("unused")
+        private final byte[] mViews = new byte[64 * 1024];
+        private int mResult;
+        private String mTitle;
+    }
+
+    @Test
+    public void checkFinishedPromptsDoNotRetainTheCaller() throws Exception {
+        final List<AuthenticationSession> platformRefs = new ArrayList<>();
+        final List<AuthenticationHandle> handles = new ArrayList<>();
+        final List<WeakReference<FakeActivity>> activities = new ArrayList<>();
+
+        for (int i = 0; i < CYCLES; i++) {
+            final FakeActivity activity = new FakeActivity();
+            activities.add(new WeakReference<>(activity));
+
+            final AuthenticationSession session = new AuthenticationSession(new RecordingCallback() {
+                @Override
+                public void onAuthenticationSucceeded() {
+                    super.onAuthenticationSucceeded();
+                    activity.mResult++;
+                }
+            });
+            //The teardown and the updater reference the UI, like the fragment or the view would.
+            final AuthenticationHandle handle = new AuthenticationHandle(session, new Runnable() {
+                @Override
+                public void run() {
+                    activity.mResult = -1;
+                }
+            }, new AuthenticationHandle.ContentUpdater() {
+                @Override
+                public void update(@Nullable final String title,
+                                   @Nullable final String subtitle,
+                                   @Nullable final String description) {
+                    activity.mTitle = title;
+                }
+            }, DIRECT);
+            platformRefs.add(session);
+            handles.add(handle);
+
+            final int attempt = session.begin();
+            session.markScanning(attempt);
+            if (i % 3 == 0) {
+                session.dispatchSucceeded(attempt);
+            } else if (i % 3 == 1) {
+                session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, "lockout");
+            } else {
+                handle.cancel();
+            }
+            assertFalse(handle.isActive());
+        }
+
+        assertEquals(0, countRetained(activities));
+
+        //Sessions and handles must be still reachable while the activities are collected.
+        assertEquals(CYCLES, platformRefs.size());
+        assertEquals(CYCLES, handles.size());
+    }
+
+    private static int countRetained(final List<WeakReference<FakeActivity>> activities)
+            throws InterruptedException {
+        int retained = activities.size();
+        for (int i = 0; i < 50 && retained > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+
+            retained = 0;
+            for (final WeakReference<FakeActivity> reference : activities) {
+                if (reference.get() != null) retained++;
+            }
+        }
+        return retained;
+    }
+}
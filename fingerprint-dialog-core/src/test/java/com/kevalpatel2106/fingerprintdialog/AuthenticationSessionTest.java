@@ -0,0 +1,356 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link AuthenticationSession} state machine.
+ */
+public class AuthenticationSessionTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 500;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void checkHappyPath() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        assertEquals(AuthenticationSession.STATE_IDLE, session.getState());
+
+        final int attempt = session.begin();
+        assertEquals(AuthenticationSession.STATE_PREPARING, session.getState());
+        assertTrue(session.markScanning(attempt));
+        assertEquals(AuthenticationSession.STATE_SCANNING, session.getState());
+
+        assertTrue(session.dispatchHelp(attempt, FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, "help"));
+        assertTrue(session.dispatchFailed(attempt));
+        assertTrue(session.dispatchSucceeded(attempt));
+        assertEquals(AuthenticationSession.STATE_SUCCEEDED, session.getState());
+
+        assertEquals(1, callback.helps.get());
+        assertEquals(1, callback.failed.get());
+        assertEquals(1, callback.succeeded.get());
+    }
+
+    @Test
+    public void checkLateCallbacksAfterTerminalAreDropped() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+
+        assertTrue(session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, "lockout"));
+        assertFalse(session.dispatchHelp(attempt, FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, "help"));
+        assertFalse(session.dispatchFailed(attempt));
+        assertFalse(session.dispatchSucceeded(attempt));
+        assertFalse(session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_CANCELED, null));
+        assertFalse(session.cancel());
+        assertEquals(AuthenticationSession.NO_ATTEMPT, session.begin());
+
+        assertEquals(1, callback.terminalCount());
+        assertEquals(0, callback.helps.get());
+        assertEquals(0, callback.failed.get());
+    }
+
+    @Test
+    public void checkCallbacksOfSuspendedAttemptAreDropped() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int first = session.begin();
+        session.markScanning(first);
+
+        //Suspend multiple times like onPause, onDestroyView and onDetach do.
+        assertTrue(session.suspend());
+        assertFalse(session.suspend());
+        assertFalse(session.suspend());
+        assertEquals(AuthenticationSession.STATE_IDLE, session.getState());
+
+        //Cancellation error of the first attempt arrives after the suspension.
+        assertFalse(session.dispatchError(first, FingerprintManager.FINGERPRINT_ERROR_CANCELED, null));
+
+        final int second = session.begin();
+        assertNotEquals(first, second);
+        assertFalse(session.dispatchError(first, FingerprintManager.FINGERPRINT_ERROR_CANCELED, null));
+        assertFalse(session.markScanning(first));
+        assertTrue(session.markScanning(second));
+        assertTrue(session.dispatchSucceeded(second));
+
+        assertEquals(0, callback.canceled.get());
+        assertEquals(1, callback.succeeded.get());
+    }
+
+    @Test
+    public void checkCancelBeforeBegin() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+
+        assertTrue(session.cancel());
+        assertEquals(AuthenticationSession.STATE_CANCELLED, session.getState());
+        assertEquals(AuthenticationSession.NO_ATTEMPT, session.begin());
+        assertEquals(1, callback.canceled.get());
+    }
+
+    @Test
+    public void checkPlatformErrorsAreNormalized() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+
+        assertTrue(session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_USER_CANCELED, null));
+        assertEquals(AuthenticationSession.STATE_CANCELLED, session.getState());
+        assertEquals(1, callback.canceled.get());
+        assertEquals(0, callback.errors.get());
+    }
+
+    @Test
+    public void checkContinuousSessionRearmsAfterEveryResult() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(new EventDispatcher(callback), null, true);
+        final AuthenticationHandle handle = new AuthenticationHandle(session, null);
+
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(i, session.getSessionNumber());
+            final int attempt = session.begin();
+            session.markScanning(attempt);
+            assertTrue(session.dispatchSucceeded(attempt));
+            assertTrue(handle.isActive());
+
+            //Late callbacks of the finished session are dropped after the re-arm too.
+            assertTrue(session.rearm());
+            assertFalse(session.rearm());
+            assertFalse(session.dispatchSucceeded(attempt));
+        }
+
+        //Transient errors re-arm, lockout finishes the prompt.
+        int attempt = session.begin();
+        assertTrue(session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_TIMEOUT, "timeout"));
+        assertTrue(session.rearm());
+        attempt = session.begin();
+        assertTrue(session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, "lockout"));
+        assertFalse(session.rearm());
+        assertTrue(session.isFinished());
+        assertFalse(handle.isActive());
+
+        assertEquals(3, callback.succeeded.get());
+        assertEquals(2, callback.errors.get());
+        assertFalse(session.cancel());
+    }
+
+    @Test
+    public void checkCancelTracesDismissal() {
+        final List<String> sections = new ArrayList<>();
+        final Tracer tracer = new Tracer() {
+            @Override
+            public void beginSection(@NonNull final String sectionName) {
+                sections.add(sectionName);
+            }
+
+            @Override
+            public void endSection() {
+                sections.add("end");
+            }
+        };
+        final AuthenticationSession session = new AuthenticationSession(
+                new EventDispatcher(new RecordingCallback()), null, false, tracer);
+        final AuthenticationHandle handle = new AuthenticationHandle(session, new Runnable() {
+            @Override
+            public void run() {
+                sections.add("teardown");
+            }
+        }, null, DIRECT);
+        session.markScanning(session.begin());
+
+        handle.cancel();
+        handle.cancel();
+
+        assertEquals(Arrays.asList(Tracer.SECTION_DISMISS, "teardown", "end"), sections);
+    }
+
+    @Test
+    public void checkContentIsUpdatedOnlyWhileActive() {
+        final List<String> updates = new ArrayList<>();
+        final AuthenticationSession session = new AuthenticationSession(new RecordingCallback());
+        final AuthenticationHandle handle = new AuthenticationHandle(session, null,
+                new AuthenticationHandle.ContentUpdater() {
+                    @Override
+                    public void update(@Nullable final String title,
+                                       @Nullable final String subtitle,
+                                       @Nullable final String description) {
+                        updates.add(title + "/" + subtitle + "/" + description);
+                    }
+                }, DIRECT);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+
+        handle.updateContent("Pay 10 EUR", null, "Merchant");
+        assertTrue(session.isCurrent(attempt));
+
+        handle.cancel();
+        handle.updateContent("Pay 11 EUR", null, null);
+
+        assertEquals(Arrays.asList("Pay 10 EUR/null/Merchant"), updates);
+    }
+
+    @Test
+    public void checkContinuousSessionCancelBetweenSessions() {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(new EventDispatcher(callback), null, true);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        assertTrue(session.dispatchSucceeded(attempt));
+
+        //Cancelled before the UI re-armed the sensor.
+        assertTrue(session.cancel());
+        assertFalse(session.rearm());
+        assertTrue(session.isFinished());
+        assertEquals(1, callback.succeeded.get());
+        assertEquals(1, callback.canceled.get());
+    }
+
+    @Test
+    public void checkSingleSessionCannotRearm() {
+        final AuthenticationSession session = new AuthenticationSession(new RecordingCallback());
+        final int attempt = session.begin();
+        assertTrue(session.dispatchSucceeded(attempt));
+        assertFalse(session.rearm());
+        assertTrue(session.isFinished());
+    }
+
+    @Test
+    public void checkConcurrentTerminalEventsDeliverExactlyOneCallback() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final RecordingCallback callback = new RecordingCallback();
+                final AuthenticationSession session = new AuthenticationSession(callback);
+                final int attempt = session.begin();
+                session.markScanning(attempt);
+
+                final CountDownLatch start = new CountDownLatch(1);
+                final CountDownLatch done = new CountDownLatch(THREADS);
+                for (int i = 0; i < THREADS; i++) {
+                    final int event = i;
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                start.await();
+                                fire(session, attempt, event);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            } finally {
+                                done.countDown();
+                            }
+                        }
+                    });
+                }
+                start.countDown();
+                assertTrue(done.await(5, TimeUnit.SECONDS));
+
+                assertEquals(1, callback.terminalCount());
+                assertTrue(session.isTerminal());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkConcurrentSuspendAndBegin() throws Exception {
+        final RecordingCallback callback = new RecordingCallback();
+        final AuthenticationSession session = new AuthenticationSession(callback);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < THREADS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < ROUNDS; j++) {
+                        final int attempt = session.begin();
+                        if (attempt != AuthenticationSession.NO_ATTEMPT) {
+                            session.markScanning(attempt);
+                            session.dispatchHelp(attempt, FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, null);
+                        }
+                        session.suspend();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        //Nobody delivered a terminal event so the session can still finish exactly once.
+        assertEquals(0, callback.terminalCount());
+        session.suspend();
+        final int attempt = session.begin();
+        assertTrue(session.dispatchSucceeded(attempt));
+        assertEquals(1, callback.terminalCount());
+    }
+
+    private static void fire(final AuthenticationSession session, final int attempt, final int event) {
+        switch (event % 6) {
+            case 0:
+                session.dispatchSucceeded(attempt);
+                break;
+            case 1:
+                session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, "lockout");
+                break;
+            case 2:
+                session.dispatchError(attempt, FingerprintManager.FINGERPRINT_ERROR_CANCELED, null);
+                break;
+            case 3:
+                session.dispatchNotSupported(attempt);
+                break;
+            case 4:
+                session.dispatchNoFingerprintEnrolled(attempt);
+                break;
+            default:
+                session.cancel();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link AuthenticationWatchdog} against the stalled {@link FakeAndroidKeyStore}.
+ */
+public class AuthenticationWatchdogTest {
+    private FakeAndroidKeyStore mProvider;
+    private AuthenticationWatchdog mWatchdog;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() {
+        mProvider = FakeAndroidKeyStore.install();
+        mWatchdog = new AuthenticationWatchdog();
+        mListener = new RecordingListener();
+    }
+
+    @After
+    public void tearDown() {
+        FakeAndroidKeyStore.uninstall();
+    }
+
+    @Test
+    public void checkStalledPhaseIsReportedOnce() throws Exception {
+        mProvider.setLatency(FakeAndroidKeyStore.Operation.LOAD, 500);
+        mWatchdog.setDeadline(AuthenticationMetrics.PHASE_KEYSTORE_LOAD, 50);
+
+        final AuthenticationWatchdog.Deadline deadline = mWatchdog
+                .start(AuthenticationMetrics.PHASE_KEYSTORE_LOAD, mListener);
+        assertTrue(new FingerprintKeyStore().load());
+
+        //Stall is reported while the key store is still loading.
+        assertTrue(mListener.stalled.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(AuthenticationMetrics.PHASE_KEYSTORE_LOAD, mListener.phase);
+        assertEquals(50, mListener.deadlineMillis);
+
+        //Late result is dropped.
+        assertFalse(deadline.complete());
+        assertEquals(1, mListener.count.get());
+    }
+
+    @Test
+    public void checkCompletedPhaseIsNotReported() throws Exception {
+        mWatchdog.setDeadline(AuthenticationMetrics.PHASE_KEY_GENERATION, 100);
+
+        final AuthenticationWatchdog.Deadline deadline = mWatchdog
+                .start(AuthenticationMetrics.PHASE_KEY_GENERATION, mListener);
+        assertTrue(deadline.complete());
+        assertFalse(deadline.complete());
+
+        assertFalse(mListener.stalled.await(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, mListener.count.get());
+    }
+
+    @Test
+    public void checkEveryPhaseHasItsOwnDeadline() {
+        mWatchdog.setDeadline(AuthenticationMetrics.PHASE_CIPHER_INIT, 10);
+        assertEquals(10, mWatchdog.getDeadline(AuthenticationMetrics.PHASE_CIPHER_INIT));
+        assertEquals(AuthenticationWatchdog.DEFAULT_DEADLINE_MILLIS,
+                mWatchdog.getDeadline(AuthenticationMetrics.PHASE_AUTHENTICATE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkTeardownHasNoDeadline() {
+        mWatchdog.setDeadline(AuthenticationMetrics.PHASE_TEARDOWN, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkDeadlineMustBePositive() {
+        mWatchdog.setDeadline(AuthenticationMetrics.PHASE_AUTHENTICATE, 0);
+    }
+
+    /**
+     * {@link AuthenticationWatchdog.StallListener} that records the stalls.
+     */
+    private static class RecordingListener implements AuthenticationWatchdog.StallListener {
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger();
+        volatile int phase;
+        volatile long deadlineMillis;
+
+        @Override
+        public void onStall(final int phase, final long deadlineMillis) {
+            this.phase = phase;
+            this.deadlineMillis = deadlineMillis;
+            count.incrementAndGet();
+            stalled.countDown();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link EventListenerSet}.
+ */
+public class EventListenerSetTest {
+
+    @Test
+    public void checkMaskSkipsExcludedEvents() {
+        final RecordingCallback ui = new RecordingCallback();
+        final RecordingCallback audit = new RecordingCallback();
+        final EventListenerSet listeners = new EventListenerSet();
+        listeners.add(new EventDispatcher(audit), AuthenticationEvent.MASK_TERMINAL);
+
+        final AuthenticationSession session = new AuthenticationSession(
+                listeners.withFirst(new EventDispatcher(ui), AuthenticationEvent.MASK_ALL), null);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        for (int i = 0; i < 100; i++) {
+            session.dispatchHelp(attempt, FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, "help");
+        }
+        session.dispatchFailed(attempt);
+        session.dispatchSucceeded(attempt);
+
+        assertEquals(100, ui.helps.get());
+        assertEquals(1, ui.failed.get());
+        assertEquals(1, ui.succeeded.get());
+        assertEquals(0, audit.helps.get());
+        assertEquals(0, audit.failed.get());
+        assertEquals(1, audit.succeeded.get());
+    }
+
+    @Test
+    public void checkListenersAreCalledInOrder() {
+        final List<String> calls = new ArrayList<>();
+        final EventListenerSet listeners = new EventListenerSet();
+        listeners.add(new NamedListener("second", calls), AuthenticationEvent.MASK_ALL);
+        listeners.add(new NamedListener("third", calls),
+                AuthenticationEvent.maskOf(AuthenticationEvent.TYPE_FAILED));
+
+        listeners.withFirst(new NamedListener("first", calls), AuthenticationEvent.MASK_ALL)
+                .onEvent(AuthenticationEvent.failed());
+
+        assertEquals(3, calls.size());
+        assertEquals("first", calls.get(0));
+        assertEquals("second", calls.get(1));
+        assertEquals("third", calls.get(2));
+    }
+
+    @Test
+    public void checkAddingAgainReplacesMask() {
+        final List<String> calls = new ArrayList<>();
+        final NamedListener listener = new NamedListener("listener", calls);
+        final EventListenerSet listeners = new EventListenerSet();
+        listeners.add(listener, AuthenticationEvent.MASK_ALL);
+        listeners.add(listener, AuthenticationEvent.MASK_TERMINAL);
+        assertEquals(1, listeners.size());
+
+        listeners.onEvent(AuthenticationEvent.failed());
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void checkRegistrationDuringDispatchAffectsOnlyNextEvent() {
+        final List<String> calls = new ArrayList<>();
+        final EventListenerSet listeners = new EventListenerSet();
+        final NamedListener late = new NamedListener("late", calls);
+        listeners.add(new AuthenticationEventListener() {
+            @Override
+            public void onEvent(@NonNull final AuthenticationEvent event) {
+                listeners.add(late, AuthenticationEvent.MASK_ALL);
+            }
+        }, AuthenticationEvent.MASK_ALL);
+
+        listeners.onEvent(AuthenticationEvent.failed());
+        assertTrue(calls.isEmpty());
+
+        listeners.onEvent(AuthenticationEvent.failed());
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void checkRemove() {
+        final List<String> calls = new ArrayList<>();
+        final NamedListener listener = new NamedListener("listener", calls);
+        final EventListenerSet listeners = new EventListenerSet();
+        listeners.add(listener, AuthenticationEvent.MASK_ALL);
+        final EventListenerSet snapshot = listeners.withFirst(new NamedListener("first", calls),
+                AuthenticationEvent.MASK_ALL);
+
+        assertTrue(listeners.remove(listener));
+        assertFalse(listeners.remove(listener));
+        assertEquals(0, listeners.size());
+
+        //Snapshot taken by the running prompt is not affected.
+        snapshot.onEvent(AuthenticationEvent.failed());
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void checkCallbackIsReplacedAndRemovedByItself() {
+        final RecordingCallback audit = new RecordingCallback();
+        final RecordingCallback other = new RecordingCallback();
+        final EventListenerSet listeners = new EventListenerSet();
+        listeners.add(audit, new EventDispatcher(audit), AuthenticationEvent.MASK_ALL);
+        listeners.add(other, new EventDispatcher(other), AuthenticationEvent.MASK_ALL);
+
+        //New dispatcher for the same callback replaces the old one in place.
+        listeners.add(audit, new EventDispatcher(audit), AuthenticationEvent.MASK_TERMINAL);
+        assertEquals(2, listeners.size());
+        listeners.onEvent(AuthenticationEvent.failed());
+        assertEquals(0, audit.failed.get());
+        assertEquals(1, other.failed.get());
+
+        assertTrue(listeners.remove(audit));
+        assertFalse(listeners.remove(audit));
+        assertEquals(1, listeners.size());
+        listeners.onEvent(AuthenticationEvent.succeeded());
+        assertEquals(0, audit.succeeded.get());
+        assertEquals(1, other.succeeded.get());
+    }
+
+    @Test
+    public void checkRemovedCallbackIsCollected() throws Exception {
+        final EventListenerSet listeners = new EventListenerSet();
+        RecordingCallback callback = new RecordingCallback();
+        final WeakReference<RecordingCallback> reference = new WeakReference<>(callback);
+        listeners.add(callback, new EventDispatcher(callback), AuthenticationEvent.MASK_ALL);
+
+        assertTrue(listeners.remove(callback));
+        //noinspection UnusedAssignment
+        callback = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkEmptyMaskIsRejected() {
+        new EventListenerSet().add(new NamedListener("listener", new ArrayList<String>()), 0);
+    }
+
+    private static class NamedListener implements AuthenticationEventListener {
+        private final String mName;
+        private final List<String> mCalls;
+
+        NamedListener(@NonNull final String name, @NonNull final List<String> calls) {
+            mName = name;
+            mCalls = calls;
+        }
+
+        @Override
+        public void onEvent(@NonNull final AuthenticationEvent event) {
+            mCalls.add(mName);
+        }
+    }
+}
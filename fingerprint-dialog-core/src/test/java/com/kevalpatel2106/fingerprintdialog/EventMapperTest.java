@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.hardware.fingerprint.FingerprintManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the lookup tables of the {@link EventMapper}.
+ */
+@SuppressWarnings("deprecation")
+public class EventMapperTest {
+
+    @Test
+    public void checkErrorTypes() {
+        assertEquals(AuthenticationEvent.TYPE_NOT_SUPPORTED,
+                EventMapper.errorType(FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE));
+        assertEquals(AuthenticationEvent.TYPE_NOT_SUPPORTED,
+                EventMapper.errorType(FingerprintManager.FINGERPRINT_ERROR_HW_NOT_PRESENT));
+        assertEquals(AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED,
+                EventMapper.errorType(FingerprintManager.FINGERPRINT_ERROR_NO_FINGERPRINTS));
+        assertEquals(AuthenticationEvent.TYPE_CANCELED,
+                EventMapper.errorType(FingerprintManager.FINGERPRINT_ERROR_CANCELED));
+        assertEquals(AuthenticationEvent.TYPE_CANCELED,
+                EventMapper.errorType(FingerprintManager.FINGERPRINT_ERROR_USER_CANCELED));
+        assertEquals(AuthenticationEvent.TYPE_ERROR,
+                EventMapper.errorType(FingerprintManager.FINGERPRINT_ERROR_LOCKOUT));
+        assertEquals(AuthenticationEvent.TYPE_ERROR,
+                EventMapper.errorType(FingerprintManager.FINGERPRINT_ERROR_TIMEOUT));
+    }
+
+    @Test
+    public void checkErrorCategories() {
+        assertEquals(AuthenticationEvent.CATEGORY_LOCKOUT,
+                EventMapper.errorCategory(FingerprintManager.FINGERPRINT_ERROR_LOCKOUT));
+        assertEquals(AuthenticationEvent.CATEGORY_LOCKOUT,
+                EventMapper.errorCategory(FingerprintManager.FINGERPRINT_ERROR_LOCKOUT_PERMANENT));
+        assertEquals(AuthenticationEvent.CATEGORY_USER,
+                EventMapper.errorCategory(FingerprintManager.FINGERPRINT_ERROR_USER_CANCELED));
+        assertEquals(AuthenticationEvent.CATEGORY_TRANSIENT,
+                EventMapper.errorCategory(FingerprintManager.FINGERPRINT_ERROR_UNABLE_TO_PROCESS));
+        assertEquals(AuthenticationEvent.CATEGORY_SYSTEM,
+                EventMapper.errorCategory(FingerprintManager.FINGERPRINT_ERROR_VENDOR));
+    }
+
+    @Test
+    public void checkCodesOutsideTheTables() {
+        //Vendor specific error codes start at 1000.
+        assertEquals(AuthenticationEvent.TYPE_ERROR, EventMapper.errorType(1001));
+        assertEquals(AuthenticationEvent.CATEGORY_SYSTEM, EventMapper.errorCategory(1001));
+        assertEquals(AuthenticationEvent.TYPE_ERROR, EventMapper.errorType(-5));
+        assertEquals(AuthenticationEvent.CATEGORY_TRANSIENT, EventMapper.helpCategory(1001));
+    }
+
+    @Test
+    public void checkHelpCategories() {
+        assertEquals(AuthenticationEvent.CATEGORY_NONE,
+                EventMapper.helpCategory(FingerprintManager.FINGERPRINT_ACQUIRED_GOOD));
+        assertEquals(AuthenticationEvent.CATEGORY_HARDWARE,
+                EventMapper.helpCategory(FingerprintManager.FINGERPRINT_ACQUIRED_IMAGER_DIRTY));
+        assertEquals(AuthenticationEvent.CATEGORY_TRANSIENT,
+                EventMapper.helpCategory(FingerprintManager.FINGERPRINT_ACQUIRED_TOO_FAST));
+    }
+
+    @Test
+    public void checkTerminalTypes() {
+        assertTrue(AuthenticationEvent.succeeded().isTerminal());
+        assertTrue(AuthenticationEvent.canceledByUser().isTerminal());
+        assertTrue(AuthenticationEvent.fromError(FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, null).isTerminal());
+        assertFalse(AuthenticationEvent.failed().isTerminal());
+        assertFalse(AuthenticationEvent.fromHelp(FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, null).isTerminal());
+
+        assertEquals(AuthenticationSession.STATE_CANCELLED,
+                EventMapper.terminalState(AuthenticationEvent.TYPE_CANCELED));
+        assertEquals(AuthenticationSession.STATE_SUCCEEDED,
+                EventMapper.terminalState(AuthenticationEvent.TYPE_SUCCEEDED));
+        assertEquals(AuthenticationSession.STATE_FAILED,
+                EventMapper.terminalState(AuthenticationEvent.TYPE_ERROR));
+    }
+}
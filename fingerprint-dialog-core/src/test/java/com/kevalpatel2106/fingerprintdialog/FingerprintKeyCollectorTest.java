@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link FingerprintKeyCollector} and its {@link KeyAliasIndex} against the
+ * {@link FakeAndroidKeyStore}.
+ */
+public class FingerprintKeyCollectorTest {
+    private static final long GRACE = 1000;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private InMemoryStore mStore;
+    private FakeClock mClock;
+    private FingerprintKeyStore mKeyStore;
+
+    @Before
+    public void setUp() {
+        FakeAndroidKeyStore.install();
+        mStore = new InMemoryStore();
+        mClock = new FakeClock();
+        mKeyStore = new FingerprintKeyStore(FingerprintKeyStore.ANDROID_KEY_STORE,
+                FakeAndroidKeyStore.keySpecFactory(true, -1));
+    }
+
+    @After
+    public void tearDown() {
+        FakeAndroidKeyStore.uninstall();
+    }
+
+    @Test
+    public void checkKeyIsReusedUntilMaxAge() {
+        final KeyAliasIndex index = index();
+
+        final KeyAliasIndex.Lease first = index.acquire();
+        assertTrue(first.isNew());
+        assertTrue(first.getAlias().startsWith(KeyAliasIndex.ALIAS_PREFIX));
+
+        mClock.now += KeyAliasIndex.DEFAULT_MAX_AGE_MILLIS - 1;
+        final KeyAliasIndex.Lease second = index.acquire();
+        assertFalse(second.isNew());
+        assertEquals(first.getAlias(), second.getAlias());
+
+        mClock.now += 1;
+        final KeyAliasIndex.Lease rotated = index.acquire();
+        assertTrue(rotated.isNew());
+        assertNotEquals(first.getAlias(), rotated.getAlias());
+    }
+
+    @Test
+    public void checkKeyIsRotatedAfterMaxUses() {
+        final KeyAliasIndex index = index();
+        index.setRotationPolicy(DAY, 2);
+
+        final String alias = index.acquire().getAlias();
+        assertEquals(alias, index.acquire().getAlias());
+        assertNotEquals(alias, index.acquire().getAlias());
+    }
+
+    @Test
+    public void checkActiveKeySurvivesRestart() {
+        final String alias = index().acquire().getAlias();
+
+        final KeyAliasIndex.Lease lease = index().acquire();
+        assertFalse(lease.isNew());
+        assertEquals(alias, lease.getAlias());
+    }
+
+    @Test
+    public void checkRetiredKeyIsDeletedAfterGrace() throws Exception {
+        final KeyAliasIndex index = index();
+        final FingerprintKeyCollector collector = collector(index);
+
+        final String old = acquireKey(collector);
+        collector.retire(old);
+        final String current = acquireKey(collector);
+
+        assertEquals(0, (int) collector.collect().get());
+        assertTrue(mKeyStore.containsAlias(old));
+
+        mClock.now += GRACE;
+        assertEquals(1, (int) collector.collect().get());
+        assertFalse(mKeyStore.containsAlias(old));
+        assertTrue(mKeyStore.containsAlias(current));
+        assertFalse(index.aliases().contains(old));
+        assertFalse(mStore.states.containsKey(old));
+    }
+
+    @Test
+    public void checkOrphansAreDeletedInBatches() throws Exception {
+        final int orphans = FingerprintKeyCollector.BATCH_SIZE * 2 + 3;
+        for (int i = 0; i < orphans; i++) {
+            mKeyStore.generateKey(KeyAliasIndex.ALIAS_PREFIX + i);
+        }
+        final KeyAliasIndex index = index();
+        final KeyAliasIndex.Lease lease = index.acquire();
+        assertTrue(mKeyStore.generateKey(lease.getAlias()));
+
+        assertEquals(orphans, (int) collector(index).collect().get());
+        assertEquals(1, mKeyStore.aliases().size());
+        assertTrue(mKeyStore.containsAlias(lease.getAlias()));
+    }
+
+    @Test
+    public void checkKeysOfApplicationAreKept() throws Exception {
+        final String poolKey = FingerprintKeyPool.KEY_ALIAS_PREFIX + "account";
+        final String appKey = "app_key";
+        final String legacyKey = UUID.randomUUID().toString();
+        mKeyStore.generateKey(poolKey);
+        mKeyStore.generateKey(appKey);
+        mKeyStore.generateKey(legacyKey);
+
+        final FingerprintKeyCollector collector = collector(index());
+        assertEquals(0, (int) collector.collect().get());
+        assertTrue(mKeyStore.containsAlias(legacyKey));
+
+        collector.setCollectLegacyKeys(true);
+        assertEquals(1, (int) collector.collect().get());
+        assertFalse(mKeyStore.containsAlias(legacyKey));
+        assertTrue(mKeyStore.containsAlias(poolKey));
+        assertTrue(mKeyStore.containsAlias(appKey));
+    }
+
+    @NonNull
+    private String acquireKey(@NonNull final FingerprintKeyCollector collector) throws Exception {
+        final KeyAliasIndex.Lease lease = collector.acquire();
+        if (lease.isNew()) assertTrue(mKeyStore.generateKey(lease.getAlias()));
+
+        //Let the collection started by the acquire finish.
+        collector.collect().get();
+        return lease.getAlias();
+    }
+
+    @NonNull
+    private KeyAliasIndex index() {
+        return new KeyAliasIndex(mStore, mClock, GRACE);
+    }
+
+    @NonNull
+    private FingerprintKeyCollector collector(@NonNull final KeyAliasIndex index) {
+        return new FingerprintKeyCollector(mKeyStore, index, 0);
+    }
+
+    private static class InMemoryStore implements KeyAliasIndex.Store {
+        final Map<String, String> states = new HashMap<>();
+
+        @NonNull
+        @Override
+        public Map<String, String> read() {
+            return new HashMap<>(states);
+        }
+
+        @Override
+        public void write(@NonNull final String alias, @NonNull final String state) {
+            states.put(alias, state);
+        }
+
+        @Override
+        public void remove(@NonNull final Collection<String> aliases) {
+            states.keySet().removeAll(aliases);
+        }
+    }
+
+    private static class FakeClock implements KeyAliasIndex.Clock {
+        long now = 1000000;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link FingerprintKeyPool}.
+ */
+public class FingerprintKeyPoolTest {
+    private InMemoryKeyStore mKeyStore;
+    private FingerprintKeyPool mPool;
+
+    @Before
+    public void setUp() {
+        mKeyStore = new InMemoryKeyStore();
+        mPool = new FingerprintKeyPool(mKeyStore, 3);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    @Test
+    public void checkPrepareGeneratesKeysInParallel() throws Exception {
+        final List<String> accounts = Arrays.asList("a", "b", "c");
+        for (Future<Boolean> future : mPool.prepare(accounts)) {
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(3, mKeyStore.keys.size());
+        assertEquals(3, mPool.size());
+        assertEquals(0, mKeyStore.callerThreadInits.get());
+
+        //Cache hit doesn't initialize the cipher on the caller thread.
+        assertNotNull(mPool.forKey("a"));
+        assertEquals(0, mKeyStore.callerThreadInits.get());
+
+        //Cache miss does.
+        mPool.evictAll();
+        assertNotNull(mPool.forKey("b"));
+        assertEquals(1, mKeyStore.callerThreadInits.get());
+    }
+
+    @Test
+    public void checkCipherIsHandedOutOnlyOnce() throws Exception {
+        waitFor(mPool.prepare(Arrays.asList("a")));
+
+        final Cipher first = mPool.forKey("a");
+        final Cipher second = mPool.forKey("a");
+        assertNotNull(first);
+        assertNotNull(second);
+        assertTrue(first != second);
+
+        //Same key is reused for the account.
+        assertEquals(1, mKeyStore.generations.get());
+    }
+
+    @Test
+    public void checkCacheIsBounded() throws Exception {
+        waitFor(mPool.prepare(Arrays.asList("a", "b", "c", "d", "e")));
+        assertEquals(3, mPool.size());
+        assertEquals(5, mKeyStore.keys.size());
+    }
+
+    @Test
+    public void checkMemoryPressureEvictsCiphers() throws Exception {
+        waitFor(mPool.prepare(Arrays.asList("a", "b", "c")));
+
+        mPool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(1, mPool.size());
+
+        mPool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(0, mPool.size());
+
+        //Keys are not deleted.
+        assertEquals(3, mKeyStore.keys.size());
+    }
+
+    @Test
+    public void checkInvalidatedKeyReturnsNull() throws Exception {
+        waitFor(mPool.prepare(Arrays.asList("a")));
+        mPool.evictAll();
+        mKeyStore.invalidated = true;
+
+        assertNull(mPool.forKey("a"));
+    }
+
+    @Test
+    public void checkDeleteKey() throws Exception {
+        waitFor(mPool.prepare(Arrays.asList("a")));
+        assertTrue(mPool.deleteKey("a"));
+        assertEquals(0, mPool.size());
+        assertTrue(mKeyStore.keys.isEmpty());
+    }
+
+    private static void waitFor(final List<Future<Boolean>> futures) throws Exception {
+        final List<Boolean> results = new ArrayList<>();
+        for (Future<Boolean> future : futures) results.add(future.get(5, TimeUnit.SECONDS));
+        assertTrue(!results.contains(false));
+    }
+
+    /**
+     * {@link FingerprintKeyStore} that keeps the keys in the memory.
+     */
+    private static class InMemoryKeyStore extends FingerprintKeyStore {
+        final Map<String, SecretKey> keys = new ConcurrentHashMap<>();
+        final AtomicInteger generations = new AtomicInteger();
+        final AtomicInteger callerThreadInits = new AtomicInteger();
+        volatile boolean invalidated = false;
+
+        InMemoryKeyStore() {
+            super("unused", new KeySpecFactory() {
+                @NonNull
+                @Override
+                public AlgorithmParameterSpec create(@NonNull final String alias) {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        }
+
+        @Override
+        boolean generateKey(@NonNull final String alias) {
+            try {
+                keys.put(alias, KeyGenerator.getInstance("AES").generateKey());
+                generations.incrementAndGet();
+                return true;
+            } catch (GeneralSecurityException e) {
+                return false;
+            }
+        }
+
+        @Override
+        boolean containsAlias(@NonNull final String alias) {
+            return keys.containsKey(alias);
+        }
+
+        @Override
+        Cipher createCipher(@NonNull final String alias) {
+            if (invalidated) return null;
+            try {
+                final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+                cipher.init(Cipher.ENCRYPT_MODE, keys.get(alias));
+                if (!Thread.currentThread().getName().startsWith("FingerprintKeyPool-")) {
+                    callerThreadInits.incrementAndGet();
+                }
+                return cipher;
+            } catch (GeneralSecurityException e) {
+                return null;
+            }
+        }
+
+        @Override
+        boolean deleteKey(@NonNull final String alias) {
+            keys.remove(alias);
+            return true;
+        }
+    }
+}
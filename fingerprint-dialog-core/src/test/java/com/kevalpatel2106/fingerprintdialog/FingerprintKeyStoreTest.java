@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyStore;
+
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link FingerprintKeyStore} against the {@link FakeAndroidKeyStore}.
+ */
+public class FingerprintKeyStoreTest {
+    private static final String ALIAS = "alias";
+    private static final byte[] DATA = "Secret of the user".getBytes();
+
+    private FakeAndroidKeyStore mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = FakeAndroidKeyStore.install();
+    }
+
+    @After
+    public void tearDown() {
+        FakeAndroidKeyStore.uninstall();
+    }
+
+    @Test
+    public void checkKeyLifecycle() {
+        final FingerprintKeyStore keyStore = perUseKeyStore();
+        assertFalse(keyStore.containsAlias(ALIAS));
+        assertNull(keyStore.createCipher(ALIAS));
+
+        assertTrue(keyStore.generateKey(ALIAS));
+        assertTrue(keyStore.containsAlias(ALIAS));
+        assertNotNull(keyStore.createCipher(ALIAS));
+
+        assertTrue(keyStore.deleteKey(ALIAS));
+        assertFalse(keyStore.containsAlias(ALIAS));
+    }
+
+    @Test
+    public void checkPerUseKeyNeedsAuthentication() throws Exception {
+        final FingerprintKeyStore keyStore = perUseKeyStore();
+        assertTrue(keyStore.generateKey(ALIAS));
+
+        final Cipher cipher = keyStore.createCipher(ALIAS);
+        assertNotNull(cipher);
+        try {
+            cipher.doFinal(DATA);
+            fail("Cipher must not work before the authentication.");
+        } catch (IllegalBlockSizeException expected) {
+            //Expected.
+        }
+
+        //Authentication with the CryptoObject unlocks the cipher.
+        final Cipher authorized = keyStore.createCipher(ALIAS);
+        assertNotNull(authorized);
+        mProvider.authenticateUser();
+        final byte[] encrypted = authorized.doFinal(DATA);
+
+        //Decrypt with the same key to check the round trip.
+        final KeyStore androidKeyStore = KeyStore.getInstance(FingerprintKeyStore.ANDROID_KEY_STORE);
+        androidKeyStore.load(null);
+        final SecretKey key = (SecretKey) androidKeyStore.getKey(ALIAS, null);
+        assertNull(key.getEncoded());
+
+        final Cipher decrypt = Cipher.getInstance(FingerprintKeyStore.CIPHER_TRANSFORMATION);
+        decrypt.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(authorized.getIV()));
+        mProvider.authenticateUser();
+        assertArrayEquals(DATA, decrypt.doFinal(encrypted));
+    }
+
+    @Test
+    public void checkTimeBoundKeyThrowsUserNotAuthenticated() throws Exception {
+        final FingerprintKeyStore keyStore = new FingerprintKeyStore(FingerprintKeyStore.ANDROID_KEY_STORE,
+                FakeAndroidKeyStore.keySpecFactory(true, 30));
+        assertTrue(keyStore.generateKey(ALIAS));
+        final SecretKey key = loadKey();
+
+        try {
+            Cipher.getInstance(FingerprintKeyStore.CIPHER_TRANSFORMATION).init(Cipher.ENCRYPT_MODE, key);
+            fail("Init must fail before the authentication.");
+        } catch (UserNotAuthenticatedException expected) {
+            //Expected.
+        }
+        assertNull(keyStore.createCipher(ALIAS));
+
+        mProvider.authenticateUser();
+        assertNotNull(keyStore.createCipher(ALIAS));
+
+        mProvider.expireAuthentication();
+        assertNull(keyStore.createCipher(ALIAS));
+    }
+
+    @Test
+    public void checkNewEnrollmentInvalidatesTheKey() throws Exception {
+        final FingerprintKeyStore keyStore = perUseKeyStore();
+        assertTrue(keyStore.generateKey(ALIAS));
+        mProvider.enrollNewFingerprint();
+
+        try {
+            Cipher.getInstance(FingerprintKeyStore.CIPHER_TRANSFORMATION).init(Cipher.ENCRYPT_MODE, loadKey());
+            fail("Init must fail after the new enrollment.");
+        } catch (KeyPermanentlyInvalidatedException expected) {
+            //Expected.
+        }
+        assertNull(keyStore.createCipher(ALIAS));
+
+        //Regenerating the key recovers.
+        assertTrue(keyStore.generateKey(ALIAS));
+        assertNotNull(keyStore.createCipher(ALIAS));
+    }
+
+    @Test
+    public void checkKeyStoreIsLoadedOnce() {
+        mProvider.setLatency(FakeAndroidKeyStore.Operation.LOAD, 20);
+        mProvider.setLatency(FakeAndroidKeyStore.Operation.CIPHER_INIT, 5);
+
+        final FingerprintKeyStore keyStore = perUseKeyStore();
+        assertTrue(keyStore.generateKey(ALIAS));
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) assertNotNull(keyStore.createCipher(ALIAS));
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        //Latency budget of the cached path: one init per cipher, no key store load.
+        assertEquals(1, mProvider.getCount(FakeAndroidKeyStore.Operation.LOAD));
+        assertEquals(10, mProvider.getCount(FakeAndroidKeyStore.Operation.CIPHER_INIT));
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis >= 50);
+    }
+
+    private static FingerprintKeyStore perUseKeyStore() {
+        return new FingerprintKeyStore(FingerprintKeyStore.ANDROID_KEY_STORE,
+                FakeAndroidKeyStore.keySpecFactory(true, -1));
+    }
+
+    private static SecretKey loadKey() throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance(FingerprintKeyStore.ANDROID_KEY_STORE);
+        keyStore.load(null);
+        return (SecretKey) keyStore.getKey(ALIAS, null);
+    }
+}
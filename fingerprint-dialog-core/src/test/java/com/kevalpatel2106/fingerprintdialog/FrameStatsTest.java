@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the {@link FrameStats.Collector}.
+ */
+public class FrameStatsTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void checkEnterAndSteadyFrames() {
+        final FrameStats.Collector collector = new FrameStats.Collector(16 * MS, 400 * MS);
+
+        //Enter animation: slow first frame, then smooth frames.
+        collector.onFrame(1000 * MS, 48 * MS);
+        for (int i = 1; i <= 20; i++) collector.onFrame((1000 + i * 16) * MS, 8 * MS);
+        //Status text update after the animation.
+        collector.onFrame(3000 * MS, 20 * MS);
+        collector.onUnreported(2);
+
+        final FrameStats stats = collector.build();
+        assertEquals(22, stats.getFrameCount());
+        assertEquals(2, stats.getJankyFrameCount());
+        assertEquals(48 * MS, stats.getWorstFrameNanos());
+        assertEquals((48 + 20 * 8 + 20) * MS, stats.getTotalFrameNanos());
+        assertEquals(21, stats.getEnterFrameCount());
+        assertEquals(1, stats.getEnterJankyFrameCount());
+        assertEquals(48 * MS, stats.getEnterWorstFrameNanos());
+        assertEquals(2, stats.getUnreportedFrameCount());
+    }
+
+    @Test
+    public void checkNoFrames() {
+        final FrameStats stats = new FrameStats.Collector(16 * MS, 400 * MS).build();
+        assertEquals(0, stats.getFrameCount());
+        assertEquals(0, stats.getWorstFrameNanos());
+    }
+}
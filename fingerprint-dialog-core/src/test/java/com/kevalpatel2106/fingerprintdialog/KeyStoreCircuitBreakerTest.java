@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link KeyStoreCircuitBreaker}.
+ */
+public class KeyStoreCircuitBreakerTest {
+    private static final String DEVICE = "vendor/device:8.0.0/26";
+    private static final long BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 3000;
+
+    private InMemoryStore mStore;
+    private FakeClock mClock;
+
+    @Before
+    public void setUp() {
+        mStore = new InMemoryStore();
+        mClock = new FakeClock();
+    }
+
+    @Test
+    public void checkOpensAfterConsecutiveFailures() {
+        final KeyStoreCircuitBreaker breaker = breaker(DEVICE);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void checkSuccessResetsFailures() {
+        final KeyStoreCircuitBreaker breaker = breaker(DEVICE);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void checkProbeAfterBackoff() {
+        final KeyStoreCircuitBreaker breaker = breaker(DEVICE);
+        openBreaker(breaker);
+
+        mClock.now += BACKOFF - 1;
+        assertFalse(breaker.allowRequest());
+        mClock.now += 1;
+        assertTrue(breaker.allowRequest());
+
+        //Successful probe closes the breaker.
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void checkFailedProbeDoublesBackoff() {
+        final KeyStoreCircuitBreaker breaker = breaker(DEVICE);
+        openBreaker(breaker);
+
+        mClock.now += BACKOFF;
+        breaker.recordFailure();
+        mClock.now += 2 * BACKOFF - 1;
+        assertFalse(breaker.allowRequest());
+        mClock.now += 1;
+        assertTrue(breaker.allowRequest());
+
+        //Backoff is capped.
+        breaker.recordFailure();
+        mClock.now += MAX_BACKOFF;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void checkStateSurvivesRestart() {
+        openBreaker(breaker(DEVICE));
+
+        //New process of the same build.
+        assertFalse(breaker(DEVICE).allowRequest());
+
+        //OTA update.
+        assertTrue(breaker("vendor/device:9/28").allowRequest());
+    }
+
+    @Test
+    public void checkCorruptStateIsIgnored() {
+        mStore.states.put(DEVICE, "broken");
+        assertTrue(breaker(DEVICE).allowRequest());
+
+        mStore.states.put(DEVICE, "a:b:c");
+        assertTrue(breaker(DEVICE).allowRequest());
+    }
+
+    @Test
+    public void checkSuccessWithoutFailuresDoesNotWrite() {
+        breaker(DEVICE).recordSuccess();
+        assertNull(mStore.states.get(DEVICE));
+    }
+
+    private void openBreaker(@NonNull final KeyStoreCircuitBreaker breaker) {
+        for (int i = 0; i < KeyStoreCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) breaker.recordFailure();
+        assertFalse(breaker.allowRequest());
+    }
+
+    @NonNull
+    private KeyStoreCircuitBreaker breaker(@NonNull final String device) {
+        return new KeyStoreCircuitBreaker(device, mStore, mClock,
+                KeyStoreCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, BACKOFF, MAX_BACKOFF);
+    }
+
+    /**
+     * {@link KeyStoreCircuitBreaker.Store} that keeps the state in the memory.
+     */
+    private static class InMemoryStore implements KeyStoreCircuitBreaker.Store {
+        final Map<String, String> states = new HashMap<>();
+
+        @Nullable
+        @Override
+        public String read(@NonNull final String deviceKey) {
+            return states.get(deviceKey);
+        }
+
+        @Override
+        public void write(@NonNull final String deviceKey, @NonNull final String state) {
+            states.clear();
+            states.put(deviceKey, state);
+        }
+    }
+
+    private static class FakeClock implements KeyStoreCircuitBreaker.Clock {
+        long now = 1000000;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.UserNotAuthenticatedException;
+import android.support.annotation.NonNull;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyGeneratorSpi;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Software stand-in for the "AndroidKeyStore" JCA provider, so the key and cipher code runs on
+ * the JVM. It registers the KeyStore, the AES KeyGenerator and the
+ * {@link FingerprintKeyStore#CIPHER_TRANSFORMATION} cipher under the
+ * {@link FingerprintKeyStore#ANDROID_KEY_STORE} name and emulates:
+ * <ul>
+ * <li>Keys that never leave the key store. {@link Key#getEncoded()} returns null.</li>
+ * <li>Keys bound to the user authentication. A per-use key can be initialized, but the cipher
+ * fails until {@link #authenticateUser()} authorizes it, just like the
+ * {@link android.hardware.fingerprint.FingerprintManager.CryptoObject}. A key with the validity
+ * duration throws {@link UserNotAuthenticatedException} on the init if the user didn't
+ * authenticate recently.</li>
+ * <li>{@link KeyPermanentlyInvalidatedException} after {@link #enrollNewFingerprint()}.</li>
+ * <li>Latency of every {@link Operation}, to measure the crypto path off the device.</li>
+ * </ul>
+ * KeyGenParameterSpec is not available on the JVM, so the keys are generated with the
+ * {@link KeySpec} created by {@link #keySpecFactory(boolean, int)}.
+ */
+final class FakeAndroidKeyStore extends Provider {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Operations with the injectable latency.
+     */
+    enum Operation {
+        LOAD, GENERATE_KEY, CIPHER_INIT
+    }
+
+    private final Map<String, FakeKey> mKeys = new ConcurrentHashMap<>();
+    private final Set<FakeCipherSpi> mPendingOperations =
+            Collections.newSetFromMap(new ConcurrentHashMap<FakeCipherSpi, Boolean>());
+    private final Map<Operation, Long> mLatencyMillis = Collections.synchronizedMap(
+            new EnumMap<Operation, Long>(Operation.class));
+    private final Map<Operation, AtomicInteger> mCounts = new EnumMap<>(Operation.class);
+
+    private volatile long mLastAuthenticationNanos = Long.MIN_VALUE;
+
+    //Provider(String, String, String) is not available before Java 9 and on Android.
+    @SuppressWarnings("deprecation")
+    private FakeAndroidKeyStore() {
+        super(FingerprintKeyStore.ANDROID_KEY_STORE, 1.0, "Fake AndroidKeyStore for the JVM tests.");
+        for (Operation operation : Operation.values()) mCounts.put(operation, new AtomicInteger());
+
+        putService(new Service(this, "KeyStore", FingerprintKeyStore.ANDROID_KEY_STORE,
+                FakeKeyStoreSpi.class.getName(), null, null) {
+            @Override
+            public Object newInstance(final Object constructorParameter) {
+                return new FakeKeyStoreSpi();
+            }
+        });
+        putService(new Service(this, "KeyGenerator", "AES",
+                FakeKeyGeneratorSpi.class.getName(), null, null) {
+            @Override
+            public Object newInstance(final Object constructorParameter) {
+                return new FakeKeyGeneratorSpi();
+            }
+        });
+        putService(new Service(this, "Cipher", FingerprintKeyStore.CIPHER_TRANSFORMATION,
+                FakeCipherSpi.class.getName(), null, null) {
+            @Override
+            public Object newInstance(final Object constructorParameter) {
+                return new FakeCipherSpi();
+            }
+        });
+    }
+
+    /**
+     * Register new fake provider with the highest priority. Call {@link #uninstall()} after the
+     * test.
+     *
+     * @return Registered {@link FakeAndroidKeyStore}.
+     */
+    @NonNull
+    static FakeAndroidKeyStore install() {
+        uninstall();
+        final FakeAndroidKeyStore provider = new FakeAndroidKeyStore();
+        Security.insertProviderAt(provider, 1);
+        return provider;
+    }
+
+    /**
+     * Remove the registered fake provider.
+     */
+    static void uninstall() {
+        Security.removeProvider(FingerprintKeyStore.ANDROID_KEY_STORE);
+    }
+
+    /**
+     * @param userAuthenticationRequired True if the key can be used only after the authentication.
+     * @param validitySeconds            Seconds the key can be used after the authentication or
+     *                                   -1 to require the authentication for every use.
+     * @return {@link FingerprintKeyStore.KeySpecFactory} for the fake keys.
+     */
+    @NonNull
+    static FingerprintKeyStore.KeySpecFactory keySpecFactory(final boolean userAuthenticationRequired,
+                                                             final int validitySeconds) {
+        return new FingerprintKeyStore.KeySpecFactory() {
+            @NonNull
+            @Override
+            public AlgorithmParameterSpec create(@NonNull final String alias) {
+                return new KeySpec(alias, userAuthenticationRequired, validitySeconds);
+            }
+        };
+    }
+
+    /**
+     * Set the latency injected into every call of the operation.
+     */
+    void setLatency(@NonNull final Operation operation, final long millis) {
+        mLatencyMillis.put(operation, millis);
+    }
+
+    /**
+     * @return Number of times the operation ran.
+     */
+    int getCount(@NonNull final Operation operation) {
+        return mCounts.get(operation).get();
+    }
+
+    /**
+     * The user touched the sensor. Authorizes every cipher initialized so far and starts the
+     * validity window of the time bound keys.
+     */
+    void authenticateUser() {
+        mLastAuthenticationNanos = System.nanoTime();
+        for (FakeCipherSpi operation : mPendingOperations) operation.mAuthorized = true;
+        mPendingOperations.clear();
+    }
+
+    /**
+     * The validity window of the last authentication ended.
+     */
+    void expireAuthentication() {
+        mLastAuthenticationNanos = Long.MIN_VALUE;
+    }
+
+    /**
+     * The user enrolled new fingerprint. Every key bound to the authentication is invalidated.
+     */
+    void enrollNewFingerprint() {
+        for (FakeKey key : mKeys.values()) {
+            if (key.mSpec.mUserAuthenticationRequired) key.mInvalidated = true;
+        }
+    }
+
+    private void run(@NonNull final Operation operation) {
+        mCounts.get(operation).incrementAndGet();
+        final Long latency = mLatencyMillis.get(operation);
+        if (latency == null || latency <= 0) return;
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parameters of the fake key. Stand-in for the KeyGenParameterSpec.
+     */
+    static final class KeySpec implements AlgorithmParameterSpec {
+        final String mAlias;
+        final boolean mUserAuthenticationRequired;
+        final int mValiditySeconds;
+
+        KeySpec(@NonNull final String alias,
+                final boolean userAuthenticationRequired,
+                final int validitySeconds) {
+            mAlias = alias;
+            mUserAuthenticationRequired = userAuthenticationRequired;
+            mValiditySeconds = validitySeconds;
+        }
+    }
+
+    /**
+     * Key that never exposes its material, like the keys of the AndroidKeyStore.
+     */
+    private static final class FakeKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+
+        private final KeySpec mSpec;
+        private final SecretKeySpec mMaterial;
+        private volatile boolean mInvalidated = false;
+
+        private FakeKey(@NonNull final KeySpec spec, @NonNull final byte[] material) {
+            mSpec = spec;
+            mMaterial = new SecretKeySpec(material, "AES");
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "AES";
+        }
+
+        @Override
+        public String getFormat() {
+            return null;
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return null;
+        }
+    }
+
+    private final class FakeKeyStoreSpi extends KeyStoreSpi {
+
+        @Override
+        public void engineLoad(final InputStream stream, final char[] password) {
+            run(Operation.LOAD);
+        }
+
+        @Override
+        public Key engineGetKey(final String alias, final char[] password) {
+            return mKeys.get(alias);
+        }
+
+        @Override
+        public boolean engineContainsAlias(final String alias) {
+            return mKeys.containsKey(alias);
+        }
+
+        @Override
+        public void engineDeleteEntry(final String alias) {
+            mKeys.remove(alias);
+        }
+
+        @Override
+        public Enumeration<String> engineAliases() {
+            return Collections.enumeration(mKeys.keySet());
+        }
+
+        @Override
+        public int engineSize() {
+            return mKeys.size();
+        }
+
+        @Override
+        public boolean engineIsKeyEntry(final String alias) {
+            return mKeys.containsKey(alias);
+        }
+
+        @Override
+        public boolean engineIsCertificateEntry(final String alias) {
+            return false;
+        }
+
+        @Override
+        public Certificate[] engineGetCertificateChain(final String alias) {
+            return null;
+        }
+
+        @Override
+        public Certificate engineGetCertificate(final String alias) {
+            return null;
+        }
+
+        @Override
+        public String engineGetCertificateAlias(final Certificate cert) {
+            return null;
+        }
+
+        @Override
+        public Date engineGetCreationDate(final String alias) {
+            return null;
+        }
+
+        @Override
+        public void engineSetKeyEntry(final String alias, final Key key, final char[] password,
+                                      final Certificate[] chain) throws KeyStoreException {
+            throw new KeyStoreException("Import is not supported. Use the KeyGenerator.");
+        }
+
+        @Override
+        public void engineSetKeyEntry(final String alias, final byte[] key,
+                                      final Certificate[] chain) throws KeyStoreException {
+            throw new KeyStoreException("Import is not supported. Use the KeyGenerator.");
+        }
+
+        @Override
+        public void engineSetCertificateEntry(final String alias, final Certificate cert)
+                throws KeyStoreException {
+            throw new KeyStoreException("Certificates are not supported.");
+        }
+
+        @Override
+        public void engineStore(final OutputStream stream, final char[] password) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class FakeKeyGeneratorSpi extends KeyGeneratorSpi {
+        private final SecureRandom mRandom = new SecureRandom();
+        private KeySpec mSpec;
+
+        @Override
+        protected void engineInit(final SecureRandom random) {
+            throw new IllegalStateException("Key spec is required.");
+        }
+
+        @Override
+        protected void engineInit(final AlgorithmParameterSpec params, final SecureRandom random)
+                throws InvalidAlgorithmParameterException {
+            if (!(params instanceof KeySpec)) {
+                throw new InvalidAlgorithmParameterException("Expected " + KeySpec.class.getName());
+            }
+            mSpec = (KeySpec) params;
+        }
+
+        @Override
+        protected void engineInit(final int keySize, final SecureRandom random) {
+            throw new IllegalStateException("Key spec is required.");
+        }
+
+        @Override
+        protected SecretKey engineGenerateKey() {
+            if (mSpec == null) throw new IllegalStateException("Not initialized.");
+            run(Operation.GENERATE_KEY);
+
+            final byte[] material = new byte[16];
+            mRandom.nextBytes(material);
+            final FakeKey key = new FakeKey(mSpec, material);
+            mKeys.put(mSpec.mAlias, key);
+            return key;
+        }
+    }
+
+    private final class FakeCipherSpi extends CipherSpi {
+        private final Cipher mDelegate;
+        private volatile boolean mAuthorized = true;
+
+        FakeCipherSpi() {
+            try {
+                //PKCS5 and PKCS7 padding are the same for the 16 bytes blocks of AES.
+                mDelegate = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        protected void engineInit(final int opmode, final Key key, final SecureRandom random)
+                throws InvalidKeyException {
+            prepare(key);
+            mDelegate.init(opmode, ((FakeKey) key).mMaterial, random);
+        }
+
+        @Override
+        protected void engineInit(final int opmode, final Key key,
+                                  final AlgorithmParameterSpec params, final SecureRandom random)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            prepare(key);
+            mDelegate.init(opmode, ((FakeKey) key).mMaterial, params, random);
+        }
+
+        @Override
+        protected void engineInit(final int opmode, final Key key,
+                                  final AlgorithmParameters params, final SecureRandom random)
+                throws InvalidKeyException, InvalidAlgorithmParameterException {
+            prepare(key);
+            mDelegate.init(opmode, ((FakeKey) key).mMaterial, params, random);
+        }
+
+        private void prepare(@NonNull final Key key) throws InvalidKeyException {
+            if (!(key instanceof FakeKey)) throw new InvalidKeyException("Not a key store key.");
+            run(Operation.CIPHER_INIT);
+
+            final FakeKey fakeKey = (FakeKey) key;
+            if (fakeKey.mInvalidated) {
+                throw new KeyPermanentlyInvalidatedException();
+            }
+
+            mPendingOperations.remove(this);
+            mAuthorized = true;
+            if (!fakeKey.mSpec.mUserAuthenticationRequired) return;
+
+            if (fakeKey.mSpec.mValiditySeconds > 0) {
+                final long lastAuthentication = mLastAuthenticationNanos;
+                if (lastAuthentication == Long.MIN_VALUE || System.nanoTime() - lastAuthentication
+                        > TimeUnit.SECONDS.toNanos(fakeKey.mSpec.mValiditySeconds)) {
+                    throw new UserNotAuthenticatedException();
+                }
+            } else {
+                //Every use needs the authentication. Authorized by authenticateUser().
+                mAuthorized = false;
+                mPendingOperations.add(this);
+            }
+        }
+
+        private void checkAuthorized() throws IllegalBlockSizeException {
+            if (!mAuthorized) throw new IllegalBlockSizeException("Key user not authenticated");
+        }
+
+        @Override
+        protected void engineSetMode(final String mode) throws NoSuchAlgorithmException {
+            if (!"CBC".equalsIgnoreCase(mode)) throw new NoSuchAlgorithmException(mode);
+        }
+
+        @Override
+        protected void engineSetPadding(final String padding) throws NoSuchPaddingException {
+            if (!"PKCS7Padding".equalsIgnoreCase(padding)) throw new NoSuchPaddingException(padding);
+        }
+
+        @Override
+        protected int engineGetBlockSize() {
+            return mDelegate.getBlockSize();
+        }
+
+        @Override
+        protected int engineGetOutputSize(final int inputLen) {
+            return mDelegate.getOutputSize(inputLen);
+        }
+
+        @Override
+        protected byte[] engineGetIV() {
+            return mDelegate.getIV();
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return mDelegate.getParameters();
+        }
+
+        @Override
+        protected byte[] engineUpdate(final byte[] input, final int inputOffset, final int inputLen) {
+            if (!mAuthorized) throw new IllegalStateException("Key user not authenticated");
+            return mDelegate.update(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineUpdate(final byte[] input, final int inputOffset, final int inputLen,
+                                   final byte[] output, final int outputOffset)
+                throws ShortBufferException {
+            if (!mAuthorized) throw new IllegalStateException("Key user not authenticated");
+            return mDelegate.update(input, inputOffset, inputLen, output, outputOffset);
+        }
+
+        @Override
+        protected byte[] engineDoFinal(final byte[] input, final int inputOffset, final int inputLen)
+                throws IllegalBlockSizeException, BadPaddingException {
+            checkAuthorized();
+            return mDelegate.doFinal(input, inputOffset, inputLen);
+        }
+
+        @Override
+        protected int engineDoFinal(final byte[] input, final int inputOffset, final int inputLen,
+                                    final byte[] output, final int outputOffset)
+                throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+            checkAuthorized();
+            return mDelegate.doFinal(input, inputOffset, inputLen, output, outputOffset);
+        }
+    }
+}
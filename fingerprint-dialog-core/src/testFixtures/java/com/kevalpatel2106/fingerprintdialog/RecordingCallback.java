@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link AuthenticationCallback} that counts every callback it receives.
+ */
+class RecordingCallback implements AuthenticationCallback {
+    final AtomicInteger notSupported = new AtomicInteger();
+    final AtomicInteger noFingerprint = new AtomicInteger();
+    final AtomicInteger errors = new AtomicInteger();
+    final AtomicInteger helps = new AtomicInteger();
+    final AtomicInteger canceled = new AtomicInteger();
+    final AtomicInteger succeeded = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * @return Number of the terminal callbacks received.
+     */
+    int terminalCount() {
+        return notSupported.get() + noFingerprint.get() + errors.get() + canceled.get() + succeeded.get();
+    }
+
+    @Override
+    public void fingerprintAuthenticationNotSupported() {
+        notSupported.incrementAndGet();
+    }
+
+    @Override
+    public void hasNoFingerprintEnrolled() {
+        noFingerprint.incrementAndGet();
+    }
+
+    @Override
+    public void onAuthenticationError(final int errorCode, final CharSequence errString) {
+        errors.incrementAndGet();
+    }
+
+    @Override
+    public void onAuthenticationHelp(final int helpCode, final CharSequence helpString) {
+        helps.incrementAndGet();
+    }
+
+    @Override
+    public void authenticationCanceledByUser() {
+        canceled.incrementAndGet();
+    }
+
+    @Override
+    public void onAuthenticationSucceeded() {
+        succeeded.incrementAndGet();
+    }
+
+    @Override
+    public void onAuthenticationFailed() {
+        failed.incrementAndGet();
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.hardware.fingerprint.FingerprintManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resolves the prompts without the fingerprint sensor, for the performance and load tests of the
+ * application. (e.g. Login flows on the CI emulators.) No UI is shown. The simulated key store and
+ * sensor calls run under the real deadlines and report their timings to the
+ * {@link AuthenticationMetrics}, and every result goes through the same session state machine and
+ * event dispatch as the real prompt.
+ * <p>
+ * Each scan draws the outcomes from the configured weights until a terminal one. Failed scans are
+ * retried like the real sensor, and the fifth failure in a row locks the sensor out.
+ * <p>
+ * The simulator works only in the debuggable builds of the application. In the other builds the
+ * builder ignores it and shows the real prompt, so a forgotten simulator can never authenticate a
+ * user.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ * @see BaseFingerprintBuilder#setSimulator(FingerprintSimulator)
+ */
+@SuppressWarnings({"WeakerAccess", "deprecation"})
+public final class FingerprintSimulator extends BaseFingerprintSimulator {
+
+    /**
+     * Fingerprint recognised. Terminal.
+     */
+    public static final int OUTCOME_SUCCESS = 0;
+
+    /**
+     * Fingerprint not recognised. The scan continues.
+     */
+    public static final int OUTCOME_FAILURE = 1;
+
+    /**
+     * Burst of help events. (e.g. Finger moved too fast.) The scan continues.
+     */
+    public static final int OUTCOME_HELP_BURST = 2;
+
+    /**
+     * Sensor locked out after too many attempts. Terminal.
+     */
+    public static final int OUTCOME_LOCKOUT = 3;
+
+    /**
+     * Error of the sensor. (See {@link #setErrorCode(int)}) Terminal.
+     */
+    public static final int OUTCOME_ERROR = 4;
+
+    private static final int OUTCOME_COUNT = 5;
+
+    /**
+     * Failed scans in a row after which the platform locks the sensor out.
+     */
+    static final int MAX_FAILED_ATTEMPTS = 5;
+
+    /**
+     * Outcome drawn for the scan of the simulated sensor.
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({OUTCOME_SUCCESS, OUTCOME_FAILURE, OUTCOME_HELP_BURST, OUTCOME_LOCKOUT, OUTCOME_ERROR})
+    public @interface Outcome {
+    }
+
+    /**
+     * Runs the simulated prompts. Cached, because every prompt sleeps through its latencies.
+     */
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "FingerprintDialogCompat-simulator");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @NonNull
+    private final Random mRandom;
+
+    /**
+     * Delivers the results. Main thread, same as the real prompt.
+     */
+    @NonNull
+    private final Executor mResultExecutor;
+
+    private final int[] mWeights = new int[OUTCOME_COUNT];
+
+    /**
+     * Latency range of every {@link MetricPhase} in milliseconds.
+     */
+    private final long[] mMinLatencyMillis = new long[AuthenticationMetrics.PHASE_AUTHENTICATE + 1];
+    private final long[] mMaxLatencyMillis = new long[AuthenticationMetrics.PHASE_AUTHENTICATE + 1];
+
+    private long mMinTouchMillis = 300;
+    private long mMaxTouchMillis = 800;
+    private int mHelpBurstSize = 3;
+    private int mErrorCode = FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE;
+
+    /**
+     * Simulator with the random seed. Every prompt succeeds after the touch latency by default.
+     */
+    public FingerprintSimulator() {
+        this(new Random());
+    }
+
+    /**
+     * Simulator with the fixed seed, so the runs of the test draw the same outcomes.
+     *
+     * @param seed Seed of the outcomes and latencies.
+     */
+    public FingerprintSimulator(final long seed) {
+        this(new Random(seed));
+    }
+
+    private FingerprintSimulator(@NonNull final Random random) {
+        this(random, new Executor() {
+            private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(@NonNull final Runnable runnable) {
+                mHandler.post(runnable);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    FingerprintSimulator(@NonNull final Random random, @NonNull final Executor resultExecutor) {
+        mRandom = random;
+        mResultExecutor = resultExecutor;
+        mWeights[OUTCOME_SUCCESS] = 1;
+    }
+
+    /**
+     * @param context {@link Context} of the application.
+     * @return true if the application is debuggable and may use the simulator.
+     */
+    static boolean isAllowed(@NonNull final Context context) {
+        final ApplicationInfo applicationInfo = context.getApplicationInfo();
+        return applicationInfo != null && (applicationInfo.flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    @Override
+    boolean isEnabled(@NonNull final Context context) {
+        return isAllowed(context);
+    }
+
+    /**
+     * Set the relative weight of the outcome. (e.g. Weights 90 and 10 of the
+     * {@link #OUTCOME_SUCCESS} and {@link #OUTCOME_FAILURE} fail 10% of the scans.) Default is
+     * 1 for the {@link #OUTCOME_SUCCESS} and 0 for the others.
+     *
+     * @param outcome Outcome of the scan.
+     * @param weight  Weight of the outcome. 0 disables it.
+     * @return This simulator.
+     */
+    @NonNull
+    public synchronized FingerprintSimulator setOutcomeWeight(@Outcome final int outcome, final int weight) {
+        if (outcome < 0 || outcome >= OUTCOME_COUNT) throw new IllegalArgumentException("Invalid outcome.");
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative.");
+
+        mWeights[outcome] = weight;
+        return this;
+    }
+
+    /**
+     * Set the time the simulated phase takes. The duration is drawn uniformly from the range. A
+     * duration above the deadline of the phase stalls the prompt like a busy key store daemon.
+     * Key store phases are skipped if the builder has the cipher. Default is 0.
+     *
+     * @param phase     {@link AuthenticationMetrics#PHASE_KEYSTORE_LOAD},
+     *                  {@link AuthenticationMetrics#PHASE_KEY_GENERATION},
+     *                  {@link AuthenticationMetrics#PHASE_CIPHER_INIT} or
+     *                  {@link AuthenticationMetrics#PHASE_AUTHENTICATE}.
+     * @param minMillis Minimum duration in milliseconds.
+     * @param maxMillis Maximum duration in milliseconds.
+     * @return This simulator.
+     */
+    @NonNull
+    public synchronized FingerprintSimulator setLatency(@MetricPhase final int phase,
+                                                        final long minMillis,
+                                                        final long maxMillis) {
+        if (phase < AuthenticationMetrics.PHASE_KEYSTORE_LOAD || phase > AuthenticationMetrics.PHASE_AUTHENTICATE) {
+            throw new IllegalArgumentException("Invalid phase: " + phase);
+        }
+        checkRange(minMillis, maxMillis);
+
+        mMinLatencyMillis[phase] = minMillis;
+        mMaxLatencyMillis[phase] = maxMillis;
+        return this;
+    }
+
+    /**
+     * Set the time between the armed sensor and every outcome. (i.e. Time the user takes to touch
+     * the sensor.) Default is 300 to 800 milliseconds.
+     *
+     * @param minMillis Minimum duration in milliseconds.
+     * @param maxMillis Maximum duration in milliseconds.
+     * @return This simulator.
+     */
+    @NonNull
+    public synchronized FingerprintSimulator setTouchLatency(final long minMillis, final long maxMillis) {
+        checkRange(minMillis, maxMillis);
+
+        mMinTouchMillis = minMillis;
+        mMaxTouchMillis = maxMillis;
+        return this;
+    }
+
+    /**
+     * @param size Help events of the {@link #OUTCOME_HELP_BURST}. Default is 3.
+     * @return This simulator.
+     */
+    @NonNull
+    public synchronized FingerprintSimulator setHelpBurstSize(final int size) {
+        if (size < 1) throw new IllegalArgumentException("Burst size must be positive.");
+
+        mHelpBurstSize = size;
+        return this;
+    }
+
+    /**
+     * @param errorCode Platform error code of the {@link #OUTCOME_ERROR}. Default is
+     *                  {@link FingerprintManager#FINGERPRINT_ERROR_HW_UNAVAILABLE}.
+     * @return This simulator.
+     */
+    @NonNull
+    public synchronized FingerprintSimulator setErrorCode(final int errorCode) {
+        mErrorCode = errorCode;
+        return this;
+    }
+
+    private static void checkRange(final long minMillis, final long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) throw new IllegalArgumentException("Invalid latency.");
+    }
+
+    /**
+     * Run the prompt of the session on the simulated sensor.
+     *
+     * @param session       {@link AuthenticationSession} of the prompt.
+     * @param watchdog      {@link AuthenticationWatchdog} with the deadlines of the builder.
+     * @param hasCipher     True if the builder has the cipher, so there is no key store work.
+     * @param notResponding Error text delivered when a phase misses its deadline.
+     * @return {@link AuthenticationHandle} to cancel the prompt.
+     */
+    @NonNull
+    @Override
+    AuthenticationHandle simulate(@NonNull final AuthenticationSession session,
+                                  @NonNull final AuthenticationWatchdog watchdog,
+                                  final boolean hasCipher,
+                                  @NonNull final CharSequence notResponding) {
+        final AtomicReference<Future<?>> running = new AtomicReference<>();
+        start(session, session.begin(), watchdog, hasCipher, notResponding, running);
+
+        return new AuthenticationHandle(session, new Runnable() {
+            @Override
+            public void run() {
+                final Future<?> future = running.get();
+                if (future != null) future.cancel(true);
+            }
+        });
+    }
+
+    private void start(@NonNull final AuthenticationSession session,
+                       final int attempt,
+                       @NonNull final AuthenticationWatchdog watchdog,
+                       final boolean hasCipher,
+                       @NonNull final CharSequence notResponding,
+                       @NonNull final AtomicReference<Future<?>> running) {
+        if (attempt == AuthenticationSession.NO_ATTEMPT) return;
+
+        running.set(WORKERS.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Runnable rearm = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (session.rearm()) {
+                            start(session, session.begin(), watchdog, hasCipher, notResponding, running);
+                        }
+                    }
+                };
+                scan(session, attempt, watchdog, hasCipher, notResponding, rearm);
+            }
+        }));
+    }
+
+    @WorkerThread
+    private void scan(@NonNull final AuthenticationSession session,
+                      final int attempt,
+                      @NonNull final AuthenticationWatchdog watchdog,
+                      final boolean hasCipher,
+                      @NonNull final CharSequence notResponding,
+                      @NonNull final Runnable rearm) {
+        final AuthenticationWatchdog.StallListener onStall = new AuthenticationWatchdog.StallListener() {
+            @Override
+            public void onStall(final int phase, final long deadlineMillis) {
+                session.reportStall(phase, deadlineMillis);
+                deliverError(session, attempt, FingerprintManager.FINGERPRINT_ERROR_HW_UNAVAILABLE, notResponding, rearm);
+            }
+        };
+
+        if (!hasCipher) {
+            if (!runPhase(session, watchdog, AuthenticationMetrics.PHASE_KEYSTORE_LOAD, onStall)) return;
+            if (!runPhase(session, watchdog, AuthenticationMetrics.PHASE_KEY_GENERATION, onStall)) return;
+            if (!runPhase(session, watchdog, AuthenticationMetrics.PHASE_CIPHER_INIT, onStall)) return;
+        }
+        if (!runPhase(session, watchdog, AuthenticationMetrics.PHASE_AUTHENTICATE, onStall)) return;
+        if (!session.markScanning(attempt)) return;
+
+        int failures = 0;
+        while (sleep(drawTouchMillis()) && session.isCurrent(attempt)) {
+            switch (drawOutcome()) {
+                case OUTCOME_SUCCESS:
+                    mResultExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (session.dispatchSucceeded(attempt)) rearm.run();
+                        }
+                    });
+                    return;
+                case OUTCOME_FAILURE:
+                    mResultExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            session.dispatchFailed(attempt);
+                        }
+                    });
+                    if (++failures >= MAX_FAILED_ATTEMPTS) {
+                        deliverError(session, attempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT,
+                                "Too many attempts. Try again later.", rearm);
+                        return;
+                    }
+                    break;
+                case OUTCOME_HELP_BURST:
+                    final int burstSize = getHelpBurstSize();
+                    for (int i = 0; i < burstSize; i++) {
+                        mResultExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                session.dispatchHelp(attempt, FingerprintManager.FINGERPRINT_ACQUIRED_TOO_FAST,
+                                        "Finger moved too fast. Please try again.");
+                            }
+                        });
+                    }
+                    break;
+                case OUTCOME_LOCKOUT:
+                    deliverError(session, attempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT,
+                            "Too many attempts. Try again later.", rearm);
+                    return;
+                case OUTCOME_ERROR:
+                default:
+                    deliverError(session, attempt, getErrorCode(), "Simulated sensor error.", rearm);
+                    return;
+            }
+        }
+    }
+
+    private void deliverError(@NonNull final AuthenticationSession session,
+                              final int attempt,
+                              final int errorCode,
+                              @NonNull final CharSequence errString,
+                              @NonNull final Runnable rearm) {
+        mResultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (session.dispatchError(attempt, errorCode, errString)) rearm.run();
+            }
+        });
+    }
+
+    /**
+     * Sleep through the latency of the phase under its deadline and report the timing.
+     *
+     * @return true if the phase completed in time and the prompt was not cancelled.
+     */
+    @WorkerThread
+    private boolean runPhase(@NonNull final AuthenticationSession session,
+                             @NonNull final AuthenticationWatchdog watchdog,
+                             @MetricPhase final int phase,
+                             @NonNull final AuthenticationWatchdog.StallListener onStall) {
+        final AuthenticationWatchdog.Deadline deadline = watchdog.start(phase, onStall);
+        final boolean isSlept = sleep(drawLatencyMillis(phase));
+        if (!deadline.complete() || !isSlept) return false;
+
+        session.reportTiming(phase, deadline.elapsedNanos());
+        return true;
+    }
+
+    private synchronized long drawLatencyMillis(@MetricPhase final int phase) {
+        return draw(mMinLatencyMillis[phase], mMaxLatencyMillis[phase]);
+    }
+
+    private synchronized long drawTouchMillis() {
+        return draw(mMinTouchMillis, mMaxTouchMillis);
+    }
+
+    private long draw(final long minMillis, final long maxMillis) {
+        if (maxMillis == minMillis) return minMillis;
+        return minMillis + (long) (mRandom.nextDouble() * (maxMillis - minMillis + 1));
+    }
+
+    @Outcome
+    private synchronized int drawOutcome() {
+        int total = 0;
+        for (int weight : mWeights) total += weight;
+        if (total == 0) return OUTCOME_SUCCESS;
+
+        int pick = mRandom.nextInt(total);
+        for (int outcome = 0; outcome < OUTCOME_COUNT; outcome++) {
+            pick -= mWeights[outcome];
+            if (pick < 0) return outcome;
+        }
+        return OUTCOME_SUCCESS;
+    }
+
+    private synchronized int getHelpBurstSize() {
+        return mHelpBurstSize;
+    }
+
+    private synchronized int getErrorCode() {
+        return mErrorCode;
+    }
+
+    /**
+     * @return false if the prompt was cancelled in the meantime.
+     */
+    private static boolean sleep(final long millis) {
+        if (millis <= 0) return !Thread.currentThread().isInterrupted();
+
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.kevalpatel2106.fingerprintdialog.trace.TraceWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Appends every authentication session of the builder to the binary trace file: the path (dialog
+ * of the library or BiometricPrompt), the type, category and platform code of every event and the
+ * nanoseconds between the events. A typical session takes less than 30 bytes. Records are written
+ * on a background thread, so the main thread never touches the disk. They reach the file after every
+ * finished session, after {@value #MAX_UNFLUSHED_RECORDS} records or {@value #FLUSH_DELAY_MILLIS} ms,
+ * whichever comes first. The sessions of the earlier processes in the same file keep their ids.
+ * <p>
+ * Pull the file from the devices and run {@code TraceAnalyzer} of the
+ * {@code fingerprint-dialog-trace} artifact on it to get the latency percentiles, the error
+ * breakdown and the retry counts.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ * @see BaseFingerprintBuilder#setTraceRecorder(TraceRecorder)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TraceRecorder extends BaseSessionRecorder implements Closeable {
+    private static final String TAG = "TraceRecorder";
+
+    /**
+     * Records buffered before they are written to the file, if no session finishes.
+     */
+    static final int MAX_UNFLUSHED_RECORDS = 32;
+
+    /**
+     * Time the records stay buffered, if no session finishes.
+     */
+    static final long FLUSH_DELAY_MILLIS = 2000;
+
+    @NonNull
+    private final File mFile;
+
+    @NonNull
+    private final ScheduledThreadPoolExecutor mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "FingerprintDialogCompat-trace");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Id of the next session, unique within the process. Offset by the first free id of the file
+     * when the record is written.
+     */
+    @NonNull
+    private final AtomicInteger mNextSessionId = new AtomicInteger();
+
+    /**
+     * Flushes the records of the running sessions after {@link #FLUSH_DELAY_MILLIS}.
+     */
+    @NonNull
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            isFlushScheduled = false;
+            flush();
+        }
+    };
+
+    /**
+     * Opened on the first record. Only accessed on the {@link #mExecutor}.
+     */
+    @Nullable
+    private TraceWriter mWriter;
+
+    /**
+     * First free session id of the file, added to the ids of this process. Only accessed on the
+     * {@link #mExecutor}.
+     */
+    private int mSessionIdOffset = 0;
+
+    /**
+     * Records written since the last flush. Only accessed on the {@link #mExecutor}.
+     */
+    private int mUnflushedRecords = 0;
+
+    /**
+     * True if {@link #mFlush} is scheduled. Only accessed on the {@link #mExecutor}.
+     */
+    private boolean isFlushScheduled = false;
+
+    /**
+     * True if the file could not be written. Only accessed on the {@link #mExecutor}.
+     */
+    private boolean isFailed = false;
+
+    /**
+     * @param file File to append the trace to. (e.g. {@code new File(context.getFilesDir(),
+     *             "fingerprint.trace")}) New file is created if it doesn't exist.
+     */
+    public TraceRecorder(@NonNull final File file) {
+        mFile = file;
+        //close() writes the pending records on its own.
+        mExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    @NonNull
+    @Override
+    AuthenticationEventListener newSession(final boolean isPlatformPrompt) {
+        return newSession(isPlatformPrompt ? TraceWriter.PATH_P : TraceWriter.PATH_V23);
+    }
+
+    /**
+     * Create the listener that records the events of one prompt. Continuous prompts start a new
+     * session in the trace after every result.
+     *
+     * @param path {@link TraceWriter#PATH_V23} or {@link TraceWriter#PATH_P}.
+     * @return {@link AuthenticationEventListener} to register with {@link AuthenticationEvent#MASK_ALL}.
+     */
+    @NonNull
+    AuthenticationEventListener newSession(final int path) {
+        return new AuthenticationEventListener() {
+            private int mSessionId = startSession(path);
+            private long mLastNanos = System.nanoTime();
+            private boolean isFinished = false;
+
+            @Override
+            public void onEvent(@NonNull final AuthenticationEvent event) {
+                if (isFinished) {
+                    mSessionId = startSession(path);
+                    isFinished = false;
+                }
+
+                final long now = System.nanoTime();
+                record(mSessionId, event, now - mLastNanos);
+                mLastNanos = now;
+                isFinished = event.isTerminal();
+            }
+        };
+    }
+
+    private int startSession(final int path) {
+        final int sessionId = mNextSessionId.getAndIncrement();
+        final long wallMillis = System.currentTimeMillis();
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                final TraceWriter writer = writer();
+                if (writer == null) return;
+                try {
+                    writer.writeSession(mSessionIdOffset + sessionId, path, wallMillis);
+                    onRecordWritten(false);
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+        return sessionId;
+    }
+
+    private void record(final int sessionId,
+                        @NonNull final AuthenticationEvent event,
+                        final long deltaNanos) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                final TraceWriter writer = writer();
+                if (writer == null) return;
+                try {
+                    writer.writeEvent(mSessionIdOffset + sessionId,
+                            event.getType(),
+                            event.getCategory(),
+                            event.getPlatformCode(),
+                            deltaNanos);
+
+                    //Make the finished session survive the process death.
+                    onRecordWritten(event.isTerminal());
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Flush the buffered records if the session finished or the bound is reached, otherwise make
+     * sure the flush is scheduled. Runs on the {@link #mExecutor}.
+     *
+     * @param isSessionFinished True if the record ended the session.
+     */
+    private void onRecordWritten(final boolean isSessionFinished) {
+        mUnflushedRecords++;
+        if (isSessionFinished || mUnflushedRecords >= MAX_UNFLUSHED_RECORDS) {
+            flush();
+        } else if (!isFlushScheduled) {
+            try {
+                mExecutor.schedule(mFlush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                isFlushScheduled = true;
+            } catch (RejectedExecutionException e) {
+                //Closing. close() flushes the records.
+            }
+        }
+    }
+
+    /**
+     * Runs on the {@link #mExecutor}.
+     */
+    private void flush() {
+        if (mWriter == null || mUnflushedRecords == 0) return;
+        try {
+            mWriter.flush();
+            mUnflushedRecords = 0;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void execute(@NonNull final Runnable runnable) {
+        try {
+            mExecutor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            //Closed.
+        }
+    }
+
+    @Nullable
+    private TraceWriter writer() {
+        if (mWriter == null && !isFailed) {
+            try {
+                mWriter = TraceWriter.open(mFile);
+                mSessionIdOffset = mWriter.getFirstFreeSessionId();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return mWriter;
+    }
+
+    private void fail(@NonNull final IOException e) {
+        //Tracing is best effort. Stop writing instead of corrupting the rest of the file.
+        Log.w(TAG, "Cannot write the trace to " + mFile + ", tracing is stopped.", e);
+        isFailed = true;
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException ignore) {
+                //Already failed.
+            }
+            mWriter = null;
+        }
+    }
+
+    /**
+     * Write the pending records and close the file. Events of the sessions that are still running
+     * are dropped after this.
+     */
+    @Override
+    public void close() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mWriter == null) return;
+                try {
+                    mWriter.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot close the trace " + mFile + ".", e);
+                }
+                mWriter = null;
+            }
+        });
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
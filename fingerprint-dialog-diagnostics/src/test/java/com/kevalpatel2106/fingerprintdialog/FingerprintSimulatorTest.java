@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link FingerprintSimulator}. Results are delivered on the simulator thread.
+ */
+public class FingerprintSimulatorTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull final Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Test
+    public void checkSuccessReportsEveryPhase() throws Exception {
+        final FingerprintSimulator simulator = simulator(1)
+                .setLatency(AuthenticationMetrics.PHASE_KEY_GENERATION, 20, 20);
+        final RecordingMetrics metrics = new RecordingMetrics();
+        final RecordingCallback callback = new RecordingCallback();
+
+        simulate(simulator, callback, metrics, new AuthenticationWatchdog(), false);
+        awaitTerminal(callback);
+
+        assertEquals(1, callback.succeeded.get());
+        assertEquals(4, metrics.phases.size());
+        assertTrue(metrics.phases.contains(AuthenticationMetrics.PHASE_KEYSTORE_LOAD));
+        assertTrue(metrics.phases.contains(AuthenticationMetrics.PHASE_AUTHENTICATE));
+        assertTrue(metrics.keyGenerationNanos >= 20000000L);
+    }
+
+    @Test
+    public void checkCipherSkipsKeyStorePhases() throws Exception {
+        final RecordingMetrics metrics = new RecordingMetrics();
+        final RecordingCallback callback = new RecordingCallback();
+
+        simulate(simulator(1), callback, metrics, new AuthenticationWatchdog(), true);
+        awaitTerminal(callback);
+
+        assertEquals(1, callback.succeeded.get());
+        assertEquals(1, metrics.phases.size());
+        assertEquals(AuthenticationMetrics.PHASE_AUTHENTICATE, (int) metrics.phases.get(0));
+    }
+
+    @Test
+    public void checkFailuresLockTheSensorOut() throws Exception {
+        final FingerprintSimulator simulator = simulator(1)
+                .setOutcomeWeight(FingerprintSimulator.OUTCOME_SUCCESS, 0)
+                .setOutcomeWeight(FingerprintSimulator.OUTCOME_FAILURE, 1);
+        final RecordingCallback callback = new RecordingCallback();
+
+        simulate(simulator, callback, null, new AuthenticationWatchdog(), false);
+        awaitTerminal(callback);
+
+        assertEquals(FingerprintSimulator.MAX_FAILED_ATTEMPTS, callback.failed.get());
+        assertEquals(1, callback.errors.get());
+        assertEquals(1, callback.terminalCount());
+    }
+
+    @Test
+    public void checkHelpBurstIsDelivered() throws Exception {
+        final FingerprintSimulator simulator = simulator(1)
+                .setOutcomeWeight(FingerprintSimulator.OUTCOME_SUCCESS, 0)
+                .setOutcomeWeight(FingerprintSimulator.OUTCOME_HELP_BURST, 1)
+                .setHelpBurstSize(4)
+                .setTouchLatency(10, 10);
+        final RecordingCallback callback = new RecordingCallback();
+
+        final AuthenticationHandle handle = simulate(simulator, callback, null, new AuthenticationWatchdog(), false);
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (callback.helps.get() < 8 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        handle.cancel();
+
+        assertTrue(callback.helps.get() >= 8);
+        assertEquals(0, callback.helps.get() % 4);
+        assertEquals(1, callback.canceled.get());
+    }
+
+    @Test
+    public void checkSlowPhaseStallsThePrompt() throws Exception {
+        final FingerprintSimulator simulator = simulator(1)
+                .setLatency(AuthenticationMetrics.PHASE_KEYSTORE_LOAD, 2000, 2000);
+        final AuthenticationWatchdog watchdog = new AuthenticationWatchdog();
+        watchdog.setDeadline(AuthenticationMetrics.PHASE_KEYSTORE_LOAD, 50);
+        final RecordingMetrics metrics = new RecordingMetrics();
+        final RecordingCallback callback = new RecordingCallback();
+
+        final long startMillis = System.currentTimeMillis();
+        simulate(simulator, callback, metrics, watchdog, false);
+        awaitTerminal(callback);
+
+        assertTrue(System.currentTimeMillis() - startMillis < 1000);
+        assertEquals(1, callback.notSupported.get());
+        assertEquals(AuthenticationMetrics.PHASE_KEYSTORE_LOAD, metrics.stalledPhase);
+    }
+
+    @Test
+    public void checkOutcomesFollowTheWeights() throws Exception {
+        final FingerprintSimulator simulator = simulator(42)
+                .setOutcomeWeight(FingerprintSimulator.OUTCOME_SUCCESS, 3)
+                .setOutcomeWeight(FingerprintSimulator.OUTCOME_ERROR, 1);
+
+        int succeeded = 0;
+        for (int i = 0; i < 400; i++) {
+            final RecordingCallback callback = new RecordingCallback();
+            simulate(simulator, callback, null, new AuthenticationWatchdog(), true);
+            awaitTerminal(callback);
+            succeeded += callback.succeeded.get();
+        }
+
+        assertTrue("Succeeded " + succeeded, succeeded > 260 && succeeded < 340);
+    }
+
+    @NonNull
+    private static FingerprintSimulator simulator(final long seed) {
+        return new FingerprintSimulator(new Random(seed), DIRECT).setTouchLatency(0, 0);
+    }
+
+    @NonNull
+    private static AuthenticationHandle simulate(@NonNull final FingerprintSimulator simulator,
+                                                 @NonNull final RecordingCallback callback,
+                                                 final AuthenticationMetrics metrics,
+                                                 @NonNull final AuthenticationWatchdog watchdog,
+                                                 final boolean hasCipher) {
+        final AuthenticationSession session = new AuthenticationSession(
+                new EventDispatcher(callback), metrics, false, Tracer.NONE);
+        return simulator.simulate(session, watchdog, hasCipher, "Not responding.");
+    }
+
+    private static void awaitTerminal(@NonNull final RecordingCallback callback) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (callback.terminalCount() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        assertEquals(1, callback.terminalCount());
+    }
+
+    private static class RecordingMetrics extends AuthenticationMetrics {
+        final List<Integer> phases = new CopyOnWriteArrayList<>();
+        volatile long keyGenerationNanos;
+        volatile int stalledPhase;
+
+        @Override
+        public void onTiming(final int phase, final long durationNanos) {
+            phases.add(phase);
+            if (phase == PHASE_KEY_GENERATION) keyGenerationNanos = durationNanos;
+        }
+
+        @Override
+        public void onStall(final int phase, final long deadlineMillis) {
+            stalledPhase = phase;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.hardware.fingerprint.FingerprintManager;
+import android.support.annotation.NonNull;
+
+import com.kevalpatel2106.fingerprintdialog.trace.TraceAnalyzer;
+import com.kevalpatel2106.fingerprintdialog.trace.TraceReader;
+import com.kevalpatel2106.fingerprintdialog.trace.TraceWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link TraceRecorder} and replaying its trace with the {@link TraceReplayer}.
+ */
+public class TraceReplayTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("fingerprint", ".trace");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    /**
+     * Record the sessions of the field: help, two failures and the success, then the lockout.
+     */
+    private void recordFieldSessions() {
+        final TraceRecorder recorder = new TraceRecorder(mFile);
+
+        final AuthenticationSession first = new AuthenticationSession(recorder.newSession(TraceWriter.PATH_V23), null);
+        final int firstAttempt = first.begin();
+        first.markScanning(firstAttempt);
+        first.dispatchHelp(firstAttempt, FingerprintManager.FINGERPRINT_ACQUIRED_PARTIAL, "help");
+        first.dispatchFailed(firstAttempt);
+        first.dispatchFailed(firstAttempt);
+        first.dispatchSucceeded(firstAttempt);
+
+        final AuthenticationSession second = new AuthenticationSession(recorder.newSession(TraceWriter.PATH_P), null);
+        final int secondAttempt = second.begin();
+        second.markScanning(secondAttempt);
+        second.dispatchError(secondAttempt, FingerprintManager.FINGERPRINT_ERROR_LOCKOUT, "lockout");
+
+        recorder.close();
+    }
+
+    @Test
+    public void checkReplayDeliversSameCallbacks() throws IOException {
+        recordFieldSessions();
+
+        final List<RecordingCallback> callbacks = new ArrayList<>();
+        final TraceReader reader = TraceReader.open(mFile);
+        try {
+            reader.readAll(new TraceReplayer(new TraceReplayer.CallbackFactory() {
+                @NonNull
+                @Override
+                public AuthenticationCallback create(final int sessionId, final int path) {
+                    final RecordingCallback callback = new RecordingCallback();
+                    callbacks.add(callback);
+                    return callback;
+                }
+            }));
+        } finally {
+            reader.close();
+        }
+
+        assertEquals(2, callbacks.size());
+        assertEquals(1, callbacks.get(0).helps.get());
+        assertEquals(2, callbacks.get(0).failed.get());
+        assertEquals(1, callbacks.get(0).succeeded.get());
+        assertEquals(1, callbacks.get(1).errors.get());
+        assertEquals(1, callbacks.get(1).terminalCount());
+    }
+
+    @Test
+    public void checkAnalyzerUnderstandsRecordedEvents() throws IOException {
+        recordFieldSessions();
+
+        final TraceAnalyzer analyzer = new TraceAnalyzer();
+        analyzer.analyze(mFile);
+
+        assertEquals(2, analyzer.getFinishedSessions());
+        assertEquals(1, analyzer.getOutcomeCount(AuthenticationEvent.TYPE_SUCCEEDED, AuthenticationEvent.CATEGORY_NONE));
+        assertEquals(1, analyzer.getOutcomeCount(AuthenticationEvent.TYPE_ERROR, AuthenticationEvent.CATEGORY_LOCKOUT));
+        assertEquals(1, analyzer.getSessionsWithRetries(2));
+    }
+
+    @Test
+    public void checkContinuousPromptStartsNewSessions() throws IOException {
+        final TraceRecorder recorder = new TraceRecorder(mFile);
+        final AuthenticationSession session = new AuthenticationSession(recorder.newSession(TraceWriter.PATH_V23),
+                null, true);
+        for (int i = 0; i < 3; i++) {
+            final int attempt = session.begin();
+            session.markScanning(attempt);
+            session.dispatchSucceeded(attempt);
+            session.rearm();
+        }
+        recorder.close();
+
+        final TraceAnalyzer analyzer = new TraceAnalyzer();
+        analyzer.analyze(mFile);
+        assertEquals(3, analyzer.getFinishedSessions());
+    }
+
+    @Test
+    public void checkSessionsOfNextProcessDoNotCollide() throws IOException {
+        recordFieldSessions();
+        //Same file, new process.
+        recordFieldSessions();
+
+        final Set<Integer> sessionIds = new HashSet<>();
+        final TraceReader reader = TraceReader.open(mFile);
+        try {
+            reader.readAll(new TraceReader.Visitor() {
+                @Override
+                public void onSession(final int sessionId, final int path, final long wallMillis) {
+                    assertTrue(sessionIds.add(sessionId));
+                }
+
+                @Override
+                public void onEvent(final int sessionId,
+                                    final int type,
+                                    final int category,
+                                    final int platformCode,
+                                    final long deltaNanos) {
+                    //Only the sessions matter.
+                }
+            });
+        } finally {
+            reader.close();
+        }
+        assertEquals(4, sessionIds.size());
+
+        final TraceAnalyzer analyzer = new TraceAnalyzer();
+        analyzer.analyze(mFile);
+        assertEquals(4, analyzer.getFinishedSessions());
+    }
+
+    @Test
+    public void checkRunningSessionIsFlushedOnBound() throws Exception {
+        final TraceRecorder recorder = new TraceRecorder(mFile);
+        final AuthenticationSession session = new AuthenticationSession(recorder.newSession(TraceWriter.PATH_V23), null);
+        final int attempt = session.begin();
+        session.markScanning(attempt);
+        for (int i = 0; i < TraceRecorder.MAX_UNFLUSHED_RECORDS; i++) {
+            session.dispatchFailed(attempt);
+        }
+
+        //The session is still running, but the records must reach the file.
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (countEvents() < TraceRecorder.MAX_UNFLUSHED_RECORDS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(countEvents() >= TraceRecorder.MAX_UNFLUSHED_RECORDS);
+        recorder.close();
+    }
+
+    private int countEvents() throws IOException {
+        if (mFile.length() == 0) return 0;
+        final int[] events = {0};
+        final TraceReader reader = TraceReader.open(mFile);
+        try {
+            reader.readAll(new TraceReader.Visitor() {
+                @Override
+                public void onSession(final int sessionId, final int path, final long wallMillis) {
+                    //Only the events matter.
+                }
+
+                @Override
+                public void onEvent(final int sessionId,
+                                    final int type,
+                                    final int category,
+                                    final int platformCode,
+                                    final long deltaNanos) {
+                    events[0]++;
+                }
+            });
+        } finally {
+            reader.close();
+        }
+        return events[0];
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+
+import com.kevalpatel2106.fingerprintdialog.trace.TraceReader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays the sessions of the field trace through the {@link AuthenticationSession}, so the events
+ * reach the callbacks in the same order as they reached them on the device. Use it to reproduce
+ * the issues reported from the fleet in the JVM tests.
+ */
+class TraceReplayer implements TraceReader.Visitor {
+
+    /**
+     * Creates the callback that receives the replayed events of the session.
+     */
+    interface CallbackFactory {
+        @NonNull
+        AuthenticationCallback create(final int sessionId, final int path);
+    }
+
+    private static final class Replay {
+        private final AuthenticationSession session;
+        private final int attempt;
+
+        private Replay(@NonNull final AuthenticationSession session) {
+            this.session = session;
+            this.attempt = session.begin();
+            session.markScanning(attempt);
+        }
+    }
+
+    @NonNull
+    private final CallbackFactory mFactory;
+
+    @NonNull
+    private final Map<Integer, Replay> mReplays = new HashMap<>();
+
+    TraceReplayer(@NonNull final CallbackFactory factory) {
+        mFactory = factory;
+    }
+
+    @Override
+    public void onSession(final int sessionId, final int path, final long wallMillis) {
+        mReplays.put(sessionId, new Replay(new AuthenticationSession(mFactory.create(sessionId, path))));
+    }
+
+    @Override
+    public void onEvent(final int sessionId,
+                        final int type,
+                        final int category,
+                        final int platformCode,
+                        final long deltaNanos) {
+        final Replay replay = mReplays.get(sessionId);
+        if (replay == null) return;
+
+        final AuthenticationSession session = replay.session;
+        switch (type) {
+            case AuthenticationEvent.TYPE_NOT_SUPPORTED:
+                session.dispatchNotSupported(replay.attempt);
+                break;
+            case AuthenticationEvent.TYPE_NO_FINGERPRINT_ENROLLED:
+                session.dispatchNoFingerprintEnrolled(replay.attempt);
+                break;
+            case AuthenticationEvent.TYPE_ERROR:
+                session.dispatchError(replay.attempt, platformCode, null);
+                break;
+            case AuthenticationEvent.TYPE_CANCELED:
+                if (platformCode == AuthenticationEvent.NO_PLATFORM_CODE) {
+                    session.cancel();
+                } else {
+                    session.dispatchError(replay.attempt, platformCode, null);
+                }
+                break;
+            case AuthenticationEvent.TYPE_SUCCEEDED:
+                session.dispatchSucceeded(replay.attempt);
+                break;
+            case AuthenticationEvent.TYPE_HELP:
+                session.dispatchHelp(replay.attempt, platformCode, null);
+                break;
+            case AuthenticationEvent.TYPE_FAILED:
+                session.dispatchFailed(replay.attempt);
+                break;
+            default:
+                throw new IllegalStateException("Unknown event type: " + type);
+        }
+        if (session.isFinished()) mReplays.remove(sessionId);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.trace;
+
+/**
+ * Log-linear histogram of the latencies in microseconds. Every power of two is split into 16
+ * buckets, so the percentiles are within 1/32 of the real value and the memory doesn't grow with
+ * the number of the samples.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotal = 0;
+    private long mMax = 0;
+
+    static int indexOf(final long value) {
+        if (value < SUB_COUNT) return (int) value;
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return Middle of the values recorded in the bucket.
+     */
+    static long valueOf(final int index) {
+        if (index < SUB_COUNT) return index;
+
+        final int shift = index / SUB_COUNT - 1;
+        final long lower = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+
+    void record(final long micros) {
+        final long value = Math.max(0, micros);
+        mCounts[indexOf(value)]++;
+        mTotal++;
+        if (value > mMax) mMax = value;
+    }
+
+    long count() {
+        return mTotal;
+    }
+
+    long max() {
+        return mMax;
+    }
+
+    /**
+     * @param quantile Quantile between 0 and 1. (e.g. 0.99 for the p99)
+     * @return Latency in microseconds, or 0 if nothing was recorded.
+     */
+    long percentile(final double quantile) {
+        if (mTotal == 0) return 0;
+
+        final long rank = Math.max(1, (long) Math.ceil(quantile * mTotal));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) return Math.min(valueOf(i), mMax);
+        }
+        return mMax;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.trace;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streams the traces and summarizes the authentication sessions:
+ * <ul>
+ * <li>Percentiles of the time from the start of the session to its result, for each path.</li>
+ * <li>Breakdown of the results by the type, the category and the platform error code.</li>
+ * <li>Number of the failed attempts before the result.</li>
+ * </ul>
+ * Only the sessions that are still open are kept in the memory, so it can go through traces of any
+ * size. Run it from the command line:
+ * <pre>
+ * java -jar fingerprint-dialog-trace.jar device1.trace device2.trace
+ * </pre>
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TraceAnalyzer implements TraceReader.Visitor {
+    private static final int MAX_RETRIES = 32;
+
+    /**
+     * Session that didn't receive its result yet.
+     */
+    private static final class OpenSession {
+        private final int mPath;
+        private long mElapsedNanos = 0;
+        private int mFailures = 0;
+
+        private OpenSession(final int path) {
+            mPath = path;
+        }
+    }
+
+    private final Map<Integer, OpenSession> mOpenSessions = new HashMap<>();
+    private final Map<Integer, LatencyHistogram> mLatencies = new TreeMap<>();
+    private final Map<String, Long> mOutcomes = new TreeMap<>();
+    private final Map<Integer, Long> mErrorCodes = new TreeMap<>();
+
+    /**
+     * Number of the finished sessions by the number of the failed attempts in them. The last slot
+     * counts {@link #MAX_RETRIES} and more.
+     */
+    private final long[] mRetries = new long[MAX_RETRIES + 1];
+
+    private long mFinished = 0;
+    private long mAbandoned = 0;
+    private long mOrphanEvents = 0;
+    private int mTruncatedFiles = 0;
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceAnalyzer <trace file>...");
+            System.exit(1);
+            return;
+        }
+
+        final TraceAnalyzer analyzer = new TraceAnalyzer();
+        for (final String path : args) analyzer.analyze(new File(path));
+        analyzer.report(System.out);
+    }
+
+    /**
+     * Add all the sessions of the trace file to the summary.
+     *
+     * @param file Trace file.
+     * @throws IOException If the file cannot be read or it is corrupt.
+     */
+    public void analyze(@NonNull final File file) throws IOException {
+        final TraceReader reader = TraceReader.open(file);
+        try {
+            analyze(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Add all the remaining sessions of the trace to the summary. Sessions without the result are
+     * counted as abandoned, because session ids are only unique within a single trace.
+     *
+     * @param reader {@link TraceReader}
+     * @throws IOException If the trace is corrupt.
+     */
+    public void analyze(@NonNull final TraceReader reader) throws IOException {
+        reader.readAll(this);
+        if (reader.isTruncated()) mTruncatedFiles++;
+
+        mAbandoned += mOpenSessions.size();
+        mOpenSessions.clear();
+    }
+
+    @Override
+    public void onSession(final int sessionId, final int path, final long wallMillis) {
+        //Process died before the previous session with the same id finished.
+        if (mOpenSessions.put(sessionId, new OpenSession(path)) != null) mAbandoned++;
+    }
+
+    @Override
+    public void onEvent(final int sessionId,
+                        final int type,
+                        final int category,
+                        final int platformCode,
+                        final long deltaNanos) {
+        final OpenSession session = mOpenSessions.get(sessionId);
+        if (session == null) {
+            mOrphanEvents++;
+            return;
+        }
+
+        session.mElapsedNanos += deltaNanos;
+        if (type == TraceWriter.TYPE_FAILED) session.mFailures++;
+        if (!TraceFormat.isTerminal(type)) return;
+
+        mOpenSessions.remove(sessionId);
+        mFinished++;
+
+        LatencyHistogram latencies = mLatencies.get(session.mPath);
+        if (latencies == null) {
+            latencies = new LatencyHistogram();
+            mLatencies.put(session.mPath, latencies);
+        }
+        latencies.record(session.mElapsedNanos / 1000);
+
+        increment(mOutcomes, outcomeKey(type, category));
+        if (platformCode >= 0) increment(mErrorCodes, platformCode);
+        mRetries[Math.min(session.mFailures, MAX_RETRIES)]++;
+    }
+
+    private static <K> void increment(@NonNull final Map<K, Long> counts, @NonNull final K key) {
+        final Long count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    @NonNull
+    private static String outcomeKey(final int type, final int category) {
+        return TraceFormat.typeName(type) + "/" + TraceFormat.categoryName(category);
+    }
+
+    /**
+     * @return Number of the sessions that received the result.
+     */
+    public long getFinishedSessions() {
+        return mFinished;
+    }
+
+    /**
+     * @return Number of the sessions that never received the result. (e.g. The process died.)
+     */
+    public long getAbandonedSessions() {
+        return mAbandoned;
+    }
+
+    /**
+     * @param path     {@link TraceWriter#PATH_V23} or {@link TraceWriter#PATH_P}.
+     * @param quantile Quantile between 0 and 1. (e.g. 0.99 for the p99)
+     * @return Time to the result in microseconds, within 1/32 of the real value.
+     */
+    public long getLatencyPercentile(final int path, final double quantile) {
+        final LatencyHistogram latencies = mLatencies.get(path);
+        return latencies == null ? 0 : latencies.percentile(quantile);
+    }
+
+    /**
+     * @param type     Event type of the result.
+     * @param category Event category of the result.
+     * @return Number of the sessions that finished with this result.
+     */
+    public long getOutcomeCount(final int type, final int category) {
+        final Long count = mOutcomes.get(outcomeKey(type, category));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @param failures Number of the failed attempts.
+     * @return Number of the finished sessions with exactly this many failed attempts.
+     */
+    public long getSessionsWithRetries(final int failures) {
+        return failures < 0 || failures > MAX_RETRIES ? 0 : mRetries[failures];
+    }
+
+    /**
+     * Print the summary.
+     *
+     * @param out {@link PrintStream} to print to.
+     */
+    public void report(@NonNull final PrintStream out) {
+        out.printf(Locale.US, "Sessions: %d finished, %d abandoned, %d orphan events, %d truncated files%n",
+                mFinished, mAbandoned, mOrphanEvents, mTruncatedFiles);
+
+        out.println();
+        out.println("Time to result (ms):");
+        for (final Map.Entry<Integer, LatencyHistogram> entry : mLatencies.entrySet()) {
+            final LatencyHistogram latencies = entry.getValue();
+            out.printf(Locale.US, "  %-4s n=%-8d p50=%-9.1f p90=%-9.1f p99=%-9.1f max=%.1f%n",
+                    pathName(entry.getKey()),
+                    latencies.count(),
+                    latencies.percentile(0.50) / 1000.0,
+                    latencies.percentile(0.90) / 1000.0,
+                    latencies.percentile(0.99) / 1000.0,
+                    latencies.max() / 1000.0);
+        }
+
+        out.println();
+        out.println("Results:");
+        for (final Map.Entry<String, Long> entry : mOutcomes.entrySet()) {
+            out.printf(Locale.US, "  %-36s %d (%.1f%%)%n", entry.getKey(), entry.getValue(), percent(entry.getValue()));
+        }
+
+        out.println();
+        out.println("Platform error codes:");
+        for (final Map.Entry<Integer, Long> entry : mErrorCodes.entrySet()) {
+            out.printf(Locale.US, "  %-36d %d%n", entry.getKey(), entry.getValue());
+        }
+
+        long retried = 0;
+        long failures = 0;
+        int maxRetries = 0;
+        for (int i = 1; i <= MAX_RETRIES; i++) {
+            retried += mRetries[i];
+            failures += i * mRetries[i];
+            if (mRetries[i] > 0) maxRetries = i;
+        }
+        out.println();
+        out.printf(Locale.US, "Failed attempts: %.1f%% of sessions had any, mean %.2f, max %s%n",
+                percent(retried),
+                mFinished == 0 ? 0.0 : (double) failures / mFinished,
+                maxRetries == MAX_RETRIES ? MAX_RETRIES + "+" : String.valueOf(maxRetries));
+    }
+
+    private double percent(final long count) {
+        return mFinished == 0 ? 0 : count * 100.0 / mFinished;
+    }
+
+    @NonNull
+    private static String pathName(final int path) {
+        switch (path) {
+            case TraceWriter.PATH_V23:
+                return "V23";
+            case TraceWriter.PATH_P:
+                return "P";
+            default:
+                return "#" + path;
+        }
+    }
+}
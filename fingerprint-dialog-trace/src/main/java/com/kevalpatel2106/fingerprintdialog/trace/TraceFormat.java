@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.trace;
+
+import android.support.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Binary format of the authentication trace. The file starts with {@code [magic][version]} followed
+ * by the records. Every record starts with its tag:
+ * <ul>
+ * <li>{@link #TAG_SESSION}: {@code [session id][path][start time in ms since epoch]}</li>
+ * <li>{@link #TAG_EVENT}: {@code [session id][type][category][platform code][ns since the previous
+ * record of the session]}</li>
+ * </ul>
+ * All the numbers are unsigned LEB128 varints, the platform code is zigzag encoded first. A typical
+ * event takes 6 to 8 bytes. The file is append-only. A record cut by the process death is ignored
+ * by the reader and removed by {@link TraceWriter#open(java.io.File)} before the next append.
+ * <p>
+ * The event types and categories have the same values as the constants of
+ * {@code AuthenticationEvent} in the core module.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+final class TraceFormat {
+    static final int MAGIC = 0x46445452;    // "FDTR"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 5;
+
+    static final int TAG_SESSION = 1;
+    static final int TAG_EVENT = 2;
+
+    /**
+     * Names of the event types for the reports. Same order as {@code AuthenticationEvent.TYPE_*}.
+     */
+    static final String[] TYPE_NAMES = {
+            "not_supported", "no_fingerprint_enrolled", "error", "canceled", "succeeded", "help", "failed"
+    };
+
+    /**
+     * Names of the event categories for the reports. Same order as
+     * {@code AuthenticationEvent.CATEGORY_*}.
+     */
+    static final String[] CATEGORY_NAMES = {
+            "none", "hardware", "enrollment", "lockout", "user", "transient", "system"
+    };
+
+    private TraceFormat() {
+        throw new RuntimeException("No instances.");
+    }
+
+    /**
+     * @param type Event type.
+     * @return true if the session ends with the event of this type.
+     */
+    static boolean isTerminal(final int type) {
+        return type != TraceWriter.TYPE_HELP && type != TraceWriter.TYPE_FAILED;
+    }
+
+    @NonNull
+    static String typeName(final int type) {
+        return type >= 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : "type_" + type;
+    }
+
+    @NonNull
+    static String categoryName(final int category) {
+        return category >= 0 && category < CATEGORY_NAMES.length ? CATEGORY_NAMES[category] : "category_" + category;
+    }
+
+    static void writeVarLong(@NonNull final OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * @return Decoded value.
+     * @throws EOFException If the stream ends inside the varint.
+     */
+    static long readVarLong(@NonNull final InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) throw new EOFException();
+
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
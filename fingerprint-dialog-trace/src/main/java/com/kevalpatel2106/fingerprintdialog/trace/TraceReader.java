@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.trace;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams the records of the trace to the {@link Visitor}, without loading the trace in the memory.
+ * See {@link TraceFormat} for the layout.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TraceReader implements Closeable {
+
+    /**
+     * Receives the records of the trace in the order they were written.
+     */
+    public interface Visitor {
+
+        /**
+         * @see TraceWriter#writeSession(int, int, long)
+         */
+        void onSession(final int sessionId, final int path, final long wallMillis);
+
+        /**
+         * @see TraceWriter#writeEvent(int, int, int, int, long)
+         */
+        void onEvent(final int sessionId,
+                     final int type,
+                     final int category,
+                     final int platformCode,
+                     final long deltaNanos);
+    }
+
+    @NonNull
+    private final InputStream mIn;
+
+    /**
+     * True if the trace ended in the middle of a record.
+     */
+    private boolean isTruncated = false;
+
+    /**
+     * @param in {@link InputStream} of the trace, positioned at the header.
+     * @throws IOException If the stream is not a trace.
+     */
+    public TraceReader(@NonNull final InputStream in) throws IOException {
+        mIn = in;
+
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            final int b = in.read();
+            if (b < 0) throw new IOException("Not a trace.");
+            magic = (magic << 8) | b;
+        }
+        if (magic != TraceFormat.MAGIC) throw new IOException("Not a trace.");
+
+        final int version = in.read();
+        if (version != TraceFormat.VERSION) throw new IOException("Unsupported trace version: " + version);
+    }
+
+    /**
+     * @param file Trace file.
+     * @return {@link TraceReader}
+     * @throws IOException If the file cannot be read or it is not a trace.
+     */
+    @NonNull
+    public static TraceReader open(@NonNull final File file) throws IOException {
+        final InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        try {
+            return new TraceReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @param visitor {@link Visitor} to receive the record.
+     * @return false if there are no more records.
+     * @throws IOException If the trace is corrupt.
+     */
+    public boolean next(@NonNull final Visitor visitor) throws IOException {
+        final int tag = mIn.read();
+        if (tag < 0) return false;
+
+        try {
+            switch (tag) {
+                case TraceFormat.TAG_SESSION:
+                    final int sessionId = (int) TraceFormat.readVarLong(mIn);
+                    final int path = (int) TraceFormat.readVarLong(mIn);
+                    final long wallMillis = TraceFormat.readVarLong(mIn);
+                    visitor.onSession(sessionId, path, wallMillis);
+                    return true;
+                case TraceFormat.TAG_EVENT:
+                    final int eventSessionId = (int) TraceFormat.readVarLong(mIn);
+                    final int type = (int) TraceFormat.readVarLong(mIn);
+                    final int category = (int) TraceFormat.readVarLong(mIn);
+                    final int platformCode = (int) TraceFormat.unzigzag(TraceFormat.readVarLong(mIn));
+                    final long deltaNanos = TraceFormat.readVarLong(mIn);
+                    visitor.onEvent(eventSessionId, type, category, platformCode, deltaNanos);
+                    return true;
+                default:
+                    throw new IOException("Unknown record: " + tag);
+            }
+        } catch (EOFException e) {
+            //Last record was cut by the process death.
+            isTruncated = true;
+            return false;
+        }
+    }
+
+    /**
+     * Read all the remaining records.
+     *
+     * @param visitor {@link Visitor} to receive the records.
+     * @return Number of the records read.
+     * @throws IOException If the trace is corrupt.
+     */
+    public long readAll(@NonNull final Visitor visitor) throws IOException {
+        long count = 0;
+        while (next(visitor)) count++;
+        return count;
+    }
+
+    /**
+     * @return true if the last record was incomplete and skipped.
+     */
+    public boolean isTruncated() {
+        return isTruncated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mIn.close();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.trace;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Appends the authentication sessions to the trace. See {@link TraceFormat} for the layout.
+ * Thread safe.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TraceWriter implements Closeable, Flushable {
+
+    /**
+     * Session used the dialog of the library below Android P.
+     */
+    public static final int PATH_V23 = 1;
+
+    /**
+     * Session used the system BiometricPrompt.
+     */
+    public static final int PATH_P = 2;
+
+    // Event types that don't end the session. Same values as the AuthenticationEvent of the core.
+    static final int TYPE_HELP = 5;
+    static final int TYPE_FAILED = 6;
+
+    @NonNull
+    private final OutputStream mOut;
+
+    /**
+     * Lowest session id that is not used by the records already in the trace.
+     */
+    private final int mFirstFreeSessionId;
+
+    /**
+     * @param out          {@link OutputStream} to write the trace.
+     * @param writeHeader  True if the stream is at the beginning of the trace.
+     * @throws IOException If the header cannot be written.
+     */
+    public TraceWriter(@NonNull final OutputStream out, final boolean writeHeader) throws IOException {
+        this(out, writeHeader, 0);
+    }
+
+    private TraceWriter(@NonNull final OutputStream out,
+                        final boolean writeHeader,
+                        final int firstFreeSessionId) throws IOException {
+        mOut = out;
+        mFirstFreeSessionId = firstFreeSessionId;
+        if (writeHeader) {
+            mOut.write(TraceFormat.MAGIC >>> 24);
+            mOut.write(TraceFormat.MAGIC >>> 16);
+            mOut.write(TraceFormat.MAGIC >>> 8);
+            mOut.write(TraceFormat.MAGIC);
+            mOut.write(TraceFormat.VERSION);
+        }
+    }
+
+    /**
+     * Open the trace file for appending. New trace is created if the file is empty or missing. The
+     * record cut by the process death is removed first, so the records appended after it can be
+     * read.
+     *
+     * @param file Trace file.
+     * @return {@link TraceWriter}
+     * @throws IOException If the file cannot be opened or it is not a trace.
+     */
+    @NonNull
+    public static TraceWriter open(@NonNull final File file) throws IOException {
+        final long length = file.exists() ? file.length() : 0;
+        if (length < TraceFormat.HEADER_SIZE) {
+            //Missing, empty or the header itself was cut.
+            return new TraceWriter(new BufferedOutputStream(new FileOutputStream(file, false)), true);
+        }
+
+        final int[] maxSessionId = {-1};
+        final CountingInputStream in = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+        long validLength = TraceFormat.HEADER_SIZE;
+        try {
+            final TraceReader reader = new TraceReader(in);
+            final TraceReader.Visitor visitor = new TraceReader.Visitor() {
+                @Override
+                public void onSession(final int sessionId, final int path, final long wallMillis) {
+                    maxSessionId[0] = Math.max(maxSessionId[0], sessionId);
+                }
+
+                @Override
+                public void onEvent(final int sessionId,
+                                    final int type,
+                                    final int category,
+                                    final int platformCode,
+                                    final long deltaNanos) {
+                    //Only the sessions matter.
+                }
+            };
+            try {
+                while (reader.next(visitor)) validLength = in.mCount;
+            } catch (IOException e) {
+                //Garbage after the last record. (e.g. Zeroed blocks after the power loss.)
+            }
+        } finally {
+            in.close();
+        }
+
+        if (validLength < length) {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(validLength);
+            } finally {
+                raf.close();
+            }
+        }
+        return new TraceWriter(new BufferedOutputStream(new FileOutputStream(file, true)), false,
+                maxSessionId[0] + 1);
+    }
+
+    /**
+     * @return Lowest session id that is not used by the sessions already in the trace. Start the
+     * ids of the new sessions from here, so the sessions of the earlier processes are not
+     * replaced.
+     */
+    public int getFirstFreeSessionId() {
+        return mFirstFreeSessionId;
+    }
+
+    /**
+     * Write the start of the session. Later session with the same id replaces this one.
+     *
+     * @param sessionId  Id of the session, unique among the running sessions.
+     * @param path       {@link #PATH_V23} or {@link #PATH_P}.
+     * @param wallMillis Start time in milliseconds since epoch.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void writeSession(final int sessionId, final int path, final long wallMillis)
+            throws IOException {
+        mOut.write(TraceFormat.TAG_SESSION);
+        TraceFormat.writeVarLong(mOut, sessionId);
+        TraceFormat.writeVarLong(mOut, path);
+        TraceFormat.writeVarLong(mOut, wallMillis);
+    }
+
+    /**
+     * Write the event of the session.
+     *
+     * @param sessionId    Id of the session.
+     * @param type         Type of the event.
+     * @param category     Category of the event.
+     * @param platformCode Error or help code reported by the platform, -1 if there is none.
+     * @param deltaNanos   Nanoseconds since the previous record of the session.
+     * @throws IOException If the record cannot be written.
+     */
+    public synchronized void writeEvent(final int sessionId,
+                                        final int type,
+                                        final int category,
+                                        final int platformCode,
+                                        final long deltaNanos) throws IOException {
+        mOut.write(TraceFormat.TAG_EVENT);
+        TraceFormat.writeVarLong(mOut, sessionId);
+        TraceFormat.writeVarLong(mOut, type);
+        TraceFormat.writeVarLong(mOut, category);
+        TraceFormat.writeVarLong(mOut, TraceFormat.zigzag(platformCode));
+        TraceFormat.writeVarLong(mOut, Math.max(0, deltaNanos));
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        mOut.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mOut.close();
+    }
+
+    /**
+     * Counts the bytes read, so the end of the last complete record is known.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount = 0;
+
+        private CountingInputStream(@NonNull final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
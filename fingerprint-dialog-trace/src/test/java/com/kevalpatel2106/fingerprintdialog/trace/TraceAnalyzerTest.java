@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.trace;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link TraceAnalyzer}.
+ */
+public class TraceAnalyzerTest {
+    private static final int TYPE_ERROR = 2;
+    private static final int TYPE_CANCELED = 3;
+    private static final int TYPE_SUCCEEDED = 4;
+    private static final int CATEGORY_NONE = 0;
+    private static final int CATEGORY_LOCKOUT = 3;
+    private static final int CATEGORY_USER = 4;
+
+    private static TraceReader readerOf(final ByteArrayOutputStream out) throws IOException {
+        return new TraceReader(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void checkLatencyPercentiles() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TraceWriter writer = new TraceWriter(out, true);
+        //1..1000 ms to the success.
+        for (int i = 1; i <= 1000; i++) {
+            writer.writeSession(i, TraceWriter.PATH_V23, 0);
+            writer.writeEvent(i, TYPE_SUCCEEDED, CATEGORY_NONE, -1, i * 1_000_000L);
+        }
+
+        final TraceAnalyzer analyzer = new TraceAnalyzer();
+        analyzer.analyze(readerOf(out));
+
+        assertEquals(1000, analyzer.getFinishedSessions());
+        assertWithin(500_000, analyzer.getLatencyPercentile(TraceWriter.PATH_V23, 0.50));
+        assertWithin(990_000, analyzer.getLatencyPercentile(TraceWriter.PATH_V23, 0.99));
+        assertEquals(0, analyzer.getLatencyPercentile(TraceWriter.PATH_P, 0.50));
+    }
+
+    @Test
+    public void checkOutcomesAndRetries() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TraceWriter writer = new TraceWriter(out, true);
+        writer.writeSession(1, TraceWriter.PATH_P, 0);
+        writer.writeSession(2, TraceWriter.PATH_V23, 0);
+        writer.writeEvent(2, TraceWriter.TYPE_FAILED, CATEGORY_USER, -1, 100);
+        writer.writeEvent(1, TraceWriter.TYPE_FAILED, CATEGORY_USER, -1, 100);
+        writer.writeEvent(2, TraceWriter.TYPE_FAILED, CATEGORY_USER, -1, 100);
+        writer.writeEvent(1, TYPE_SUCCEEDED, CATEGORY_NONE, -1, 100);
+        writer.writeEvent(2, TYPE_ERROR, CATEGORY_LOCKOUT, 7, 100);
+        writer.writeSession(3, TraceWriter.PATH_V23, 0);
+        writer.writeEvent(3, TYPE_CANCELED, CATEGORY_USER, -1, 100);
+        //Never finished.
+        writer.writeSession(4, TraceWriter.PATH_V23, 0);
+
+        final TraceAnalyzer analyzer = new TraceAnalyzer();
+        analyzer.analyze(readerOf(out));
+
+        assertEquals(3, analyzer.getFinishedSessions());
+        assertEquals(1, analyzer.getAbandonedSessions());
+        assertEquals(1, analyzer.getOutcomeCount(TYPE_SUCCEEDED, CATEGORY_NONE));
+        assertEquals(1, analyzer.getOutcomeCount(TYPE_ERROR, CATEGORY_LOCKOUT));
+        assertEquals(1, analyzer.getOutcomeCount(TYPE_CANCELED, CATEGORY_USER));
+        assertEquals(1, analyzer.getSessionsWithRetries(0));
+        assertEquals(1, analyzer.getSessionsWithRetries(1));
+        assertEquals(1, analyzer.getSessionsWithRetries(2));
+
+        final ByteArrayOutputStream report = new ByteArrayOutputStream();
+        analyzer.report(new PrintStream(report, true));
+        assertTrue(report.toString().contains("error/lockout"));
+    }
+
+    @Test
+    public void checkHistogramBuckets() {
+        for (long value = 0; value < 1_000_000; value += 37) {
+            final long bucket = LatencyHistogram.valueOf(LatencyHistogram.indexOf(value));
+            assertTrue(Math.abs(bucket - value) <= Math.max(1, value / 16));
+        }
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue("Expected " + expected + " but was " + actual, Math.abs(expected - actual) <= expected / 16);
+    }
+}
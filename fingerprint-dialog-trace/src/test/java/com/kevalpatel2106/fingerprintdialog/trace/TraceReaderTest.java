@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog.trace;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link TraceWriter} and the {@link TraceReader}.
+ */
+public class TraceReaderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final class Recorder implements TraceReader.Visitor {
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void onSession(final int sessionId, final int path, final long wallMillis) {
+            records.add("session " + sessionId + " " + path + " " + wallMillis);
+        }
+
+        @Override
+        public void onEvent(final int sessionId,
+                            final int type,
+                            final int category,
+                            final int platformCode,
+                            final long deltaNanos) {
+            records.add("event " + sessionId + " " + type + " " + category + " " + platformCode + " " + deltaNanos);
+        }
+    }
+
+    private static void write(final File file, final byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] writeSample() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TraceWriter writer = new TraceWriter(out, true);
+        writer.writeSession(7, TraceWriter.PATH_V23, 1539000000000L);
+        writer.writeEvent(7, 5, 5, 1, 350_000_000L);
+        writer.writeEvent(7, 6, 4, -1, 1_200_000_000L);
+        writer.writeEvent(7, 2, 3, 7, 90_000L);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        final Recorder recorder = new Recorder();
+        final TraceReader reader = new TraceReader(new ByteArrayInputStream(writeSample()));
+
+        assertEquals(4, reader.readAll(recorder));
+        assertFalse(reader.isTruncated());
+        assertEquals(Arrays.asList(
+                "session 7 1 1539000000000",
+                "event 7 5 5 1 350000000",
+                "event 7 6 4 -1 1200000000",
+                "event 7 2 3 7 90000"), recorder.records);
+    }
+
+    @Test
+    public void checkEventIsCompact() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TraceWriter writer = new TraceWriter(out, false);
+        writer.writeEvent(100, 6, 4, -1, 800_000_000L);
+
+        assertTrue(out.size() <= 10);
+    }
+
+    @Test
+    public void checkTruncatedRecordIsSkipped() throws IOException {
+        final byte[] trace = writeSample();
+        final Recorder recorder = new Recorder();
+        final TraceReader reader = new TraceReader(new ByteArrayInputStream(Arrays.copyOf(trace, trace.length - 2)));
+
+        assertEquals(3, reader.readAll(recorder));
+        assertTrue(reader.isTruncated());
+    }
+
+    @Test
+    public void checkTornRecordIsRemovedBeforeAppend() throws IOException {
+        final byte[] trace = writeSample();
+        final File file = mFolder.newFile("torn.trace");
+        write(file, Arrays.copyOf(trace, trace.length - 2));
+
+        //Next process.
+        final TraceWriter writer = TraceWriter.open(file);
+        assertEquals(8, writer.getFirstFreeSessionId());
+        writer.writeSession(8, TraceWriter.PATH_P, 1539000001000L);
+        writer.writeEvent(8, 4, 0, -1, 500_000_000L);
+        writer.close();
+
+        final Recorder recorder = new Recorder();
+        final TraceReader reader = TraceReader.open(file);
+        assertEquals(5, reader.readAll(recorder));
+        assertFalse(reader.isTruncated());
+        reader.close();
+        assertEquals(Arrays.asList(
+                "session 7 1 1539000000000",
+                "event 7 5 5 1 350000000",
+                "event 7 6 4 -1 1200000000",
+                "session 8 2 1539000001000",
+                "event 8 4 0 -1 500000000"), recorder.records);
+    }
+
+    @Test
+    public void checkGarbageAfterLastRecordIsRemoved() throws IOException {
+        final byte[] trace = writeSample();
+        final File file = mFolder.newFile("zeroed.trace");
+        write(file, Arrays.copyOf(trace, trace.length + 16));
+
+        TraceWriter.open(file).close();
+        assertEquals(trace.length, file.length());
+    }
+
+    @Test
+    public void checkTornHeaderStartsNewTrace() throws IOException {
+        final File file = mFolder.newFile("header.trace");
+        write(file, Arrays.copyOf(writeSample(), 3));
+
+        final TraceWriter writer = TraceWriter.open(file);
+        assertEquals(0, writer.getFirstFreeSessionId());
+        writer.writeSession(0, TraceWriter.PATH_V23, 1539000000000L);
+        writer.close();
+
+        final TraceReader reader = TraceReader.open(file);
+        assertEquals(1, reader.readAll(new Recorder()));
+        reader.close();
+    }
+
+    @Test
+    public void checkRejectsOtherFiles() {
+        try {
+            new TraceReader(new ByteArrayInputStream("PK\u0003\u0004".getBytes()));
+            fail("Read a file that is not a trace.");
+        } catch (IOException e) {
+            //Expected.
+        }
+    }
+
+    @Test
+    public void checkVarLongRoundTrip() throws IOException {
+        final long[] values = {0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (final long value : values) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TraceFormat.writeVarLong(out, TraceFormat.zigzag(value));
+            final long read = TraceFormat.unzigzag(TraceFormat.readVarLong(new ByteArrayInputStream(out.toByteArray())));
+            assertEquals(value, read);
+        }
+    }
+}
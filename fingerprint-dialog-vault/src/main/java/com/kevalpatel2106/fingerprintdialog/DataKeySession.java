@@ -0,0 +1,371 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Envelope encryption with the fingerprint bound key. Every operation of the key store
+ * {@link Cipher} is an IPC into the key store daemon and the TEE, so the fingerprint bound key only
+ * wraps a random data key. After the user authenticates once, the data key is unwrapped and kept
+ * in the memory for the session, and the records are encrypted in process with AES/GCM.
+ * <p>
+ * The data key is zeroed when the session times out, when {@link #lock()} is called or when the
+ * application goes to the background (see {@link #register(Context)}).
+ * <ol>
+ * <li>First time: authenticate the user with the cipher of
+ * {@link FingerprintKeyPool#forKey(String)} and store the result of {@link #createKey(Cipher)}.</li>
+ * <li>Next times: authenticate the user with the cipher of
+ * {@link FingerprintKeyPool#forDecryption(String, byte[])} for the {@link #ivOf(byte[])} of the
+ * stored key and call {@link #unlock(Cipher, byte[])}.</li>
+ * </ol>
+ * Wrapped key format: {@code [version][iv length][iv][encrypted data key]}. Record format:
+ * {@code [iv][cipher text + tag]}.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class DataKeySession implements ComponentCallbacks2 {
+    private static final byte VERSION = 1;
+    private static final int KEY_SIZE = 32;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE_BITS = 128;
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    /**
+     * Locks the sessions that timed out. The timer only zeroes the key, so one thread is enough.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "DataKeySession-timer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final SecureRandom mRandom = new SecureRandom();
+    private final long mTimeoutMillis;
+
+    /**
+     * Unwrapped data key or null while the session is locked.
+     */
+    @Nullable
+    private DataKey mKey;
+
+    @Nullable
+    private ScheduledFuture<?> mTimeout;
+
+    /**
+     * @param timeoutMillis Time the data key stays in the memory after the authentication.
+     */
+    public DataKeySession(final long timeoutMillis) {
+        if (timeoutMillis <= 0) throw new IllegalArgumentException("Timeout must be positive.");
+        mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Generate new data key, wrap it and unlock the session with it.
+     *
+     * @param authenticatedCipher Key store {@link Cipher} initialized for the encryption, that was
+     *                            authenticated by the user.
+     * @return Wrapped data key to store. Pass it to {@link #unlock(Cipher, byte[])} later.
+     * @throws GeneralSecurityException If the cipher cannot wrap the key.
+     */
+    @NonNull
+    public byte[] createKey(@NonNull final Cipher authenticatedCipher) throws GeneralSecurityException {
+        final byte[] material = new byte[KEY_SIZE];
+        mRandom.nextBytes(material);
+
+        try {
+            final byte[] wrappedKey = wrap(authenticatedCipher, material);
+            start(new DataKey(material));
+            return wrappedKey;
+        } finally {
+            Arrays.fill(material, (byte) 0);
+        }
+    }
+
+    /**
+     * Wrap the data key of the unlocked session with another key. (e.g. Recovery copy with the key
+     * derived from the recovery secret of the user, so the records survive a new enrollment that
+     * invalidates the fingerprint bound key.) The copy unlocks the session with
+     * {@link #unlock(Cipher, byte[])} like the key returned by {@link #createKey(Cipher)}.
+     *
+     * @param cipher {@link Cipher} initialized for the encryption with the other key.
+     * @return Wrapped data key to store.
+     * @throws GeneralSecurityException If the session is locked or the cipher cannot wrap the key.
+     */
+    @NonNull
+    public byte[] wrapKey(@NonNull final Cipher cipher) throws GeneralSecurityException {
+        final byte[] material = requireKey().getEncoded();
+        if (material == null) throw new InvalidKeyException("Session is locked.");
+
+        try {
+            return wrap(cipher, material);
+        } finally {
+            Arrays.fill(material, (byte) 0);
+        }
+    }
+
+    @NonNull
+    private static byte[] wrap(@NonNull final Cipher cipher,
+                               @NonNull final byte[] material) throws GeneralSecurityException {
+        final byte[] encryptedKey = cipher.doFinal(material);
+        final byte[] iv = cipher.getIV();
+        if (iv == null) throw new InvalidKeyException("Cipher has no IV.");
+
+        final ByteBuffer wrappedKey = ByteBuffer.allocate(2 + iv.length + encryptedKey.length);
+        wrappedKey.put(VERSION).put((byte) iv.length).put(iv).put(encryptedKey);
+        return wrappedKey.array();
+    }
+
+    /**
+     * @param wrappedKey Wrapped data key returned by {@link #createKey(Cipher)}.
+     * @return IV to initialize the key store {@link Cipher} for the {@link #unlock(Cipher, byte[])}.
+     * @throws GeneralSecurityException If this is not a wrapped data key.
+     */
+    @NonNull
+    public static byte[] ivOf(@NonNull final byte[] wrappedKey) throws GeneralSecurityException {
+        if (wrappedKey.length < 2 || wrappedKey[0] != VERSION
+                || wrappedKey.length < 2 + (wrappedKey[1] & 0xFF)) {
+            throw new InvalidKeyException("Not a wrapped data key.");
+        }
+        return Arrays.copyOfRange(wrappedKey, 2, 2 + (wrappedKey[1] & 0xFF));
+    }
+
+    /**
+     * Unwrap the data key and unlock the session.
+     *
+     * @param authenticatedCipher Key store {@link Cipher} initialized for the decryption with the
+     *                            {@link #ivOf(byte[])} the wrapped key, that was authenticated by the
+     *                            user.
+     * @param wrappedKey          Wrapped data key returned by {@link #createKey(Cipher)}.
+     * @throws GeneralSecurityException If the cipher cannot unwrap the key.
+     */
+    public void unlock(@NonNull final Cipher authenticatedCipher,
+                       @NonNull final byte[] wrappedKey) throws GeneralSecurityException {
+        final int offset = 2 + ivOf(wrappedKey).length;
+        final byte[] material = authenticatedCipher.doFinal(wrappedKey, offset, wrappedKey.length - offset);
+
+        try {
+            if (material.length != KEY_SIZE) throw new InvalidKeyException("Invalid data key.");
+            start(new DataKey(material));
+        } finally {
+            Arrays.fill(material, (byte) 0);
+        }
+    }
+
+    /**
+     * @return true if the data key is in the memory.
+     */
+    public synchronized boolean isUnlocked() {
+        return mKey != null;
+    }
+
+    /**
+     * Zero the data key. The user has to authenticate again to unlock the session.
+     */
+    public synchronized void lock() {
+        if (mTimeout != null) {
+            mTimeout.cancel(false);
+            mTimeout = null;
+        }
+
+        if (mKey != null) {
+            mKey.destroy();
+            mKey = null;
+        }
+    }
+
+    /**
+     * Encrypt the data in process with the data key.
+     *
+     * @param plainText Data to encrypt.
+     * @return Encrypted record.
+     * @throws GeneralSecurityException If the session is locked.
+     */
+    @NonNull
+    public byte[] encrypt(@NonNull final byte[] plainText) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_SIZE];
+        mRandom.nextBytes(iv);
+
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, requireKey(), new GCMParameterSpec(TAG_SIZE_BITS, iv));
+
+        final byte[] record = new byte[IV_SIZE + cipher.getOutputSize(plainText.length)];
+        System.arraycopy(iv, 0, record, 0, IV_SIZE);
+        cipher.doFinal(plainText, 0, plainText.length, record, IV_SIZE);
+        return record;
+    }
+
+    /**
+     * Decrypt the record encrypted by {@link #encrypt(byte[])}.
+     *
+     * @param record Encrypted record.
+     * @return Decrypted data.
+     * @throws GeneralSecurityException If the session is locked or the record was modified.
+     */
+    @NonNull
+    public byte[] decrypt(@NonNull final byte[] record) throws GeneralSecurityException {
+        if (record.length < IV_SIZE + TAG_SIZE_BITS / 8) throw new AEADBadTagException("Record is too short.");
+
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, requireKey(), new GCMParameterSpec(TAG_SIZE_BITS, record, 0, IV_SIZE));
+        return cipher.doFinal(record, IV_SIZE, record.length - IV_SIZE);
+    }
+
+    /**
+     * Open the {@link SecureVault} encrypted with the data key. The vault cannot be read or written
+     * anymore once the session is locked.
+     *
+     * @param file File of the vault.
+     * @return {@link SecureVault}
+     * @throws GeneralSecurityException If the session is locked.
+     * @throws IOException              If the file cannot be read or it is not a vault.
+     */
+    @WorkerThread
+    @NonNull
+    public SecureVault openVault(@NonNull final File file) throws GeneralSecurityException, IOException {
+        return SecureVault.open(file, requireKey());
+    }
+
+    /**
+     * Lock the session when the application goes to the background.
+     *
+     * @param context Any {@link Context}. Only the application context is retained.
+     */
+    public void register(@NonNull final Context context) {
+        context.getApplicationContext().registerComponentCallbacks(this);
+    }
+
+    /**
+     * Stop listening for the application going to the background.
+     *
+     * @param context Any {@link Context}.
+     */
+    public void unregister(@NonNull final Context context) {
+        context.getApplicationContext().unregisterComponentCallbacks(this);
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        //UI of the application is hidden. The lower levels are sent while it is still in the
+        //foreground, where the key may be in use.
+        if (level >= TRIM_MEMORY_UI_HIDDEN) lock();
+    }
+
+    @Override
+    public void onLowMemory() {
+        lock();
+    }
+
+    @Override
+    public void onConfigurationChanged(final Configuration newConfig) {
+        //Do nothing.
+    }
+
+    private synchronized void start(@NonNull final DataKey key) {
+        lock();
+        mKey = key;
+        mTimeout = TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expire(key);
+            }
+        }, mTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void expire(@NonNull final DataKey key) {
+        //Session was unlocked again in the meantime.
+        if (mKey != key) return;
+        lock();
+    }
+
+    @NonNull
+    private synchronized SecretKey requireKey() throws InvalidKeyException {
+        if (mKey == null) throw new InvalidKeyException("Session is locked.");
+        return mKey;
+    }
+
+    /**
+     * AES key that zeroes its material on {@link #destroy()}. Ciphers initialized with the key
+     * before that keep their own copy only until they are garbage collected, so the session
+     * creates a new cipher for every record.
+     */
+    private static final class DataKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] mMaterial;
+        private volatile boolean isDestroyed = false;
+
+        private DataKey(@NonNull final byte[] material) {
+            mMaterial = material.clone();
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return "AES";
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        /**
+         * @return Copy of the key material or null once the key is destroyed, so the ciphers fail
+         * with {@link InvalidKeyException}.
+         */
+        @Nullable
+        @Override
+        public byte[] getEncoded() {
+            return isDestroyed ? null : mMaterial.clone();
+        }
+
+        @Override
+        public void destroy() {
+            isDestroyed = true;
+            Arrays.fill(mMaterial, (byte) 0);
+        }
+
+        @Override
+        public boolean isDestroyed() {
+            return isDestroyed;
+        }
+    }
+}
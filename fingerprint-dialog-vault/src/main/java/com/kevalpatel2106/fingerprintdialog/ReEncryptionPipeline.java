@@ -0,0 +1,425 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the records encrypted by one {@link DataKeySession} under the data key of another one.
+ * (e.g. The prompt key was rotated, or a new enrollment invalidated it and the old data key was
+ * recovered from the copy made with {@link DataKeySession#wrapKey(javax.crypto.Cipher)}.) Both
+ * sessions have to be unlocked, so the user authenticates only once for the whole migration.
+ * <p>
+ * The records are listed in batches and re-encrypted by a bounded pool of worker threads. The id of
+ * the last record of the batches that are done is saved in the checkpoint file, so the next
+ * {@link #run()} resumes where the process was killed. The migration is idempotent: records that
+ * already open with the new key are counted and left as they are.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ReEncryptionPipeline {
+    private static final int MAGIC = 0x46445245;    // "FDRE"
+    private static final int VERSION = 1;
+
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /**
+     * Storage of the encrypted records. It is called from several worker threads at once.
+     */
+    public interface RecordStore {
+
+        /**
+         * @param afterId Id after which the listing starts or null to start from the first record.
+         * @param limit   Max number of ids to return.
+         * @return Ids of the records in a stable order or an empty list at the end.
+         * @throws IOException If the store cannot be read.
+         */
+        @WorkerThread
+        @NonNull
+        List<String> list(@Nullable final String afterId, final int limit) throws IOException;
+
+        /**
+         * @param id Id of the record.
+         * @return Encrypted record or null if it was removed in the meantime.
+         * @throws IOException If the store cannot be read.
+         */
+        @WorkerThread
+        @Nullable
+        byte[] read(@NonNull final String id) throws IOException;
+
+        /**
+         * @param id     Id of the record.
+         * @param record Record encrypted with the new key.
+         * @throws IOException If the store cannot be written.
+         */
+        @WorkerThread
+        void write(@NonNull final String id, @NonNull final byte[] record) throws IOException;
+    }
+
+    /**
+     * Counts of a finished migration, including the runs that were resumed.
+     */
+    public static final class Result {
+        private final int mMigrated;
+        private final int mAlreadyMigrated;
+        private final int mFailed;
+
+        private Result(final int migrated, final int alreadyMigrated, final int failed) {
+            mMigrated = migrated;
+            mAlreadyMigrated = alreadyMigrated;
+            mFailed = failed;
+        }
+
+        /**
+         * @return Number of the records encrypted with the new key.
+         */
+        public int getMigrated() {
+            return mMigrated;
+        }
+
+        /**
+         * @return Number of the records that were already encrypted with the new key.
+         */
+        public int getAlreadyMigrated() {
+            return mAlreadyMigrated;
+        }
+
+        /**
+         * @return Number of the records that open with neither key. They are left as they are.
+         */
+        public int getFailed() {
+            return mFailed;
+        }
+    }
+
+    /**
+     * Batch that is done but may wait for the batches listed before it.
+     */
+    private static final class Batch {
+        @NonNull
+        private final String mLastId;
+        @NonNull
+        private final int[] mCounts;
+
+        private Batch(@NonNull final String lastId, @NonNull final int[] counts) {
+            mLastId = lastId;
+            mCounts = counts;
+        }
+    }
+
+    @NonNull
+    private final DataKeySession mFrom;
+    @NonNull
+    private final DataKeySession mTo;
+    @NonNull
+    private final RecordStore mStore;
+    @NonNull
+    private final File mCheckpointFile;
+
+    private int mWorkerCount = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private int mBatchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * State of the running migration. Guarded by the lock of this instance.
+     */
+    private final Map<Long, Batch> mCompleted = new HashMap<>();
+    private final int[] mCounts = new int[3];
+    private long mNextSequence;
+    @Nullable
+    private String mLastId;
+    private long mLastCheckpointNanos;
+    @Nullable
+    private Exception mFailure;
+
+    /**
+     * @param from           Unlocked session of the old data key.
+     * @param to             Unlocked session of the new data key.
+     * @param store          {@link RecordStore} of the records.
+     * @param checkpointFile File to save the progress to. It is deleted once the migration is done.
+     */
+    public ReEncryptionPipeline(@NonNull final DataKeySession from,
+                                @NonNull final DataKeySession to,
+                                @NonNull final RecordStore store,
+                                @NonNull final File checkpointFile) {
+        mFrom = from;
+        mTo = to;
+        mStore = store;
+        mCheckpointFile = checkpointFile;
+    }
+
+    /**
+     * @param workerCount Number of the threads that re-encrypt the records. Default is the number of
+     *                    the cores, at most 4.
+     * @return This instance.
+     */
+    @NonNull
+    public ReEncryptionPipeline setWorkerCount(final int workerCount) {
+        if (workerCount <= 0) throw new IllegalArgumentException("Worker count must be positive.");
+        mWorkerCount = workerCount;
+        return this;
+    }
+
+    /**
+     * @param batchSize Number of the records listed and checkpointed together. Default is 64.
+     * @return This instance.
+     */
+    @NonNull
+    public ReEncryptionPipeline setBatchSize(final int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive.");
+        mBatchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Re-encrypt every record, starting after the saved checkpoint. Blocks until the migration is
+     * done. The checkpoint is saved before any exception is thrown, so the migration can be
+     * resumed by calling this method again.
+     *
+     * @return {@link Result} of the whole migration.
+     * @throws IOException              If the store cannot be read or written.
+     * @throws GeneralSecurityException If one of the sessions is locked.
+     * @throws InterruptedException     If the calling thread was interrupted.
+     */
+    @WorkerThread
+    @NonNull
+    public Result run() throws IOException, GeneralSecurityException, InterruptedException {
+        synchronized (this) {
+            restoreCheckpoint();
+            mCompleted.clear();
+            mNextSequence = 0;
+            mFailure = null;
+            mLastCheckpointNanos = System.nanoTime();
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(mWorkerCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "FingerprintDialogCompat-reencrypt");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        //Bound the listed batches, so a large store is never held in the memory at once.
+        final Semaphore permits = new Semaphore(mWorkerCount * 2);
+
+        boolean isInterrupted = false;
+        try {
+            String afterId;
+            synchronized (this) {
+                afterId = mLastId;
+            }
+            long sequence = 0;
+            while (!hasFailed()) {
+                final List<String> ids;
+                try {
+                    ids = mStore.list(afterId, mBatchSize);
+                } catch (IOException e) {
+                    fail(e);
+                    break;
+                }
+                if (ids.isEmpty()) break;
+
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                    break;
+                }
+
+                final long batchSequence = sequence++;
+                afterId = ids.get(ids.size() - 1);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            migrate(batchSequence, ids);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            //Let the running batches finish, so the checkpoint covers them.
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.SECONDS)) break;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        }
+
+        synchronized (this) {
+            if (mFailure != null || isInterrupted) {
+                saveCheckpoint();
+                if (mFailure instanceof IOException) throw (IOException) mFailure;
+                if (mFailure instanceof GeneralSecurityException) throw (GeneralSecurityException) mFailure;
+                throw new InterruptedException("Re-encryption was interrupted.");
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            mCheckpointFile.delete();
+            final Result result = new Result(mCounts[0], mCounts[1], mCounts[2]);
+            mLastId = null;
+            Arrays.fill(mCounts, 0);
+            return result;
+        }
+    }
+
+    @WorkerThread
+    private void migrate(final long sequence, @NonNull final List<String> ids) {
+        final int[] counts = new int[3];
+        try {
+            for (String id : ids) {
+                if (hasFailed()) return;
+
+                final byte[] record = mStore.read(id);
+                if (record == null) continue;
+                counts[migrate(id, record)]++;
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            fail(e);
+            return;
+        }
+        complete(sequence, new Batch(ids.get(ids.size() - 1), counts));
+    }
+
+    /**
+     * @return Index of the count to increase: 0 if migrated, 1 if already migrated, 2 if failed.
+     */
+    @WorkerThread
+    private int migrate(@NonNull final String id,
+                        @NonNull final byte[] record) throws IOException, GeneralSecurityException {
+        final byte[] plainText;
+        try {
+            plainText = mFrom.decrypt(record);
+        } catch (GeneralSecurityException e) {
+            if (!mFrom.isUnlocked()) throw e;
+
+            //Written by the run that was killed before its checkpoint.
+            try {
+                mTo.decrypt(record);
+                return 1;
+            } catch (GeneralSecurityException notMigrated) {
+                if (!mTo.isUnlocked()) throw notMigrated;
+                return 2;
+            }
+        }
+
+        try {
+            mStore.write(id, mTo.encrypt(plainText));
+            return 0;
+        } finally {
+            Arrays.fill(plainText, (byte) 0);
+        }
+    }
+
+    private synchronized void complete(final long sequence, @NonNull final Batch batch) {
+        mCompleted.put(sequence, batch);
+
+        //Batches finish out of order. Only the batches without a gap before them are saved.
+        Batch next;
+        while ((next = mCompleted.remove(mNextSequence)) != null) {
+            mLastId = next.mLastId;
+            for (int i = 0; i < mCounts.length; i++) mCounts[i] += next.mCounts[i];
+            mNextSequence++;
+        }
+
+        final long now = System.nanoTime();
+        if (now - mLastCheckpointNanos < CHECKPOINT_INTERVAL_NANOS) return;
+        mLastCheckpointNanos = now;
+        try {
+            saveCheckpoint();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized boolean hasFailed() {
+        return mFailure != null;
+    }
+
+    private synchronized void fail(@NonNull final Exception e) {
+        if (mFailure == null) mFailure = e;
+    }
+
+    private void saveCheckpoint() throws IOException {
+        final File tempFile = new File(mCheckpointFile.getPath() + ".tmp");
+        final FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            final DataOutputStream out = new DataOutputStream(outputStream);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(mLastId != null);
+            if (mLastId != null) out.writeUTF(mLastId);
+            for (int count : mCounts) out.writeInt(count);
+            out.flush();
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+
+        if (!tempFile.renameTo(mCheckpointFile)) {
+            throw new IOException("Cannot replace " + mCheckpointFile + " with the new checkpoint.");
+        }
+    }
+
+    private void restoreCheckpoint() {
+        mLastId = null;
+        Arrays.fill(mCounts, 0);
+        if (!mCheckpointFile.exists()) return;
+
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mCheckpointFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) return;
+
+                final String lastId = in.readBoolean() ? in.readUTF() : null;
+                final int[] counts = new int[mCounts.length];
+                for (int i = 0; i < counts.length; i++) counts[i] = in.readInt();
+
+                mLastId = lastId;
+                System.arraycopy(counts, 0, mCounts, 0, counts.length);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            //Unreadable checkpoint. Start from the first record, the migrated ones are only counted.
+        }
+    }
+}
@@ -0,0 +1,568 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Encrypted key-value store for the small secrets the application unlocks with the fingerprint.
+ * <p>
+ * Records are appended to a memory-mapped file and an in-memory index keeps the offset of the latest
+ * record of every key, so {@link #get(String)}, {@link #put(String, byte[])} and
+ * {@link #remove(String)} are O(1) and the values are never loaded on the heap until they are read.
+ * Every value is encrypted with AES/GCM using the vault key and a random IV. The key of the record is
+ * authenticated as the additional data, so records cannot be swapped between the keys.
+ * <p>
+ * Overwritten and removed records stay in the file until the background compaction copies the live
+ * records into a new file. Compaction starts automatically once more than half of the file is
+ * garbage.
+ * <p>
+ * File format: {@code [magic][version]} followed by the records
+ * {@code [length][type][key length][key][iv][cipher text]}. The length of the record is written
+ * last, so a record interrupted by the process death is ignored on the next {@link #open}.
+ *
+ * @author <a href="https://github.com/kevalpatel2106">kevalpatel2106</a>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SecureVault implements Closeable {
+    private static final String TAG = "SecureVault";
+    private static final int MAGIC = 0x46445654;    // "FDVT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+
+    /**
+     * Record length + type + key length.
+     */
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 2;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE_BITS = 128;
+    private static final int MAX_KEY_SIZE = Short.MAX_VALUE;
+
+    private static final int INITIAL_MAP_SIZE = 64 * 1024;
+    private static final long COMPACTION_THRESHOLD_BYTES = 64 * 1024;
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @NonNull
+    private final File mFile;
+
+    @NonNull
+    private final SecretKey mKey;
+
+    @NonNull
+    private final SecureRandom mRandom = new SecureRandom();
+
+    /**
+     * Offset of the latest record of every key.
+     */
+    @NonNull
+    private final Map<String, Integer> mIndex = new HashMap<>();
+
+    @NonNull
+    private final ReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    @NonNull
+    private final ExecutorService mCompactionExecutor;
+
+    private RandomAccessFile mRandomAccessFile;
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * Offset where the next record will be written.
+     */
+    private int mWritePosition;
+
+    /**
+     * Bytes occupied by the overwritten and removed records.
+     */
+    private long mGarbageBytes;
+
+    @Nullable
+    private Future<?> mPendingCompaction;
+
+    private boolean isClosed = false;
+
+    private SecureVault(@NonNull final File file, @NonNull final SecretKey key) {
+        mFile = file;
+        mKey = key;
+        mCompactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "SecureVault-compaction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Open the vault stored in the given file. New vault will be created if the file doesn't exist.
+     * A record cut by the process death or corrupted on the disk is dropped together with the
+     * records after it.
+     *
+     * @param file File of the vault.
+     * @param key  AES key of the vault.
+     * @return {@link SecureVault}
+     * @throws IOException If the file cannot be read or it is not a vault.
+     */
+    @WorkerThread
+    @NonNull
+    public static SecureVault open(@NonNull final File file, @NonNull final SecretKey key) throws IOException {
+        final SecureVault vault = new SecureVault(file, key);
+        vault.load();
+        return vault;
+    }
+
+    private void load() throws IOException {
+        map(mFile);
+
+        if (mBuffer.getInt(0) == 0) {
+            //New file.
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, VERSION);
+        } else if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            close();
+            throw new IOException(mFile + " is not a secure vault.");
+        }
+
+        //Build the index by walking the record headers only.
+        int position = HEADER_SIZE;
+        final int limit = mBuffer.capacity();
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            final int length = mBuffer.getInt(position);
+            //End of the records.
+            if (length == 0) break;
+
+            if (!isValidRecord(mBuffer, position, limit)) {
+                //Torn or corrupted record. Drop it with everything after it, so the records
+                //appended from here can be read again.
+                Log.w(TAG, "Corrupted record at " + position + " in " + mFile + ". The rest of the vault is dropped.");
+                truncate(position);
+                break;
+            }
+
+            final byte type = mBuffer.get(position + 4);
+            final String key = readKey(mBuffer, position);
+            final Integer previous = type == TYPE_PUT
+                    ? mIndex.put(key, position)
+                    : mIndex.remove(key);
+            if (previous != null) mGarbageBytes += recordSize(mBuffer, previous);
+            if (type == TYPE_REMOVE) mGarbageBytes += 4 + length;
+
+            position += 4 + length;
+        }
+        mWritePosition = position;
+    }
+
+    /**
+     * Check that the lengths in the record header fit into the record and the record fits into the
+     * mapped file, so the record can be read without running out of the buffer.
+     *
+     * @param buffer   Mapped vault.
+     * @param position Offset of the record.
+     * @param limit    End of the mapped vault.
+     * @return true if the record is well formed.
+     */
+    private static boolean isValidRecord(@NonNull final ByteBuffer buffer, final int position, final int limit) {
+        final int length = buffer.getInt(position);
+        if (length < RECORD_HEADER_SIZE - 4 || (long) position + 4 + length > limit) return false;
+
+        final int keyLength = buffer.getShort(position + 5);
+        if (keyLength <= 0) return false;
+
+        final int payloadSize = length - (RECORD_HEADER_SIZE - 4) - keyLength;
+        switch (buffer.get(position + 4)) {
+            case TYPE_PUT:
+                return payloadSize >= IV_SIZE + TAG_SIZE_BITS / 8;
+            case TYPE_REMOVE:
+                return payloadSize == 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Zero the mapped file from the given offset, so the next record is written there and the
+     * garbage after it is never read as a record.
+     */
+    private void truncate(final int position) {
+        final int limit = mBuffer.capacity();
+        for (int i = position; i < limit; i++) mBuffer.put(i, (byte) 0);
+        mBuffer.force();
+    }
+
+    /**
+     * Map the file with at least {@link #INITIAL_MAP_SIZE} bytes.
+     */
+    private void map(@NonNull final File file) throws IOException {
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        final long size = Math.max(mRandomAccessFile.length(), INITIAL_MAP_SIZE);
+        mBuffer = mRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Make sure that the mapped region can hold the given number of bytes from the write position.
+     * The mapping grows by doubling, so the appends are amortized O(1).
+     */
+    private void ensureCapacity(final int bytes) throws IOException {
+        final long required = (long) mWritePosition + bytes + 4 /* End marker */;
+        if (required <= mBuffer.capacity()) return;
+        if (required > Integer.MAX_VALUE) throw new IOException("Secure vault is full.");
+
+        long newSize = mBuffer.capacity();
+        while (newSize < required) newSize *= 2;
+        mBuffer.force();
+        mBuffer = mRandomAccessFile.getChannel()
+                .map(FileChannel.MapMode.READ_WRITE, 0, Math.min(newSize, Integer.MAX_VALUE));
+    }
+
+    @NonNull
+    private static String readKey(@NonNull final ByteBuffer buffer, final int position) {
+        final int keyLength = buffer.getShort(position + 5);
+        final byte[] keyBytes = new byte[keyLength];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.get(keyBytes);
+        return new String(keyBytes, UTF_8);
+    }
+
+    private static int recordSize(@NonNull final ByteBuffer buffer, final int position) {
+        return 4 + buffer.getInt(position);
+    }
+
+    /**
+     * Read and decrypt the value of the key.
+     *
+     * @param key Key of the value.
+     * @return Decrypted value or null if there is no value for the key.
+     * @throws GeneralSecurityException If the record cannot be decrypted with the vault key.
+     */
+    @Nullable
+    public byte[] get(@NonNull final String key) throws GeneralSecurityException {
+        final byte[] keyBytes = key.getBytes(UTF_8);
+        final byte[] iv = new byte[IV_SIZE];
+        final byte[] cipherText;
+
+        mLock.readLock().lock();
+        try {
+            checkOpen();
+            final Integer position = mIndex.get(key);
+            if (position == null) return null;
+
+            final ByteBuffer view = mBuffer.duplicate();
+            final int length = view.getInt(position);
+            view.position(position + RECORD_HEADER_SIZE + keyBytes.length);
+            view.get(iv);
+            cipherText = new byte[length - (RECORD_HEADER_SIZE - 4) - keyBytes.length - IV_SIZE];
+            view.get(cipherText);
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, mKey, new GCMParameterSpec(TAG_SIZE_BITS, iv));
+        cipher.updateAAD(keyBytes);
+        return cipher.doFinal(cipherText);
+    }
+
+    /**
+     * Encrypt and store the value for the key. Previous value of the key is replaced.
+     *
+     * @param key   Key of the value.
+     * @param value Value to store.
+     * @throws GeneralSecurityException If the value cannot be encrypted with the vault key.
+     * @throws IOException              If the vault file cannot grow.
+     */
+    public void put(@NonNull final String key, @NonNull final byte[] value)
+            throws GeneralSecurityException, IOException {
+        final byte[] keyBytes = checkKey(key);
+        final byte[] iv = new byte[IV_SIZE];
+        mRandom.nextBytes(iv);
+
+        final Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, mKey, new GCMParameterSpec(TAG_SIZE_BITS, iv));
+        cipher.updateAAD(keyBytes);
+        final byte[] cipherText = cipher.doFinal(value);
+
+        mLock.writeLock().lock();
+        try {
+            checkOpen();
+            final int position = append(TYPE_PUT, keyBytes, iv, cipherText);
+            final Integer previous = mIndex.put(key, position);
+            if (previous != null) mGarbageBytes += recordSize(mBuffer, previous);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        maybeCompact();
+    }
+
+    /**
+     * Remove the value of the key.
+     *
+     * @param key Key to remove.
+     * @return true if the key had a value.
+     * @throws IOException If the vault file cannot grow.
+     */
+    public boolean remove(@NonNull final String key) throws IOException {
+        final byte[] keyBytes = checkKey(key);
+
+        mLock.writeLock().lock();
+        try {
+            checkOpen();
+            final Integer previous = mIndex.remove(key);
+            if (previous == null) return false;
+
+            final int position = append(TYPE_REMOVE, keyBytes, null, null);
+            mGarbageBytes += recordSize(mBuffer, previous) + recordSize(mBuffer, position);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        maybeCompact();
+        return true;
+    }
+
+    /**
+     * @param key Key to look for.
+     * @return true if the vault has value for the key.
+     */
+    public boolean contains(@NonNull final String key) {
+        mLock.readLock().lock();
+        try {
+            checkOpen();
+            return mIndex.containsKey(key);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of the keys in the vault.
+     */
+    public int size() {
+        mLock.readLock().lock();
+        try {
+            checkOpen();
+            return mIndex.size();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Snapshot of all the keys in the vault.
+     */
+    @NonNull
+    public Set<String> keys() {
+        mLock.readLock().lock();
+        try {
+            checkOpen();
+            return Collections.unmodifiableSet(new HashSet<>(mIndex.keySet()));
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append the record at the write position. Must hold the write lock.
+     *
+     * @return Offset of the record.
+     */
+    private int append(final byte type,
+                       @NonNull final byte[] keyBytes,
+                       @Nullable final byte[] iv,
+                       @Nullable final byte[] cipherText) throws IOException {
+        final int payloadSize = (iv == null ? 0 : iv.length) + (cipherText == null ? 0 : cipherText.length);
+        final int length = (RECORD_HEADER_SIZE - 4) + keyBytes.length + payloadSize;
+        ensureCapacity(4 + length);
+
+        final int position = mWritePosition;
+        final ByteBuffer view = mBuffer.duplicate();
+        view.position(position + 4);
+        view.put(type);
+        view.putShort((short) keyBytes.length);
+        view.put(keyBytes);
+        if (iv != null) view.put(iv);
+        if (cipherText != null) view.put(cipherText);
+
+        //Commit the record by writing the length at the end.
+        mBuffer.putInt(position, length);
+        mWritePosition = position + 4 + length;
+        return position;
+    }
+
+    @NonNull
+    private static byte[] checkKey(@NonNull final String key) {
+        final byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length == 0 || keyBytes.length > MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("Key must be between 1 and " + MAX_KEY_SIZE + " bytes.");
+        }
+        return keyBytes;
+    }
+
+    private void checkOpen() {
+        if (isClosed) throw new IllegalStateException("Secure vault is already closed.");
+    }
+
+    /**
+     * Schedule the background compaction if more than half of the file is garbage.
+     */
+    private void maybeCompact() {
+        mLock.readLock().lock();
+        try {
+            if (isClosed || mGarbageBytes < COMPACTION_THRESHOLD_BYTES) return;
+            if (mGarbageBytes * 2 < mWritePosition) return;
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        synchronized (mCompactionExecutor) {
+            if (mPendingCompaction != null && !mPendingCompaction.isDone()) return;
+            mPendingCompaction = mCompactionExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        //Garbage will be collected in the next compaction.
+                        Log.w(TAG, "Compaction of " + mFile + " failed.", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Copy the live records into the new file and replace the vault file with it. Records are
+     * copied without decrypting them.
+     *
+     * @throws IOException If the new file cannot be written.
+     */
+    @WorkerThread
+    @VisibleForTesting
+    void compact() throws IOException {
+        final File compactFile = new File(mFile.getPath() + ".compact");
+
+        mLock.writeLock().lock();
+        try {
+            if (isClosed) return;
+
+            //noinspection ResultOfMethodCallIgnored
+            compactFile.delete();
+            final Map<String, Integer> newIndex = new HashMap<>(mIndex.size() * 2);
+            int newSize = HEADER_SIZE;
+            for (Integer position : mIndex.values()) newSize += recordSize(mBuffer, position);
+
+            final RandomAccessFile compactRaf = new RandomAccessFile(compactFile, "rw");
+            try {
+                final MappedByteBuffer target = compactRaf.getChannel()
+                        .map(FileChannel.MapMode.READ_WRITE, 0, Math.max(newSize + 4, INITIAL_MAP_SIZE));
+                target.putInt(MAGIC);
+                target.putInt(VERSION);
+                for (Map.Entry<String, Integer> entry : mIndex.entrySet()) {
+                    final int position = entry.getValue();
+                    final ByteBuffer record = mBuffer.duplicate();
+                    record.position(position);
+                    record.limit(position + recordSize(mBuffer, position));
+
+                    newIndex.put(entry.getKey(), target.position());
+                    target.put(record);
+                }
+                target.force();
+            } finally {
+                compactRaf.close();
+            }
+
+            mRandomAccessFile.close();
+            if (!compactFile.renameTo(mFile)) {
+                map(mFile);
+                throw new IOException("Cannot replace " + mFile + " with the compacted file.");
+            }
+            map(mFile);
+
+            mIndex.clear();
+            mIndex.putAll(newIndex);
+            mWritePosition = newSize;
+            mGarbageBytes = 0;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Bytes occupied by the overwritten and removed records.
+     */
+    @VisibleForTesting
+    long getGarbageBytes() {
+        mLock.readLock().lock();
+        try {
+            return mGarbageBytes;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flush the records to the disk and close the file. Vault cannot be used after this call.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mCompactionExecutor.shutdown();
+
+        mLock.writeLock().lock();
+        try {
+            if (isClosed) return;
+            isClosed = true;
+            mIndex.clear();
+            mBuffer.force();
+            mRandomAccessFile.close();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+}
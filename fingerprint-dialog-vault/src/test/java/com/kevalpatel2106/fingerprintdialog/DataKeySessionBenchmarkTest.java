@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares encrypting the records with the key store {@link Cipher} against the envelope of the
+ * {@link DataKeySession}. The {@link FakeAndroidKeyStore} injects 1 ms into every cipher
+ * initialization to stand for the IPC into the key store daemon. Runs only with the "benchmark"
+ * system property, so the loaded CI machines don't fail the unit tests.
+ */
+public class DataKeySessionBenchmarkTest {
+    private static final String ALIAS = "benchmark";
+    private static final int RECORDS = 200;
+    private static final int RECORD_SIZE = 1024;
+    private static final long KEY_STORE_LATENCY_MILLIS = 1;
+    private static final int WARM_UP_ROUNDS = 10;
+
+    private FakeAndroidKeyStore mProvider;
+    private FingerprintKeyStore mKeyStore;
+    private byte[][] mRecords;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Run with -Pbenchmark.", Boolean.getBoolean("benchmark"));
+
+        mProvider = FakeAndroidKeyStore.install();
+        mKeyStore = new FingerprintKeyStore(FingerprintKeyStore.ANDROID_KEY_STORE,
+                FakeAndroidKeyStore.keySpecFactory(true, 30));
+        assertTrue(mKeyStore.generateKey(ALIAS));
+        mProvider.authenticateUser();
+
+        final Random random = new Random(42);
+        mRecords = new byte[RECORDS][RECORD_SIZE];
+        for (byte[] record : mRecords) random.nextBytes(record);
+    }
+
+    @After
+    public void tearDown() {
+        FakeAndroidKeyStore.uninstall();
+    }
+
+    @Test
+    public void compareKeyStoreAndEnvelope() throws Exception {
+        final DataKeySession session = new DataKeySession(60000);
+        session.createKey(mKeyStore.createCipher(ALIAS));
+
+        //Warm up the providers and the JIT.
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            encryptWithKeyStore();
+            encryptWithEnvelope(session);
+        }
+
+        mProvider.setLatency(FakeAndroidKeyStore.Operation.CIPHER_INIT, KEY_STORE_LATENCY_MILLIS);
+        final long keyStoreNanos = encryptWithKeyStore();
+        final long envelopeNanos = encryptWithEnvelope(session);
+
+        //Real key store calls take several ms.
+        assertTrue(String.format(Locale.US, "Envelope must be at least 3x faster. Key store: %d records/s, envelope: %d records/s",
+                recordsPerSecond(keyStoreNanos), recordsPerSecond(envelopeNanos)),
+                envelopeNanos * 3 < keyStoreNanos);
+    }
+
+    private long encryptWithKeyStore() throws Exception {
+        final long start = System.nanoTime();
+        for (byte[] record : mRecords) {
+            final Cipher cipher = mKeyStore.createCipher(ALIAS);
+            assertNotNull(cipher);
+            cipher.doFinal(record);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long encryptWithEnvelope(final DataKeySession session) throws Exception {
+        final long start = System.nanoTime();
+        for (byte[] record : mRecords) session.encrypt(record);
+        return System.nanoTime() - start;
+    }
+
+    private static long recordsPerSecond(final long nanos) {
+        return RECORDS * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+}
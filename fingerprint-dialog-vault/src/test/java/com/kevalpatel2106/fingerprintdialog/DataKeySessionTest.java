@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link DataKeySession} with the fingerprint bound key of the
+ * {@link FakeAndroidKeyStore}.
+ */
+public class DataKeySessionTest {
+    private static final String ALIAS = "envelope";
+    private static final byte[] DATA = "Secret of the user".getBytes();
+
+    private FakeAndroidKeyStore mProvider;
+    private FingerprintKeyStore mKeyStore;
+
+    @Before
+    public void setUp() {
+        mProvider = FakeAndroidKeyStore.install();
+        mKeyStore = new FingerprintKeyStore(FingerprintKeyStore.ANDROID_KEY_STORE,
+                FakeAndroidKeyStore.keySpecFactory(true, -1));
+        assertTrue(mKeyStore.generateKey(ALIAS));
+    }
+
+    @After
+    public void tearDown() {
+        FakeAndroidKeyStore.uninstall();
+    }
+
+    @Test
+    public void checkWrapAndUnwrap() throws Exception {
+        final DataKeySession session = new DataKeySession(60000);
+        final byte[] wrappedKey = session.createKey(authenticatedEncryptCipher());
+        assertTrue(session.isUnlocked());
+
+        final byte[] record = session.encrypt(DATA);
+        assertArrayEquals(DATA, session.decrypt(record));
+
+        //Next launch.
+        final DataKeySession nextSession = new DataKeySession(60000);
+        assertFalse(nextSession.isUnlocked());
+        final Cipher decryptCipher = mKeyStore.createDecryptCipher(ALIAS, DataKeySession.ivOf(wrappedKey));
+        assertNotNull(decryptCipher);
+        mProvider.authenticateUser();
+        nextSession.unlock(decryptCipher, wrappedKey);
+
+        assertArrayEquals(DATA, nextSession.decrypt(record));
+    }
+
+    @Test
+    public void checkUnauthenticatedCipherCannotWrap() throws Exception {
+        final Cipher cipher = mKeyStore.createCipher(ALIAS);
+        assertNotNull(cipher);
+
+        try {
+            new DataKeySession(60000).createKey(cipher);
+            fail("Key must not be wrapped before the authentication.");
+        } catch (GeneralSecurityException expected) {
+            //Expected.
+        }
+    }
+
+    @Test
+    public void checkLockZeroesKey() throws Exception {
+        final DataKeySession session = new DataKeySession(60000);
+        session.createKey(authenticatedEncryptCipher());
+        final byte[] record = session.encrypt(DATA);
+
+        session.lock();
+        assertFalse(session.isUnlocked());
+        assertLocked(session, record);
+    }
+
+    @Test
+    public void checkTimeoutLocksSession() throws Exception {
+        final DataKeySession session = new DataKeySession(50);
+        session.createKey(authenticatedEncryptCipher());
+        final byte[] record = session.encrypt(DATA);
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (session.isUnlocked() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertLocked(session, record);
+    }
+
+    @Test
+    public void checkBackgroundLocksSession() throws Exception {
+        final DataKeySession session = new DataKeySession(60000);
+        session.createKey(authenticatedEncryptCipher());
+
+        session.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertTrue(session.isUnlocked());
+
+        //Still in the foreground.
+        session.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertTrue(session.isUnlocked());
+
+        session.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertFalse(session.isUnlocked());
+    }
+
+    @Test
+    public void checkRecoveryCopyUnlocksSession() throws Exception {
+        final DataKeySession session = new DataKeySession(60000);
+        session.createKey(authenticatedEncryptCipher());
+        final byte[] record = session.encrypt(DATA);
+
+        final SecretKey recoveryKey = new SecretKeySpec(new byte[32], "AES");
+        final Cipher wrapCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        wrapCipher.init(Cipher.ENCRYPT_MODE, recoveryKey);
+        final byte[] recoveryCopy = session.wrapKey(wrapCipher);
+
+        //Fingerprint key was invalidated by a new enrollment.
+        final DataKeySession nextSession = new DataKeySession(60000);
+        final Cipher unwrapCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        unwrapCipher.init(Cipher.DECRYPT_MODE, recoveryKey,
+                new GCMParameterSpec(128, DataKeySession.ivOf(recoveryCopy)));
+        nextSession.unlock(unwrapCipher, recoveryCopy);
+
+        assertArrayEquals(DATA, nextSession.decrypt(record));
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void checkLockedSessionCannotBeWrapped() throws Exception {
+        final DataKeySession session = new DataKeySession(60000);
+        session.createKey(authenticatedEncryptCipher());
+        session.lock();
+
+        final Cipher wrapCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        wrapCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[32], "AES"));
+        session.wrapKey(wrapCipher);
+    }
+
+    @Test
+    public void checkTamperedRecordIsRejected() throws Exception {
+        final DataKeySession session = new DataKeySession(60000);
+        session.createKey(authenticatedEncryptCipher());
+        final byte[] record = session.encrypt(DATA);
+        record[record.length - 1] ^= 1;
+
+        try {
+            session.decrypt(record);
+            fail("Modified record must not be decrypted.");
+        } catch (GeneralSecurityException expected) {
+            //Expected.
+        }
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void checkInvalidWrappedKey() throws Exception {
+        DataKeySession.ivOf(new byte[]{9, 16, 1});
+    }
+
+    private Cipher authenticatedEncryptCipher() {
+        final Cipher cipher = mKeyStore.createCipher(ALIAS);
+        assertNotNull(cipher);
+        mProvider.authenticateUser();
+        return cipher;
+    }
+
+    private static void assertLocked(final DataKeySession session, final byte[] record) {
+        try {
+            session.decrypt(Arrays.copyOf(record, record.length));
+            fail("Locked session must not decrypt.");
+        } catch (GeneralSecurityException expected) {
+            //Expected.
+        }
+    }
+}
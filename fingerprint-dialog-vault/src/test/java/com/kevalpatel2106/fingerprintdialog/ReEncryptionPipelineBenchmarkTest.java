@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the throughput of the {@link ReEncryptionPipeline} with one worker against the pool of
+ * workers. The in-memory store parks every write for 0.2 ms to stand for the disk. Runs only with
+ * the "benchmark" system property, like the {@link DataKeySessionBenchmarkTest}.
+ */
+public class ReEncryptionPipelineBenchmarkTest {
+    private static final int RECORDS = 2000;
+    private static final int RECORD_SIZE = 1024;
+    private static final long WRITE_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int WORKERS = 4;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private byte[][] mPlainTexts;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Run with -Pbenchmark.", Boolean.getBoolean("benchmark"));
+
+        final Random random = new Random(42);
+        mPlainTexts = new byte[RECORDS][RECORD_SIZE];
+        for (byte[] plainText : mPlainTexts) random.nextBytes(plainText);
+    }
+
+    @Test
+    public void compareSerialAndParallel() throws Exception {
+        //Warm up the providers and the JIT.
+        migrate(1);
+        migrate(WORKERS);
+
+        final long serialNanos = migrate(1);
+        final long parallelNanos = migrate(WORKERS);
+
+        assertTrue(String.format(Locale.US, "Pool must be at least 2x faster. 1 worker: %d records/s, %d workers: %d records/s",
+                recordsPerSecond(serialNanos), WORKERS, recordsPerSecond(parallelNanos)),
+                parallelNanos * 2 < serialNanos);
+    }
+
+    private long migrate(final int workerCount) throws Exception {
+        final DataKeySession from = ReEncryptionPipelineTest.unlockedSession();
+        final DataKeySession to = ReEncryptionPipelineTest.unlockedSession();
+        final ReEncryptionPipelineTest.InMemoryStore store = new ReEncryptionPipelineTest.InMemoryStore();
+        for (int i = 0; i < RECORDS; i++) {
+            store.records.put(String.format(Locale.US, "record-%05d", i), from.encrypt(mPlainTexts[i]));
+        }
+        store.writeLatencyNanos = WRITE_LATENCY_NANOS;
+
+        final ReEncryptionPipeline pipeline = new ReEncryptionPipeline(from, to, store,
+                new File(mFolder.getRoot(), "benchmark-" + workerCount + ".checkpoint"))
+                .setWorkerCount(workerCount);
+        final long start = System.nanoTime();
+        final ReEncryptionPipeline.Result result = pipeline.run();
+        final long nanos = System.nanoTime() - start;
+
+        assertEquals(RECORDS, result.getMigrated());
+        return nanos;
+    }
+
+    private static long recordsPerSecond(final long nanos) {
+        return RECORDS * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+    }
+}
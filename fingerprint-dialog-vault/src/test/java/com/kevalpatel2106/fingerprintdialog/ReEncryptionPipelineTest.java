@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link ReEncryptionPipeline}. These run on the JVM with the in-memory
+ * {@link ReEncryptionPipeline.RecordStore}.
+ */
+public class ReEncryptionPipelineTest {
+    private static final int RECORDS = 500;
+    private static final int BATCH_SIZE = 16;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mCheckpointFile;
+    private DataKeySession mFrom;
+    private DataKeySession mTo;
+    private InMemoryStore mStore;
+
+    @Before
+    public void setUp() throws Exception {
+        mCheckpointFile = new File(mFolder.getRoot(), "reencrypt.checkpoint");
+        mFrom = unlockedSession();
+        mTo = unlockedSession();
+        mStore = new InMemoryStore();
+        for (int i = 0; i < RECORDS; i++) mStore.records.put(id(i), mFrom.encrypt(plainText(i)));
+    }
+
+    @Test
+    public void checkEveryRecordIsMigrated() throws Exception {
+        final ReEncryptionPipeline.Result result = pipeline(4).run();
+
+        assertEquals(RECORDS, result.getMigrated());
+        assertEquals(0, result.getAlreadyMigrated());
+        assertEquals(0, result.getFailed());
+        assertMigrated();
+        assertFalse(mCheckpointFile.exists());
+
+        //Nothing left to migrate.
+        final ReEncryptionPipeline.Result again = pipeline(4).run();
+        assertEquals(0, again.getMigrated());
+        assertEquals(RECORDS, again.getAlreadyMigrated());
+    }
+
+    @Test
+    public void checkMigrationResumesFromCheckpoint() throws Exception {
+        mStore.failAfterWrites = 100;
+        try {
+            pipeline(1).run();
+            fail("Store failure must stop the migration.");
+        } catch (IOException expected) {
+            //Expected.
+        }
+        assertTrue(mCheckpointFile.exists());
+
+        //Next launch. The first 6 batches are in the checkpoint, the 7th one stopped after 4 records.
+        mStore.failAfterWrites = -1;
+        mStore.writes.set(0);
+        final ReEncryptionPipeline.Result result = pipeline(1).run();
+
+        assertEquals(RECORDS - 6 * BATCH_SIZE - 4, mStore.writes.get());
+        assertEquals(RECORDS - 4, result.getMigrated());
+        assertEquals(4, result.getAlreadyMigrated());
+        assertEquals(0, result.getFailed());
+        assertMigrated();
+        assertFalse(mCheckpointFile.exists());
+    }
+
+    @Test
+    public void checkUnreadableRecordIsLeftAsItIs() throws Exception {
+        final byte[] corrupted = mStore.records.get(id(42));
+        corrupted[corrupted.length - 1] ^= 1;
+
+        final ReEncryptionPipeline.Result result = pipeline(4).run();
+
+        assertEquals(RECORDS - 1, result.getMigrated());
+        assertEquals(1, result.getFailed());
+        assertArrayEquals(corrupted, mStore.records.get(id(42)));
+    }
+
+    @Test
+    public void checkLockedSessionStopsMigration() throws Exception {
+        mTo.lock();
+
+        try {
+            pipeline(4).run();
+            fail("Locked session must stop the migration.");
+        } catch (GeneralSecurityException expected) {
+            //Expected.
+        }
+        assertEquals(0, mStore.writes.get());
+        assertTrue(mCheckpointFile.exists());
+    }
+
+    @Test
+    public void checkCorruptedCheckpointIsIgnored() throws Exception {
+        final FileOutputStream out = new FileOutputStream(mCheckpointFile);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        assertEquals(RECORDS, pipeline(4).run().getMigrated());
+        assertMigrated();
+    }
+
+    @NonNull
+    private ReEncryptionPipeline pipeline(final int workerCount) {
+        return new ReEncryptionPipeline(mFrom, mTo, mStore, mCheckpointFile)
+                .setWorkerCount(workerCount)
+                .setBatchSize(BATCH_SIZE);
+    }
+
+    private void assertMigrated() throws Exception {
+        for (int i = 0; i < RECORDS; i++) {
+            assertArrayEquals(plainText(i), mTo.decrypt(mStore.records.get(id(i))));
+        }
+    }
+
+    @NonNull
+    static DataKeySession unlockedSession() throws GeneralSecurityException {
+        final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, keyGenerator.generateKey());
+
+        final DataKeySession session = new DataKeySession(60000);
+        session.createKey(cipher);
+        return session;
+    }
+
+    @NonNull
+    private static String id(final int index) {
+        return String.format(Locale.US, "record-%05d", index);
+    }
+
+    @NonNull
+    private static byte[] plainText(final int index) {
+        return ("secret-" + index).getBytes();
+    }
+
+    /**
+     * {@link ReEncryptionPipeline.RecordStore} ordered by the id.
+     */
+    static class InMemoryStore implements ReEncryptionPipeline.RecordStore {
+        final NavigableMap<String, byte[]> records = new ConcurrentSkipListMap<>();
+        final AtomicInteger writes = new AtomicInteger();
+        volatile int failAfterWrites = -1;
+        volatile long writeLatencyNanos = 0;
+
+        @NonNull
+        @Override
+        public List<String> list(@Nullable final String afterId, final int limit) {
+            final NavigableMap<String, byte[]> tail = afterId == null ? records : records.tailMap(afterId, false);
+            final List<String> ids = new ArrayList<>(limit);
+            for (String id : tail.keySet()) {
+                if (ids.size() == limit) break;
+                ids.add(id);
+            }
+            return ids;
+        }
+
+        @Nullable
+        @Override
+        public byte[] read(@NonNull final String id) {
+            return records.get(id);
+        }
+
+        @Override
+        public void write(@NonNull final String id, @NonNull final byte[] record) throws IOException {
+            if (failAfterWrites >= 0 && writes.get() >= failAfterWrites) throw new IOException("Disk is full.");
+            if (writeLatencyNanos > 0) LockSupport.parkNanos(writeLatencyNanos);
+
+            records.put(id, record);
+            writes.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2018 Keval Patel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance wit
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing permissions and limitations under the License.
+ */
+
+package com.kevalpatel2106.fingerprintdialog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link SecureVault}. These run on the JVM using the real memory-mapped files.
+ */
+public class SecureVaultTest {
+    private static final int ENTRIES = 5000;
+
+    /**
+     * Offsets of the records of {@link #putThreeRecords()}. Every record takes 4 + 3 + 1 (key) +
+     * 12 (IV) + 1 (value) + 16 (tag) bytes after the 8 bytes of the header.
+     */
+    private static final int SECOND_RECORD = 8 + 37;
+    private static final int THIRD_RECORD = 8 + 2 * 37;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private SecretKey mKey;
+    private SecureVault mVault;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = new File(mFolder.getRoot(), "vault.bin");
+        final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(256);
+        mKey = keyGenerator.generateKey();
+        mVault = SecureVault.open(mFile, mKey);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mVault.close();
+    }
+
+    @Test
+    public void checkPutGetRemove() throws Exception {
+        assertNull(mVault.get("token"));
+
+        mVault.put("token", bytes("secret-1"));
+        assertArrayEquals(bytes("secret-1"), mVault.get("token"));
+
+        mVault.put("token", bytes("secret-2"));
+        assertArrayEquals(bytes("secret-2"), mVault.get("token"));
+        assertEquals(1, mVault.size());
+
+        assertTrue(mVault.remove("token"));
+        assertFalse(mVault.remove("token"));
+        assertNull(mVault.get("token"));
+        assertFalse(mVault.contains("token"));
+    }
+
+    @Test
+    public void checkValuesAreNotStoredInPlainText() throws Exception {
+        mVault.put("pin", bytes("plain-text-value"));
+        mVault.close();
+
+        final byte[] content = java.nio.file.Files.readAllBytes(mFile.toPath());
+        assertFalse(new String(content, "ISO-8859-1").contains("plain-text-value"));
+        mVault = SecureVault.open(mFile, mKey);
+    }
+
+    @Test
+    public void checkThousandsOfEntriesSurviveReopen() throws Exception {
+        for (int i = 0; i < ENTRIES; i++) mVault.put("key-" + i, bytes("value-" + i));
+        mVault.close();
+
+        mVault = SecureVault.open(mFile, mKey);
+        assertEquals(ENTRIES, mVault.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            assertArrayEquals(bytes("value-" + i), mVault.get("key-" + i));
+        }
+    }
+
+    @Test
+    public void checkRemovedKeysStayRemovedAfterReopen() throws Exception {
+        mVault.put("a", bytes("1"));
+        mVault.put("b", bytes("2"));
+        mVault.remove("a");
+        mVault.close();
+
+        mVault = SecureVault.open(mFile, mKey);
+        assertNull(mVault.get("a"));
+        assertArrayEquals(bytes("2"), mVault.get("b"));
+    }
+
+    @Test
+    public void checkCompactionKeepsLiveRecords() throws Exception {
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 500; i++) mVault.put("key-" + i, bytes("value-" + round + "-" + i));
+        }
+        for (int i = 0; i < 100; i++) mVault.remove("key-" + i);
+        assertTrue(mVault.getGarbageBytes() > 0);
+
+        mVault.compact();
+        assertEquals(0, mVault.getGarbageBytes());
+        assertEquals(400, mVault.size());
+        for (int i = 100; i < 500; i++) {
+            assertArrayEquals(bytes("value-4-" + i), mVault.get("key-" + i));
+        }
+
+        //Appends after the compaction go to the new file.
+        mVault.put("after", bytes("compaction"));
+        mVault.close();
+        mVault = SecureVault.open(mFile, mKey);
+        assertEquals(401, mVault.size());
+        assertArrayEquals(bytes("compaction"), mVault.get("after"));
+        assertNull(mVault.get("key-0"));
+    }
+
+    @Test
+    public void checkWrongKeyCannotDecrypt() throws Exception {
+        mVault.put("token", bytes("secret"));
+        mVault.close();
+
+        final SecretKey otherKey = KeyGenerator.getInstance("AES").generateKey();
+        mVault = SecureVault.open(mFile, otherKey);
+        try {
+            mVault.get("token");
+            fail("Decrypted the value with the wrong key.");
+        } catch (GeneralSecurityException expected) {
+            //Expected.
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void checkOpeningOtherFileFails() throws Exception {
+        final File other = mFolder.newFile("other.bin");
+        java.nio.file.Files.write(other.toPath(), bytes("not a vault"));
+        SecureVault.open(other, mKey);
+    }
+
+    @Test
+    public void checkCorruptedKeyLengthDropsRestOfVault() throws Exception {
+        putThreeRecords();
+        //Negative key length of "c".
+        corrupt(THIRD_RECORD + 5, new byte[]{(byte) 0xFF, (byte) 0xFF});
+
+        mVault = SecureVault.open(mFile, mKey);
+        assertEquals(2, mVault.size());
+        assertArrayEquals(bytes("2"), mVault.get("b"));
+        assertNull(mVault.get("c"));
+    }
+
+    @Test
+    public void checkCorruptedRecordLengthDropsRestOfVault() throws Exception {
+        putThreeRecords();
+        //Length of "b" without the payload.
+        corrupt(SECOND_RECORD, new byte[]{0, 0, 0, 4});
+
+        mVault = SecureVault.open(mFile, mKey);
+        assertEquals(1, mVault.size());
+        assertArrayEquals(bytes("1"), mVault.get("a"));
+
+        //Records appended after the cut survive the next open.
+        mVault.put("d", bytes("4"));
+        mVault.close();
+        mVault = SecureVault.open(mFile, mKey);
+        assertEquals(2, mVault.size());
+        assertArrayEquals(bytes("4"), mVault.get("d"));
+        assertNull(mVault.get("c"));
+    }
+
+    private void putThreeRecords() throws Exception {
+        mVault.put("a", bytes("1"));
+        mVault.put("b", bytes("2"));
+        mVault.put("c", bytes("3"));
+        mVault.close();
+    }
+
+    private void corrupt(final int position, final byte[] data) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(position);
+            file.write(data);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static byte[] bytes(final String value) throws Exception {
+        return value.getBytes("UTF-8");
+    }
+}